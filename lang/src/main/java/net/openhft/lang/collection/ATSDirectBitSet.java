@@ -760,8 +760,89 @@ public class ATSDirectBitSet implements DirectBitSet {
         while (true) {
             long l = bytes.readVolatileLong(longIndex << 3);
             long l2 = l & ~value;
-            if (bytes.compareAndSwapLong(longIndex << 3, l, l2)) return this;
+            if (l == l2 || bytes.compareAndSwapLong(longIndex << 3, l, l2)) return this;
+        }
+    }
+
+    /**
+     * Each long is changed atomically, and only if it changes, but not the bit set as a whole.
+     */
+    @Override
+    public DirectBitSet and(DirectBitSet other) {
+        long longs = DirectBitSets.commonLongs(this, other);
+        for (long i = 0; i < longs; i++) {
+            long value = other.getLong(i);
+            if (value != ~0L)
+                and(i, value);
+        }
+        // the other has no bits set beyond its size.
+        for (long i = longs; i < longLength; i++)
+            and(i, 0L);
+        return this;
+    }
+
+    /**
+     * Each long is changed atomically, and only if it changes, but not the bit set as a whole.
+     */
+    @Override
+    public DirectBitSet or(DirectBitSet other) {
+        long longs = DirectBitSets.commonLongs(this, other);
+        for (long i = 0; i < longs; i++) {
+            long value = other.getLong(i);
+            if (value != 0L)
+                or(i, value);
+        }
+        return this;
+    }
+
+    /**
+     * Each long is changed atomically, and only if it changes, but not the bit set as a whole.
+     */
+    @Override
+    public DirectBitSet xor(DirectBitSet other) {
+        long longs = DirectBitSets.commonLongs(this, other);
+        for (long i = 0; i < longs; i++) {
+            long value = other.getLong(i);
+            if (value != 0L)
+                xor(i, value);
+        }
+        return this;
+    }
+
+    /**
+     * Each long is changed atomically, and only if it changes, but not the bit set as a whole.
+     */
+    @Override
+    public DirectBitSet andNot(DirectBitSet other) {
+        long longs = DirectBitSets.commonLongs(this, other);
+        for (long i = 0; i < longs; i++) {
+            long value = other.getLong(i);
+            if (value != 0L)
+                andNot(i, value);
         }
+        return this;
+    }
+
+    @Override
+    public boolean intersects(DirectBitSet other) {
+        long longs = DirectBitSets.commonLongs(this, other);
+        Bytes otherBytes = DirectBitSets.bytesOf(other);
+        return otherBytes != null
+                ? DirectBitSets.intersects(bytes, otherBytes, longs)
+                : DirectBitSets.intersects(bytes, other, longs);
+    }
+
+    @Override
+    public long cardinalityOfAnd(DirectBitSet other) {
+        long longs = DirectBitSets.commonLongs(this, other);
+        Bytes otherBytes = DirectBitSets.bytesOf(other);
+        return otherBytes != null
+                ? DirectBitSets.cardinalityOfAnd(bytes, otherBytes, longs)
+                : DirectBitSets.cardinalityOfAnd(bytes, other, longs);
+    }
+
+    Bytes bytes() {
+        return bytes;
     }
 
 
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection;
+
+/**
+ * Populates the elements of a batch offered to a HugeQueue.
+ */
+public interface BatchWriter<T> {
+    /**
+     * @param element to populate, this reference is reused for each element of the batch.
+     * @param index   of the element in the batch, from 0.
+     */
+    void write(T element, int index);
+}
@@ -389,6 +389,63 @@ public interface DirectBitSet extends ReferenceCounted {
      */
     DirectBitSet andNot(long longIndex, long value);
 
+    /**
+     * Performs a logical <b>AND</b> of this bit set with the argument bit set,
+     * a long at a time.  The bits beyond the size of the argument are
+     * cleared.
+     *
+     * @param other the bit set to AND with, may be this
+     * @return this {@code DirectBitSet} back
+     */
+    DirectBitSet and(DirectBitSet other);
+
+    /**
+     * Performs a logical <b>OR</b> of this bit set with the argument bit set,
+     * a long at a time.  The bits of the argument beyond the size of this
+     * bit set are ignored.
+     *
+     * @param other the bit set to OR with, may be this
+     * @return this {@code DirectBitSet} back
+     */
+    DirectBitSet or(DirectBitSet other);
+
+    /**
+     * Performs a logical <b>XOR</b> of this bit set with the argument bit set,
+     * a long at a time.  The bits of the argument beyond the size of this
+     * bit set are ignored.
+     *
+     * @param other the bit set to XOR with, may be this
+     * @return this {@code DirectBitSet} back
+     */
+    DirectBitSet xor(DirectBitSet other);
+
+    /**
+     * Clears all of the bits in this bit set whose corresponding bit is set
+     * in the argument bit set, a long at a time.
+     *
+     * @param other the bit set to AND NOT with, may be this
+     * @return this {@code DirectBitSet} back
+     */
+    DirectBitSet andNot(DirectBitSet other);
+
+    /**
+     * Returns {@code true} if the argument bit set has any bits set to
+     * {@code true} which are also set in this bit set.
+     *
+     * @param other the bit set to check for an intersection with
+     * @return whether this bit set intersects the argument bit set
+     */
+    boolean intersects(DirectBitSet other);
+
+    /**
+     * Returns the number of bits set to {@code true} in both this bit set
+     * and the argument bit set, without changing either.
+     *
+     * @param other the bit set to AND with
+     * @return the cardinality of the AND of this bit set and the argument
+     */
+    long cardinalityOfAnd(DirectBitSet other);
+
     /**
      * Finds and sets to {@code true} the first bit that is set to {@code false}
      * that occurs on or after the specified starting index. If no such
@@ -22,10 +22,14 @@ import net.openhft.lang.io.DirectStore;
 public class DirectBitSetBuilder {
     private boolean assertions;
     private boolean threadSafe;
+    private boolean rankSelect;
+    private boolean hierarchical;
 
     public DirectBitSetBuilder() {
         threadSafe = true;
         assertions = false;
+        rankSelect = false;
+        hierarchical = false;
         //noinspection ConstantConditions,AssertWithSideEffects
         assert assertions = true;
     }
@@ -48,8 +52,37 @@ public class DirectBitSetBuilder {
         return threadSafe;
     }
 
+    /**
+     * @param rankSelect whether to create a RankSelectDirectBitSet, which keeps a directory of the bits set for
+     *                   rank(long) and select(long).
+     */
+    public DirectBitSetBuilder rankSelect(boolean rankSelect) {
+        this.rankSelect = rankSelect;
+        return this;
+    }
+
+    public boolean rankSelect() {
+        return rankSelect;
+    }
+
+    /**
+     * @param hierarchical whether to create a HierarchicalDirectBitSet, which keeps summaries of the longs with bits
+     *                     set and clear for nextSetBit(long) and nextClearBit(long).
+     */
+    public DirectBitSetBuilder hierarchical(boolean hierarchical) {
+        this.hierarchical = hierarchical;
+        return this;
+    }
+
+    public boolean hierarchical() {
+        return hierarchical;
+    }
+
     public DirectBitSet create(long size) {
-        return wrap(DirectStore.allocate((size + 7) >>> 3).bytes());
+        DirectBitSet bitSet = wrap(DirectStore.allocate((size + 7) >>> 3).bytes());
+        if (hierarchical)
+            bitSet = new HierarchicalDirectBitSet(bitSet);
+        return rankSelect ? new RankSelectDirectBitSet(bitSet) : bitSet;
     }
 
     static DirectBitSet wrap(Bytes bytes) {
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.io.Bytes;
+
+/**
+ * The bulk operations between DirectBitSets, which read the Bytes of both four longs at a time, so the loops are short
+ * and the reads of the four can be in flight together.
+ */
+enum DirectBitSets {
+    ;
+
+    /**
+     * @return the Bytes of a DirectBitSet of this package, or null if it is some other kind.
+     */
+    static Bytes bytesOf(DirectBitSet bitSet) {
+        if (bitSet instanceof SingleThreadedDirectBitSet)
+            return ((SingleThreadedDirectBitSet) bitSet).bytes();
+        if (bitSet instanceof ATSDirectBitSet)
+            return ((ATSDirectBitSet) bitSet).bytes();
+        if (bitSet instanceof RankSelectDirectBitSet)
+            return bytesOf(((RankSelectDirectBitSet) bitSet).bitSet());
+        if (bitSet instanceof HierarchicalDirectBitSet)
+            return bytesOf(((HierarchicalDirectBitSet) bitSet).bitSet());
+        return null;
+    }
+
+    /**
+     * @return the number of longs both bit sets have.
+     */
+    static long commonLongs(DirectBitSet bitSet, DirectBitSet other) {
+        return Math.min(bitSet.size(), other.size()) >> 6;
+    }
+
+    static void and(Bytes bytes, Bytes other, long longs) {
+        long end = longs << 3, end4 = end & ~31L;
+        long i = 0;
+        for (; i < end4; i += 32) {
+            long l0 = bytes.readLong(i) & other.readLong(i);
+            long l1 = bytes.readLong(i + 8) & other.readLong(i + 8);
+            long l2 = bytes.readLong(i + 16) & other.readLong(i + 16);
+            long l3 = bytes.readLong(i + 24) & other.readLong(i + 24);
+            bytes.writeLong(i, l0);
+            bytes.writeLong(i + 8, l1);
+            bytes.writeLong(i + 16, l2);
+            bytes.writeLong(i + 24, l3);
+        }
+        for (; i < end; i += 8)
+            bytes.writeLong(i, bytes.readLong(i) & other.readLong(i));
+    }
+
+    static void or(Bytes bytes, Bytes other, long longs) {
+        long end = longs << 3, end4 = end & ~31L;
+        long i = 0;
+        for (; i < end4; i += 32) {
+            long l0 = bytes.readLong(i) | other.readLong(i);
+            long l1 = bytes.readLong(i + 8) | other.readLong(i + 8);
+            long l2 = bytes.readLong(i + 16) | other.readLong(i + 16);
+            long l3 = bytes.readLong(i + 24) | other.readLong(i + 24);
+            bytes.writeLong(i, l0);
+            bytes.writeLong(i + 8, l1);
+            bytes.writeLong(i + 16, l2);
+            bytes.writeLong(i + 24, l3);
+        }
+        for (; i < end; i += 8)
+            bytes.writeLong(i, bytes.readLong(i) | other.readLong(i));
+    }
+
+    static void xor(Bytes bytes, Bytes other, long longs) {
+        long end = longs << 3, end4 = end & ~31L;
+        long i = 0;
+        for (; i < end4; i += 32) {
+            long l0 = bytes.readLong(i) ^ other.readLong(i);
+            long l1 = bytes.readLong(i + 8) ^ other.readLong(i + 8);
+            long l2 = bytes.readLong(i + 16) ^ other.readLong(i + 16);
+            long l3 = bytes.readLong(i + 24) ^ other.readLong(i + 24);
+            bytes.writeLong(i, l0);
+            bytes.writeLong(i + 8, l1);
+            bytes.writeLong(i + 16, l2);
+            bytes.writeLong(i + 24, l3);
+        }
+        for (; i < end; i += 8)
+            bytes.writeLong(i, bytes.readLong(i) ^ other.readLong(i));
+    }
+
+    static void andNot(Bytes bytes, Bytes other, long longs) {
+        long end = longs << 3, end4 = end & ~31L;
+        long i = 0;
+        for (; i < end4; i += 32) {
+            long l0 = bytes.readLong(i) & ~other.readLong(i);
+            long l1 = bytes.readLong(i + 8) & ~other.readLong(i + 8);
+            long l2 = bytes.readLong(i + 16) & ~other.readLong(i + 16);
+            long l3 = bytes.readLong(i + 24) & ~other.readLong(i + 24);
+            bytes.writeLong(i, l0);
+            bytes.writeLong(i + 8, l1);
+            bytes.writeLong(i + 16, l2);
+            bytes.writeLong(i + 24, l3);
+        }
+        for (; i < end; i += 8)
+            bytes.writeLong(i, bytes.readLong(i) & ~other.readLong(i));
+    }
+
+    static boolean intersects(Bytes bytes, Bytes other, long longs) {
+        long end = longs << 3, end4 = end & ~31L;
+        long i = 0;
+        for (; i < end4; i += 32) {
+            if (((bytes.readLong(i) & other.readLong(i))
+                    | (bytes.readLong(i + 8) & other.readLong(i + 8))
+                    | (bytes.readLong(i + 16) & other.readLong(i + 16))
+                    | (bytes.readLong(i + 24) & other.readLong(i + 24))) != 0)
+                return true;
+        }
+        for (; i < end; i += 8)
+            if ((bytes.readLong(i) & other.readLong(i)) != 0)
+                return true;
+        return false;
+    }
+
+    static long cardinalityOfAnd(Bytes bytes, Bytes other, long longs) {
+        long end = longs << 3, end4 = end & ~31L;
+        long i = 0;
+        long count = 0;
+        for (; i < end4; i += 32) {
+            count += Long.bitCount(bytes.readLong(i) & other.readLong(i))
+                    + Long.bitCount(bytes.readLong(i + 8) & other.readLong(i + 8))
+                    + Long.bitCount(bytes.readLong(i + 16) & other.readLong(i + 16))
+                    + Long.bitCount(bytes.readLong(i + 24) & other.readLong(i + 24));
+        }
+        for (; i < end; i += 8)
+            count += Long.bitCount(bytes.readLong(i) & other.readLong(i));
+        return count;
+    }
+
+    // for a DirectBitSet of another kind, a long at a time through its interface.
+
+    static boolean intersects(Bytes bytes, DirectBitSet other, long longs) {
+        for (long i = 0; i < longs; i++)
+            if ((bytes.readLong(i << 3) & other.getLong(i)) != 0)
+                return true;
+        return false;
+    }
+
+    static long cardinalityOfAnd(Bytes bytes, DirectBitSet other, long longs) {
+        long count = 0;
+        for (long i = 0; i < longs; i++)
+            count += Long.bitCount(bytes.readLong(i << 3) & other.getLong(i));
+        return count;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection;
+
+/**
+ * Is passed a reference to an element of a HugeArray.
+ */
+public interface ElementConsumer<T> {
+    /**
+     * @param element a reference which is only valid for the duration of the call.
+     * @param index   of the element.
+     */
+    void accept(T element, long index);
+}
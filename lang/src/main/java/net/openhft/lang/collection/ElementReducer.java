@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection;
+
+/**
+ * Reduces the elements of a HugeArray to a result, a range at a time.  To avoid creating garbage for every element, a
+ * reducer can accumulate into a mutable result and return it.
+ */
+public interface ElementReducer<T, R> {
+    /**
+     * @return a new result for an empty range.
+     */
+    R identity();
+
+    /**
+     * @param result  so far.
+     * @param element a reference which is only valid for the duration of the call.
+     * @param index   of the element.
+     * @return the result including this element.
+     */
+    R reduce(R result, T element, long index);
+
+    /**
+     * Combine the results of two ranges, which can be in any order.
+     */
+    R combine(R result1, R result2);
+}
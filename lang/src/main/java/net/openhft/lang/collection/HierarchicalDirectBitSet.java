@@ -0,0 +1,522 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectStore;
+
+/**
+ * A DirectBitSet with summaries of its longs, so nextSetBit and nextClearBit skip the empty or full parts in
+ * O(log64 n) reads instead of reading every long.  One summary has a bit for every long with a bit set, the other a
+ * bit for every long with a bit clear, and each has a level above with a bit for every long of the level below which
+ * is not zero, and so on up to one long.  The summaries are off heap and updated with compare and swap after each
+ * change, and each bit is checked again against the long below after it is written, so when the changes have
+ * finished they are exact, and while they are under way a search may not see a bit which is still being changed.
+ */
+public class HierarchicalDirectBitSet implements DirectBitSet {
+    private final DirectBitSet bitSet;
+    private final long longLength;
+    private final Summary setLongs;
+    private final Summary clearLongs;
+
+    public HierarchicalDirectBitSet(DirectBitSet bitSet) {
+        this.bitSet = bitSet;
+        longLength = bitSet.size() >> 6;
+        setLongs = new Summary(false);
+        clearLongs = new Summary(true);
+        setLongs.build();
+        clearLongs.build();
+    }
+
+    private final class Summary {
+        // whether it has the longs with a bit clear, rather than set.
+        private final boolean clear;
+        private final Bytes[] levels;
+
+        Summary(boolean clear) {
+            this.clear = clear;
+            int count = 1;
+            for (long bits = bitSet.size() >> 6; bits > 64; bits = (bits + 63) >> 6)
+                count++;
+            levels = new Bytes[count];
+            long bits = bitSet.size() >> 6;
+            for (int i = 0; i < count; i++) {
+                long longs = Math.max(1, (bits + 63) >> 6);
+                levels[i] = DirectStore.allocate(longs << 3).bytes();
+                bits = longs;
+            }
+        }
+
+        // whether the long of the bit set is in this summary.
+        private boolean has(long l) {
+            return clear ? l != ~0L : l != 0;
+        }
+
+        // whether the bit for this index in the level is set by the long below it.
+        private boolean below(int level, long index) {
+            return level == 0 ? has(bitSet.getLong(index)) : levels[level - 1].readVolatileLong(index << 3) != 0;
+        }
+
+        // from all the longs, when no one else is using it.
+        void build() {
+            for (long i = 0; i < longLength; i++) {
+                if (has(bitSet.getLong(i))) {
+                    long offset = (i >> 6) << 3;
+                    levels[0].writeLong(offset, levels[0].readLong(offset) | (1L << i));
+                }
+            }
+            for (int level = 1; level < levels.length; level++) {
+                Bytes below = levels[level - 1];
+                for (long i = 0, longs = below.capacity() >> 3; i < longs; i++) {
+                    if (below.readLong(i << 3) != 0) {
+                        long offset = (i >> 6) << 3;
+                        levels[level].writeLong(offset, levels[level].readLong(offset) | (1L << i));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sets the bits for a long which may have changed, up the levels until one doesn't change.
+         */
+        void update(long longIndex) {
+            long index = longIndex;
+            for (int level = 0; level < levels.length; level++) {
+                boolean value;
+                boolean changed = false;
+                // another thread may change the long below between reading it and writing the bit.
+                do {
+                    value = below(level, index);
+                    changed |= set(levels[level], index, value);
+                } while (value != below(level, index));
+                if (!changed)
+                    return;
+                index >>= 6;
+            }
+        }
+
+        // whether the long changed between zero and not.
+        private boolean set(Bytes bytes, long index, boolean value) {
+            long offset = (index >> 6) << 3;
+            long mask = 1L << index;
+            while (true) {
+                long l = bytes.readVolatileLong(offset);
+                long l2 = value ? l | mask : l & ~mask;
+                if (l == l2)
+                    return false;
+                if (bytes.compareAndSwapLong(offset, l, l2))
+                    return (l == 0) != (l2 == 0);
+            }
+        }
+
+        /**
+         * @return the index of the first long from this one in the summary, or -1 if there isn't one.
+         */
+        long next(long longIndex) {
+            return next(0, longIndex);
+        }
+
+        private long next(int level, long index) {
+            Bytes bytes = levels[level];
+            long longs = bytes.capacity() >> 3;
+            while (true) {
+                long w = index >> 6;
+                if (w >= longs)
+                    return NOT_FOUND;
+                long l = bytes.readVolatileLong(w << 3) & (~0L << index);
+                if (l != 0)
+                    return (w << 6) + Long.numberOfTrailingZeros(l);
+                if (level + 1 == levels.length)
+                    return NOT_FOUND;
+                // a bit which is out of date leads to a long of zero, and on from there.
+                long w2 = next(level + 1, w + 1);
+                if (w2 < 0)
+                    return NOT_FOUND;
+                index = w2 << 6;
+            }
+        }
+    }
+
+    private void changed(long longIndex) {
+        setLongs.update(longIndex);
+        clearLongs.update(longIndex);
+    }
+
+    private void changed(long fromIndex, long exclusiveToIndex) {
+        for (long i = fromIndex >> 6, end = (exclusiveToIndex + 63) >> 6; i < end; i++)
+            changed(i);
+    }
+
+    private void changedAll() {
+        changed(0, bitSet.size());
+    }
+
+    DirectBitSet bitSet() {
+        return bitSet;
+    }
+
+    @Override
+    public long nextSetBit(long fromIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException();
+        long fromLongIndex = fromIndex >> 6;
+        if (fromLongIndex >= longLength)
+            return NOT_FOUND;
+        long l = bitSet.getLong(fromLongIndex) >>> fromIndex;
+        if (l != 0)
+            return fromIndex + Long.numberOfTrailingZeros(l);
+        for (long i = setLongs.next(fromLongIndex + 1); i >= 0; i = setLongs.next(i + 1)) {
+            l = bitSet.getLong(i);
+            if (l != 0)
+                return (i << 6) + Long.numberOfTrailingZeros(l);
+        }
+        return NOT_FOUND;
+    }
+
+    @Override
+    public long nextSetLong(long fromLongIndex) {
+        if (fromLongIndex < 0)
+            throw new IndexOutOfBoundsException();
+        for (long i = setLongs.next(fromLongIndex); i >= 0; i = setLongs.next(i + 1)) {
+            if (bitSet.getLong(i) != 0)
+                return i;
+        }
+        return NOT_FOUND;
+    }
+
+    @Override
+    public long nextClearBit(long fromIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException();
+        long fromLongIndex = fromIndex >> 6;
+        if (fromLongIndex >= longLength)
+            return NOT_FOUND;
+        long l = ~bitSet.getLong(fromLongIndex) >>> fromIndex;
+        if (l != 0)
+            return fromIndex + Long.numberOfTrailingZeros(l);
+        for (long i = clearLongs.next(fromLongIndex + 1); i >= 0; i = clearLongs.next(i + 1)) {
+            l = ~bitSet.getLong(i);
+            if (l != 0)
+                return (i << 6) + Long.numberOfTrailingZeros(l);
+        }
+        return NOT_FOUND;
+    }
+
+    @Override
+    public long nextClearLong(long fromLongIndex) {
+        if (fromLongIndex < 0)
+            throw new IndexOutOfBoundsException();
+        for (long i = clearLongs.next(fromLongIndex); i >= 0; i = clearLongs.next(i + 1)) {
+            if (bitSet.getLong(i) != ~0L)
+                return i;
+        }
+        return NOT_FOUND;
+    }
+
+    @Override
+    public long setNextClearBit(long fromIndex) {
+        // another thread may set the bit found first.
+        for (long i = nextClearBit(fromIndex); i >= 0; i = nextClearBit(i)) {
+            if (bitSet.setIfClear(i)) {
+                changed(i >> 6);
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    @Override
+    public long clearNextSetBit(long fromIndex) {
+        for (long i = nextSetBit(fromIndex); i >= 0; i = nextSetBit(i)) {
+            if (bitSet.clearIfSet(i)) {
+                changed(i >> 6);
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    @Override
+    public void reserve() {
+        bitSet.reserve();
+    }
+
+    @Override
+    public void release() {
+        bitSet.release();
+    }
+
+    @Override
+    public int refCount() {
+        return bitSet.refCount();
+    }
+
+    @Override
+    public DirectBitSet flip(long bitIndex) {
+        bitSet.flip(bitIndex);
+        changed(bitIndex >> 6);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet flip(long fromIndex, long toIndex) {
+        bitSet.flip(fromIndex, toIndex);
+        changed(fromIndex, toIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet set(long bitIndex) {
+        bitSet.set(bitIndex);
+        changed(bitIndex >> 6);
+        return this;
+    }
+
+    @Override
+    public boolean setIfClear(long bitIndex) {
+        if (!bitSet.setIfClear(bitIndex))
+            return false;
+        changed(bitIndex >> 6);
+        return true;
+    }
+
+    @Override
+    public boolean clearIfSet(long bitIndex) {
+        if (!bitSet.clearIfSet(bitIndex))
+            return false;
+        changed(bitIndex >> 6);
+        return true;
+    }
+
+    @Override
+    public DirectBitSet set(long bitIndex, boolean value) {
+        bitSet.set(bitIndex, value);
+        changed(bitIndex >> 6);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet set(long fromIndex, long toIndex) {
+        bitSet.set(fromIndex, toIndex);
+        changed(fromIndex, toIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet setAll() {
+        bitSet.setAll();
+        changedAll();
+        return this;
+    }
+
+    @Override
+    public DirectBitSet set(long fromIndex, long toIndex, boolean value) {
+        bitSet.set(fromIndex, toIndex, value);
+        changed(fromIndex, toIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet clear(long bitIndex) {
+        bitSet.clear(bitIndex);
+        changed(bitIndex >> 6);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet clear(long fromIndex, long toIndex) {
+        bitSet.clear(fromIndex, toIndex);
+        changed(fromIndex, toIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet clear() {
+        bitSet.clear();
+        changedAll();
+        return this;
+    }
+
+    @Override
+    public boolean get(long bitIndex) {
+        return bitSet.get(bitIndex);
+    }
+
+    @Override
+    public boolean isSet(long bitIndex) {
+        return bitSet.isSet(bitIndex);
+    }
+
+    @Override
+    public boolean isClear(long bitIndex) {
+        return bitSet.isClear(bitIndex);
+    }
+
+    @Override
+    public long getLong(long longIndex) {
+        return bitSet.getLong(longIndex);
+    }
+
+    @Override
+    public long previousSetBit(long fromIndex) {
+        return bitSet.previousSetBit(fromIndex);
+    }
+
+    @Override
+    public long previousSetLong(long fromLongIndex) {
+        return bitSet.previousSetLong(fromLongIndex);
+    }
+
+    @Override
+    public long previousClearBit(long fromIndex) {
+        return bitSet.previousClearBit(fromIndex);
+    }
+
+    @Override
+    public long previousClearLong(long fromLongIndex) {
+        return bitSet.previousClearLong(fromLongIndex);
+    }
+
+    @Override
+    public long size() {
+        return bitSet.size();
+    }
+
+    @Override
+    public long cardinality() {
+        return bitSet.cardinality();
+    }
+
+    @Override
+    public DirectBitSet and(long longIndex, long value) {
+        bitSet.and(longIndex, value);
+        changed(longIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet or(long longIndex, long value) {
+        bitSet.or(longIndex, value);
+        changed(longIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet xor(long longIndex, long value) {
+        bitSet.xor(longIndex, value);
+        changed(longIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet andNot(long longIndex, long value) {
+        bitSet.andNot(longIndex, value);
+        changed(longIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet and(DirectBitSet other) {
+        bitSet.and(other);
+        changedAll();
+        return this;
+    }
+
+    @Override
+    public DirectBitSet or(DirectBitSet other) {
+        bitSet.or(other);
+        changedAll();
+        return this;
+    }
+
+    @Override
+    public DirectBitSet xor(DirectBitSet other) {
+        bitSet.xor(other);
+        changedAll();
+        return this;
+    }
+
+    @Override
+    public DirectBitSet andNot(DirectBitSet other) {
+        bitSet.andNot(other);
+        changedAll();
+        return this;
+    }
+
+    @Override
+    public boolean intersects(DirectBitSet other) {
+        return bitSet.intersects(other);
+    }
+
+    @Override
+    public long cardinalityOfAnd(DirectBitSet other) {
+        return bitSet.cardinalityOfAnd(other);
+    }
+
+    @Override
+    public long setPreviousClearBit(long fromIndex) {
+        long index = bitSet.setPreviousClearBit(fromIndex);
+        if (index >= 0)
+            changed(index >> 6);
+        return index;
+    }
+
+    @Override
+    public long clearPreviousSetBit(long fromIndex) {
+        long index = bitSet.clearPreviousSetBit(fromIndex);
+        if (index >= 0)
+            changed(index >> 6);
+        return index;
+    }
+
+    @Override
+    public long setNextNContinuousClearBits(long fromIndex, int numberOfBits) {
+        long index = bitSet.setNextNContinuousClearBits(fromIndex, numberOfBits);
+        if (index >= 0)
+            changed(index, index + numberOfBits);
+        return index;
+    }
+
+    @Override
+    public long clearNextNContinuousSetBits(long fromIndex, int numberOfBits) {
+        long index = bitSet.clearNextNContinuousSetBits(fromIndex, numberOfBits);
+        if (index >= 0)
+            changed(index, index + numberOfBits);
+        return index;
+    }
+
+    @Override
+    public long setPreviousNContinuousClearBits(long fromIndex, int numberOfBits) {
+        long index = bitSet.setPreviousNContinuousClearBits(fromIndex, numberOfBits);
+        if (index >= 0)
+            changed(index, index + numberOfBits);
+        return index;
+    }
+
+    @Override
+    public long clearPreviousNContinuousSetBits(long fromIndex, int numberOfBits) {
+        long index = bitSet.clearPreviousNContinuousSetBits(fromIndex, numberOfBits);
+        if (index >= 0)
+            changed(index, index + numberOfBits);
+        return index;
+    }
+
+    @Override
+    public Bits setBits() {
+        return bitSet.setBits();
+    }
+}
@@ -16,6 +16,8 @@
 
 package net.openhft.lang.collection;
 
+import net.openhft.lang.model.DataValueComparator;
+
 /**
  * User: peter.lawrey
  * Date: 08/10/13
@@ -43,6 +45,67 @@ public interface HugeArray<T> {
      */
     void get(long index, T element);
 
+    /**
+     * Pass a reference to an element to a consumer, the reference is recycled afterwards.
+     *
+     * @param index    of the element
+     * @param consumer to pass it to.
+     */
+    void withElement(long index, ElementConsumer<T> consumer);
+
+    /**
+     * Pass each element of a range to a consumer, split into chunks across many threads.
+     *
+     * @param fromIndex the first index, inclusive.
+     * @param toIndex   the last index, exclusive.
+     * @param consumer  which may be called by many threads at once.
+     */
+    void parallelForEach(long fromIndex, long toIndex, ElementConsumer<T> consumer);
+
+    /**
+     * Reduce a range of elements, split into chunks across many threads.
+     *
+     * @param fromIndex the first index, inclusive.
+     * @param toIndex   the last index, exclusive.
+     * @param reducer   which may be called by many threads at once.
+     * @return the combined result of the chunks.
+     */
+    <R> R parallelReduce(long fromIndex, long toIndex, ElementReducer<T, R> reducer);
+
+    /**
+     * Set every element of a range to a copy of this one, across many threads.
+     *
+     * @param fromIndex the first index, inclusive.
+     * @param toIndex   the last index, exclusive.
+     * @param t         to copy.
+     */
+    void fill(long fromIndex, long toIndex, T t);
+
+    /**
+     * Sort the elements in place, across many threads.
+     *
+     * @param comparator of the fields to sort by.
+     */
+    void sort(DataValueComparator<T> comparator);
+
+    /**
+     * Search elements sorted by this comparator.
+     *
+     * @param key        to look for, only the fields of the comparator are used.
+     * @param comparator the array is sorted by.
+     * @return the index of an element equal to the key, or -(insertion point) - 1 if there isn't one.
+     */
+    long binarySearch(T key, DataValueComparator<T> comparator);
+
+    /**
+     * Create a sorted index of an integer field, which is kept up to date by set(long, T).
+     *
+     * @param fieldName of a boolean, byte, short, char, int or long field, or one packed by @Range.
+     * @return the index, built from the elements so far.
+     * @throws IllegalArgumentException if there is no such integer field.
+     */
+    HugeIndex createIndex(String fieldName);
+
     /**
      * Copy the contents of an index to another object
      *
@@ -60,7 +123,8 @@ public interface HugeArray<T> {
     void set(long index, T t);
 
     /**
-     * recycle the reference,
+     * recycle the reference, each thread keeps up to -DhugeArray.poolSize=10 references for reuse, so references can
+     * be got and recycled by any thread.
      *
      * @param t reference to recycle.
      */
@@ -16,8 +16,15 @@
 
 package net.openhft.lang.collection;
 
+import net.openhft.lang.collection.impl.ColumnarHugeArrayImpl;
+import net.openhft.lang.collection.impl.ConcurrentHugeQueueImpl;
 import net.openhft.lang.collection.impl.HugeArrayImpl;
+import net.openhft.lang.collection.impl.HugeMapImpl;
 import net.openhft.lang.collection.impl.HugeQueueImpl;
+import net.openhft.lang.collection.impl.SegmentedHugeListImpl;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * User: peter.lawrey
@@ -31,7 +38,78 @@ public enum HugeCollections {
         return new HugeArrayImpl<T>(tClass, length);
     }
 
+    /**
+     * Create an array mapped to a file, or map an existing one.
+     *
+     * @throws IllegalStateException if the file was created for a different length or layout.
+     */
+    public static <T> HugeArray<T> newArray(Class<T> tClass, long length, File file) throws IOException {
+        return new HugeArrayImpl<T>(tClass, length, file);
+    }
+
+    /**
+     * Create an array with each field in a column of its own, for scans of a few fields of many elements.  It cannot
+     * be sorted or searched.
+     *
+     * @throws IllegalArgumentException if the interface has fields which are not primitives.
+     */
+    public static <T> HugeArray<T> newColumnarArray(Class<T> tClass, long length) {
+        return new ColumnarHugeArrayImpl<T>(tClass, length);
+    }
+
+    /**
+     * Create an empty list which allocates segments of about -DhugeList.segmentBytes=1048576 bytes as it grows.
+     */
+    public static <T> HugeList<T> newList(Class<T> tClass) {
+        return new SegmentedHugeListImpl<T>(tClass);
+    }
+
+    /**
+     * Create an empty list which allocates segments of segmentLength elements, rounded up to a power of two.
+     */
+    public static <T> HugeList<T> newList(Class<T> tClass, int segmentLength) {
+        return new SegmentedHugeListImpl<T>(tClass, segmentLength);
+    }
+
     public static <T> HugeQueue<T> newQueue(Class<T> tClass, long length) {
         return new HugeQueueImpl<T>(new HugeArrayImpl<T>(tClass, length + 1), length + 1);
     }
+
+    /**
+     * A queue for one producer thread and one consumer thread.  Elements from offer() are published, and elements
+     * from take() are freed, by recycle().
+     */
+    public static <T> HugeQueue<T> newSPSCQueue(Class<T> tClass, long length) {
+        return new ConcurrentHugeQueueImpl<T>(tClass, length, false);
+    }
+
+    /**
+     * A queue for many producer threads and one consumer thread.  Elements from offer() are published, and elements
+     * from take() are freed, by recycle().
+     */
+    public static <T> HugeQueue<T> newMPSCQueue(Class<T> tClass, long length) {
+        return new ConcurrentHugeQueueImpl<T>(tClass, length, true);
+    }
+
+    /**
+     * A queue mapped to a file for one producer process and one consumer process.
+     *
+     * @throws IllegalStateException if the file was created for a different queue.
+     */
+    public static <T> HugeQueue<T> newSPSCQueue(Class<T> tClass, long length, File file) throws IOException {
+        return new ConcurrentHugeQueueImpl<T>(tClass, length, false, file);
+    }
+
+    /**
+     * A queue mapped to a file for many producer threads or processes and one consumer.
+     *
+     * @throws IllegalStateException if the file was created for a different queue.
+     */
+    public static <T> HugeQueue<T> newMPSCQueue(Class<T> tClass, long length, File file) throws IOException {
+        return new ConcurrentHugeQueueImpl<T>(tClass, length, true, file);
+    }
+
+    public static <K, V> HugeMap<K, V> newMap(Class<K> kClass, Class<V> vClass, long capacity) {
+        return new HugeMapImpl<K, V>(kClass, vClass, capacity);
+    }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+/**
+ * A sorted index of one integer field of a HugeArray, with an entry of the field's value and the element's index for
+ * each element.  The entries are in order of value, then index, and are read by their position, so lookups and range
+ * scans create no objects, e.g.
+ * <pre>
+ * for (long p = index.lowerBound(from), end = index.lowerBound(to); p &lt; end; p++)
+ *     array.get(index.arrayIndex(p), element);
+ * </pre>
+ * The index is kept up to date by HugeArray.set(long, T).  Changes made through references to the elements, or new
+ * elements of a HugeList, are indexed by rebuild().  set(long, T) and rebuild() lock the array, but lookups don't, so
+ * lookups are not safe while the index is being changed by either of them, or by HugeArray.fill or sort.
+ */
+public interface HugeIndex {
+    /**
+     * @return the name of the field indexed.
+     */
+    String fieldName();
+
+    /**
+     * @return the number of entries.
+     */
+    long size();
+
+    /**
+     * @return the position of the first entry with a value of at least this, or size() if there isn't one.
+     */
+    long lowerBound(long value);
+
+    /**
+     * @return the value of the field of the entry at this position.
+     */
+    long value(long position);
+
+    /**
+     * @return the index in the array of the entry at this position.
+     */
+    long arrayIndex(long position);
+
+    /**
+     * @return the lowest index of an element with this value, or -1 if there isn't one.
+     */
+    long indexOf(long value);
+
+    /**
+     * @param fromValue the lowest value, inclusive.
+     * @param toValue   the highest value, exclusive.
+     * @return the number of elements with a value in this range.
+     */
+    long count(long fromValue, long toValue);
+
+    /**
+     * Read every element of the array again and sort the entries.
+     */
+    void rebuild();
+}
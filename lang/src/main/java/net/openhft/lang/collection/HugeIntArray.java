@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectStore;
+
+/**
+ * An array of ints held off heap, read and written in place with no flyweight to get or recycle.  The plain methods
+ * are not thread safe, the volatile, ordered, atomic and compare-and-swap ones are.
+ */
+public class HugeIntArray {
+    private final long length;
+    private final Bytes bytes;
+
+    /**
+     * @param length the number of elements, which start as 0.
+     */
+    public HugeIntArray(long length) {
+        this.length = length;
+        bytes = DirectStore.allocate(length << 2).bytes();
+    }
+
+    public long length() {
+        return length;
+    }
+
+    private long offset(long index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("index " + index + " length " + length);
+        return index << 2;
+    }
+
+    public int get(long index) {
+        return bytes.readInt(offset(index));
+    }
+
+    public void set(long index, int value) {
+        bytes.writeInt(offset(index), value);
+    }
+
+    public int getVolatile(long index) {
+        return bytes.readVolatileInt(offset(index));
+    }
+
+    public void setOrdered(long index, int value) {
+        bytes.writeOrderedInt(offset(index), value);
+    }
+
+    /**
+     * @return the new value.
+     */
+    public int addValue(long index, int delta) {
+        return bytes.addInt(offset(index), delta);
+    }
+
+    /**
+     * @return the new value.
+     */
+    public int addAtomicValue(long index, int delta) {
+        return bytes.addAtomicInt(offset(index), delta);
+    }
+
+    public boolean compareAndSwap(long index, int expected, int value) {
+        return bytes.compareAndSwapInt(offset(index), expected, value);
+    }
+
+    /**
+     * Set every element of a range to a value.
+     *
+     * @param fromIndex the first index, inclusive.
+     * @param toIndex   the last index, exclusive.
+     */
+    public void fill(long fromIndex, long toIndex, int value) {
+        if (fromIndex < 0 || toIndex > length || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("from " + fromIndex + " to " + toIndex + " length " + length);
+        if (value == 0) {
+            bytes.zeroOut(fromIndex << 2, toIndex << 2);
+            return;
+        }
+        for (long i = fromIndex << 2, end = toIndex << 2; i < end; i += 4)
+            bytes.writeInt(i, value);
+    }
+}
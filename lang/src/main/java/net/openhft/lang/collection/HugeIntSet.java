@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection;
+
+/**
+ * A hash set of int values held off heap, with no objects per entry or per call.  This class is not thread safe.
+ */
+public class HugeIntSet extends PrimitiveHashTable {
+    public HugeIntSet(long capacity) {
+        super(capacity, 4, 0);
+    }
+
+    /**
+     * @return true if the value was added, false if it was there already.
+     * @throws IllegalStateException if the value is new and the set is full.
+     */
+    public boolean add(int value) {
+        long offset = find(value);
+        if (offset >= 0)
+            return false;
+        add(value, offset);
+        return true;
+    }
+
+    public boolean contains(int value) {
+        return find(value) >= 0;
+    }
+
+    /**
+     * @return true if the value was removed, false if it wasn't there.
+     */
+    public boolean remove(int value) {
+        return removeKey(value);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+/**
+ * A HugeArray which grows as elements are appended.  The elements are held in segments which are allocated as they
+ * are needed, so growing never copies the existing elements, and references to them stay valid.
+ */
+public interface HugeList<T> extends HugeArray<T> {
+    /**
+     * @return the number of elements the list can hold before it allocates another segment.
+     */
+    long capacity();
+
+    /**
+     * Allocate the segments to hold this many elements.
+     *
+     * @param capacity the number of elements to make room for.
+     */
+    void ensureCapacity(long capacity);
+
+    /**
+     * Add an element to the end of the list.
+     *
+     * @return a recycled reference to the new element, which is zeroed.
+     */
+    T append();
+
+    /**
+     * Add a copy of an element to the end of the list.
+     *
+     * @param t to copy.
+     * @return the index of the new element.
+     */
+    long add(T t);
+}
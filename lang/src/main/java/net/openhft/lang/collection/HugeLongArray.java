@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectStore;
+
+/**
+ * An array of longs held off heap, read and written in place with no flyweight to get or recycle.  The plain methods
+ * are not thread safe, the volatile, ordered, atomic and compare-and-swap ones are.
+ */
+public class HugeLongArray {
+    private final long length;
+    private final Bytes bytes;
+
+    /**
+     * @param length the number of elements, which start as 0.
+     */
+    public HugeLongArray(long length) {
+        this.length = length;
+        bytes = DirectStore.allocate(length << 3).bytes();
+    }
+
+    public long length() {
+        return length;
+    }
+
+    private long offset(long index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("index " + index + " length " + length);
+        return index << 3;
+    }
+
+    public long get(long index) {
+        return bytes.readLong(offset(index));
+    }
+
+    public void set(long index, long value) {
+        bytes.writeLong(offset(index), value);
+    }
+
+    public long getVolatile(long index) {
+        return bytes.readVolatileLong(offset(index));
+    }
+
+    public void setOrdered(long index, long value) {
+        bytes.writeOrderedLong(offset(index), value);
+    }
+
+    /**
+     * @return the new value.
+     */
+    public long addValue(long index, long delta) {
+        return bytes.addLong(offset(index), delta);
+    }
+
+    /**
+     * @return the new value.
+     */
+    public long addAtomicValue(long index, long delta) {
+        return bytes.addAtomicLong(offset(index), delta);
+    }
+
+    public boolean compareAndSwap(long index, long expected, long value) {
+        return bytes.compareAndSwapLong(offset(index), expected, value);
+    }
+
+    /**
+     * Set every element of a range to a value.
+     *
+     * @param fromIndex the first index, inclusive.
+     * @param toIndex   the last index, exclusive.
+     */
+    public void fill(long fromIndex, long toIndex, long value) {
+        if (fromIndex < 0 || toIndex > length || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("from " + fromIndex + " to " + toIndex + " length " + length);
+        if (value == 0) {
+            bytes.zeroOut(fromIndex << 3, toIndex << 3);
+            return;
+        }
+        for (long i = fromIndex << 3, end = toIndex << 3; i < end; i += 8)
+            bytes.writeLong(i, value);
+    }
+}
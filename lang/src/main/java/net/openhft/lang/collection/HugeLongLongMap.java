@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection;
+
+/**
+ * A hash map of long keys to long values held off heap, with no objects per entry or per call.  This class is not
+ * thread safe.
+ */
+public class HugeLongLongMap extends PrimitiveHashTable {
+    public HugeLongLongMap(long capacity) {
+        super(capacity, 8, 8);
+    }
+
+    /**
+     * @param key      to look up.
+     * @param notFound to return if there is no entry.
+     * @return the value of the key, or notFound.
+     */
+    public long get(long key, long notFound) {
+        long offset = find(key);
+        return offset < 0 ? notFound : bytes.readLong(offset + 8);
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Add or replace the value of a key.
+     *
+     * @return true if the key was added, false if an existing value was replaced.
+     * @throws IllegalStateException if the key is new and the map is full.
+     */
+    public boolean put(long key, long value) {
+        long offset = find(key);
+        boolean added = offset < 0;
+        if (added)
+            offset = add(key, offset);
+        bytes.writeLong(offset + 8, value);
+        return added;
+    }
+
+    /**
+     * Add to the value of a key, e.g. a counter, and a new key starts at 0.
+     *
+     * @return the new value.
+     * @throws IllegalStateException if the key is new and the map is full.
+     */
+    public long addValue(long key, long delta) {
+        return bytes.addLong(acquire(key) + 8, delta);
+    }
+
+    /**
+     * @return true if the key was removed, false if it wasn't there.
+     */
+    public boolean remove(long key) {
+        return removeKey(key);
+    }
+}
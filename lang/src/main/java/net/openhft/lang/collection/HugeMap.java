@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection;
+
+/**
+ * A hash map of data values held off heap.  The keys and values are copied into the map, so lookups and updates
+ * create no garbage.  Keys are equal if their fields have the same bits, so a float or double -0.0 is not 0.0 and NaN
+ * is equal to NaN.
+ */
+public interface HugeMap<K, V> {
+    /**
+     * @return the number of entries.
+     */
+    long size();
+
+    /**
+     * @return the maximum number of entries.
+     */
+    long capacity();
+
+    /**
+     * Copy the value for a key.
+     *
+     * @param key        to look up
+     * @param usingValue Copyable value to copy to.
+     * @return true if the key was found, false if not and usingValue is unchanged.
+     */
+    boolean get(K key, V usingValue);
+
+    /**
+     * @param key to look up
+     * @return true if there is an entry for this key.
+     */
+    boolean containsKey(K key);
+
+    /**
+     * Add or replace the value for a key.
+     *
+     * @param key   to add
+     * @param value to copy into the map
+     * @return true if the key was added, false if an existing value was replaced.
+     * @throws IllegalStateException if the key is new and the map is full.
+     */
+    boolean put(K key, V value);
+
+    /**
+     * @param key to remove
+     * @return true if there was an entry for this key.
+     */
+    boolean remove(K key);
+
+    /**
+     * Remove all the entries.
+     */
+    void clear();
+
+    /**
+     * Free the memory of the map, it can't be used after this.
+     */
+    void free();
+}
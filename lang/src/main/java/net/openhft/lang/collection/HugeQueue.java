@@ -47,6 +47,17 @@ public interface HugeQueue<T> {
      */
     boolean offer(T element);
 
+    /**
+     * Add up to n elements to the end of the queue in one batch, which is published once they are all written.  If the
+     * writer throws, a queue with many producers publishes the element which failed and the rest of the batch zeroed,
+     * as they have already been claimed, and other queues publish none of the batch.
+     *
+     * @param n      the most elements to add.
+     * @param writer to populate each element.
+     * @return the number of elements added, less than n if the queue filled up.
+     */
+    int offer(int n, BatchWriter<T> writer);
+
     /**
      * @return the element or null is non is available
      */
@@ -60,6 +71,15 @@ public interface HugeQueue<T> {
      */
     boolean takeCopy(T element);
 
+    /**
+     * Take up to max elements in one batch, whose slots are freed once they have all been read.
+     *
+     * @param reader to consume each element.
+     * @param max    the most elements to take.
+     * @return the number of elements taken, 0 if the queue is empty.
+     */
+    int drainTo(BatchReader<T> reader, int max);
+
     /**
      * Recycle an element reference.
      *
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.Maths;
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectStore;
+
+/**
+ * An open addressing hash table of int or long keys with linear probing, for the primitive maps and sets.  Each slot
+ * is the key followed by the value, if any, and a key of 0 marks a free slot, so the key 0 itself is kept in a spare
+ * slot after the others.  Removing a key moves later keys of the same run back, so there are no tombstones.  This class
+ * is not thread safe.
+ */
+abstract class PrimitiveHashTable {
+    private static final long K0 = 0x9E3779B97F4A7C15L;
+    private static final long K1 = 0xBF58476D1CE4E5B9L;
+
+    final Bytes bytes;
+    private final long capacity;
+    private final long mask;
+    private final boolean intKeys;
+    private final int slotSize;
+    private final long zeroSlot;
+    private long size = 0;
+    private boolean hasZero = false;
+
+    /**
+     * @param keySize   4 or 8.
+     * @param valueSize 0 for a set.
+     */
+    PrimitiveHashTable(long capacity, int keySize, int valueSize) {
+        this.capacity = capacity;
+        // keep the slots at most 3/4 full.
+        long slots = Maths.nextPower2(capacity + capacity / 3 + 1, 16);
+        mask = slots - 1;
+        intKeys = keySize == 4;
+        // keep the keys and values aligned.
+        int align = Math.max(keySize, valueSize);
+        slotSize = (keySize + valueSize + align - 1) / align * align;
+        zeroSlot = slots * slotSize;
+        bytes = DirectStore.allocate((slots + 1) * slotSize).bytes();
+    }
+
+    /**
+     * @return the number of keys.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the maximum number of keys.
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        bytes.zeroOut(0, zeroSlot + slotSize);
+        size = 0;
+        hasZero = false;
+    }
+
+    private long slot(long key) {
+        long h = key * K0;
+        h ^= h >>> 31;
+        h *= K1;
+        h ^= h >>> 29;
+        return h & mask;
+    }
+
+    private long readKey(long offset) {
+        return intKeys ? bytes.readInt(offset) : bytes.readLong(offset);
+    }
+
+    /**
+     * @return the offset of the key's slot, or ~offset of the free slot to add it in.
+     */
+    final long find(long key) {
+        if (key == 0)
+            return hasZero ? zeroSlot : ~zeroSlot;
+        for (long slot = slot(key); ; slot = (slot + 1) & mask) {
+            long offset = slot * slotSize;
+            long key2 = readKey(offset);
+            if (key2 == key)
+                return offset;
+            if (key2 == 0)
+                return ~offset;
+        }
+    }
+
+    /**
+     * Add a key which find() didn't find, the value of its slot is zero.
+     *
+     * @param free what find() returned.
+     * @return the offset of its slot.
+     * @throws IllegalStateException if there are capacity() keys.
+     */
+    final long add(long key, long free) {
+        if (size >= capacity)
+            throw new IllegalStateException(getClass().getSimpleName() + " is full, capacity: " + capacity);
+        long offset = ~free;
+        if (key == 0)
+            hasZero = true;
+        else if (intKeys)
+            bytes.writeInt(offset, (int) key);
+        else
+            bytes.writeLong(offset, key);
+        size++;
+        return offset;
+    }
+
+    /**
+     * @return the offset of the slot of the key, adding it if it's not there.
+     */
+    final long acquire(long key) {
+        long offset = find(key);
+        return offset < 0 ? add(key, offset) : offset;
+    }
+
+    /**
+     * @return true if the key was removed, false if it wasn't there.
+     */
+    final boolean removeKey(long key) {
+        long offset = find(key);
+        if (offset < 0)
+            return false;
+        size--;
+        if (key == 0) {
+            hasZero = false;
+            bytes.zeroOut(zeroSlot, zeroSlot + slotSize);
+            return true;
+        }
+        long hole = offset / slotSize;
+        for (long slot = (hole + 1) & mask; ; slot = (slot + 1) & mask) {
+            long key2 = readKey(slot * slotSize);
+            if (key2 == 0)
+                break;
+            // move it into the hole if the hole is between its ideal slot and where it is.
+            long ideal = slot(key2);
+            if (((slot - ideal) & mask) >= ((slot - hole) & mask)) {
+                bytes.write(hole * slotSize, bytes, slot * slotSize, slotSize);
+                hole = slot;
+            }
+        }
+        bytes.zeroOut(hole * slotSize, (hole + 1) * slotSize);
+        return true;
+    }
+}
@@ -0,0 +1,535 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectStore;
+
+/**
+ * A DirectBitSet with a directory of the number of bits set, for rank(long), select(long) and cardinality() without
+ * reading every long.  For every block of 8 longs the directory has the number of bits set in the block, and the
+ * number set before each long in the block, off heap, as in Vigna's rank9, with the number set before each block, so
+ * rank is O(1).  A change marks its blocks dirty, and the next rank, select or cardinality counts those blocks again
+ * and adds the differences to a Fenwick tree of the block counts, so changes between ranks cost O(log n) for each block
+ * changed.  The counts before the blocks after a change are then stale, and rank uses the tree, O(log n), until it has
+ * done enough work to pay for counting them again.  A change to the whole set, e.g. clear() or and(DirectBitSet),
+ * counts every block again.
+ */
+public class RankSelectDirectBitSet implements DirectBitSet {
+    // 512 bits, 8 longs, a block.
+    private static final int BLOCK_SHIFT = 9;
+    private final DirectBitSet bitSet;
+    private final long longLength;
+    private final long blocks;
+    // for each block a long of the bits set in it, and a long of 7 9-bit counts of the bits set in the block before
+    // its second to eighth long.
+    private final Bytes directory;
+    // for each block, and the end, a long of the bits set before it.
+    private final Bytes prefixes;
+    // a Fenwick tree of the bits set in each block, indexed from 1.
+    private final Bytes tree;
+    private final int treeDepth;
+    // a bit for each block changed since it was last counted.
+    private final DirectBitSet dirty;
+    private long cardinality = 0;
+    // the counts in prefixes up to and including this block are current.
+    private long currentPrefixes = 0;
+    // the cost of the ranks which used the tree since the prefixes were last counted.
+    private long treeReads = 0;
+
+    public RankSelectDirectBitSet(DirectBitSet bitSet) {
+        this.bitSet = bitSet;
+        longLength = bitSet.size() >> 6;
+        blocks = (longLength + 7) >> 3;
+        directory = DirectStore.allocate(Math.max(1, blocks) << 4).bytes();
+        prefixes = DirectStore.allocate((blocks + 1) << 3).bytes();
+        tree = DirectStore.allocate((blocks + 1) << 3).bytes();
+        treeDepth = 64 - Long.numberOfLeadingZeros(blocks);
+        dirty = new HierarchicalDirectBitSet(
+                DirectBitSetBuilder.wrap(DirectStore.allocate(Math.max(1, (blocks + 63) >> 6) << 3).bytes()));
+        build();
+    }
+
+    /**
+     * Returns the number of bits set to {@code true} before the specified index.
+     *
+     * @param bitIndex the index to count the bits before, up to {@code size()}
+     * @return the number of bits set before {@code bitIndex}
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *                                   {@code (index < 0 || index > size())}
+     */
+    public synchronized long rank(long bitIndex) {
+        if (bitIndex < 0 || bitIndex > size())
+            throw new IndexOutOfBoundsException();
+        update();
+        long longIndex = bitIndex >> 6;
+        long rank = prefix(longIndex >> 3) + countBefore(longIndex);
+        if ((bitIndex & 63) != 0)
+            rank += Long.bitCount(bitSet.getLong(longIndex) & ((1L << bitIndex) - 1));
+        return rank;
+    }
+
+    /**
+     * Returns the index of the bit set to {@code true} with this many set bits before it.
+     *
+     * @param rank the number of set bits before the bit to find, from 0
+     * @return the index of the set bit, or {@code -1} if fewer bits are set
+     */
+    public synchronized long select(long rank) {
+        update();
+        if (rank < 0 || rank >= cardinality)
+            return NOT_FOUND;
+        // down the tree to the last block with at most rank bits set before it.
+        long block = 0;
+        long remaining = rank;
+        for (long step = Long.highestOneBit(blocks); step > 0; step >>= 1) {
+            long next = block + step;
+            if (next <= blocks) {
+                long count = tree.readLong(next << 3);
+                if (count <= remaining) {
+                    block = next;
+                    remaining -= count;
+                }
+            }
+        }
+        long counts = directory.readLong((block << 4) + 8);
+        int word = 0;
+        while (word < 7 && ((counts >>> (word * 9)) & 511) <= remaining)
+            word++;
+        if (word > 0)
+            remaining -= (counts >>> ((word - 1) * 9)) & 511;
+        long longIndex = (block << 3) + word;
+        long l = bitSet.getLong(longIndex);
+        for (; remaining > 0; remaining--)
+            l &= l - 1;
+        return (longIndex << 6) + Long.numberOfTrailingZeros(l);
+    }
+
+    @Override
+    public synchronized long cardinality() {
+        update();
+        return cardinality;
+    }
+
+    // the bits set in the blocks before this one.
+    private long prefix(long block) {
+        if (block <= currentPrefixes)
+            return prefixes.readLong(block << 3);
+        // after a change, the tree is used until counting the prefixes again costs no more than the ranks have.
+        treeReads += treeDepth;
+        if (treeReads < blocks - currentPrefixes)
+            return countBeforeBlock(block);
+        countPrefixes();
+        return prefixes.readLong(block << 3);
+    }
+
+    private void countPrefixes() {
+        long count = prefixes.readLong(currentPrefixes << 3);
+        for (long block = currentPrefixes; block < blocks; block++) {
+            count += directory.readLong(block << 4);
+            prefixes.writeLong((block + 1) << 3, count);
+        }
+        currentPrefixes = blocks;
+        treeReads = 0;
+    }
+
+    private long countBeforeBlock(long block) {
+        long count = 0;
+        for (long i = block; i > 0; i -= i & -i)
+            count += tree.readLong(i << 3);
+        return count;
+    }
+
+    // the bits set in the block before this long.
+    private long countBefore(long longIndex) {
+        int word = (int) (longIndex & 7);
+        if (word == 0)
+            return 0;
+        return (directory.readLong(((longIndex >> 3) << 4) + 8) >>> ((word - 1) * 9)) & 511;
+    }
+
+    // count every block, and fill the tree in one pass as each node only adds to its parent.
+    private void build() {
+        for (long block = 0; block < blocks; block++) {
+            long count = recount(block);
+            cardinality += count;
+            long i = block + 1;
+            long node = tree.readLong(i << 3) + count;
+            tree.writeLong(i << 3, node);
+            long parent = i + (i & -i);
+            if (parent <= blocks)
+                tree.writeLong(parent << 3, tree.readLong(parent << 3) + node);
+            prefixes.writeLong(i << 3, cardinality);
+        }
+        currentPrefixes = blocks;
+    }
+
+    private void update() {
+        // the dirty bit is cleared before the block is read, so a change during this marks it again.
+        for (long block; (block = dirty.clearNextSetBit(0)) >= 0; ) {
+            long delta = recount(block);
+            if (delta == 0)
+                continue;
+            cardinality += delta;
+            // the count before this block is unchanged, those after it are stale.
+            currentPrefixes = Math.min(currentPrefixes, block);
+            for (long i = block + 1; i <= blocks; i += i & -i)
+                tree.writeLong(i << 3, tree.readLong(i << 3) + delta);
+        }
+    }
+
+    /**
+     * Count the bits set in a block again.
+     *
+     * @return the difference from the last count.
+     */
+    private long recount(long block) {
+        long counts = 0;
+        long count = 0;
+        long end = Math.min(8, longLength - (block << 3));
+        for (int word = 0; word < end; word++) {
+            if (word > 0)
+                counts |= count << ((word - 1) * 9);
+            count += Long.bitCount(bitSet.getLong((block << 3) + word));
+        }
+        // the longs past the end have none.
+        for (long word = Math.max(end, 1); word < 8; word++)
+            counts |= count << ((word - 1) * 9);
+        long offset = block << 4;
+        long delta = count - directory.readLong(offset);
+        directory.writeLong(offset, count);
+        directory.writeLong(offset + 8, counts);
+        return delta;
+    }
+
+    // called after a change, so the next update counts its block again.
+    private void changed(long bitIndex) {
+        if (bitIndex < 0)
+            return;
+        long block = bitIndex >> BLOCK_SHIFT;
+        // if it is still marked, the update which clears it hasn't read the block yet.
+        if (!dirty.isSet(block))
+            dirty.set(block);
+    }
+
+    private void changed(long fromIndex, long exclusiveToIndex) {
+        if (fromIndex < 0 || exclusiveToIndex <= fromIndex)
+            return;
+        dirty.set(fromIndex >> BLOCK_SHIFT, ((exclusiveToIndex - 1) >> BLOCK_SHIFT) + 1);
+    }
+
+    private void changedAll() {
+        changed(0, size());
+    }
+
+    DirectBitSet bitSet() {
+        return bitSet;
+    }
+
+    @Override
+    public void reserve() {
+        bitSet.reserve();
+    }
+
+    @Override
+    public void release() {
+        bitSet.release();
+    }
+
+    @Override
+    public int refCount() {
+        return bitSet.refCount();
+    }
+
+    @Override
+    public DirectBitSet flip(long bitIndex) {
+        bitSet.flip(bitIndex);
+        changed(bitIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet flip(long fromIndex, long toIndex) {
+        bitSet.flip(fromIndex, toIndex);
+        changed(fromIndex, toIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet set(long bitIndex) {
+        bitSet.set(bitIndex);
+        changed(bitIndex);
+        return this;
+    }
+
+    @Override
+    public boolean setIfClear(long bitIndex) {
+        if (!bitSet.setIfClear(bitIndex))
+            return false;
+        changed(bitIndex);
+        return true;
+    }
+
+    @Override
+    public boolean clearIfSet(long bitIndex) {
+        if (!bitSet.clearIfSet(bitIndex))
+            return false;
+        changed(bitIndex);
+        return true;
+    }
+
+    @Override
+    public DirectBitSet set(long bitIndex, boolean value) {
+        bitSet.set(bitIndex, value);
+        changed(bitIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet set(long fromIndex, long toIndex) {
+        bitSet.set(fromIndex, toIndex);
+        changed(fromIndex, toIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet setAll() {
+        bitSet.setAll();
+        changedAll();
+        return this;
+    }
+
+    @Override
+    public DirectBitSet set(long fromIndex, long toIndex, boolean value) {
+        bitSet.set(fromIndex, toIndex, value);
+        changed(fromIndex, toIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet clear(long bitIndex) {
+        bitSet.clear(bitIndex);
+        changed(bitIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet clear(long fromIndex, long toIndex) {
+        bitSet.clear(fromIndex, toIndex);
+        changed(fromIndex, toIndex);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet clear() {
+        bitSet.clear();
+        changedAll();
+        return this;
+    }
+
+    @Override
+    public boolean get(long bitIndex) {
+        return bitSet.get(bitIndex);
+    }
+
+    @Override
+    public boolean isSet(long bitIndex) {
+        return bitSet.isSet(bitIndex);
+    }
+
+    @Override
+    public boolean isClear(long bitIndex) {
+        return bitSet.isClear(bitIndex);
+    }
+
+    @Override
+    public long getLong(long longIndex) {
+        return bitSet.getLong(longIndex);
+    }
+
+    @Override
+    public long nextSetBit(long fromIndex) {
+        return bitSet.nextSetBit(fromIndex);
+    }
+
+    @Override
+    public long nextSetLong(long fromLongIndex) {
+        return bitSet.nextSetLong(fromLongIndex);
+    }
+
+    @Override
+    public long nextClearBit(long fromIndex) {
+        return bitSet.nextClearBit(fromIndex);
+    }
+
+    @Override
+    public long nextClearLong(long fromLongIndex) {
+        return bitSet.nextClearLong(fromLongIndex);
+    }
+
+    @Override
+    public long previousSetBit(long fromIndex) {
+        return bitSet.previousSetBit(fromIndex);
+    }
+
+    @Override
+    public long previousSetLong(long fromLongIndex) {
+        return bitSet.previousSetLong(fromLongIndex);
+    }
+
+    @Override
+    public long previousClearBit(long fromIndex) {
+        return bitSet.previousClearBit(fromIndex);
+    }
+
+    @Override
+    public long previousClearLong(long fromLongIndex) {
+        return bitSet.previousClearLong(fromLongIndex);
+    }
+
+    @Override
+    public long size() {
+        return bitSet.size();
+    }
+
+    @Override
+    public DirectBitSet and(long longIndex, long value) {
+        bitSet.and(longIndex, value);
+        changed(longIndex << 6);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet or(long longIndex, long value) {
+        bitSet.or(longIndex, value);
+        changed(longIndex << 6);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet xor(long longIndex, long value) {
+        bitSet.xor(longIndex, value);
+        changed(longIndex << 6);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet andNot(long longIndex, long value) {
+        bitSet.andNot(longIndex, value);
+        changed(longIndex << 6);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet and(DirectBitSet other) {
+        bitSet.and(other);
+        changedAll();
+        return this;
+    }
+
+    @Override
+    public DirectBitSet or(DirectBitSet other) {
+        bitSet.or(other);
+        changedAll();
+        return this;
+    }
+
+    @Override
+    public DirectBitSet xor(DirectBitSet other) {
+        bitSet.xor(other);
+        changedAll();
+        return this;
+    }
+
+    @Override
+    public DirectBitSet andNot(DirectBitSet other) {
+        bitSet.andNot(other);
+        changedAll();
+        return this;
+    }
+
+    @Override
+    public boolean intersects(DirectBitSet other) {
+        return bitSet.intersects(other);
+    }
+
+    @Override
+    public long cardinalityOfAnd(DirectBitSet other) {
+        return bitSet.cardinalityOfAnd(other);
+    }
+
+    @Override
+    public long setNextClearBit(long fromIndex) {
+        long index = bitSet.setNextClearBit(fromIndex);
+        changed(index);
+        return index;
+    }
+
+    @Override
+    public long clearNextSetBit(long fromIndex) {
+        long index = bitSet.clearNextSetBit(fromIndex);
+        changed(index);
+        return index;
+    }
+
+    @Override
+    public long setPreviousClearBit(long fromIndex) {
+        long index = bitSet.setPreviousClearBit(fromIndex);
+        changed(index);
+        return index;
+    }
+
+    @Override
+    public long clearPreviousSetBit(long fromIndex) {
+        long index = bitSet.clearPreviousSetBit(fromIndex);
+        changed(index);
+        return index;
+    }
+
+    @Override
+    public long setNextNContinuousClearBits(long fromIndex, int numberOfBits) {
+        long index = bitSet.setNextNContinuousClearBits(fromIndex, numberOfBits);
+        changed(index, index + numberOfBits);
+        return index;
+    }
+
+    @Override
+    public long clearNextNContinuousSetBits(long fromIndex, int numberOfBits) {
+        long index = bitSet.clearNextNContinuousSetBits(fromIndex, numberOfBits);
+        changed(index, index + numberOfBits);
+        return index;
+    }
+
+    @Override
+    public long setPreviousNContinuousClearBits(long fromIndex, int numberOfBits) {
+        long index = bitSet.setPreviousNContinuousClearBits(fromIndex, numberOfBits);
+        changed(index, index + numberOfBits);
+        return index;
+    }
+
+    @Override
+    public long clearPreviousNContinuousSetBits(long fromIndex, int numberOfBits) {
+        long index = bitSet.clearPreviousNContinuousSetBits(fromIndex, numberOfBits);
+        changed(index, index + numberOfBits);
+        return index;
+    }
+
+    @Override
+    public Bits setBits() {
+        return bitSet.setBits();
+    }
+}
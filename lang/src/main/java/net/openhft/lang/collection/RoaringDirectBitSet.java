@@ -0,0 +1,1053 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectStore;
+
+import java.util.Arrays;
+
+/**
+ * A read only DirectBitSet compressed as in Roaring bitmaps, so its memory depends on the bits set rather than its
+ * size.  The bits are in chunks of 65536, and each chunk with bits set is held as a sorted array of the low 16 bits of
+ * up to 4096 bits, a bitmap of 1024 longs, or sorted runs of bits, whichever is smallest.
+ *
+ * <p>The whole set is held in one Bytes, as a header, a directory of the chunks, and their containers, so writeTo()
+ * and readFrom() copy it as it is, and it can be read where it is by new RoaringDirectBitSet(bytes).  The methods
+ * which change bits throw {@code UnsupportedOperationException}, the sets are created by a {@link Builder}, copyOf(),
+ * and(), or or().
+ */
+public class RoaringDirectBitSet implements DirectBitSet {
+    // the chunk keys are ints.
+    public static final long MAX_SIZE = 1L << 47;
+    static final int ARRAY = 0, BITMAP = 1, RUN = 2;
+    private static final int MAX_ARRAY = 4096;
+    private static final int WORDS = 1024;
+    private static final int BITMAP_BYTES = WORDS * 8;
+    // the length in bytes, the size, the cardinality and the number of containers.
+    private static final int HEADER = 32;
+    // the key, the type, the cardinality - 1 and the offset of the container from the end of the directory.
+    private static final int ENTRY = 16;
+
+    private final Bytes bytes;
+    private final long size;
+    private final long longLength;
+    private final long cardinality;
+    private final int containers;
+    private final long dataStart;
+
+    /**
+     * Reads a set written by writeTo() where it is, without copying it.
+     */
+    public RoaringDirectBitSet(Bytes bytes) {
+        this.bytes = bytes;
+        size = bytes.readLong(8);
+        cardinality = bytes.readLong(16);
+        containers = bytes.readInt(24);
+        longLength = (size + 63) >>> 6;
+        dataStart = HEADER + (long) containers * ENTRY;
+    }
+
+    /**
+     * @return a copy of the bits set in another DirectBitSet.
+     */
+    public static RoaringDirectBitSet copyOf(DirectBitSet bitSet) {
+        long size = bitSet.size();
+        long longLength = size >> 6;
+        Builder builder = new Builder(size);
+        long[] words = new long[WORDS];
+        for (long bit = bitSet.nextSetBit(0); bit >= 0; ) {
+            int key = (int) (bit >>> 16);
+            long first = (long) key << 10;
+            int end = (int) Math.min(WORDS, longLength - first);
+            for (int w = 0; w < end; w++)
+                words[w] = bitSet.getLong(first + w);
+            Arrays.fill(words, end, WORDS, 0L);
+            builder.addWords(key, words);
+            long next = (long) (key + 1) << 16;
+            bit = next < size ? bitSet.nextSetBit(next) : NOT_FOUND;
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return a new set of the bits set in both.
+     */
+    public static RoaringDirectBitSet and(RoaringDirectBitSet set1, RoaringDirectBitSet set2) {
+        Builder builder = new Builder(Math.min(set1.size, set2.size));
+        long[] words1 = new long[WORDS], words2 = new long[WORDS];
+        for (int i = 0, j = 0; i < set1.containers && j < set2.containers; ) {
+            int key1 = set1.key(i), key2 = set2.key(j);
+            if (key1 < key2) {
+                i++;
+            } else if (key1 > key2) {
+                j++;
+            } else {
+                set1.decode(i++, words1);
+                set2.decode(j++, words2);
+                for (int w = 0; w < WORDS; w++)
+                    words1[w] &= words2[w];
+                builder.addWords(key1, words1);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return a new set of the bits set in either.  The containers of chunks in only one are copied as they are.
+     */
+    public static RoaringDirectBitSet or(RoaringDirectBitSet set1, RoaringDirectBitSet set2) {
+        Builder builder = new Builder(Math.max(set1.size, set2.size));
+        long[] words1 = new long[WORDS], words2 = new long[WORDS];
+        int i = 0, j = 0;
+        while (i < set1.containers && j < set2.containers) {
+            int key1 = set1.key(i), key2 = set2.key(j);
+            if (key1 < key2) {
+                builder.addContainer(set1, i++);
+            } else if (key1 > key2) {
+                builder.addContainer(set2, j++);
+            } else {
+                set1.decode(i++, words1);
+                set2.decode(j++, words2);
+                for (int w = 0; w < WORDS; w++)
+                    words1[w] |= words2[w];
+                builder.addWords(key1, words1);
+            }
+        }
+        for (; i < set1.containers; i++)
+            builder.addContainer(set1, i);
+        for (; j < set2.containers; j++)
+            builder.addContainer(set2, j);
+        return builder.build();
+    }
+
+    /**
+     * Copies a set written by writeTo() from the position of the Bytes, and moves the position past it.
+     */
+    public static RoaringDirectBitSet readFrom(Bytes in) {
+        long position = in.position();
+        long length = in.readLong(position);
+        Bytes bytes = DirectStore.allocate(length).bytes();
+        bytes.write(0, in, position, length);
+        in.position(position + length);
+        return new RoaringDirectBitSet(bytes);
+    }
+
+    /**
+     * Writes the set at the position of the Bytes, as it is held.
+     */
+    public void writeTo(Bytes out) {
+        out.write(bytes, 0, sizeInBytes());
+    }
+
+    /**
+     * @return the number of bytes the set uses.
+     */
+    public long sizeInBytes() {
+        return bytes.readLong(0);
+    }
+
+    private int key(int c) {
+        return bytes.readInt(HEADER + (long) c * ENTRY);
+    }
+
+    private int type(int c) {
+        return bytes.readUnsignedShort(HEADER + (long) c * ENTRY + 4);
+    }
+
+    private int count(int c) {
+        return bytes.readUnsignedShort(HEADER + (long) c * ENTRY + 6) + 1;
+    }
+
+    private long offset(int c) {
+        return dataStart + bytes.readLong(HEADER + (long) c * ENTRY + 8);
+    }
+
+    // the number of bytes of a container.
+    private long length(int c) {
+        switch (type(c)) {
+            case ARRAY:
+                return count(c) * 2L;
+            case BITMAP:
+                return BITMAP_BYTES;
+            default:
+                return 4 + runs(offset(c)) * 4L;
+        }
+    }
+
+    // the index of the container of this key, or -(insertion point) - 1.
+    private int find(int key) {
+        int low = 0, high = containers - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int key2 = key(mid);
+            if (key2 < key)
+                low = mid + 1;
+            else if (key2 > key)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -low - 1;
+    }
+
+    private int value(long offset, int i) {
+        return bytes.readUnsignedShort(offset + 2L * i);
+    }
+
+    // the first of the n values of an array which is at least this.
+    private int lowerBound(long offset, int n, int value) {
+        int low = 0, high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (value(offset, mid) < value)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private int runs(long offset) {
+        return bytes.readInt(offset);
+    }
+
+    private int runStart(long offset, int i) {
+        return bytes.readUnsignedShort(offset + 4 + 4L * i);
+    }
+
+    private int runEnd(long offset, int i) {
+        return runStart(offset, i) + bytes.readUnsignedShort(offset + 6 + 4L * i);
+    }
+
+    // the first run which ends at or after this.
+    private int runEndingFrom(long offset, int value) {
+        int low = 0, high = runs(offset);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (runEnd(offset, mid) < value)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    // the last run which starts at or before this, or -1.
+    private int runStartingTo(long offset, int value) {
+        int low = 0, high = runs(offset);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (runStart(offset, mid) <= value)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low - 1;
+    }
+
+    private static long bit(int key, int low) {
+        return ((long) key << 16) | low;
+    }
+
+    private boolean contains(int c, int low) {
+        long offset = offset(c);
+        switch (type(c)) {
+            case ARRAY: {
+                int n = count(c);
+                int i = lowerBound(offset, n, low);
+                return i < n && value(offset, i) == low;
+            }
+            case BITMAP:
+                return ((bytes.readLong(offset + ((low >> 6) << 3)) >>> low) & 1) != 0;
+            default: {
+                int i = runStartingTo(offset, low);
+                return i >= 0 && runEnd(offset, i) >= low;
+            }
+        }
+    }
+
+    // the long of a container with these 64 bits.
+    private long word(int c, int w) {
+        long offset = offset(c);
+        int from = w << 6, to = from + 63;
+        long l = 0;
+        switch (type(c)) {
+            case ARRAY: {
+                int n = count(c);
+                for (int i = lowerBound(offset, n, from); i < n; i++) {
+                    int value = value(offset, i);
+                    if (value > to)
+                        break;
+                    l |= 1L << value;
+                }
+                return l;
+            }
+            case BITMAP:
+                return bytes.readLong(offset + ((long) w << 3));
+            default: {
+                int runs = runs(offset);
+                for (int i = runEndingFrom(offset, from); i < runs; i++) {
+                    int start = runStart(offset, i);
+                    if (start > to)
+                        break;
+                    int first = Math.max(start, from) - from, last = Math.min(runEnd(offset, i), to) - from;
+                    l |= (~0L >>> (63 - last + first)) << first;
+                }
+                return l;
+            }
+        }
+    }
+
+    // the 1024 longs of a container.
+    private void decode(int c, long[] words) {
+        long offset = offset(c);
+        switch (type(c)) {
+            case ARRAY: {
+                Arrays.fill(words, 0L);
+                for (int i = 0, n = count(c); i < n; i++) {
+                    int value = value(offset, i);
+                    words[value >> 6] |= 1L << value;
+                }
+                break;
+            }
+            case BITMAP:
+                for (int w = 0; w < WORDS; w++)
+                    words[w] = bytes.readLong(offset + ((long) w << 3));
+                break;
+            default: {
+                Arrays.fill(words, 0L);
+                for (int i = 0, runs = runs(offset); i < runs; i++) {
+                    int start = runStart(offset, i), end = runEnd(offset, i);
+                    int startWord = start >> 6, endWord = end >> 6;
+                    if (startWord == endWord) {
+                        words[startWord] |= (~0L >>> (63 - end + start)) << start;
+                    } else {
+                        words[startWord] |= ~0L << start;
+                        for (int w = startWord + 1; w < endWord; w++)
+                            words[w] = ~0L;
+                        words[endWord] |= ~0L >>> ~end;
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+    private int nextSet(int c, int low) {
+        long offset = offset(c);
+        switch (type(c)) {
+            case ARRAY: {
+                int n = count(c);
+                int i = lowerBound(offset, n, low);
+                return i < n ? value(offset, i) : -1;
+            }
+            case BITMAP: {
+                int w = low >> 6;
+                long l = bytes.readLong(offset + ((long) w << 3)) >>> low;
+                if (l != 0)
+                    return low + Long.numberOfTrailingZeros(l);
+                while (++w < WORDS) {
+                    l = bytes.readLong(offset + ((long) w << 3));
+                    if (l != 0)
+                        return (w << 6) + Long.numberOfTrailingZeros(l);
+                }
+                return -1;
+            }
+            default: {
+                int i = runEndingFrom(offset, low);
+                return i < runs(offset) ? Math.max(runStart(offset, i), low) : -1;
+            }
+        }
+    }
+
+    private int previousSet(int c, int low) {
+        long offset = offset(c);
+        switch (type(c)) {
+            case ARRAY: {
+                int i = lowerBound(offset, count(c), low + 1) - 1;
+                return i >= 0 ? value(offset, i) : -1;
+            }
+            case BITMAP: {
+                int w = low >> 6;
+                // << ~low === << (63 - (low & 63))
+                long l = bytes.readLong(offset + ((long) w << 3)) << ~low;
+                if (l != 0)
+                    return low - Long.numberOfLeadingZeros(l);
+                while (--w >= 0) {
+                    l = bytes.readLong(offset + ((long) w << 3));
+                    if (l != 0)
+                        return (w << 6) + 63 - Long.numberOfLeadingZeros(l);
+                }
+                return -1;
+            }
+            default: {
+                int i = runStartingTo(offset, low);
+                return i >= 0 ? Math.min(runEnd(offset, i), low) : -1;
+            }
+        }
+    }
+
+    private int nextClear(int c, int low) {
+        long offset = offset(c);
+        switch (type(c)) {
+            case ARRAY: {
+                int n = count(c);
+                int value = low;
+                for (int i = lowerBound(offset, n, low); i < n && value(offset, i) == value; i++)
+                    value++;
+                return value < 1 << 16 ? value : -1;
+            }
+            case BITMAP: {
+                int w = low >> 6;
+                long l = ~bytes.readLong(offset + ((long) w << 3)) >>> low;
+                if (l != 0)
+                    return low + Long.numberOfTrailingZeros(l);
+                while (++w < WORDS) {
+                    l = ~bytes.readLong(offset + ((long) w << 3));
+                    if (l != 0)
+                        return (w << 6) + Long.numberOfTrailingZeros(l);
+                }
+                return -1;
+            }
+            default: {
+                // runs are not next to each other, so the bit after one is clear.
+                int i = runEndingFrom(offset, low);
+                if (i >= runs(offset) || runStart(offset, i) > low)
+                    return low;
+                int value = runEnd(offset, i) + 1;
+                return value < 1 << 16 ? value : -1;
+            }
+        }
+    }
+
+    private int previousClear(int c, int low) {
+        long offset = offset(c);
+        switch (type(c)) {
+            case ARRAY: {
+                int value = low;
+                for (int i = lowerBound(offset, count(c), low + 1) - 1; i >= 0 && value(offset, i) == value; i--)
+                    value--;
+                return value;
+            }
+            case BITMAP: {
+                int w = low >> 6;
+                long l = ~bytes.readLong(offset + ((long) w << 3)) << ~low;
+                if (l != 0)
+                    return low - Long.numberOfLeadingZeros(l);
+                while (--w >= 0) {
+                    l = ~bytes.readLong(offset + ((long) w << 3));
+                    if (l != 0)
+                        return (w << 6) + 63 - Long.numberOfLeadingZeros(l);
+                }
+                return -1;
+            }
+            default: {
+                int i = runStartingTo(offset, low);
+                if (i < 0 || runEnd(offset, i) < low)
+                    return low;
+                return runStart(offset, i) - 1;
+            }
+        }
+    }
+
+    @Override
+    public void reserve() {
+        bytes.reserve();
+    }
+
+    @Override
+    public void release() {
+        bytes.release();
+    }
+
+    @Override
+    public int refCount() {
+        return bytes.refCount();
+    }
+
+    @Override
+    public boolean get(long bitIndex) {
+        if (bitIndex < 0 || bitIndex >= size)
+            throw new IndexOutOfBoundsException();
+        int c = find((int) (bitIndex >>> 16));
+        return c >= 0 && contains(c, (int) bitIndex & 0xFFFF);
+    }
+
+    @Override
+    public boolean isSet(long bitIndex) {
+        return get(bitIndex);
+    }
+
+    @Override
+    public boolean isClear(long bitIndex) {
+        return !get(bitIndex);
+    }
+
+    @Override
+    public long getLong(long longIndex) {
+        if (longIndex < 0 || longIndex >= longLength)
+            throw new IndexOutOfBoundsException();
+        int c = find((int) (longIndex >>> 10));
+        return c >= 0 ? word(c, (int) longIndex & (WORDS - 1)) : 0L;
+    }
+
+    @Override
+    public long nextSetBit(long fromIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException();
+        if (fromIndex >= size)
+            return NOT_FOUND;
+        int key = (int) (fromIndex >>> 16);
+        int c = find(key);
+        if (c >= 0) {
+            int low = nextSet(c, (int) fromIndex & 0xFFFF);
+            if (low >= 0)
+                return bit(key, low);
+            c++;
+        } else {
+            c = -c - 1;
+        }
+        // containers are not empty.
+        return c < containers ? bit(key(c), nextSet(c, 0)) : NOT_FOUND;
+    }
+
+    @Override
+    public long nextSetLong(long fromLongIndex) {
+        if (fromLongIndex < 0)
+            throw new IndexOutOfBoundsException();
+        if (fromLongIndex >= longLength)
+            return NOT_FOUND;
+        long bit = nextSetBit(fromLongIndex << 6);
+        return bit >= 0 ? bit >> 6 : NOT_FOUND;
+    }
+
+    @Override
+    public long nextClearBit(long fromIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException();
+        for (long i = fromIndex; i < size; ) {
+            int key = (int) (i >>> 16);
+            int c = find(key);
+            if (c < 0)
+                return i;
+            int low = nextClear(c, (int) i & 0xFFFF);
+            if (low >= 0) {
+                long bit = bit(key, low);
+                return bit < size ? bit : NOT_FOUND;
+            }
+            i = (long) (key + 1) << 16;
+        }
+        return NOT_FOUND;
+    }
+
+    @Override
+    public long nextClearLong(long fromLongIndex) {
+        if (fromLongIndex < 0)
+            throw new IndexOutOfBoundsException();
+        if (fromLongIndex >= longLength)
+            return NOT_FOUND;
+        long bit = nextClearBit(fromLongIndex << 6);
+        return bit >= 0 ? bit >> 6 : NOT_FOUND;
+    }
+
+    @Override
+    public long previousSetBit(long fromIndex) {
+        if (fromIndex < 0) {
+            if (fromIndex == NOT_FOUND)
+                return NOT_FOUND;
+            throw new IndexOutOfBoundsException();
+        }
+        if (fromIndex >= size)
+            fromIndex = size - 1;
+        if (fromIndex < 0)
+            return NOT_FOUND;
+        int key = (int) (fromIndex >>> 16);
+        int c = find(key);
+        if (c >= 0) {
+            int low = previousSet(c, (int) fromIndex & 0xFFFF);
+            if (low >= 0)
+                return bit(key, low);
+            c--;
+        } else {
+            c = -c - 2;
+        }
+        return c >= 0 ? bit(key(c), previousSet(c, 0xFFFF)) : NOT_FOUND;
+    }
+
+    @Override
+    public long previousSetLong(long fromLongIndex) {
+        if (fromLongIndex < 0) {
+            if (fromLongIndex == NOT_FOUND)
+                return NOT_FOUND;
+            throw new IndexOutOfBoundsException();
+        }
+        if (fromLongIndex >= longLength)
+            fromLongIndex = longLength - 1;
+        long bit = previousSetBit((fromLongIndex << 6) + 63);
+        return bit >= 0 ? bit >> 6 : NOT_FOUND;
+    }
+
+    @Override
+    public long previousClearBit(long fromIndex) {
+        if (fromIndex < 0) {
+            if (fromIndex == NOT_FOUND)
+                return NOT_FOUND;
+            throw new IndexOutOfBoundsException();
+        }
+        if (fromIndex >= size)
+            fromIndex = size - 1;
+        for (long i = fromIndex; i >= 0; ) {
+            int key = (int) (i >>> 16);
+            int c = find(key);
+            if (c < 0)
+                return i;
+            int low = previousClear(c, (int) i & 0xFFFF);
+            if (low >= 0)
+                return bit(key, low);
+            i = ((long) key << 16) - 1;
+        }
+        return NOT_FOUND;
+    }
+
+    @Override
+    public long previousClearLong(long fromLongIndex) {
+        if (fromLongIndex < 0) {
+            if (fromLongIndex == NOT_FOUND)
+                return NOT_FOUND;
+            throw new IndexOutOfBoundsException();
+        }
+        if (fromLongIndex >= longLength)
+            fromLongIndex = longLength - 1;
+        long bit = previousClearBit((fromLongIndex << 6) + 63);
+        return bit >= 0 ? bit >> 6 : NOT_FOUND;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public long cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    public boolean intersects(DirectBitSet other) {
+        return and(other, true) > 0;
+    }
+
+    @Override
+    public long cardinalityOfAnd(DirectBitSet other) {
+        return and(other, false);
+    }
+
+    // the number of bits set in both, or 1 if any when only that is needed.
+    private long and(DirectBitSet other, boolean any) {
+        long count = 0;
+        long[] words = new long[WORDS];
+        if (other instanceof RoaringDirectBitSet) {
+            RoaringDirectBitSet set2 = (RoaringDirectBitSet) other;
+            long[] words2 = new long[WORDS];
+            for (int i = 0, j = 0; i < containers && j < set2.containers; ) {
+                int key1 = key(i), key2 = set2.key(j);
+                if (key1 < key2) {
+                    i++;
+                } else if (key1 > key2) {
+                    j++;
+                } else {
+                    decode(i++, words);
+                    set2.decode(j++, words2);
+                    for (int w = 0; w < WORDS; w++)
+                        count += Long.bitCount(words[w] & words2[w]);
+                    if (any && count > 0)
+                        return 1;
+                }
+            }
+            return count;
+        }
+        long otherLongs = other.size() >> 6;
+        for (int c = 0; c < containers; c++) {
+            long first = (long) key(c) << 10;
+            if (first >= otherLongs)
+                break;
+            decode(c, words);
+            int end = (int) Math.min(WORDS, otherLongs - first);
+            for (int w = 0; w < end; w++)
+                if (words[w] != 0)
+                    count += Long.bitCount(words[w] & other.getLong(first + w));
+            if (any && count > 0)
+                return 1;
+        }
+        return count;
+    }
+
+    private class SetBits implements Bits {
+        private final long[] words = new long[WORDS];
+        private int container = -1;
+        private int wordIndex = WORDS - 1;
+        private long currentWord = 0;
+        private long base;
+
+        @Override
+        public long next() {
+            while (currentWord == 0) {
+                if (++wordIndex >= WORDS) {
+                    if (container + 1 >= containers) {
+                        wordIndex = WORDS;
+                        return NOT_FOUND;
+                    }
+                    decode(++container, words);
+                    base = (long) key(container) << 16;
+                    wordIndex = 0;
+                }
+                currentWord = words[wordIndex];
+            }
+            int trailingZeros = Long.numberOfTrailingZeros(currentWord);
+            currentWord &= currentWord - 1;
+            return base + (wordIndex << 6) + trailingZeros;
+        }
+    }
+
+    @Override
+    public Bits setBits() {
+        return new SetBits();
+    }
+
+    private UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("RoaringDirectBitSet is read only");
+    }
+
+    @Override
+    public DirectBitSet flip(long bitIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet flip(long fromIndex, long toIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet set(long bitIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean setIfClear(long bitIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean clearIfSet(long bitIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet set(long bitIndex, boolean value) {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet set(long fromIndex, long toIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet setAll() {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet set(long fromIndex, long toIndex, boolean value) {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet clear(long bitIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet clear(long fromIndex, long toIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet clear() {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet and(long longIndex, long value) {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet or(long longIndex, long value) {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet xor(long longIndex, long value) {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet andNot(long longIndex, long value) {
+        throw readOnly();
+    }
+
+    /**
+     * @throws UnsupportedOperationException as the set is read only, see and(RoaringDirectBitSet,
+     *                                       RoaringDirectBitSet)
+     */
+    @Override
+    public DirectBitSet and(DirectBitSet other) {
+        throw readOnly();
+    }
+
+    /**
+     * @throws UnsupportedOperationException as the set is read only, see or(RoaringDirectBitSet, RoaringDirectBitSet)
+     */
+    @Override
+    public DirectBitSet or(DirectBitSet other) {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet xor(DirectBitSet other) {
+        throw readOnly();
+    }
+
+    @Override
+    public DirectBitSet andNot(DirectBitSet other) {
+        throw readOnly();
+    }
+
+    @Override
+    public long setNextClearBit(long fromIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public long clearNextSetBit(long fromIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public long setPreviousClearBit(long fromIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public long clearPreviousSetBit(long fromIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public long setNextNContinuousClearBits(long fromIndex, int numberOfBits) {
+        throw readOnly();
+    }
+
+    @Override
+    public long clearNextNContinuousSetBits(long fromIndex, int numberOfBits) {
+        throw readOnly();
+    }
+
+    @Override
+    public long setPreviousNContinuousClearBits(long fromIndex, int numberOfBits) {
+        throw readOnly();
+    }
+
+    @Override
+    public long clearPreviousNContinuousSetBits(long fromIndex, int numberOfBits) {
+        throw readOnly();
+    }
+
+    /**
+     * Builds a RoaringDirectBitSet from bits added in ascending order, a chunk at a time, off heap.
+     */
+    public static class Builder {
+        private final long size;
+        private final long[] words = new long[WORDS];
+        // the chunk being added to, or -1.
+        private int key = -1;
+        private long last = -1;
+        private long cardinality = 0;
+        private int containers = 0;
+        private Bytes directory = DirectStore.allocate(16 * ENTRY).bytes();
+        private Bytes data = DirectStore.allocate(BITMAP_BYTES).bytes();
+        private long dataLength = 0;
+
+        public Builder(long size) {
+            if (size < 0 || size > MAX_SIZE)
+                throw new IllegalArgumentException("size " + size + " is not between 0 and " + MAX_SIZE);
+            this.size = size;
+        }
+
+        /**
+         * @param bitIndex of a bit to set, after the bits added so far.
+         * @return this builder back
+         * @throws IllegalArgumentException if the bit is not after the bits added so far, or not below the size.
+         */
+        public Builder add(long bitIndex) {
+            if (bitIndex <= last || bitIndex >= size)
+                throw new IllegalArgumentException("bit " + bitIndex + " is not after " + last + " and below " + size);
+            int key2 = (int) (bitIndex >>> 16);
+            if (key2 != key) {
+                flush();
+                key = key2;
+            }
+            words[(int) (bitIndex >> 6) & (WORDS - 1)] |= 1L << bitIndex;
+            last = bitIndex;
+            return this;
+        }
+
+        public RoaringDirectBitSet build() {
+            flush();
+            long directoryLength = (long) containers * ENTRY;
+            long length = HEADER + directoryLength + dataLength;
+            Bytes bytes = DirectStore.allocate(length).bytes();
+            bytes.writeLong(0, length);
+            bytes.writeLong(8, size);
+            bytes.writeLong(16, cardinality);
+            bytes.writeInt(24, containers);
+            bytes.write(HEADER, directory, 0, directoryLength);
+            bytes.write(HEADER + directoryLength, data, 0, dataLength);
+            return new RoaringDirectBitSet(bytes);
+        }
+
+        private void flush() {
+            if (key < 0)
+                return;
+            addWords0(key, words);
+            Arrays.fill(words, 0L);
+            key = -1;
+        }
+
+        // adds a chunk after those added so far.
+        void addWords(int key, long[] words) {
+            flush();
+            addWords0(key, words);
+            last = bit(key, 0xFFFF);
+        }
+
+        // copies a container as it is, after those added so far.
+        void addContainer(RoaringDirectBitSet set, int c) {
+            flush();
+            long length = set.length(c);
+            long offset = reserve(length);
+            data.write(offset, set.bytes, set.offset(c), length);
+            addEntry(set.key(c), set.type(c), set.count(c), offset);
+            last = bit(set.key(c), 0xFFFF);
+        }
+
+        private void addWords0(int key, long[] words) {
+            int count = 0, runs = 0;
+            long previous = 0;
+            for (long w : words) {
+                count += Long.bitCount(w);
+                // the bits set after a clear bit start a run.
+                runs += Long.bitCount(w & ~((w << 1) | (previous >>> 63)));
+                previous = w;
+            }
+            if (count == 0)
+                return;
+            long runBytes = 4 + runs * 4L;
+            if (runBytes < Math.min(count * 2L, BITMAP_BYTES)) {
+                long offset = reserve(runBytes);
+                data.writeInt(offset, runs);
+                long position = offset + 4;
+                for (int start = nextSet(words, 0); start >= 0; ) {
+                    int end = nextClear(words, start) - 1;
+                    data.writeUnsignedShort(position, start);
+                    data.writeUnsignedShort(position + 2, end - start);
+                    position += 4;
+                    start = end < (1 << 16) - 1 ? nextSet(words, end + 1) : -1;
+                }
+                addEntry(key, RUN, count, offset);
+            } else if (count <= MAX_ARRAY) {
+                long offset = reserve(count * 2L);
+                long position = offset;
+                for (int w = 0; w < WORDS; w++) {
+                    for (long l = words[w]; l != 0; l &= l - 1) {
+                        data.writeUnsignedShort(position, (w << 6) + Long.numberOfTrailingZeros(l));
+                        position += 2;
+                    }
+                }
+                addEntry(key, ARRAY, count, offset);
+            } else {
+                long offset = reserve(BITMAP_BYTES);
+                for (int w = 0; w < WORDS; w++)
+                    data.writeLong(offset + ((long) w << 3), words[w]);
+                addEntry(key, BITMAP, count, offset);
+            }
+        }
+
+        // the offset of this many bytes at the end of the data, 8 byte aligned.
+        private long reserve(long length) {
+            long offset = (dataLength + 7) & ~7L;
+            if (offset + length > data.capacity()) {
+                Bytes data2 = DirectStore.allocate(Math.max(data.capacity() * 2, offset + length)).bytes();
+                data2.write(0, data, 0, dataLength);
+                data = data2;
+            }
+            dataLength = offset + length;
+            return offset;
+        }
+
+        private void addEntry(int key, int type, int count, long offset) {
+            long position = (long) containers * ENTRY;
+            if (position + ENTRY > directory.capacity()) {
+                Bytes directory2 = DirectStore.allocate(directory.capacity() * 2).bytes();
+                directory2.write(0, directory, 0, position);
+                directory = directory2;
+            }
+            directory.writeInt(position, key);
+            directory.writeUnsignedShort(position + 4, type);
+            directory.writeUnsignedShort(position + 6, count - 1);
+            directory.writeLong(position + 8, offset);
+            containers++;
+            cardinality += count;
+        }
+
+        private static int nextSet(long[] words, int from) {
+            int w = from >> 6;
+            long l = words[w] >>> from;
+            if (l != 0)
+                return from + Long.numberOfTrailingZeros(l);
+            while (++w < WORDS)
+                if (words[w] != 0)
+                    return (w << 6) + Long.numberOfTrailingZeros(words[w]);
+            return -1;
+        }
+
+        // the first clear bit from here, or 1 << 16 if there isn't one.
+        private static int nextClear(long[] words, int from) {
+            int w = from >> 6;
+            long l = ~words[w] >>> from;
+            if (l != 0)
+                return from + Long.numberOfTrailingZeros(l);
+            while (++w < WORDS)
+                if (words[w] != ~0L)
+                    return (w << 6) + Long.numberOfTrailingZeros(~words[w]);
+            return 1 << 16;
+        }
+    }
+}
@@ -769,6 +769,83 @@ public class SingleThreadedDirectBitSet implements DirectBitSet {
         return this;
     }
 
+    @Override
+    public DirectBitSet and(DirectBitSet other) {
+        long longs = DirectBitSets.commonLongs(this, other);
+        Bytes otherBytes = DirectBitSets.bytesOf(other);
+        if (otherBytes != null) {
+            DirectBitSets.and(bytes, otherBytes, longs);
+        } else {
+            for (long i = 0; i < longs; i++)
+                and(i, other.getLong(i));
+        }
+        // the other has no bits set beyond its size.
+        for (long i = longs; i < longLength; i++)
+            bytes.writeLong(i << 3, 0L);
+        return this;
+    }
+
+    @Override
+    public DirectBitSet or(DirectBitSet other) {
+        long longs = DirectBitSets.commonLongs(this, other);
+        Bytes otherBytes = DirectBitSets.bytesOf(other);
+        if (otherBytes != null) {
+            DirectBitSets.or(bytes, otherBytes, longs);
+        } else {
+            for (long i = 0; i < longs; i++)
+                or(i, other.getLong(i));
+        }
+        return this;
+    }
+
+    @Override
+    public DirectBitSet xor(DirectBitSet other) {
+        long longs = DirectBitSets.commonLongs(this, other);
+        Bytes otherBytes = DirectBitSets.bytesOf(other);
+        if (otherBytes != null) {
+            DirectBitSets.xor(bytes, otherBytes, longs);
+        } else {
+            for (long i = 0; i < longs; i++)
+                xor(i, other.getLong(i));
+        }
+        return this;
+    }
+
+    @Override
+    public DirectBitSet andNot(DirectBitSet other) {
+        long longs = DirectBitSets.commonLongs(this, other);
+        Bytes otherBytes = DirectBitSets.bytesOf(other);
+        if (otherBytes != null) {
+            DirectBitSets.andNot(bytes, otherBytes, longs);
+        } else {
+            for (long i = 0; i < longs; i++)
+                andNot(i, other.getLong(i));
+        }
+        return this;
+    }
+
+    @Override
+    public boolean intersects(DirectBitSet other) {
+        long longs = DirectBitSets.commonLongs(this, other);
+        Bytes otherBytes = DirectBitSets.bytesOf(other);
+        return otherBytes != null
+                ? DirectBitSets.intersects(bytes, otherBytes, longs)
+                : DirectBitSets.intersects(bytes, other, longs);
+    }
+
+    @Override
+    public long cardinalityOfAnd(DirectBitSet other) {
+        long longs = DirectBitSets.commonLongs(this, other);
+        Bytes otherBytes = DirectBitSets.bytesOf(other);
+        return otherBytes != null
+                ? DirectBitSets.cardinalityOfAnd(bytes, otherBytes, longs)
+                : DirectBitSets.cardinalityOfAnd(bytes, other, longs);
+    }
+
+    Bytes bytes() {
+        return bytes;
+    }
+
     /**
      * @throws java.lang.IllegalArgumentException if {@code numberOfBits}
      *         is out of range {@code 0 < numberOfBits && numberOfBits <= 64}
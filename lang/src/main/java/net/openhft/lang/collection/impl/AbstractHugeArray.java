@@ -0,0 +1,278 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection.impl;
+
+import net.openhft.lang.collection.ElementConsumer;
+import net.openhft.lang.collection.ElementReducer;
+import net.openhft.lang.collection.HugeArray;
+import net.openhft.lang.collection.HugeIndex;
+import net.openhft.lang.model.Byteable;
+import net.openhft.lang.model.Copyable;
+import net.openhft.lang.model.DataValueField;
+import net.openhft.lang.thread.NamedThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The operations of a HugeArray which only need get(long) and recycle(T), whatever the layout of the elements.
+ */
+abstract class AbstractHugeArray<T> implements HugeArray<T> {
+    // the most references each thread keeps for reuse.
+    private static final int POOL_SIZE = Integer.getInteger("hugeArray.poolSize", 10);
+    // the parallel operations work on chunks of about this many bytes.
+    private static final int CHUNK_BYTES = 256 << 10;
+    static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static ExecutorService executor = null;
+    // copied on write, so set() can go through them without creating an iterator.
+    private volatile HugeIndexImpl<T>[] indexes = newIndexes(0);
+    // each thread has its own references so get() and recycle() need no lock.
+    private final ThreadLocal<List<T>> freeLists = new ThreadLocal<List<T>>() {
+        @Override
+        protected List<T> initialValue() {
+            return new ArrayList<T>(POOL_SIZE);
+        }
+    };
+
+    /**
+     * @return a new reference to an element of this array.
+     */
+    abstract T createRef();
+
+    /**
+     * @return whether this reference was created by this array.
+     */
+    abstract boolean owns(T t);
+
+    /**
+     * @return the number of bytes an element uses, to size the chunks of the parallel operations.
+     */
+    abstract int elementSize();
+
+    @Override
+    public void withElement(long index, ElementConsumer<T> consumer) {
+        T t = get(index);
+        try {
+            consumer.accept(t, index);
+        } finally {
+            recycle(t);
+        }
+    }
+
+    @Override
+    public void parallelForEach(long fromIndex, long toIndex, final ElementConsumer<T> consumer) {
+        parallelReduce(fromIndex, toIndex, new ElementReducer<T, Object>() {
+            @Override
+            public Object identity() {
+                return null;
+            }
+
+            @Override
+            public Object reduce(Object result, T element, long index) {
+                consumer.accept(element, index);
+                return null;
+            }
+
+            @Override
+            public Object combine(Object result1, Object result2) {
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void fill(long fromIndex, long toIndex, final T t) {
+        parallelForEach(fromIndex, toIndex, new ElementConsumer<T>() {
+            @Override
+            public void accept(T element, long index) {
+                ((Copyable<T>) element).copyFrom(t);
+            }
+        });
+        rebuildIndexes();
+    }
+
+    /**
+     * The chunks are claimed from a counter by the caller and by tasks on a shared pool, and each thread keeps its own
+     * result and reference.  The caller waits for the chunks to be done, not for the tasks, so a task which doesn't
+     * start, e.g. when called from a task on the same pool, isn't waited for.
+     */
+    @Override
+    public <R> R parallelReduce(final long fromIndex, final long toIndex, final ElementReducer<T, R> reducer) {
+        long length = length();
+        if (fromIndex < 0 || toIndex > length || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("from " + fromIndex + " to " + toIndex + " length " + length);
+        final long chunkSize = Math.max(1, CHUNK_BYTES / elementSize());
+        final long chunks = (toIndex - fromIndex + chunkSize - 1) / chunkSize;
+        final AtomicLong nextChunk = new AtomicLong();
+        final AtomicLong remaining = new AtomicLong(chunks);
+        final List<R> results = Collections.synchronizedList(new ArrayList<R>());
+        final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+        final Thread caller = Thread.currentThread();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                R result = reducer.identity();
+                long done = 0;
+                T t = null;
+                // every chunk is claimed and counted, even after a failure, so the caller stops waiting.
+                for (long chunk; (chunk = nextChunk.getAndIncrement()) < chunks; done++) {
+                    if (thrown.get() != null)
+                        continue;
+                    long from = fromIndex + chunk * chunkSize;
+                    long to = Math.min(toIndex, from + chunkSize);
+                    try {
+                        if (t == null)
+                            t = get(from);
+                        for (long i = from; i < to; i++) {
+                            get(i, t);
+                            result = reducer.reduce(result, t, i);
+                        }
+                    } catch (Throwable e) {
+                        thrown.compareAndSet(null, e);
+                    }
+                }
+                if (t != null)
+                    recycle(t);
+                if (done > 0) {
+                    results.add(result);
+                    if (remaining.addAndGet(-done) == 0)
+                        LockSupport.unpark(caller);
+                }
+            }
+        };
+        ExecutorService executor = executor();
+        for (int i = 1; i < Math.min(THREADS, chunks); i++)
+            executor.execute(worker);
+        worker.run();
+        while (remaining.get() > 0)
+            LockSupport.park(this);
+
+        Throwable e = thrown.get();
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+        R result = reducer.identity();
+        // all the workers have added their results before the caller was woken.
+        for (R r : results)
+            result = reducer.combine(result, r);
+        return result;
+    }
+
+    static synchronized ExecutorService executor() {
+        if (executor == null)
+            executor = Executors.newFixedThreadPool(THREADS, new NamedThreadFactory("huge-array", true));
+        return executor;
+    }
+
+    @Override
+    public void copyTo(long index, T to) {
+        T from = get(index);
+        ((Copyable<T>) to).copyFrom(from);
+        recycle(from);
+    }
+
+    @Override
+    public void set(long index, T from) {
+        T to = get(index);
+        HugeIndexImpl<T>[] indexes = this.indexes;
+        if (indexes.length == 0) {
+            ((Copyable<T>) to).copyFrom(from);
+            // an index created while this was copied might have read the element before it changed.
+            if (this.indexes.length != 0)
+                rebuildIndexes();
+        } else {
+            synchronized (this) {
+                for (HugeIndexImpl<T> index2 : indexes)
+                    index2.beforeSet(to, index);
+                ((Copyable<T>) to).copyFrom(from);
+                for (HugeIndexImpl<T> index2 : indexes)
+                    index2.afterSet(to, index);
+            }
+        }
+        recycle(to);
+    }
+
+    /**
+     * @param tClass the interface of the elements, which has the field.
+     */
+    HugeIndex createIndex(Class<T> tClass, String fieldName) {
+        HugeIndexImpl<T> index = new HugeIndexImpl<T>(this, DataValueField.of(tClass, fieldName));
+        // published before it is built, so a set(long, T) from now on waits for the rebuild and then updates it.
+        synchronized (this) {
+            HugeIndexImpl<T>[] indexes = newIndexes(this.indexes.length + 1);
+            System.arraycopy(this.indexes, 0, indexes, 0, indexes.length - 1);
+            indexes[indexes.length - 1] = index;
+            this.indexes = indexes;
+            index.rebuild();
+        }
+        return index;
+    }
+
+    /**
+     * Rebuild the indexes after the elements have been changed other than by set(long, T).
+     */
+    synchronized void rebuildIndexes() {
+        for (HugeIndexImpl<T> index : indexes)
+            index.rebuild();
+    }
+
+    /**
+     * @return the value of an integer field of an element, overridden for elements which are not Byteable.
+     */
+    long readField(DataValueField<T> field, T element) {
+        Byteable byteable = (Byteable) element;
+        return field.readLong(byteable.bytes(), byteable.offset());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> HugeIndexImpl<T>[] newIndexes(int length) {
+        return new HugeIndexImpl[length];
+    }
+
+    T acquire() {
+        List<T> freeList = freeLists.get();
+        int size = freeList.size();
+        if (size > 0)
+            return freeList.remove(size - 1);
+        return createRef();
+    }
+
+    @Override
+    public void recycle(T t) {
+        List<T> freeList = freeLists.get();
+        if (freeList.size() < POOL_SIZE) {
+            assert owns(t);
+            assert !containsSame(freeList, t) : "recycling object already recycled";
+            freeList.add(t);
+        }
+    }
+
+    // references to equal elements are equals(), so look for the same reference.
+    private static boolean containsSame(List<?> list, Object o) {
+        for (Object o2 : list)
+            if (o2 == o)
+                return true;
+        return false;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection.impl;
+
+import net.openhft.lang.collection.HugeIndex;
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.BytesStore;
+import net.openhft.lang.io.DirectStore;
+import net.openhft.lang.model.Columnar;
+import net.openhft.lang.model.Copyable;
+import net.openhft.lang.model.DataValueClasses;
+import net.openhft.lang.model.DataValueComparator;
+import net.openhft.lang.model.DataValueField;
+
+/**
+ * An array stored as a struct of arrays, each field in a column of its own, so operations which read a few fields of
+ * many elements only read the memory of those fields.  The references are $$Columnar flyweights which are moved from
+ * element to element by setting their index.
+ */
+public class ColumnarHugeArrayImpl<T> extends AbstractHugeArray<T> {
+    // each column starts on a cache line of its own.
+    private static final int COLUMN_ALIGNMENT = 64;
+    private final Class<T> tClass;
+    private final Class<T> columnarClass;
+    private final long length;
+    private final int size;
+    private final int[] columnSizes;
+    private final long[] columnOffsets;
+    private final BytesStore store;
+    private final Bytes bytes;
+    // a copy of a key to search for, as the only element of columns of 8 bytes each.
+    private final long[] keyColumnOffsets;
+    private final ThreadLocal<Bytes> keyBytes = new ThreadLocal<Bytes>() {
+        @Override
+        protected Bytes initialValue() {
+            return DirectStore.allocate(Math.max(1, keyColumnOffsets.length) * 8L).bytes();
+        }
+    };
+    private final ThreadLocal<T> keyCopies = new ThreadLocal<T>() {
+        @Override
+        protected T initialValue() {
+            T copy = newInstance();
+            ((Columnar) copy).columns(keyBytes.get(), keyColumnOffsets);
+            return copy;
+        }
+    };
+
+    /**
+     * @throws IllegalArgumentException if the interface has fields which are not primitives.
+     */
+    public ColumnarHugeArrayImpl(Class<T> tClass, long length) {
+        this.tClass = tClass;
+        this.columnarClass = DataValueClasses.columnarClassFor(tClass);
+        this.length = length;
+
+        T ref = newInstance();
+        columnSizes = ((Columnar) ref).columnSizes();
+        columnOffsets = new long[columnSizes.length];
+        keyColumnOffsets = new long[columnSizes.length];
+        for (int i = 0; i < keyColumnOffsets.length; i++)
+            keyColumnOffsets[i] = i * 8L;
+        long total = 0;
+        int size = 0;
+        for (int i = 0; i < columnSizes.length; i++) {
+            columnOffsets[i] = total;
+            total += (length * columnSizes[i] + COLUMN_ALIGNMENT - 1) & -COLUMN_ALIGNMENT;
+            size += columnSizes[i];
+        }
+        this.size = Math.max(1, size);
+        store = DirectStore.allocate(total + COLUMN_ALIGNMENT - 1);
+        long start = -store.address() & (COLUMN_ALIGNMENT - 1);
+        for (int i = 0; i < columnOffsets.length; i++)
+            columnOffsets[i] += start;
+        bytes = store.bytes();
+        ((Columnar) ref).columns(bytes, columnOffsets);
+        recycle(ref);
+    }
+
+    private T newInstance() {
+        try {
+            //noinspection ClassNewInstance
+            return columnarClass.newInstance();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    T createRef() {
+        T ref = newInstance();
+        ((Columnar) ref).columns(store.bytes(), columnOffsets);
+        return ref;
+    }
+
+    @Override
+    int elementSize() {
+        return size;
+    }
+
+    @Override
+    boolean owns(T t) {
+        return columnarClass.isInstance(t);
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public T get(long index) {
+        T t = acquire();
+        ((Columnar) t).index(index);
+        return t;
+    }
+
+    @Override
+    public void get(long index, T element) {
+        if (columnarClass.isInstance(element)) {
+            ((Columnar) element).index(index);
+            return;
+        }
+        T t = get(index);
+        ((Copyable) element).copyFrom(t);
+        recycle(t);
+    }
+
+    /**
+     * Sorts the indexes of the elements, comparing the fields in their columns, then moves each column into that order
+     * through a copy of it, so it needs 8 bytes per element and a copy of the largest column as well as the array.
+     */
+    @Override
+    public void sort(final DataValueComparator<T> comparator) {
+        DirectStore order = DirectStore.allocate(Math.max(1, length) * 8L);
+        try {
+            Bytes orderBytes = order.bytes();
+            for (long i = 0; i < length; i++)
+                orderBytes.writeLong(i * 8L, i);
+            new HugeArraySorter(orderBytes, 0L, 8, null, length, THREADS) {
+                @Override
+                int compare(Bytes bytes1, long offset1, Bytes bytes2, long offset2) {
+                    return comparator.compare(bytes, columnOffsets, bytes1.readLong(offset1),
+                            bytes, columnOffsets, bytes2.readLong(offset2));
+                }
+            }.sort(length, executor(), THREADS);
+            reorderColumns(orderBytes);
+        } finally {
+            order.free();
+        }
+        rebuildIndexes();
+    }
+
+    // move the element at order[i] of each column to i.
+    private void reorderColumns(Bytes order) {
+        int maxSize = 1;
+        for (int columnSize : columnSizes)
+            maxSize = Math.max(maxSize, columnSize);
+        DirectStore copy = DirectStore.allocate(Math.max(1, length) * maxSize);
+        try {
+            Bytes copyBytes = copy.bytes();
+            for (int column = 0; column < columnSizes.length; column++) {
+                int columnSize = columnSizes[column];
+                long columnOffset = columnOffsets[column];
+                for (long i = 0; i < length; i++)
+                    copyBytes.write(i * columnSize, bytes, columnOffset + order.readLong(i * 8L) * columnSize,
+                            columnSize);
+                bytes.write(columnOffset, copyBytes, 0L, length * columnSize);
+            }
+        } finally {
+            copy.free();
+        }
+    }
+
+    @Override
+    public long binarySearch(T key, DataValueComparator<T> comparator) {
+        // a copy of the key in columns of its own.
+        T copy = keyCopies.get();
+        ((Copyable<T>) copy).copyFrom(key);
+        Bytes keyBytes = this.keyBytes.get();
+        long low = 0, high = length - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            int cmp = comparator.compare(bytes, columnOffsets, mid, keyBytes, keyColumnOffsets, 0L);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    @Override
+    public HugeIndex createIndex(String fieldName) {
+        return createIndex(tClass, fieldName);
+    }
+
+    @Override
+    long readField(DataValueField<T> field, T element) {
+        return field.readLong(bytes, columnOffsets, ((Columnar) element).index());
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection.impl;
+
+import net.openhft.lang.Maths;
+import net.openhft.lang.collection.BatchReader;
+import net.openhft.lang.collection.BatchWriter;
+import net.openhft.lang.collection.HugeQueue;
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.BytesStore;
+import net.openhft.lang.io.DirectStore;
+import net.openhft.lang.io.MappedStore;
+import net.openhft.lang.model.Byteable;
+import net.openhft.lang.model.Copyable;
+import net.openhft.lang.model.DataValueClasses;
+import net.openhft.lang.model.DataValueFactory;
+import net.openhft.lang.model.DataValueModels;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * A ring buffer queue which is safe for one consumer thread and either one producer thread, or many producer
+ * threads.  The head and tail are counters in their own cache lines off heap, and the capacity is a power of two so
+ * the slot is the counter masked.
+ *
+ * <p>offer() and take() return a reference to the slot, which isn't published or freed until the reference is passed to
+ * recycle(), so a consumer never sees a half written element, and a producer never overwrites one being read.  Each
+ * thread can have one offered and one taken element at a time.
+ *
+ * <p>With many producers, each slot has a sequence number, the producers claim a slot by a CAS of the tail and publish it
+ * by an ordered write of its sequence, so a slot is only seen once it is published even if a later one is published
+ * first.  With one producer, the tail is published directly.
+ *
+ * <p>A batch claims its slots with one update of the tail, or the head, for all of them, though with many producers
+ * each slot is still published by its sequence.
+ *
+ * <p>The queue can be mapped to a file to pass elements between processes.  As the head and tail are in the file, a
+ * consumer which restarts carries on from the last element it recycled.
+ */
+public class ConcurrentHugeQueueImpl<T> implements HugeQueue<T> {
+    private static final int CACHE_LINE_SIZE = 64;
+    private static final int HEAD = 0;
+    private static final int TAIL = CACHE_LINE_SIZE;
+    private static final int SLOTS = 2 * CACHE_LINE_SIZE;
+    // records are padded to a multiple of their alignment, this is at most a page.
+    private static final int MAX_ALIGNMENT = 4096;
+    private static final long SPSC_MAGIC = 0x48756765535051L; // "HugeSPQ"
+    private static final long MPSC_MAGIC = 0x487567654D5051L; // "HugeMPQ"
+
+    private final DataValueFactory<T> factory;
+    private final boolean multiProducer;
+    private final long capacity;
+    private final long mask;
+    private final int size;
+    private final int slotSize;
+    private final int header;
+    private final BytesStore store;
+    private final Bytes bytes;
+    private final long start;
+    // where the first slot is.
+    private final long slots;
+    private final ThreadLocal<Cursor<T>> cursors = new ThreadLocal<Cursor<T>>() {
+        @Override
+        protected Cursor<T> initialValue() {
+            return new Cursor<T>(factory.newDirectReference(), factory.newDirectReference());
+        }
+    };
+    // only used by the one producer, or the one consumer.
+    private long cachedHead = 0, cachedTail = 0;
+
+    public ConcurrentHugeQueueImpl(Class<T> tClass, long length, boolean multiProducer) {
+        this.factory = DataValueClasses.factoryFor(tClass);
+        this.multiProducer = multiProducer;
+        capacity = Maths.nextPower2(length, 2);
+        mask = capacity - 1;
+        size = ((Byteable) factory.newDirectReference()).maxSize();
+        int alignment = slotAlignment(size);
+        header = multiProducer ? alignment : 0;
+        slotSize = (header + size + alignment - 1) & -alignment;
+
+        int storeAlignment = Math.max(alignment, CACHE_LINE_SIZE);
+        long slotsOffset = (SLOTS + alignment - 1) & -alignment;
+        store = DirectStore.allocate(slotsOffset + capacity * slotSize + storeAlignment - 1);
+        bytes = store.bytes();
+        // the head and tail each have a cache line to themselves.
+        start = -store.address() & (storeAlignment - 1);
+        slots = start + slotsOffset;
+        if (multiProducer)
+            for (long i = 0; i < capacity; i++)
+                bytes.writeLong(slot(i), i);
+        bytes.writeOrderedLong(start + TAIL, 0L);
+    }
+
+    /**
+     * Map the queue to a file, or map an existing one and carry on from its head and tail.  The file should be created
+     * by one process before the others map it.
+     *
+     * @throws IllegalStateException if the file was created for a different mode, capacity or layout.
+     */
+    public ConcurrentHugeQueueImpl(Class<T> tClass, long length, boolean multiProducer, File file) throws IOException {
+        this.factory = DataValueClasses.factoryFor(tClass);
+        this.multiProducer = multiProducer;
+        capacity = Maths.nextPower2(length, 2);
+        mask = capacity - 1;
+        size = ((Byteable) factory.newDirectReference()).maxSize();
+        int alignment = slotAlignment(size);
+        header = multiProducer ? alignment : 0;
+        slotSize = (header + size + alignment - 1) & -alignment;
+
+        long magic = multiProducer ? MPSC_MAGIC : SPSC_MAGIC;
+        long fingerprint = DataValueModels.layoutFingerprint(tClass);
+        boolean exists = MappedHeader.check(file, magic, size, fingerprint, capacity);
+        // the mapping is page aligned, so the head and tail are in the cache lines after the header.
+        start = MappedHeader.HEADER_SIZE;
+        slots = (start + SLOTS + alignment - 1) & -alignment;
+        store = new MappedStore(file, FileChannel.MapMode.READ_WRITE, slots + capacity * slotSize);
+        bytes = store.bytes();
+        if (!exists) {
+            if (multiProducer)
+                for (long i = 0; i < capacity; i++)
+                    bytes.writeLong(slot(i), i);
+            MappedHeader.write(bytes, magic, size, fingerprint, capacity);
+        }
+    }
+
+    /**
+     * The sequence and the record in each slot start on a multiple of the record's alignment, and of 8.
+     */
+    private static int slotAlignment(int size) {
+        return Math.max(8, Math.min(Integer.lowestOneBit(size), MAX_ALIGNMENT));
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    private long slot(long pos) {
+        return slots + (pos & mask) * slotSize;
+    }
+
+    @Override
+    public boolean isFull() {
+        long head = bytes.readVolatileLong(start + HEAD);
+        return bytes.readVolatileLong(start + TAIL) - head >= capacity;
+    }
+
+    /**
+     * With many producers, a slot which has been claimed but not yet published is counted.
+     */
+    @Override
+    public boolean isEmpty() {
+        long head = bytes.readVolatileLong(start + HEAD);
+        return bytes.readVolatileLong(start + TAIL) == head;
+    }
+
+    @Override
+    public T offer() {
+        Cursor<T> cursor = cursors.get();
+        if (cursor.offerPos >= 0)
+            throw new IllegalStateException("offer() again before recycle()");
+        long pos = multiProducer ? claimMulti() : claimSingle();
+        if (pos < 0)
+            return null;
+        cursor.offerPos = pos;
+        ((Byteable) cursor.offered).bytes(bytes, slot(pos) + header);
+        return cursor.offered;
+    }
+
+    private long claimSingle() {
+        long pos = bytes.readLong(start + TAIL);
+        if (pos - cachedHead >= capacity) {
+            cachedHead = bytes.readVolatileLong(start + HEAD);
+            if (pos - cachedHead >= capacity)
+                return -1;
+        }
+        return pos;
+    }
+
+    private long claimMulti() {
+        while (true) {
+            long pos = bytes.readVolatileLong(start + TAIL);
+            long seq = bytes.readVolatileLong(slot(pos));
+            if (seq == pos) {
+                if (bytes.compareAndSwapLong(start + TAIL, pos, pos + 1))
+                    return pos;
+            } else if (seq < pos) {
+                // the consumer hasn't freed this slot from the last lap.
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public boolean offer(T element) {
+        T t = offer();
+        if (t == null)
+            return false;
+        ((Copyable<T>) t).copyFrom(element);
+        recycle(t);
+        return true;
+    }
+
+    @Override
+    public int offer(int n, BatchWriter<T> writer) {
+        Cursor<T> cursor = cursors.get();
+        if (cursor.offerPos >= 0)
+            throw new IllegalStateException("offer(n, writer) before recycle()");
+        long pos;
+        int count;
+        if (multiProducer) {
+            do {
+                pos = bytes.readVolatileLong(start + TAIL);
+                count = (int) Math.min(n, capacity - (pos - bytes.readVolatileLong(start + HEAD)));
+                if (count <= 0)
+                    return 0;
+                // the slots are freed in order, so if the last of the run is free, they all are.
+            } while (bytes.readVolatileLong(slot(pos + count - 1)) != pos + count - 1
+                    || !bytes.compareAndSwapLong(start + TAIL, pos, pos + count));
+        } else {
+            pos = bytes.readLong(start + TAIL);
+            if (pos - cachedHead > capacity - n)
+                cachedHead = bytes.readVolatileLong(start + HEAD);
+            count = (int) Math.min(n, capacity - (pos - cachedHead));
+            if (count <= 0)
+                return 0;
+        }
+        int i = 0;
+        try {
+            for (; i < count; i++) {
+                ((Byteable) cursor.offered).bytes(bytes, slot(pos + i) + header);
+                writer.write(cursor.offered, i);
+                if (multiProducer)
+                    bytes.writeOrderedLong(slot(pos + i), pos + i + 1);
+            }
+        } finally {
+            // if the writer threw, the rest of the claimed run is published zeroed, or the consumer would wait forever.
+            if (multiProducer)
+                for (; i < count; i++) {
+                    long slot = slot(pos + i);
+                    bytes.zeroOut(slot + header, slot + header + size);
+                    bytes.writeOrderedLong(slot, pos + i + 1);
+                }
+        }
+        if (!multiProducer)
+            bytes.writeOrderedLong(start + TAIL, pos + count);
+        return count;
+    }
+
+    @Override
+    public T take() {
+        Cursor<T> cursor = cursors.get();
+        if (cursor.takePos >= 0)
+            throw new IllegalStateException("take() again before recycle()");
+        long pos = bytes.readLong(start + HEAD);
+        if (multiProducer) {
+            if (bytes.readVolatileLong(slot(pos)) != pos + 1)
+                return null;
+        } else if (pos >= cachedTail) {
+            cachedTail = bytes.readVolatileLong(start + TAIL);
+            if (pos >= cachedTail)
+                return null;
+        }
+        cursor.takePos = pos;
+        ((Byteable) cursor.taken).bytes(bytes, slot(pos) + header);
+        return cursor.taken;
+    }
+
+    @Override
+    public boolean takeCopy(T element) {
+        T t = take();
+        if (t == null)
+            return false;
+        ((Copyable<T>) element).copyFrom(t);
+        recycle(t);
+        return true;
+    }
+
+    @Override
+    public int drainTo(BatchReader<T> reader, int max) {
+        Cursor<T> cursor = cursors.get();
+        if (cursor.takePos >= 0)
+            throw new IllegalStateException("drainTo(reader, max) before recycle()");
+        long pos = bytes.readLong(start + HEAD);
+        int count;
+        if (multiProducer) {
+            // only the slots published in order up to the first which isn't.
+            count = 0;
+            while (count < max && bytes.readVolatileLong(slot(pos + count)) == pos + count + 1)
+                count++;
+        } else {
+            if (cachedTail - pos < max)
+                cachedTail = bytes.readVolatileLong(start + TAIL);
+            count = (int) Math.min(max, cachedTail - pos);
+        }
+        if (count <= 0)
+            return 0;
+        for (int i = 0; i < count; i++) {
+            ((Byteable) cursor.taken).bytes(bytes, slot(pos + i) + header);
+            reader.read(cursor.taken, i);
+            if (multiProducer)
+                bytes.writeOrderedLong(slot(pos + i), pos + i + capacity);
+        }
+        bytes.writeOrderedLong(start + HEAD, pos + count);
+        return count;
+    }
+
+    /**
+     * Publish an element from offer(), or free the slot of an element from take().
+     */
+    @Override
+    public void recycle(T element) {
+        Cursor<T> cursor = cursors.get();
+        if (element == cursor.offered && cursor.offerPos >= 0) {
+            long pos = cursor.offerPos;
+            cursor.offerPos = -1;
+            if (multiProducer)
+                bytes.writeOrderedLong(slot(pos), pos + 1);
+            else
+                bytes.writeOrderedLong(start + TAIL, pos + 1);
+
+        } else if (element == cursor.taken && cursor.takePos >= 0) {
+            long pos = cursor.takePos;
+            cursor.takePos = -1;
+            if (multiProducer)
+                bytes.writeOrderedLong(slot(pos), pos + capacity);
+            bytes.writeOrderedLong(start + HEAD, pos + 1);
+
+        } else {
+            throw new IllegalArgumentException("Not an element offered or taken by this thread");
+        }
+    }
+
+    static class Cursor<T> {
+        final T offered, taken;
+        long offerPos = -1, takePos = -1;
+
+        Cursor(T offered, T taken) {
+            this.offered = offered;
+            this.taken = taken;
+        }
+    }
+}
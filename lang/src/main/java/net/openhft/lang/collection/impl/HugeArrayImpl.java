@@ -16,44 +16,103 @@
 
 package net.openhft.lang.collection.impl;
 
-import net.openhft.lang.collection.HugeArray;
+import net.openhft.lang.collection.HugeIndex;
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.BytesStore;
 import net.openhft.lang.io.DirectBytes;
 import net.openhft.lang.io.DirectStore;
+import net.openhft.lang.io.MappedStore;
 import net.openhft.lang.model.Byteable;
 import net.openhft.lang.model.Copyable;
+import net.openhft.lang.model.DataValueComparator;
 import net.openhft.lang.model.DataValueClasses;
+import net.openhft.lang.model.DataValueFactory;
+import net.openhft.lang.model.DataValueModels;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 /**
  * User: peter.lawrey Date: 08/10/13 Time: 08:11
  */
-public class HugeArrayImpl<T> implements HugeArray<T> {
-    private static final int MAX_SIZE = 10;
+public class HugeArrayImpl<T> extends AbstractHugeArray<T> {
+    // records are padded to a multiple of their alignment, this is at most a page.
+    private static final int MAX_ALIGNMENT = 4096;
+    private static final long MAGIC = 0x48756765417272L; // "HugeArr"
     private final Class<T> tClass;
+    private final DataValueFactory<T> factory;
     private final long length;
     private final int size;
-    private final DirectStore store;
-    private final List<T> freeList = new ArrayList<T>(MAX_SIZE);
+    private final long start;
+    private final BytesStore store;
+    private final ThreadLocal<T> keyCopies = new ThreadLocal<T>() {
+        @Override
+        protected T initialValue() {
+            T copy = factory.newDirectReference();
+            ((Byteable) copy).bytes(new DirectStore(null, size).bytes(), 0L);
+            return copy;
+        }
+    };
 
     public HugeArrayImpl(Class<T> tClass, long length) {
         this.tClass = tClass;
+        this.factory = DataValueClasses.factoryFor(tClass);
         this.length = length;
 
-        T ref = DataValueClasses.newDirectReference(tClass);
+        T ref = factory.newDirectReference();
         size = ((Byteable) ref).maxSize();
-        store = new DirectStore(null, length * size);
+        // start the first record on a multiple of its alignment so every record is aligned.
+        int alignment = Math.min(Integer.lowestOneBit(size), MAX_ALIGNMENT);
+        store = new DirectStore(null, length * size + alignment - 1);
+        start = -store.address() & (alignment - 1);
         ((Byteable) ref).bytes(store.bytes(), 0L);
         recycle(ref);
     }
 
-    private T createRef() {
-        T ref = DataValueClasses.newDirectReference(tClass);
+    /**
+     * Map the array to a file, so its records outlive the process.  An existing file is used as is provided it was
+     * created for the same length and layout.
+     *
+     * @throws IllegalStateException if the file was created for a different length or layout.
+     */
+    public HugeArrayImpl(Class<T> tClass, long length, File file) throws IOException {
+        this.tClass = tClass;
+        this.factory = DataValueClasses.factoryFor(tClass);
+        this.length = length;
+
+        T ref = factory.newDirectReference();
+        size = ((Byteable) ref).maxSize();
+        long fingerprint = DataValueModels.layoutFingerprint(tClass);
+        // the mapping is page aligned, so the records are aligned if the first one is.
+        int alignment = Math.min(Integer.lowestOneBit(size), MAX_ALIGNMENT);
+        start = (MappedHeader.HEADER_SIZE + alignment - 1) & -alignment;
+        boolean exists = MappedHeader.check(file, MAGIC, size, fingerprint, length);
+        store = new MappedStore(file, FileChannel.MapMode.READ_WRITE, start + length * size);
+        DirectBytes bytes = (DirectBytes) store.bytes();
+        if (!exists)
+            MappedHeader.write(bytes, MAGIC, size, fingerprint, length);
+        ((Byteable) ref).bytes(bytes, 0L);
+        recycle(ref);
+    }
+
+    @Override
+    T createRef() {
+        T ref = factory.newDirectReference();
         ((Byteable) ref).bytes(store.bytes(), 0L);
         return ref;
     }
 
+    @Override
+    int elementSize() {
+        return size;
+    }
+
+    @Override
+    boolean owns(T t) {
+        return ((DirectBytes) ((Byteable) t).bytes()).store() == store;
+    }
+
     @Override
     public long length() {
         return length;
@@ -64,7 +123,7 @@ public class HugeArrayImpl<T> implements HugeArray<T> {
         T t = acquire();
         Byteable byteable = (Byteable) t;
         DirectBytes bytes = (DirectBytes) byteable.bytes();
-        bytes.positionAndSize(index * size, size);
+        bytes.positionAndSize(start + index * size, size);
         return t;
     }
 
@@ -72,43 +131,54 @@ public class HugeArrayImpl<T> implements HugeArray<T> {
     public void get(long index, T element) {
         if (tClass.isInstance(element)) {
             DirectBytes bytes = (DirectBytes) ((Byteable) element).bytes();
-            bytes.positionAndSize(index * size, size);
+            bytes.positionAndSize(start + index * size, size);
             return;
         }
         T t = acquire();
         DirectBytes bytes = (DirectBytes) ((Byteable) t).bytes();
-        bytes.positionAndSize(index * size, size);
+        bytes.positionAndSize(start + index * size, size);
         ((Copyable) element).copyFrom(t);
         recycle(t);
     }
 
-    private T acquire() {
-        int size = freeList.size();
-        if (size > 0)
-            return freeList.remove(size - 1);
-        return createRef();
-    }
-
     @Override
-    public void copyTo(long index, T to) {
-        T from = get(index);
-        ((Copyable<T>) to).copyFrom(from);
-        recycle(from);
+    public void sort(DataValueComparator<T> comparator) {
+        new HugeArraySorter(store.bytes(), start, size, comparator, length, THREADS).sort(length, executor(), THREADS);
+        rebuildIndexes();
     }
 
     @Override
-    public void set(long index, T from) {
-        T to = get(index);
-        ((Copyable<T>) to).copyFrom(from);
-        recycle(to);
+    public HugeIndex createIndex(String fieldName) {
+        return createIndex(tClass, fieldName);
     }
 
     @Override
-    public void recycle(T t) {
-        if (freeList.size() < MAX_SIZE) {
-            assert ((DirectBytes) ((Byteable) t).bytes()).store() == store;
-            assert !freeList.contains(t) : "recycling object already recycled";
-            freeList.add(t);
+    public long binarySearch(T key, DataValueComparator<T> comparator) {
+        Bytes keyBytes = null;
+        long keyOffset = 0;
+        if (key instanceof Byteable) {
+            keyBytes = ((Byteable) key).bytes();
+            keyOffset = ((Byteable) key).offset();
+        }
+        if (keyBytes == null) {
+            // a copy of the key in a record of its own.
+            T copy = keyCopies.get();
+            ((Copyable<T>) copy).copyFrom(key);
+            keyBytes = ((Byteable) copy).bytes();
+            keyOffset = 0;
+        }
+        Bytes bytes = store.bytes();
+        long low = 0, high = length - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            int cmp = comparator.compare(bytes, start + mid * size, keyBytes, keyOffset);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
         }
+        return -(low + 1);
     }
 }
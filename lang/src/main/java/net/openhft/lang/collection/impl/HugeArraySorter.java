@@ -0,0 +1,286 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection.impl;
+
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectStore;
+import net.openhft.lang.model.DataValueComparator;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sorts records in place with a quick sort, which falls back to a heap sort if it goes too deep.  Ranges larger than a
+ * threshold are queued, and a helper is submitted to the executor for each one queued, up to threads - 1 at a time.  A
+ * helper sorts ranges until the queue is empty and returns, so an idle helper doesn't hold a thread of the pool.  The
+ * caller sorts ranges as well and waits only while ranges are being sorted by helpers which have started, so it never
+ * waits for a task which hasn't started.  The records are found by bytes(long) and offset(long), which are overridden
+ * for records which are not in one block of memory.
+ */
+class HugeArraySorter implements Runnable {
+    private static final int INSERTION_SORT = 16;
+    private static final long MIN_PARALLEL = 64 * 1024;
+
+    private final Bytes bytes;
+    private final long start;
+    private final int size;
+    private final DataValueComparator<?> comparator;
+    private final long parallelThreshold;
+    private final Queue<long[]> ranges = new ConcurrentLinkedQueue<long[]>();
+    // the ranges queued or being sorted.
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicInteger helpers = new AtomicInteger();
+    private final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+    private Executor executor;
+    private int maxHelpers;
+
+    HugeArraySorter(Bytes bytes, long start, int size, DataValueComparator<?> comparator, long length, int threads) {
+        this.bytes = bytes;
+        this.start = start;
+        this.size = size;
+        this.comparator = comparator;
+        parallelThreshold = Math.max(MIN_PARALLEL, length / (threads * 4L));
+    }
+
+    void sort(long length, Executor executor, int threads) {
+        if (length < 2)
+            return;
+        this.executor = executor;
+        maxHelpers = threads - 1;
+        // the caller sorts the whole range, any helpers start as it queues the larger sub ranges.
+        pending.incrementAndGet();
+        ranges.add(new long[]{0, length, 2 * (64 - Long.numberOfLeadingZeros(length))});
+        DirectStore temp = newTemp();
+        try {
+            Bytes tempBytes = temp.bytes();
+            boolean interrupted = false;
+            while (true) {
+                long[] range = ranges.poll();
+                if (range != null) {
+                    sortRange(range, tempBytes);
+                    continue;
+                }
+                synchronized (this) {
+                    if (pending.get() == 0)
+                        break;
+                    if (ranges.isEmpty()) {
+                        try {
+                            wait();
+                        } catch (InterruptedException ie) {
+                            // the helpers are still writing to the records so keep waiting.
+                            interrupted = true;
+                        }
+                    }
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        } finally {
+            temp.free();
+        }
+
+        Throwable e = thrown.get();
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+    }
+
+    private void add(long from, long to, int depth) {
+        pending.incrementAndGet();
+        ranges.add(new long[]{from, to, depth});
+        synchronized (this) {
+            notifyAll();
+        }
+        int count;
+        while ((count = helpers.get()) < maxHelpers) {
+            if (helpers.compareAndSet(count, count + 1)) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    // the range is still queued for the threads already sorting.
+                    helpers.decrementAndGet();
+                    throw e;
+                }
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        DirectStore temp = newTemp();
+        try {
+            Bytes tempBytes = temp.bytes();
+            long[] range;
+            while ((range = ranges.poll()) != null)
+                sortRange(range, tempBytes);
+        } finally {
+            helpers.decrementAndGet();
+            temp.free();
+        }
+    }
+
+    // each thread has its own records for the pivot and for swapping.
+    private DirectStore newTemp() {
+        return DirectStore.allocate(2L * size);
+    }
+
+    private void sortRange(long[] range, Bytes temp) {
+        try {
+            if (thrown.get() == null)
+                sort(range[0], range[1], (int) range[2], temp);
+        } catch (Throwable e) {
+            thrown.compareAndSet(null, e);
+        } finally {
+            if (pending.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Compare two records, overridden for records which are not described by a DataValueComparator.
+     */
+    int compare(Bytes bytes1, long offset1, Bytes bytes2, long offset2) {
+        return comparator.compare(bytes1, offset1, bytes2, offset2);
+    }
+
+    /**
+     * The Bytes of a record, overridden for records which are not in one block of memory.
+     */
+    Bytes bytes(long index) {
+        return bytes;
+    }
+
+    /**
+     * The offset of a record in bytes(index).
+     */
+    long offset(long index) {
+        return start + index * size;
+    }
+
+    private void sort(long from, long to, int depth, Bytes temp) {
+        while (to - from > INSERTION_SORT) {
+            if (depth-- <= 0) {
+                heapSort(from, to, temp);
+                return;
+            }
+            long split = partition(from, to, temp) + 1;
+            // sort the smaller side, or queue it for another thread, and loop on the larger.
+            long from2, to2;
+            if (split - from < to - split) {
+                from2 = from;
+                to2 = split;
+                from = split;
+            } else {
+                from2 = split;
+                to2 = to;
+                to = split;
+            }
+            if (to2 - from2 > parallelThreshold)
+                add(from2, to2, depth);
+            else
+                sort(from2, to2, depth, temp);
+        }
+        insertionSort(from, to, temp);
+    }
+
+    /**
+     * A Hoare partition around the median of the first, middle and last records.
+     *
+     * @return the last index of the lower part, which is in [from, to - 2].
+     */
+    private long partition(long from, long to, Bytes temp) {
+        long mid = from + (to - from) / 2;
+        long pivot = median(from, mid, to - 1);
+        temp.write(0, bytes(pivot), offset(pivot), size);
+        long i = from - 1, j = to;
+        while (true) {
+            do {
+                i++;
+            } while (compare(bytes(i), offset(i), temp, 0) < 0);
+            do {
+                j--;
+            } while (compare(bytes(j), offset(j), temp, 0) > 0);
+            if (i >= j)
+                return j;
+            swap(i, j, temp);
+        }
+    }
+
+    private long median(long a, long b, long c) {
+        if (compare(a, b) < 0)
+            return compare(b, c) < 0 ? b : compare(a, c) < 0 ? c : a;
+        return compare(a, c) < 0 ? a : compare(b, c) < 0 ? c : b;
+    }
+
+    private int compare(long i, long j) {
+        return compare(bytes(i), offset(i), bytes(j), offset(j));
+    }
+
+    private void swap(long i, long j, Bytes temp) {
+        temp.write(size, bytes(i), offset(i), size);
+        bytes(i).write(offset(i), bytes(j), offset(j), size);
+        bytes(j).write(offset(j), temp, size, size);
+    }
+
+    private void insertionSort(long from, long to, Bytes temp) {
+        for (long i = from + 1; i < to; i++) {
+            if (compare(i - 1, i) <= 0)
+                continue;
+            temp.write(size, bytes(i), offset(i), size);
+            long j = i;
+            do {
+                bytes(j).write(offset(j), bytes(j - 1), offset(j - 1), size);
+                j--;
+            } while (j > from && compare(bytes(j - 1), offset(j - 1), temp, size) > 0);
+            bytes(j).write(offset(j), temp, size, size);
+        }
+    }
+
+    private void heapSort(long from, long to, Bytes temp) {
+        long n = to - from;
+        for (long i = n / 2 - 1; i >= 0; i--)
+            siftDown(from, i, n, temp);
+        for (long end = n - 1; end > 0; end--) {
+            swap(from, from + end, temp);
+            siftDown(from, 0, end, temp);
+        }
+    }
+
+    private void siftDown(long from, long i, long n, Bytes temp) {
+        while (true) {
+            long child = 2 * i + 1;
+            if (child >= n)
+                return;
+            if (child + 1 < n && compare(from + child, from + child + 1) < 0)
+                child++;
+            if (compare(from + i, from + child) >= 0)
+                return;
+            swap(from + i, from + child, temp);
+            i = child;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection.impl;
+
+import net.openhft.lang.collection.ElementConsumer;
+import net.openhft.lang.collection.HugeIndex;
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectStore;
+import net.openhft.lang.model.DataValueField;
+
+/**
+ * A HugeIndex held as entries of the value then the array index, 8 bytes each, sorted in a DirectStore.  A change of
+ * value moves the entries between its old and new positions along by one, so it costs the distance it moves.
+ */
+class HugeIndexImpl<T> implements HugeIndex {
+    private static final int ENTRY = 16;
+    private final AbstractHugeArray<T> array;
+    private final DataValueField<T> field;
+    private Bytes bytes = null;
+    private long capacity = 0;
+    private long size = 0;
+    // the value of the element being set, before it changes.
+    private long oldValue;
+
+    HugeIndexImpl(AbstractHugeArray<T> array, DataValueField<T> field) {
+        this.array = array;
+        this.field = field;
+    }
+
+    @Override
+    public String fieldName() {
+        return field.name();
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public long lowerBound(long value) {
+        // array indexes are not negative, so this is before all the entries of this value.
+        return position(value, -1);
+    }
+
+    @Override
+    public long value(long position) {
+        return bytes.readLong(offset(position));
+    }
+
+    @Override
+    public long arrayIndex(long position) {
+        return bytes.readLong(offset(position) + 8);
+    }
+
+    private long offset(long position) {
+        if (position < 0 || position >= size)
+            throw new IndexOutOfBoundsException("position " + position + " size " + size);
+        return position * ENTRY;
+    }
+
+    @Override
+    public long indexOf(long value) {
+        long position = lowerBound(value);
+        return position < size && value(position) == value ? arrayIndex(position) : -1;
+    }
+
+    @Override
+    public long count(long fromValue, long toValue) {
+        return toValue <= fromValue ? 0 : lowerBound(toValue) - lowerBound(fromValue);
+    }
+
+    /**
+     * @return the position of the first entry at or after (value, arrayIndex).
+     */
+    private long position(long value, long arrayIndex) {
+        long low = 0, high = size;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            long value2 = bytes.readLong(mid * ENTRY);
+            if (value2 < value || value2 == value && bytes.readLong(mid * ENTRY + 8) < arrayIndex)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Runs under the array's monitor, as set(long, T) does when it moves an entry, so a set() waits for this.
+     */
+    @Override
+    public void rebuild() {
+        synchronized (array) {
+            long length = array.length();
+            if (length > capacity) {
+                bytes = DirectStore.allocate(Math.max(1, length) * ENTRY).bytes();
+                capacity = length;
+            }
+            final Bytes bytes = this.bytes;
+            array.parallelForEach(0, length, new ElementConsumer<T>() {
+                @Override
+                public void accept(T element, long index) {
+                    bytes.writeLong(index * ENTRY, valueOf(element));
+                    bytes.writeLong(index * ENTRY + 8, index);
+                }
+            });
+            new HugeArraySorter(bytes, 0, ENTRY, null, length, AbstractHugeArray.THREADS) {
+                @Override
+                int compare(Bytes bytes1, long offset1, Bytes bytes2, long offset2) {
+                    long value1 = bytes1.readLong(offset1), value2 = bytes2.readLong(offset2);
+                    if (value1 != value2)
+                        return value1 < value2 ? -1 : 1;
+                    long index1 = bytes1.readLong(offset1 + 8), index2 = bytes2.readLong(offset2 + 8);
+                    return index1 < index2 ? -1 : index1 > index2 ? 1 : 0;
+                }
+            }.sort(length, AbstractHugeArray.executor(), AbstractHugeArray.THREADS);
+            size = length;
+        }
+    }
+
+    private long valueOf(T element) {
+        return array.readField(field, element);
+    }
+
+    /**
+     * Called with the element at index before set(long, T) changes it.
+     */
+    void beforeSet(T element, long index) {
+        if (index < size)
+            oldValue = valueOf(element);
+    }
+
+    /**
+     * Called with the element at index after set(long, T) changed it, to move its entry.
+     */
+    void afterSet(T element, long index) {
+        if (index >= size)
+            return;
+        long newValue = valueOf(element);
+        if (newValue == oldValue)
+            return;
+        long from = position(oldValue, index);
+        long to = position(newValue, index);
+        if (to > from) {
+            // the entries after it move back as the entry moves forward.
+            to--;
+            bytes.write(from * ENTRY, bytes, (from + 1) * ENTRY, (to - from) * ENTRY);
+        } else {
+            bytes.write((to + 1) * ENTRY, bytes, to * ENTRY, (from - to) * ENTRY);
+        }
+        bytes.writeLong(to * ENTRY, newValue);
+        bytes.writeLong(to * ENTRY + 8, index);
+    }
+
+    @Override
+    public String toString() {
+        return "HugeIndex(" + field.name() + ", size: " + size + ")";
+    }
+}
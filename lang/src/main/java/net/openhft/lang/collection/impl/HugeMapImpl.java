@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection.impl;
+
+import net.openhft.lang.Maths;
+import net.openhft.lang.collection.HugeMap;
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectBytes;
+import net.openhft.lang.io.DirectStore;
+import net.openhft.lang.model.Byteable;
+import net.openhft.lang.model.Copyable;
+import net.openhft.lang.model.DataValueClasses;
+import net.openhft.lang.model.DeltaMarshallable;
+import net.openhft.lang.model.SeqLocked;
+
+/**
+ * An open addressing hash map with linear probing.  Each slot holds a header, the key and the value as their
+ * $$Native records, and the header is the hash of the key's bytes, or 0 for a free slot.  Keys are equal if their
+ * bytes are equal, and a key which is not already a $$Native record is copied into one to be hashed and compared.
+ * As keys are compared by their bytes, float and double fields are equal only if their bits are, so -0.0 and 0.0 are
+ * different keys and NaN finds NaN.  Keys which are DeltaMarshallable or SeqLocked are rejected as their records also
+ * hold a dirty mask or a version which is not part of the key.  Removing an entry moves later entries of the same run
+ * back, so there are no tombstones.  This class is not thread safe.
+ */
+public class HugeMapImpl<K, V> implements HugeMap<K, V> {
+    private static final int HEADER = 8;
+    private static final long FREE = 0L;
+    private static final long K0 = 0x9E3779B97F4A7C15L;
+    private static final long K1 = 0xBF58476D1CE4E5B9L;
+
+    private final long capacity;
+    private final long mask;
+    private final int keySize;
+    private final int slotSize;
+    private final DirectStore store;
+    private final DirectBytes bytes;
+    private final DirectStore keyStore;
+    private final K keyCopy;
+    private final V valueRef;
+    private long size = 0;
+    // the bytes of the key being looked up.
+    private Bytes keyBytes;
+    private long keyOffset;
+
+    /**
+     * @throws IllegalArgumentException if the keys are DeltaMarshallable or SeqLocked.
+     */
+    public HugeMapImpl(Class<K> kClass, Class<V> vClass, long capacity) {
+        if (DeltaMarshallable.class.isAssignableFrom(kClass) || SeqLocked.class.isAssignableFrom(kClass))
+            throw new IllegalArgumentException(kClass.getName()
+                    + " can't be a key as it is DeltaMarshallable or SeqLocked, so its bytes are not only its fields");
+        this.capacity = capacity;
+        // keep the slots at most 3/4 full.
+        long slots = Maths.nextPower2(capacity + capacity / 3 + 1, 16);
+        mask = slots - 1;
+
+        keyCopy = DataValueClasses.newDirectReference(kClass);
+        keySize = ((Byteable) keyCopy).maxSize();
+        keyStore = DirectStore.allocate(keySize);
+        ((Byteable) keyCopy).bytes(keyStore.bytes(), 0L);
+        valueRef = DataValueClasses.newDirectReference(vClass);
+        int valueSize = ((Byteable) valueRef).maxSize();
+        slotSize = (HEADER + keySize + valueSize + 7) & ~7;
+
+        store = DirectStore.allocate(slots * slotSize);
+        bytes = store.bytes();
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public long capacity() {
+        return capacity;
+    }
+
+    @Override
+    public boolean get(K key, V usingValue) {
+        long offset = find(lookup(key));
+        if (offset < 0)
+            return false;
+        ((Copyable<V>) usingValue).copyFrom(value(offset));
+        return true;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return find(lookup(key)) >= 0;
+    }
+
+    @Override
+    public boolean put(K key, V value) {
+        long header = lookup(key);
+        long offset = find(header);
+        boolean added = offset < 0;
+        if (added) {
+            if (size >= capacity)
+                throw new IllegalStateException("HugeMap is full, capacity: " + capacity);
+            offset = ~offset;
+            bytes.writeLong(offset, header);
+            bytes.write(offset + HEADER, keyBytes, keyOffset, keySize);
+            size++;
+        }
+        ((Copyable<V>) value(offset)).copyFrom(value);
+        return added;
+    }
+
+    @Override
+    public boolean remove(K key) {
+        long offset = find(lookup(key));
+        if (offset < 0)
+            return false;
+        long hole = offset / slotSize;
+        for (long slot = (hole + 1) & mask; ; slot = (slot + 1) & mask) {
+            long header = bytes.readLong(slot * slotSize);
+            if (header == FREE)
+                break;
+            // move it into the hole if the hole is between its ideal slot and where it is.
+            long ideal = (header >>> 1) & mask;
+            if (((slot - ideal) & mask) >= ((slot - hole) & mask)) {
+                bytes.write(hole * slotSize, bytes, slot * slotSize, slotSize);
+                hole = slot;
+            }
+        }
+        bytes.zeroOut(hole * slotSize, (hole + 1) * slotSize);
+        size--;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        bytes.zeroOut(0, (mask + 1) * slotSize);
+        size = 0;
+    }
+
+    @Override
+    public void free() {
+        store.free();
+        keyStore.free();
+    }
+
+    /**
+     * Point keyBytes at the $$Native record of the key and return its header.
+     */
+    private long lookup(K key) {
+        if (key instanceof Byteable && ((Byteable) key).bytes() != null) {
+            keyBytes = ((Byteable) key).bytes();
+            keyOffset = ((Byteable) key).offset();
+        } else {
+            ((Copyable<K>) keyCopy).copyFrom(key);
+            keyBytes = ((Byteable) keyCopy).bytes();
+            keyOffset = 0;
+        }
+        long h = 0;
+        int i = 0;
+        for (; i <= keySize - 8; i += 8)
+            h = (h + keyBytes.readLong(keyOffset + i)) * K0;
+        for (; i < keySize; i++)
+            h = (h + keyBytes.readByte(keyOffset + i)) * K0;
+        h ^= h >>> 31;
+        h *= K1;
+        h ^= h >>> 29;
+        return h | 1;
+    }
+
+    /**
+     * @return the offset of the slot with this key, or ~offset of the free slot where it would go.
+     */
+    private long find(long header) {
+        for (long slot = (header >>> 1) & mask; ; slot = (slot + 1) & mask) {
+            long offset = slot * slotSize;
+            long h = bytes.readLong(offset);
+            if (h == FREE)
+                return ~offset;
+            if (h == header && keyEquals(offset + HEADER))
+                return offset;
+        }
+    }
+
+    private boolean keyEquals(long offset) {
+        int i = 0;
+        for (; i <= keySize - 8; i += 8)
+            if (bytes.readLong(offset + i) != keyBytes.readLong(keyOffset + i))
+                return false;
+        for (; i < keySize; i++)
+            if (bytes.readByte(offset + i) != keyBytes.readByte(keyOffset + i))
+                return false;
+        return true;
+    }
+
+    private V value(long offset) {
+        ((Byteable) valueRef).bytes(bytes, offset + HEADER + keySize);
+        return valueRef;
+    }
+}
@@ -16,6 +16,8 @@
 
 package net.openhft.lang.collection.impl;
 
+import net.openhft.lang.collection.BatchReader;
+import net.openhft.lang.collection.BatchWriter;
 import net.openhft.lang.collection.HugeArray;
 import net.openhft.lang.collection.HugeQueue;
 
@@ -55,6 +57,23 @@ public class HugeQueueImpl<T> implements HugeQueue<T> {
         return true;
     }
 
+    @Override
+    public int offer(int n, BatchWriter<T> writer) {
+        // one slot is always left empty.
+        long free = size - 1 - (end - start + size) % size;
+        int count = (int) Math.min(n, free);
+        if (count <= 0)
+            return 0;
+        T t = array.get(end);
+        for (int i = 0; i < count; i++) {
+            array.get((end + i) % size, t);
+            writer.write(t, i);
+        }
+        array.recycle(t);
+        end = (end + count) % size;
+        return count;
+    }
+
     @Override
     public T take() {
         if (isEmpty())
@@ -82,6 +101,21 @@ public class HugeQueueImpl<T> implements HugeQueue<T> {
         return t;
     }
 
+    @Override
+    public int drainTo(BatchReader<T> reader, int max) {
+        int count = (int) Math.min(max, (end - start + size) % size);
+        if (count <= 0)
+            return 0;
+        T t = array.get(start);
+        for (int i = 0; i < count; i++) {
+            array.get((start + i) % size, t);
+            reader.read(t, i);
+        }
+        array.recycle(t);
+        start = (start + count) % size;
+        return count;
+    }
+
     @Override
     public void recycle(T element) {
         array.recycle(element);
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection.impl;
+
+import net.openhft.lang.io.Bytes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * The header of a collection mapped to a file, the magic number of the kind of collection, maxSize() of its elements,
+ * the layout fingerprint of their interface and the length.  It takes one cache line.
+ */
+enum MappedHeader {
+    ;
+    static final int HEADER_SIZE = 64;
+    private static final int MAX_SIZE_OFFSET = 8;
+    private static final int FINGERPRINT_OFFSET = 16;
+    private static final int LENGTH_OFFSET = 24;
+
+    /**
+     * Read the header before mapping, as mapping would resize a file of the wrong length.
+     *
+     * @return true if the file exists with this header, false if it is new.
+     * @throws IllegalStateException if the file exists with a different header.
+     */
+    static boolean check(File file, long magic, int size, long fingerprint, long length) throws IOException {
+        if (file.length() <= 0)
+            return false;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            while (header.remaining() > 0 && channel.read(header) >= 0) ;
+        } finally {
+            in.close();
+        }
+        if (header.getLong(0) != magic)
+            throw new IllegalStateException(file + " has a magic number of " + Long.toHexString(header.getLong(0))
+                    + " not " + Long.toHexString(magic));
+        if (header.getInt(MAX_SIZE_OFFSET) != size || header.getLong(FINGERPRINT_OFFSET) != fingerprint)
+            throw new IllegalStateException(file + " has a different layout, expected maxSize " + size
+                    + " but was " + header.getInt(MAX_SIZE_OFFSET));
+        if (header.getLong(LENGTH_OFFSET) != length)
+            throw new IllegalStateException(file + " has a length of " + header.getLong(LENGTH_OFFSET)
+                    + " not " + length);
+        return true;
+    }
+
+    /**
+     * Write the header of a new file, the magic number last.
+     */
+    static void write(Bytes bytes, long magic, int size, long fingerprint, long length) {
+        bytes.writeInt(MAX_SIZE_OFFSET, size);
+        bytes.writeLong(FINGERPRINT_OFFSET, fingerprint);
+        bytes.writeLong(LENGTH_OFFSET, length);
+        bytes.writeOrderedLong(0L, magic);
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection.impl;
+
+import net.openhft.lang.Maths;
+import net.openhft.lang.collection.HugeIndex;
+import net.openhft.lang.collection.HugeList;
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectStore;
+import net.openhft.lang.model.Byteable;
+import net.openhft.lang.model.Copyable;
+import net.openhft.lang.model.DataValueClasses;
+import net.openhft.lang.model.DataValueComparator;
+import net.openhft.lang.model.DataValueFactory;
+
+/**
+ * A HugeList held in segments of a power of two elements, so an index is split into a segment and an offset with a
+ * shift and a mask.  Only the small table of segments is copied as the list grows, never the elements.
+ * <p/>
+ * One thread at a time appends, and other threads can get the elements below length().
+ */
+public class SegmentedHugeListImpl<T> extends AbstractHugeArray<T> implements HugeList<T> {
+    // the default segments are about this many bytes.
+    private static final int SEGMENT_BYTES = Integer.getInteger("hugeList.segmentBytes", 1 << 20);
+    // records are padded to a multiple of their alignment, this is at most a page.
+    private static final int MAX_ALIGNMENT = 4096;
+    private final Class<T> tClass;
+    private final Class<T> directClass;
+    private final DataValueFactory<T> factory;
+    private final int size;
+    private final int alignment;
+    private final int segmentShift;
+    private final long segmentMask;
+    // has spare room for segments to come, only the first segmentCount are allocated.
+    private volatile Segment[] segments = new Segment[16];
+    private volatile int segmentCount = 0;
+    // written after the segments it needs are, so a reader of length sees them.
+    private volatile long length = 0;
+    private final ThreadLocal<T> keyCopies = new ThreadLocal<T>() {
+        @Override
+        protected T initialValue() {
+            T copy = factory.newDirectReference();
+            ((Byteable) copy).bytes(DirectStore.allocate(size).bytes(), 0L);
+            return copy;
+        }
+    };
+
+    public SegmentedHugeListImpl(Class<T> tClass) {
+        this(tClass, 0);
+    }
+
+    /**
+     * @param segmentLength the number of elements in a segment, rounded up to a power of two, or 0 for segments of
+     *                      about -DhugeList.segmentBytes=1048576 bytes.
+     */
+    public SegmentedHugeListImpl(Class<T> tClass, int segmentLength) {
+        this.tClass = tClass;
+        this.factory = DataValueClasses.factoryFor(tClass);
+        this.directClass = factory.directClass();
+
+        T ref = factory.newDirectReference();
+        size = ((Byteable) ref).maxSize();
+        alignment = Math.min(Integer.lowestOneBit(size), MAX_ALIGNMENT);
+        if (segmentLength <= 0)
+            segmentLength = Integer.highestOneBit(Math.max(1, SEGMENT_BYTES / size));
+        segmentLength = Maths.nextPower2(segmentLength, 1);
+        segmentShift = Integer.numberOfTrailingZeros(segmentLength);
+        segmentMask = segmentLength - 1;
+        recycle(ref);
+    }
+
+    static final class Segment {
+        final Bytes bytes;
+        // the offset of the first element, so every element is aligned.
+        final long start;
+
+        Segment(long size, int alignment) {
+            DirectStore store = DirectStore.allocate(size + alignment - 1);
+            bytes = store.bytes();
+            start = -store.address() & (alignment - 1);
+        }
+    }
+
+    @Override
+    T createRef() {
+        return factory.newDirectReference();
+    }
+
+    @Override
+    int elementSize() {
+        return size;
+    }
+
+    @Override
+    boolean owns(T t) {
+        return directClass.isInstance(t);
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public long capacity() {
+        return (long) segmentCount << segmentShift;
+    }
+
+    @Override
+    public synchronized void ensureCapacity(long capacity) {
+        long count = (capacity + segmentMask) >>> segmentShift;
+        if (count <= segmentCount)
+            return;
+        if (count > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many segments for a capacity of " + capacity);
+        Segment[] segments = this.segments;
+        if (count > segments.length) {
+            // double the table of segments, which is small, the segments are not copied.
+            Segment[] segments2 = new Segment[(int) Math.min(Integer.MAX_VALUE, Math.max(count, 2L * segments.length))];
+            System.arraycopy(segments, 0, segments2, 0, segmentCount);
+            segments = segments2;
+        }
+        for (; segmentCount < count; segmentCount++)
+            segments[segmentCount] = new Segment((segmentMask + 1) * size, alignment);
+        this.segments = segments;
+    }
+
+    @Override
+    public T append() {
+        return get(claim());
+    }
+
+    @Override
+    public long add(T t) {
+        long index = claim();
+        set(index, t);
+        return index;
+    }
+
+    private synchronized long claim() {
+        long index = length;
+        if (index >= capacity())
+            ensureCapacity(index + 1);
+        length = index + 1;
+        return index;
+    }
+
+    @Override
+    public T get(long index) {
+        T t = acquire();
+        bind(t, index);
+        return t;
+    }
+
+    @Override
+    public void get(long index, T element) {
+        if (directClass.isInstance(element)) {
+            bind(element, index);
+            return;
+        }
+        T t = get(index);
+        ((Copyable) element).copyFrom(t);
+        recycle(t);
+    }
+
+    private void bind(T t, long index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("index " + index + " length " + length);
+        Segment segment = segments[((int) (index >>> segmentShift))];
+        ((Byteable) t).bytes(segment.bytes, segment.start + (index & segmentMask) * size);
+    }
+
+    /**
+     * Sorts the elements below length() in place, finding each by its segment and offset.  Appends must not run at the
+     * same time.
+     */
+    @Override
+    public void sort(DataValueComparator<T> comparator) {
+        final Segment[] segments = this.segments;
+        long length = this.length;
+        new HugeArraySorter(null, 0L, size, comparator, length, THREADS) {
+            @Override
+            Bytes bytes(long index) {
+                return segments[((int) (index >>> segmentShift))].bytes;
+            }
+
+            @Override
+            long offset(long index) {
+                return segments[((int) (index >>> segmentShift))].start + (index & segmentMask) * size;
+            }
+        }.sort(length, executor(), THREADS);
+        rebuildIndexes();
+    }
+
+    /**
+     * The index is built from the elements so far, and needs rebuild() to index the elements added after.
+     */
+    @Override
+    public HugeIndex createIndex(String fieldName) {
+        return createIndex(tClass, fieldName);
+    }
+
+    @Override
+    public long binarySearch(T key, DataValueComparator<T> comparator) {
+        Bytes keyBytes = null;
+        long keyOffset = 0;
+        if (key instanceof Byteable) {
+            keyBytes = ((Byteable) key).bytes();
+            keyOffset = ((Byteable) key).offset();
+        }
+        if (keyBytes == null) {
+            // a copy of the key in a record of its own.
+            T copy = keyCopies.get();
+            ((Copyable<T>) copy).copyFrom(key);
+            keyBytes = ((Byteable) copy).bytes();
+            keyOffset = 0;
+        }
+        T t = acquire();
+        try {
+            Byteable element = (Byteable) t;
+            long low = 0, high = length - 1;
+            while (low <= high) {
+                long mid = (low + high) >>> 1;
+                bind(t, mid);
+                int cmp = comparator.compare(element.bytes(), element.offset(), keyBytes, keyOffset);
+                if (cmp < 0)
+                    low = mid + 1;
+                else if (cmp > 0)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+            return -(low + 1);
+        } finally {
+            recycle(t);
+        }
+    }
+}
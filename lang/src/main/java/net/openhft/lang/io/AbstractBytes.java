@@ -814,16 +814,18 @@ public abstract class AbstractBytes implements Bytes {
             position(offset);
             if (s == null) {
                 writeStopBit(-1);
-                return;
+            } else {
+                long strlen = s.length();
+                long utflen = findUTFLength(s, strlen);
+                long totalSize = IOTools.stopBitLength(utflen) + utflen;
+                if (totalSize > maxSize)
+                    throw new IllegalStateException("Attempted to write " + totalSize + " byte String, when only " + maxSize + " allowed");
+
+                writeStopBit(utflen);
+                writeUTF0(s, strlen);
             }
-            long strlen = s.length();
-            long utflen = findUTFLength(s, strlen);
-            long totalSize = IOTools.stopBitLength(utflen) + utflen;
-            if (totalSize > maxSize)
-                throw new IllegalStateException("Attempted to write " + totalSize + " byte String, when only " + maxSize + " allowed");
-
-            writeStopBit(utflen);
-            writeUTF0(s, strlen);
+            // clear the rest of the field so equal Strings leave equal bytes.
+            zeroOut(position(), Math.min(offset + maxSize, limit()));
         } finally {
             position(position);
         }
@@ -2271,8 +2273,8 @@ public abstract class AbstractBytes implements Bytes {
     public float addAtomicFloat(long offset, float delta) {
         for (; ; ) {
             int current = readVolatileInt(offset);
-            int next = Float.floatToRawIntBits(Float.intBitsToFloat(current) + delta);
-            if (compareAndSwapInt(offset, current, next))
+            float next = Float.intBitsToFloat(current) + delta;
+            if (compareAndSwapInt(offset, current, Float.floatToRawIntBits(next)))
                 return next;
         }
     }
@@ -2281,8 +2283,8 @@ public abstract class AbstractBytes implements Bytes {
     public double addAtomicDouble(long offset, double delta) {
         for (; ; ) {
             long current = readVolatileLong(offset);
-            long next = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + delta);
-            if (compareAndSwapLong(offset, current, next))
+            double next = Double.longBitsToDouble(current) + delta;
+            if (compareAndSwapLong(offset, current, Double.doubleToRawLongBits(next)))
                 return next;
         }
     }
@@ -2356,6 +2358,26 @@ public abstract class AbstractBytes implements Bytes {
         }
     }
 
+    @Override
+    public void write(long offset, RandomDataInput bytes, long position, long length) {
+        if (offset < 0 || offset + length > capacity())
+            throw new IllegalArgumentException("Attempt to write " + length + " bytes at " + offset + " with a capacity of " + capacity());
+        if (bytes.byteOrder() == byteOrder()) {
+            while (length >= 8) {
+                writeLong(offset, bytes.readLong(position));
+                offset += 8;
+                position += 8;
+                length -= 8;
+            }
+        }
+        while (length >= 1) {
+            writeByte(offset, bytes.readByte(position));
+            offset++;
+            position++;
+            length--;
+        }
+    }
+
     public boolean startsWith(RandomDataInput input) {
         long inputRemaining = input.remaining();
         if (remaining() < inputRemaining) return false;
@@ -317,6 +317,29 @@ public class NativeBytes extends AbstractBytes {
         positionAddr += bytes.length;
     }
 
+    @Override
+    public void write(RandomDataInput bytes, long position, long length) {
+        if (!(bytes instanceof NativeBytes)) {
+            super.write(bytes, position, length);
+            return;
+        }
+        if (length > remaining())
+            throw new IllegalArgumentException("Attempt to write " + length + " bytes with " + remaining() + " remaining");
+        UNSAFE.copyMemory(((NativeBytes) bytes).startAddr + position, positionAddr, length);
+        positionAddr += length;
+    }
+
+    @Override
+    public void write(long offset, RandomDataInput bytes, long position, long length) {
+        if (!(bytes instanceof NativeBytes)) {
+            super.write(offset, bytes, position, length);
+            return;
+        }
+        if (offset < 0 || offset + length > capacity())
+            throw new IllegalArgumentException("Attempt to write " + length + " bytes at " + offset + " with a capacity of " + capacity());
+        UNSAFE.copyMemory(((NativeBytes) bytes).startAddr + position, startAddr + offset, length);
+    }
+
     @Override
     public void write(byte[] bytes, int off, int len) {
         UNSAFE.copyMemory(bytes, BYTES_OFFSET + off, null, positionAddr, len);
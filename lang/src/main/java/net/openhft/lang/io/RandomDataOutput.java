@@ -47,6 +47,16 @@ public interface RandomDataOutput extends ObjectOutput, RandomAccess, BytesCommo
      */
     void write(RandomDataInput bytes, long position, long length);
 
+    /**
+     * Copy from one Bytes to another at an offset, the positions of both are not changed
+     *
+     * @param offset   to copy to
+     * @param bytes    to copy
+     * @param position to copy from
+     * @param length   to copy
+     */
+    void write(long offset, RandomDataInput bytes, long position, long length);
+
     /**
      * Writes to the output stream the eight low-order bits of the argument <code>b</code>. The 24 high-order  bits of
      * <code>b</code> are ignored.
@@ -0,0 +1,646 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * A minimal class file writer, just enough for the generated data value classes.  It writes version 49 (Java 5)
+ * class files so no stack map frames are needed.
+ */
+final class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+    static final int ACC_SYNCHRONIZED = 0x0020;
+    static final int ACC_VOLATILE = 0x0040;
+    static final int ACC_BRIDGE = 0x0040;
+    static final int ACC_SYNTHETIC = 0x1000;
+
+    static final int ACONST_NULL = 1, ICONST_0 = 3, LCONST_0 = 9, BIPUSH = 16, SIPUSH = 17, LDC = 18, LDC_W = 19, LDC2_W = 20;
+    static final int ILOAD = 21, LLOAD = 22, FLOAD = 23, DLOAD = 24, ALOAD = 25;
+    static final int IALOAD = 46, LALOAD = 47, FALOAD = 48, DALOAD = 49, AALOAD = 50, BALOAD = 51, CALOAD = 52, SALOAD = 53;
+    static final int ISTORE = 54, LSTORE = 55, FSTORE = 56, DSTORE = 57, ASTORE = 58;
+    static final int IASTORE = 79, LASTORE = 80, FASTORE = 81, DASTORE = 82, AASTORE = 83, BASTORE = 84, CASTORE = 85, SASTORE = 86;
+    static final int POP = 87, POP2 = 88, DUP = 89, DUP_X1 = 90, DUP2_X1 = 93;
+    static final int IADD = 96, LADD = 97, FADD = 98, DADD = 99, LSUB = 101, IMUL = 104, LMUL = 105, DMUL = 107, DDIV = 111;
+    static final int LSHL = 121, LUSHR = 125, LAND = 127, LOR = 129, LXOR = 131, IINC = 132;
+    static final int I2L = 133, I2F = 134, I2D = 135, L2I = 136, L2F = 137, L2D = 138, F2I = 139, F2L = 140, F2D = 141;
+    static final int D2I = 142, D2L = 143, D2F = 144, I2B = 145, I2C = 146, I2S = 147;
+    static final int LCMP = 148, FCMPL = 149, DCMPL = 151;
+    static final int IFEQ = 153, IFNE = 154, IFLT = 155, IFGE = 156;
+    static final int IF_ICMPEQ = 159, IF_ICMPNE = 160, IF_ICMPLT = 161, IF_ICMPGE = 162, IF_ACMPEQ = 165, IF_ACMPNE = 166;
+    static final int GOTO = 167, IRETURN = 172, LRETURN = 173, FRETURN = 174, DRETURN = 175, ARETURN = 176, RETURN = 177;
+    static final int GETSTATIC = 178, PUTSTATIC = 179, GETFIELD = 180, PUTFIELD = 181;
+    static final int INVOKEVIRTUAL = 182, INVOKESPECIAL = 183, INVOKESTATIC = 184, INVOKEINTERFACE = 185;
+    static final int NEW = 187, NEWARRAY = 188, ANEWARRAY = 189, ATHROW = 191, CHECKCAST = 192, INSTANCEOF = 193;
+    static final int IFNULL = 198, IFNONNULL = 199;
+
+    private static final int CLASS_VERSION = 49;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private final String name;
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<byte[]> fields = new ArrayList<byte[]>();
+    private final List<MethodWriter> methods = new ArrayList<MethodWriter>();
+    private final Set<String> methodSignatures = new HashSet<String>();
+
+    ClassFileWriter(String name, Class superClass, Class... interfaces) {
+        this.name = name;
+        this.thisClass = classRef(name);
+        this.superClass = classRef(internalName(superClass));
+        Set<Class> unique = new LinkedHashSet<Class>(Arrays.asList(interfaces));
+        this.interfaces = new int[unique.size()];
+        int i = 0;
+        for (Class anInterface : unique)
+            this.interfaces[i++] = classRef(internalName(anInterface));
+    }
+
+    String name() {
+        return name;
+    }
+
+    static String internalName(Class type) {
+        return type.getName().replace('.', '/');
+    }
+
+    static String descriptor(Class type) {
+        if (type.isPrimitive()) {
+            if (type == void.class) return "V";
+            if (type == boolean.class) return "Z";
+            if (type == byte.class) return "B";
+            if (type == char.class) return "C";
+            if (type == short.class) return "S";
+            if (type == int.class) return "I";
+            if (type == long.class) return "J";
+            if (type == float.class) return "F";
+            return "D";
+        }
+        if (type.isArray())
+            return internalName(type);
+        return "L" + internalName(type) + ";";
+    }
+
+    static String methodDescriptor(Class returnType, Class... parameterTypes) {
+        StringBuilder sb = new StringBuilder("(");
+        for (Class parameterType : parameterTypes)
+            sb.append(descriptor(parameterType));
+        return sb.append(')').append(descriptor(returnType)).toString();
+    }
+
+    static String methodDescriptor(Method method) {
+        return methodDescriptor(method.getReturnType(), method.getParameterTypes());
+    }
+
+    static int slots(Class type) {
+        return type == void.class ? 0 : type == long.class || type == double.class ? 2 : 1;
+    }
+
+    // constant pool
+
+    private int constant(String key, int tag, Object... values) {
+        Integer index = poolIndex.get(key);
+        if (index != null)
+            return index;
+        try {
+            pool.writeByte(tag);
+            for (Object value : values) {
+                if (value instanceof String) pool.writeUTF((String) value);
+                else if (value instanceof Long) pool.writeLong((Long) value);
+                else if (value instanceof Integer && tag == 3) pool.writeInt((Integer) value);
+                else pool.writeShort((Integer) value);
+            }
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        index = poolCount;
+        poolCount += tag == 5 ? 2 : 1;
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    int utf8(String s) {
+        return constant("U" + s, 1, s);
+    }
+
+    int classRef(String internalName) {
+        return constant("C" + internalName, 7, utf8(internalName));
+    }
+
+    int stringConstant(String s) {
+        return constant("S" + s, 8, utf8(s));
+    }
+
+    int intConstant(int i) {
+        return constant("I" + i, 3, i);
+    }
+
+    int longConstant(long l) {
+        return constant("J" + l, 5, l);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        return constant("T" + name + ' ' + descriptor, 12, utf8(name), utf8(descriptor));
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return constant("F" + owner + '.' + name + ' ' + descriptor, 9, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    int methodRef(String owner, String name, String descriptor, boolean isInterface) {
+        return constant((isInterface ? "N" : "M") + owner + '.' + name + descriptor, isInterface ? 11 : 10,
+                classRef(owner), nameAndType(name, descriptor));
+    }
+
+    // members
+
+    void field(int access, String name, String descriptor) {
+        byte[] field = new byte[8];
+        int nameIndex = utf8(name), descIndex = utf8(descriptor);
+        field[0] = (byte) (access >> 8);
+        field[1] = (byte) access;
+        field[2] = (byte) (nameIndex >> 8);
+        field[3] = (byte) nameIndex;
+        field[4] = (byte) (descIndex >> 8);
+        field[5] = (byte) descIndex;
+        fields.add(field);
+    }
+
+    MethodWriter method(int access, String name, String descriptor) {
+        if (!methodSignatures.add(name + descriptor))
+            throw new IllegalArgumentException("Duplicate method " + this.name + '.' + name + descriptor);
+        MethodWriter mw = new MethodWriter(this, access, name, descriptor);
+        methods.add(mw);
+        return mw;
+    }
+
+    MethodWriter method(Method method) {
+        return method(ACC_PUBLIC, method.getName(), methodDescriptor(method));
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(baos);
+        try {
+            // create all the constants first.
+            List<byte[]> methodBytes = new ArrayList<byte[]>();
+            for (MethodWriter method : methods)
+                methodBytes.add(method.toByteArray());
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int anInterface : interfaces)
+                out.writeShort(anInterface);
+            out.writeShort(fields.size());
+            for (byte[] field : fields)
+                out.write(field);
+            out.writeShort(methodBytes.size());
+            for (byte[] method : methodBytes)
+                out.write(method);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return baos.toByteArray();
+    }
+
+    static final class Label {
+        int position = -1;
+        final List<int[]> fixups = new ArrayList<int[]>();
+    }
+
+    static final class Loop {
+        final int index;
+        final Label test = new Label();
+        final Label end = new Label();
+
+        Loop(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * Writes the code for one method.  The stack depth is tracked as instructions are added, which is enough as the
+     * generated code only branches with an empty operand stack.
+     */
+    static final class MethodWriter {
+        private final ClassFileWriter cw;
+        private final int access;
+        private final int nameIndex;
+        private final int descIndex;
+        private final int codeIndex;
+        private byte[] code = new byte[64];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+        private final List<Label> labels = new ArrayList<Label>();
+
+        MethodWriter(ClassFileWriter cw, int access, String name, String descriptor) {
+            this.cw = cw;
+            this.access = access;
+            this.nameIndex = cw.utf8(name);
+            this.descIndex = cw.utf8(descriptor);
+            this.codeIndex = cw.utf8("Code");
+            this.maxLocals = ((access & ACC_STATIC) != 0 ? 0 : 1) + argumentSlots(descriptor);
+        }
+
+        int newLocal(Class type) {
+            int slot = maxLocals;
+            maxLocals += slots(type);
+            return slot;
+        }
+
+        private void write(int b) {
+            if (length == code.length)
+                code = Arrays.copyOf(code, length * 2);
+            code[length++] = (byte) b;
+        }
+
+        private void write2(int s) {
+            write(s >> 8);
+            write(s);
+        }
+
+        private void stack(int delta) {
+            stack += delta;
+            if (stack > maxStack)
+                maxStack = stack;
+        }
+
+        void insn(int opcode) {
+            write(opcode);
+            switch (opcode) {
+                case ACONST_NULL:
+                case DUP:
+                case DUP_X1:
+                case I2L:
+                case I2D:
+                case F2L:
+                case F2D:
+                    stack(1);
+                    break;
+                case LCONST_0:
+                case DUP2_X1:
+                    stack(2);
+                    break;
+                case POP:
+                case IADD:
+                case FADD:
+                case IMUL:
+                case L2I:
+                case L2F:
+                case D2I:
+                case D2F:
+                case FCMPL:
+                    stack(-1);
+                    break;
+                case POP2:
+                case LADD:
+                case DADD:
+                case LSUB:
+                case LMUL:
+                case DMUL:
+                case DDIV:
+                case LAND:
+                case LOR:
+                case LXOR:
+                    stack(-2);
+                    break;
+                case LCMP:
+                case DCMPL:
+                    stack(-3);
+                    break;
+                case LSHL:
+                case LUSHR:
+                    stack(-1);
+                    break;
+                case ATHROW:
+                case IRETURN:
+                case LRETURN:
+                case FRETURN:
+                case DRETURN:
+                case ARETURN:
+                case RETURN:
+                    stack = 0;
+                    break;
+                default:
+                    // conversions and array loads of the same size.
+                    break;
+            }
+        }
+
+        void intConst(int value) {
+            if (value >= -1 && value <= 5) {
+                write(ICONST_0 + value);
+            } else if (value == (byte) value) {
+                write(BIPUSH);
+                write(value);
+            } else if (value == (short) value) {
+                write(SIPUSH);
+                write2(value);
+            } else {
+                ldc(cw.intConstant(value));
+                return;
+            }
+            stack(1);
+        }
+
+        void longConst(long value) {
+            if (value == 0 || value == 1) {
+                write(LCONST_0 + (int) value);
+            } else {
+                write(LDC2_W);
+                write2(cw.longConstant(value));
+            }
+            stack(2);
+        }
+
+        private void ldc(int index) {
+            if (index < 256) {
+                write(LDC);
+                write(index);
+            } else {
+                write(LDC_W);
+                write2(index);
+            }
+            stack(1);
+        }
+
+        void ldc(String s) {
+            ldc(cw.stringConstant(s));
+        }
+
+        void ldc(Class type) {
+            ldcClass(internalName(type));
+        }
+
+        void ldcClass(String internalName) {
+            ldc(cw.classRef(internalName));
+        }
+
+        void load(Class type, int slot) {
+            write(type == long.class ? LLOAD : type == float.class ? FLOAD : type == double.class ? DLOAD
+                    : type.isPrimitive() ? ILOAD : ALOAD);
+            write(slot);
+            stack(slots(type));
+        }
+
+        void loadThis() {
+            load(Object.class, 0);
+        }
+
+        void store(Class type, int slot) {
+            write(type == long.class ? LSTORE : type == float.class ? FSTORE : type == double.class ? DSTORE
+                    : type.isPrimitive() ? ISTORE : ASTORE);
+            write(slot);
+            stack(-slots(type));
+        }
+
+        void returnValue(Class type) {
+            insn(type == void.class ? RETURN : type == long.class ? LRETURN : type == float.class ? FRETURN
+                    : type == double.class ? DRETURN : type.isPrimitive() ? IRETURN : ARETURN);
+        }
+
+        void arrayLoad(Class type) {
+            write(type == boolean.class || type == byte.class ? BALOAD : type == char.class ? CALOAD
+                    : type == short.class ? SALOAD : type == int.class ? IALOAD : type == long.class ? LALOAD
+                    : type == float.class ? FALOAD : type == double.class ? DALOAD : AALOAD);
+            stack(slots(type) - 2);
+        }
+
+        void arrayStore(Class type) {
+            write(type == boolean.class || type == byte.class ? BASTORE : type == char.class ? CASTORE
+                    : type == short.class ? SASTORE : type == int.class ? IASTORE : type == long.class ? LASTORE
+                    : type == float.class ? FASTORE : type == double.class ? DASTORE : AASTORE);
+            stack(-2 - slots(type));
+        }
+
+        void newArray(Class componentType) {
+            if (componentType.isPrimitive()) {
+                write(NEWARRAY);
+                write(componentType == boolean.class ? 4 : componentType == char.class ? 5
+                        : componentType == float.class ? 6 : componentType == double.class ? 7
+                        : componentType == byte.class ? 8 : componentType == short.class ? 9
+                        : componentType == int.class ? 10 : 11);
+            } else {
+                typeInsn(ANEWARRAY, internalName(componentType));
+            }
+        }
+
+        void typeInsn(int opcode, String internalName) {
+            write(opcode);
+            write2(cw.classRef(internalName));
+            if (opcode == NEW)
+                stack(1);
+        }
+
+        void iinc(int slot, int increment) {
+            write(IINC);
+            write(slot);
+            write(increment);
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            write(opcode);
+            write2(cw.fieldRef(owner, name, descriptor));
+            int size = descriptor.equals("J") || descriptor.equals("D") ? 2 : 1;
+            int receiver = opcode == GETSTATIC || opcode == PUTSTATIC ? 0 : 1;
+            stack(opcode == GETFIELD || opcode == GETSTATIC ? size - receiver : -size - receiver);
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            write(opcode);
+            int args = argumentSlots(descriptor);
+            write2(cw.methodRef(owner, name, descriptor, opcode == INVOKEINTERFACE));
+            if (opcode == INVOKEINTERFACE) {
+                write(args + 1);
+                write(0);
+            }
+            char ret = descriptor.charAt(descriptor.indexOf(')') + 1);
+            stack((ret == 'V' ? 0 : ret == 'J' || ret == 'D' ? 2 : 1) - args - (opcode == INVOKESTATIC ? 0 : 1));
+        }
+
+        void invoke(Class owner, Method method) {
+            int opcode = Modifier.isStatic(method.getModifiers()) ? INVOKESTATIC
+                    : owner.isInterface() ? INVOKEINTERFACE : INVOKEVIRTUAL;
+            invoke(opcode, internalName(owner), method.getName(), methodDescriptor(method));
+        }
+
+        void jump(int opcode, Label label) {
+            int start = length;
+            write(opcode);
+            label.fixups.add(new int[]{start, length});
+            write2(0);
+            if (opcode == IF_ICMPEQ || opcode == IF_ICMPNE || opcode == IF_ICMPLT || opcode == IF_ICMPGE
+                    || opcode == IF_ACMPEQ || opcode == IF_ACMPNE)
+                stack(-2);
+            else if (opcode != GOTO)
+                stack(-1);
+        }
+
+        void mark(Label label) {
+            label.position = length;
+            labels.add(label);
+        }
+
+        /**
+         * for (int i = 0; i < count; i++) {
+         */
+        Loop beginLoop(int count) {
+            Loop loop = new Loop(newLocal(int.class));
+            intConst(0);
+            store(int.class, loop.index);
+            mark(loop.test);
+            load(int.class, loop.index);
+            intConst(count);
+            jump(IF_ICMPGE, loop.end);
+            return loop;
+        }
+
+        void endLoop(Loop loop) {
+            iinc(loop.index, 1);
+            jump(GOTO, loop.test);
+            mark(loop.end);
+        }
+
+        /**
+         * Convert the value on the stack as an assignment or method argument would.
+         */
+        void convert(Class from, Class to) {
+            if (from == to || to == void.class)
+                return;
+            if (from.isPrimitive() && to.isPrimitive()) {
+                convertPrimitive(from, to);
+            } else if (from.isPrimitive()) {
+                Class wrapper = wrapper(from);
+                invoke(INVOKESTATIC, internalName(wrapper), "valueOf", methodDescriptor(wrapper, from));
+                convert(wrapper, to);
+            } else if (to.isPrimitive()) {
+                throw new IllegalArgumentException("Cannot convert " + from + " to " + to);
+            } else if (!to.isAssignableFrom(from)) {
+                typeInsn(CHECKCAST, internalName(to));
+            }
+        }
+
+        private void convertPrimitive(Class from, Class to) {
+            char f = kind(from), t = kind(to);
+            if (f != t) {
+                switch (f) {
+                    case 'I':
+                        insn(t == 'J' ? I2L : t == 'F' ? I2F : I2D);
+                        break;
+                    case 'J':
+                        insn(t == 'I' ? L2I : t == 'F' ? L2F : L2D);
+                        break;
+                    case 'F':
+                        insn(t == 'I' ? F2I : t == 'J' ? F2L : F2D);
+                        break;
+                    default:
+                        insn(t == 'I' ? D2I : t == 'J' ? D2L : D2F);
+                        break;
+                }
+            }
+            if (to == byte.class && from != byte.class)
+                insn(I2B);
+            else if (to == char.class && from != char.class)
+                insn(I2C);
+            else if (to == short.class && from != short.class && from != byte.class)
+                insn(I2S);
+        }
+
+        private byte[] toByteArray() {
+            for (Label label : labels)
+                for (int[] fixup : label.fixups) {
+                    int offset = label.position - fixup[0];
+                    code[fixup[1]] = (byte) (offset >> 8);
+                    code[fixup[1] + 1] = (byte) offset;
+                }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(length + 32);
+            DataOutputStream out = new DataOutputStream(baos);
+            try {
+                out.writeShort(access);
+                out.writeShort(nameIndex);
+                out.writeShort(descIndex);
+                out.writeShort(1);
+                out.writeShort(codeIndex);
+                out.writeInt(12 + length);
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(length);
+                out.write(code, 0, length);
+                out.writeShort(0);
+                out.writeShort(0);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    static char kind(Class type) {
+        return type == long.class ? 'J' : type == float.class ? 'F' : type == double.class ? 'D' : 'I';
+    }
+
+    static Class wrapper(Class primitive) {
+        if (primitive == boolean.class) return Boolean.class;
+        if (primitive == byte.class) return Byte.class;
+        if (primitive == char.class) return Character.class;
+        if (primitive == short.class) return Short.class;
+        if (primitive == int.class) return Integer.class;
+        if (primitive == long.class) return Long.class;
+        if (primitive == float.class) return Float.class;
+        return Double.class;
+    }
+
+    static int argumentSlots(String descriptor) {
+        int slots = 0;
+        for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+            char ch = descriptor.charAt(i);
+            if (ch == 'J' || ch == 'D') {
+                slots += 2;
+                continue;
+            }
+            while (ch == '[')
+                ch = descriptor.charAt(++i);
+            if (ch == 'L')
+                i = descriptor.indexOf(';', i);
+            slots++;
+        }
+        return slots;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.io.Bytes;
+
+/**
+ * Implemented by the $$Columnar classes, which are flyweights onto a struct-of-arrays layout where each field has a
+ * column of its own, so a scan of one field reads only that field's memory.
+ */
+public interface Columnar {
+    /**
+     * @return the bytes each element uses in each column, for the fields in name order.
+     */
+    int[] columnSizes();
+
+    /**
+     * @param bytes         which hold all the columns.
+     * @param columnOffsets the offset of each column in the order of columnSizes().
+     */
+    void columns(Bytes bytes, long[] columnOffsets);
+
+    /**
+     * @param index of the element to read and write.
+     */
+    void index(long index);
+
+    long index();
+}
@@ -0,0 +1,1798 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.Compare;
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.RandomDataInput;
+import net.openhft.lang.io.serialization.BytesMarshallable;
+import net.openhft.lang.model.ClassFileWriter.Label;
+import net.openhft.lang.model.ClassFileWriter.Loop;
+import net.openhft.lang.model.ClassFileWriter.MethodWriter;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static net.openhft.lang.model.ClassFileWriter.*;
+import static net.openhft.lang.model.DataValueGenerator.*;
+
+/**
+ * Generates the $$Heap, $$Native and $$Columnar classes directly as byte code, so no compiler is needed at runtime.  The classes
+ * behave the same as those compiled from the source DataValueGenerator produces.
+ */
+enum DataValueBytecode {
+    ;
+    private static final String BYTES_DESC = descriptor(Bytes.class);
+    private static final String STRING_BUILDER = internalName(StringBuilder.class);
+    private static final Method DEFINE_CLASS;
+
+    static {
+        try {
+            DEFINE_CLASS = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class);
+            DEFINE_CLASS.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static Class defineClass(ClassLoader classLoader, String className, byte[] bytes) {
+        try {
+            return (Class) DEFINE_CLASS.invoke(classLoader, className, bytes, 0, bytes.length);
+        } catch (IllegalAccessException e) {
+            throw new AssertionError(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof LinkageError) {
+                // another thread defined it first.
+                try {
+                    return classLoader.loadClass(className);
+                } catch (ClassNotFoundException ignored) {
+                }
+            }
+            throw new AssertionError(e.getCause());
+        }
+    }
+
+    static byte[] generateHeapClass(DataValueModel<?> dvmodel) {
+        Class<?> tClass = dvmodel.type();
+        ClassFileWriter cw = new ClassFileWriter(internalName(tClass) + "$$Heap", Object.class,
+                tClass, BytesMarshallable.class, Copyable.class);
+        String owner = cw.name();
+        MethodWriter init = constructor(cw);
+        MethodWriter copy = cw.method(ACC_PUBLIC, "copyFrom", methodDescriptor(void.class, tClass));
+        MethodWriter write = cw.method(ACC_PUBLIC, "writeMarshallable", methodDescriptor(void.class, Bytes.class));
+        MethodWriter read = cw.method(ACC_PUBLIC, "readMarshallable", methodDescriptor(void.class, Bytes.class));
+
+        Map.Entry<String, FieldModel>[] entries = sortedEntries(dvmodel);
+        MethodWriter clinit = null;
+        boolean delta = isDeltaMarshallable(dvmodel);
+        MethodWriter writeDelta = null, readDelta = null;
+        int writeMask = 0, readMask = 0;
+        if (delta) {
+            cw.field(ACC_PRIVATE, "$dirty", "J");
+            writeDelta = cw.method(ACC_PUBLIC, "writeDelta", methodDescriptor(void.class, Bytes.class));
+            writeMask = beginWriteDelta(writeDelta, owner, -1);
+            readDelta = cw.method(ACC_PUBLIC, "readDelta", methodDescriptor(void.class, Bytes.class));
+            readMask = beginReadDelta(readDelta);
+        }
+        for (int index = 0; index < entries.length; index++) {
+            Map.Entry<String, FieldModel> entry = entries[index];
+            String name = entry.getKey();
+            FieldModel model = entry.getValue();
+            Class type = model.type();
+            String field = "_" + name;
+            String fieldDesc = model.isArray() ? "[" + descriptor(type) : descriptor(type);
+            DirtyBit dirty = delta ? new DirtyBit(-1, index) : null;
+            cw.field(ACC_PRIVATE | (model.isVolatile() ? ACC_VOLATILE : 0), field, fieldDesc);
+            if (model.isArray())
+                heapArrayInit(init, owner, field, fieldDesc, type, model.indexSize().value());
+
+            Method setter = getSetter(model);
+            Method getter = getGetter(model);
+            Method getUsing = getUsing(model);
+            Method orderedSetter = getOrderedSetter(model);
+            Method volatileGetter = getVolatileGetter(model);
+
+            boolean bothVolatileAndPlain = getter != null && volatileGetter != null;
+            if (setter == null && orderedSetter != null)
+                setter = orderedSetter;
+            if (getter == null && volatileGetter != null)
+                getter = volatileGetter;
+
+            if (setter == null) {
+                if (getter != null) {
+                    copy.loadThis();
+                    invokeThis(copy, owner, getter);
+                    copy.convert(getter.getReturnType(), Copyable.class);
+                    copy.load(tClass, 1);
+                    copy.invoke(tClass, getter);
+                    copy.invoke(INVOKEINTERFACE, internalName(Copyable.class), "copyFrom", "(Ljava/lang/Object;)V");
+                }
+            } else {
+                methodCopy(copy, owner, tClass, getter, setter, model);
+                heapSet(cw, setter, field, fieldDesc, type, model, dirty);
+            }
+            if (getter != null)
+                heapGet(cw, getter, field, fieldDesc, type, model);
+
+            if (getUsing != null && type == String.class && !model.isArray()) {
+                heapGetUsing(cw, getUsing, field, type);
+                if (getter == null && volatileGetter == null)
+                    heapGet(cw, getterName(getUsing), field, type);
+            }
+
+            if (bothVolatileAndPlain) {
+                heapGet(cw, volatileGetter, field, fieldDesc, type, model);
+                heapSet(cw, orderedSetter, field, fieldDesc, type, model, dirty);
+            }
+
+            Method adder = model.adder();
+            if (adder != null)
+                heapAdder(cw, adder, 0, field, type, dirty);
+            Method sizeOf = model.sizeOf();
+            if (sizeOf != null)
+                sizeOf(cw, sizeOf, model);
+            Method atomicAdder = model.atomicAdder();
+            Method cas = model.cas();
+            if (HeapAtomics.isLockFree(type) && !model.isArray() && (atomicAdder != null || cas != null)) {
+                String offsetField = name.toUpperCase() + "_OFFSET";
+                if (clinit == null)
+                    clinit = cw.method(ACC_STATIC, "<clinit>", "()V");
+                heapFieldOffset(cw, clinit, offsetField, field);
+                if (atomicAdder != null)
+                    heapAtomicAdder(cw, atomicAdder, offsetField, type, dirty);
+                if (cas != null)
+                    heapAtomicCas(cw, cas, offsetField, type, dirty);
+            } else {
+                if (atomicAdder != null)
+                    heapAdder(cw, atomicAdder, ACC_SYNCHRONIZED, field, type, dirty);
+                if (cas != null)
+                    heapCas(cw, cas, field, type, dirty);
+            }
+            for (Method lock : new Method[]{model.tryLockNanos(), model.tryLock(), model.unlock(), model.busyLock()})
+                if (lock != null)
+                    throwUnsupported(cw.method(lock));
+
+            methodWriteMarshall(write, owner, getter, setter, type, model);
+            heapReadMarshall(read, owner, field, fieldDesc, type, model);
+            if (delta) {
+                Label unchanged = ifDirty(writeDelta, writeMask, index);
+                methodWriteMarshall(writeDelta, owner, getter, setter, type, model);
+                writeDelta.mark(unchanged);
+                unchanged = ifDirty(readDelta, readMask, index);
+                heapReadMarshall(readDelta, owner, field, fieldDesc, type, model);
+                readDelta.mark(unchanged);
+            }
+        }
+        if (delta)
+            endDelta(cw, readDelta, writeDelta, readMask, -1);
+        if (isSeqLocked(dvmodel)) {
+            cw.field(ACC_PRIVATE | ACC_VOLATILE, "$version", "J");
+            if (clinit == null)
+                clinit = cw.method(ACC_STATIC, "<clinit>", "()V");
+            heapFieldOffset(cw, clinit, "$VERSION", "$version");
+            seqLockMethods(cw, -1);
+        }
+        if (clinit != null)
+            clinit.returnValue(void.class);
+        init.returnValue(void.class);
+        copy.returnValue(void.class);
+        write.returnValue(void.class);
+        read.returnValue(void.class);
+        copyFromBridge(cw, tClass);
+
+        if (Byteable.class.isAssignableFrom(tClass)) {
+            throwUnsupported(cw.method(ACC_PUBLIC, "bytes", methodDescriptor(void.class, Bytes.class, long.class)));
+            MethodWriter bytes = cw.method(ACC_PUBLIC, "bytes", methodDescriptor(Bytes.class));
+            bytes.insn(ACONST_NULL);
+            bytes.returnValue(Bytes.class);
+            MethodWriter offset = cw.method(ACC_PUBLIC, "offset", "()J");
+            offset.longConst(0);
+            offset.returnValue(long.class);
+            throwUnsupported(cw.method(ACC_PUBLIC, "maxSize", "()I"));
+        }
+        generateObjectMethods(cw, dvmodel, entries, false);
+        return cw.toByteArray();
+    }
+
+    static byte[] generateNativeClass(DataValueModel<?> dvmodel) {
+        Class<?> tClass = dvmodel.type();
+        ClassFileWriter cw = new ClassFileWriter(internalName(tClass) + "$$Native", Object.class,
+                tClass, BytesMarshallable.class, Byteable.class, Copyable.class);
+        String owner = cw.name();
+        cw.field(ACC_PRIVATE, "_bytes", BYTES_DESC);
+        cw.field(ACC_PRIVATE, "_offset", "J");
+        MethodWriter init = constructor(cw);
+        MethodWriter copy = cw.method(ACC_PUBLIC, "copyFrom", methodDescriptor(void.class, tClass));
+        MethodWriter write = cw.method(ACC_PUBLIC, "writeMarshallable", methodDescriptor(void.class, Bytes.class));
+        MethodWriter read = cw.method(ACC_PUBLIC, "readMarshallable", methodDescriptor(void.class, Bytes.class));
+        MethodWriter bytes = cw.method(ACC_PUBLIC, "bytes", methodDescriptor(void.class, Bytes.class, long.class));
+        bytes.loadThis();
+        bytes.load(Bytes.class, 1);
+        bytes.field(PUTFIELD, owner, "_bytes", BYTES_DESC);
+        bytes.loadThis();
+        bytes.load(long.class, 2);
+        bytes.field(PUTFIELD, owner, "_offset", "J");
+
+        Map.Entry<String, FieldModel>[] entries = sortedEntries(dvmodel);
+        Map<String, Integer> offsets = new HashMap<String, Integer>();
+        Map<String, PackedField> packedFields = PackedField.layout(dvmodel, layoutUnpacked(dvmodel, offsets));
+        int recordSize = computeNativeSize(dvmodel);
+        if (isBulkCopyable(dvmodel))
+            bulkCopy(copy, owner, recordSize);
+        if (isBulkMarshallable(dvmodel)) {
+            bulkWriteMarshall(write, owner, recordSize);
+            bulkReadMarshall(read, owner, recordSize);
+        }
+        boolean delta = isDeltaMarshallable(dvmodel);
+        int dirtyOffset = dirtyOffset(dvmodel);
+        MethodWriter writeDelta = null, readDelta = null;
+        int writeMask = 0, readMask = 0;
+        if (delta) {
+            writeDelta = cw.method(ACC_PUBLIC, "writeDelta", methodDescriptor(void.class, Bytes.class));
+            writeMask = beginWriteDelta(writeDelta, owner, dirtyOffset);
+            readDelta = cw.method(ACC_PUBLIC, "readDelta", methodDescriptor(void.class, Bytes.class));
+            readMask = beginReadDelta(readDelta);
+        }
+        for (int index = 0; index < entries.length; index++) {
+            Map.Entry<String, FieldModel> entry = entries[index];
+            String name = entry.getKey();
+            FieldModel model = entry.getValue();
+            Class type = model.type();
+            DirtyBit dirty = delta ? new DirtyBit(dirtyOffset, index) : null;
+            final Method setter = getSetter(model);
+            final Method getter = getGetter(model);
+            final Method getUsing = getUsing(model);
+
+            final Method orderedSetter = getOrderedSetter(model);
+            final Method volatileGetter = getVolatileGetter(model);
+
+            final Method defaultSetter = setter != null ? setter : orderedSetter;
+            final Method defaultGetter = getter != null ? getter : volatileGetter;
+
+            PackedField packedField = packedFields.get(name);
+            Integer offset = offsets.get(name);
+            if (packedField != null) {
+                methodCopy(copy, owner, tClass, defaultGetter, defaultSetter, model);
+                if (setter != null)
+                    packedSet(cw, setter, packedField, model, dirty);
+                if (getter != null)
+                    packedGet(cw, getter, packedField);
+                methodWriteMarshall(write, owner, defaultGetter, defaultSetter, type, model);
+                nativeReadMarshall(read, owner, defaultGetter, defaultSetter, type, model);
+                if (delta) {
+                    Label unchanged = ifDirty(writeDelta, writeMask, index);
+                    methodWriteMarshall(writeDelta, owner, defaultGetter, defaultSetter, type, model);
+                    writeDelta.mark(unchanged);
+                    unchanged = ifDirty(readDelta, readMask, index);
+                    nativeReadMarshall(readDelta, owner, defaultGetter, defaultSetter, type, model);
+                    readDelta.mark(unchanged);
+                }
+
+            } else if (dvmodel.isScalar(type)) {
+                Address address = Address.at(offset);
+                methodCopy(copy, owner, tClass, defaultGetter, defaultSetter, model);
+                if (setter != null)
+                    nativeSet(cw, setter, type, address, model, false, dirty);
+                if (getter != null)
+                    nativeGet(cw, getter.getName(), getter.getReturnType(), type, address, model, false);
+                if (getUsing != null) {
+                    nativeGetUsing(cw, getUsing, type, offset);
+                    if (getter == null && volatileGetter == null)
+                        nativeGet(cw, getterName(getUsing), type, type, address, null, false);
+                }
+                if (orderedSetter != null)
+                    nativeSet(cw, orderedSetter, type, address, model, true, dirty);
+                if (volatileGetter != null)
+                    nativeGet(cw, volatileGetter.getName(), volatileGetter.getReturnType(), type, address, model, true);
+
+                Method adder = model.adder();
+                if (adder != null)
+                    nativeDelegate(cw, adder, "add" + bytesType(type), address, dirty);
+                Method atomicAdder = model.atomicAdder();
+                if (atomicAdder != null)
+                    nativeDelegate(cw, atomicAdder, "addAtomic" + bytesType(type), address, dirty);
+                Method sizeOf = model.sizeOf();
+                if (sizeOf != null)
+                    sizeOf(cw, sizeOf, model);
+                Method cas = model.cas();
+                if (cas != null)
+                    nativeDelegate(cw, cas, "compareAndSwap" + bytesType(type), address, dirty);
+                Method tryLockNanos = model.tryLockNanos();
+                if (tryLockNanos != null)
+                    nativeDelegate(cw, tryLockNanos, "tryLockNanos" + bytesType(type), address, null);
+                Method tryLock = model.tryLock();
+                if (tryLock != null)
+                    nativeDelegate(cw, tryLock, "tryLock" + bytesType(type), address, null);
+                Method unlock = model.unlock();
+                if (unlock != null)
+                    nativeDelegate(cw, unlock, "unlock" + bytesType(type), address, null);
+                Method busyLock = model.busyLock();
+                if (busyLock != null)
+                    nativeDelegate(cw, busyLock, "busyLock" + bytesType(type), address, null);
+
+                methodWriteMarshall(write, owner, defaultGetter, defaultSetter, type, model);
+                nativeReadMarshall(read, owner, defaultGetter, defaultSetter, type, model);
+                if (delta) {
+                    Label unchanged = ifDirty(writeDelta, writeMask, index);
+                    methodWriteMarshall(writeDelta, owner, defaultGetter, defaultSetter, type, model);
+                    writeDelta.mark(unchanged);
+                    unchanged = ifDirty(readDelta, readMask, index);
+                    nativeReadMarshall(readDelta, owner, defaultGetter, defaultSetter, type, model);
+                    readDelta.mark(unchanged);
+                }
+            } else {
+                String nestedClass = internalName(type) + "$$Native";
+                String field = "_" + name;
+                String fieldDesc = (model.isArray() ? "[L" : "L") + nestedClass + ";";
+                cw.field(ACC_PRIVATE | ACC_FINAL, field, fieldDesc);
+                nonScalarInit(init, owner, field, fieldDesc, nestedClass, model);
+
+                if (defaultSetter == null) {
+                    if (model.isArray())
+                        throw new IllegalArgumentException("No setter for " + tClass.getName() + "." + name);
+                    copy.loadThis();
+                    copy.field(GETFIELD, owner, field, fieldDesc);
+                    copy.load(tClass, 1);
+                    copy.invoke(tClass, getter);
+                    copy.convert(getter.getReturnType(), type);
+                    copy.invoke(INVOKEVIRTUAL, nestedClass, "copyFrom", methodDescriptor(void.class, type));
+                } else {
+                    methodCopy(copy, owner, tClass, defaultGetter, defaultSetter, model);
+                    nonScalarSet(cw, defaultSetter, field, fieldDesc, nestedClass, type, model, dirty);
+                }
+
+                int size = computeNonScalarOffset(dvmodel, type);
+                if (getter != null)
+                    nonScalarGet(cw, getter, field, fieldDesc, model);
+                nonScalarMarshall(write, owner, field, fieldDesc, nestedClass, "writeMarshallable", model);
+                nonScalarMarshall(read, owner, field, fieldDesc, nestedClass, "readMarshallable", model);
+                if (delta) {
+                    Label unchanged = ifDirty(writeDelta, writeMask, index);
+                    nonScalarMarshall(writeDelta, owner, field, fieldDesc, nestedClass, "writeMarshallable", model);
+                    writeDelta.mark(unchanged);
+                    unchanged = ifDirty(readDelta, readMask, index);
+                    nonScalarMarshall(readDelta, owner, field, fieldDesc, nestedClass, "readMarshallable", model);
+                    readDelta.mark(unchanged);
+                }
+                nonScalarBytes(bytes, owner, field, fieldDesc, nestedClass, offset, size, model);
+            }
+        }
+        if (delta)
+            endDelta(cw, readDelta, writeDelta, readMask, dirtyOffset);
+        if (isSeqLocked(dvmodel))
+            seqLockMethods(cw, versionOffset(dvmodel));
+        init.returnValue(void.class);
+        copy.returnValue(void.class);
+        write.returnValue(void.class);
+        read.returnValue(void.class);
+        bytes.returnValue(void.class);
+        copyFromBridge(cw, tClass);
+
+        MethodWriter getBytes = cw.method(ACC_PUBLIC, "bytes", methodDescriptor(Bytes.class));
+        getBytes.loadThis();
+        getBytes.field(GETFIELD, owner, "_bytes", BYTES_DESC);
+        getBytes.returnValue(Bytes.class);
+        MethodWriter getOffset = cw.method(ACC_PUBLIC, "offset", "()J");
+        getOffset.loadThis();
+        getOffset.field(GETFIELD, owner, "_offset", "J");
+        getOffset.returnValue(long.class);
+        MethodWriter maxSize = cw.method(ACC_PUBLIC, "maxSize", "()I");
+        maxSize.intConst(recordSize);
+        maxSize.returnValue(int.class);
+
+        generateObjectMethods(cw, dvmodel, entries, true);
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generates the $$Columnar class, see DataValueGenerator.generateColumnarObject.
+     */
+    static byte[] generateColumnarClass(DataValueModel<?> dvmodel) {
+        checkColumnar(dvmodel);
+        Class<?> tClass = dvmodel.type();
+        ClassFileWriter cw = new ClassFileWriter(internalName(tClass) + "$$Columnar", Object.class,
+                tClass, BytesMarshallable.class, Columnar.class, Copyable.class);
+        String owner = cw.name();
+        cw.field(ACC_PRIVATE, "_bytes", BYTES_DESC);
+        cw.field(ACC_PRIVATE, "_index", "J");
+        MethodWriter init = constructor(cw);
+        init.returnValue(void.class);
+        MethodWriter copy = cw.method(ACC_PUBLIC, "copyFrom", methodDescriptor(void.class, tClass));
+        MethodWriter write = cw.method(ACC_PUBLIC, "writeMarshallable", methodDescriptor(void.class, Bytes.class));
+        MethodWriter read = cw.method(ACC_PUBLIC, "readMarshallable", methodDescriptor(void.class, Bytes.class));
+
+        // the columns are in name order.
+        Map<String, ? extends FieldModel> fieldMap = dvmodel.fieldMap();
+        MethodWriter columnSizes = cw.method(ACC_PUBLIC, "columnSizes", methodDescriptor(int[].class));
+        columnSizes.intConst(fieldMap.size());
+        columnSizes.newArray(int.class);
+        MethodWriter columns = cw.method(ACC_PUBLIC, "columns", methodDescriptor(void.class, Bytes.class, long[].class));
+        columns.loadThis();
+        columns.load(Bytes.class, 1);
+        columns.field(PUTFIELD, owner, "_bytes", BYTES_DESC);
+        int column = 0;
+        for (Map.Entry<String, ? extends FieldModel> entry : fieldMap.entrySet()) {
+            String field = "_" + entry.getKey() + "Column";
+            cw.field(ACC_PRIVATE, field, "J");
+            columnSizes.insn(DUP);
+            columnSizes.intConst(column);
+            columnSizes.intConst(columnSize(entry.getValue().type()));
+            columnSizes.arrayStore(int.class);
+            columns.loadThis();
+            columns.load(long[].class, 2);
+            columns.intConst(column);
+            columns.arrayLoad(long.class);
+            columns.field(PUTFIELD, owner, field, "J");
+            column++;
+        }
+        columnSizes.returnValue(int[].class);
+        columns.returnValue(void.class);
+
+        Map.Entry<String, FieldModel>[] entries = sortedEntries(dvmodel);
+        for (Map.Entry<String, FieldModel> entry : entries) {
+            String name = entry.getKey();
+            FieldModel model = entry.getValue();
+            Class type = model.type();
+            Address address = Address.column("_" + name + "Column", columnSize(type));
+            final Method setter = getSetter(model);
+            final Method getter = getGetter(model);
+            final Method orderedSetter = getOrderedSetter(model);
+            final Method volatileGetter = getVolatileGetter(model);
+
+            final Method defaultSetter = setter != null ? setter : orderedSetter;
+            final Method defaultGetter = getter != null ? getter : volatileGetter;
+
+            methodCopy(copy, owner, tClass, defaultGetter, defaultSetter, model);
+            if (setter != null)
+                nativeSet(cw, setter, type, address, model, false, null);
+            if (getter != null)
+                nativeGet(cw, getter.getName(), getter.getReturnType(), type, address, model, false);
+            if (orderedSetter != null)
+                nativeSet(cw, orderedSetter, type, address, model, true, null);
+            if (volatileGetter != null)
+                nativeGet(cw, volatileGetter.getName(), volatileGetter.getReturnType(), type, address, model, true);
+            Method adder = model.adder();
+            if (adder != null)
+                nativeDelegate(cw, adder, "add" + bytesType(type), address, null);
+            Method atomicAdder = model.atomicAdder();
+            if (atomicAdder != null)
+                nativeDelegate(cw, atomicAdder, "addAtomic" + bytesType(type), address, null);
+            Method cas = model.cas();
+            if (cas != null)
+                nativeDelegate(cw, cas, "compareAndSwap" + bytesType(type), address, null);
+            Method tryLockNanos = model.tryLockNanos();
+            if (tryLockNanos != null)
+                nativeDelegate(cw, tryLockNanos, "tryLockNanos" + bytesType(type), address, null);
+            Method tryLock = model.tryLock();
+            if (tryLock != null)
+                nativeDelegate(cw, tryLock, "tryLock" + bytesType(type), address, null);
+            Method unlock = model.unlock();
+            if (unlock != null)
+                nativeDelegate(cw, unlock, "unlock" + bytesType(type), address, null);
+            Method busyLock = model.busyLock();
+            if (busyLock != null)
+                nativeDelegate(cw, busyLock, "busyLock" + bytesType(type), address, null);
+
+            methodWriteMarshall(write, owner, defaultGetter, defaultSetter, type, model);
+            nativeReadMarshall(read, owner, defaultGetter, defaultSetter, type, model);
+        }
+        copy.returnValue(void.class);
+        write.returnValue(void.class);
+        read.returnValue(void.class);
+        copyFromBridge(cw, tClass);
+
+        MethodWriter setIndex = cw.method(ACC_PUBLIC, "index", "(J)V");
+        setIndex.loadThis();
+        setIndex.load(long.class, 1);
+        setIndex.field(PUTFIELD, owner, "_index", "J");
+        setIndex.returnValue(void.class);
+        MethodWriter getIndex = cw.method(ACC_PUBLIC, "index", "()J");
+        getIndex.loadThis();
+        getIndex.field(GETFIELD, owner, "_index", "J");
+        getIndex.returnValue(long.class);
+
+        generateObjectMethods(cw, dvmodel, entries, true);
+        return cw.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    /**
+     * Generates a DataValueComparator by the fields given, which reads each field from its offset in a $$Native record
+     * or from its column of a $$Columnar array, without looking up how it is stored as it compares.
+     */
+    static byte[] generateComparatorClass(String className, DataValueModel<?> dvmodel, String... fieldNames) {
+        Map<String, Integer> offsets = new HashMap<String, Integer>();
+        Map<String, PackedField> packedFields = PackedField.layout(dvmodel, layoutUnpacked(dvmodel, offsets));
+        ClassFileWriter cw = new ClassFileWriter(className.replace('.', '/'), DataValueComparator.class);
+        MethodWriter init = cw.method(ACC_PUBLIC, "<init>", "()V");
+        init.loadThis();
+        init.invoke(INVOKESPECIAL, internalName(DataValueComparator.class), "<init>", "()V");
+        init.returnValue(void.class);
+        MethodWriter records = cw.method(ACC_PUBLIC, "compare",
+                methodDescriptor(int.class, Bytes.class, long.class, Bytes.class, long.class));
+        MethodWriter columns = cw.method(ACC_PUBLIC, "compare",
+                methodDescriptor(int.class, Bytes.class, long[].class, long.class, Bytes.class, long[].class, long.class));
+        int recordsCmp = records.newLocal(int.class), columnsCmp = columns.newLocal(int.class);
+        for (String name : fieldNames) {
+            Class type = dvmodel.fieldMap().get(name).type();
+            PackedField field = packedFields.get(name);
+            Method read = resolve(Bytes.class, "read" + bytesType(field == null ? type : field.wordType()), long.class);
+            // bytes1 and offset1, then bytes2 and offset2
+            for (int bytes = 1; bytes <= 4; bytes += 3) {
+                records.load(Bytes.class, bytes);
+                records.load(long.class, bytes + 1);
+                int offset = field == null ? offsets.get(name) : field.offset;
+                if (offset != 0) {
+                    records.longConst(offset);
+                    records.insn(LADD);
+                }
+                records.invoke(Bytes.class, read);
+                comparable(records, read.getReturnType(), field);
+            }
+            compareField(records, field == null ? type : long.class, recordsCmp);
+
+            // columns are not packed, each is read at columnOffsets[column] + index * size
+            int column = columnOf(dvmodel, name), size = columnSize(type);
+            Method readColumn = resolve(Bytes.class, "read" + bytesType(type), long.class);
+            for (int bytes = 1; bytes <= 5; bytes += 4) {
+                columns.load(Bytes.class, bytes);
+                columns.load(long[].class, bytes + 1);
+                columns.intConst(column);
+                columns.arrayLoad(long.class);
+                columns.load(long.class, bytes + 2);
+                columns.longConst(size);
+                columns.insn(LMUL);
+                columns.insn(LADD);
+                columns.invoke(Bytes.class, readColumn);
+                comparable(columns, readColumn.getReturnType(), null);
+            }
+            compareField(columns, type, columnsCmp);
+        }
+        records.intConst(0);
+        records.returnValue(int.class);
+        columns.intConst(0);
+        columns.returnValue(int.class);
+        return cw.toByteArray();
+    }
+
+    private static void comparable(MethodWriter mw, Class readType, PackedField field) {
+        // floating point values are compared as they are, the rest as longs.
+        if (readType == float.class || readType == double.class)
+            return;
+        mw.convert(readType, long.class);
+        if (field == null)
+            return;
+        // packed bits are in the same order as their values.
+        if (field.shift != 0) {
+            mw.intConst(field.shift);
+            mw.insn(LUSHR);
+        }
+        mw.longConst(field.mask());
+        mw.insn(LAND);
+    }
+
+    private static void compareField(MethodWriter mw, Class type, int cmp) {
+        // int cmp = compare(a, b); if (cmp != 0) return cmp;
+        if (type == float.class)
+            mw.invoke(INVOKESTATIC, "java/lang/Float", "compare", "(FF)I");
+        else if (type == double.class)
+            mw.invoke(INVOKESTATIC, "java/lang/Double", "compare", "(DD)I");
+        else
+            mw.insn(LCMP);
+        mw.store(int.class, cmp);
+        Label same = new Label();
+        mw.load(int.class, cmp);
+        mw.jump(IFEQ, same);
+        mw.load(int.class, cmp);
+        mw.returnValue(int.class);
+        mw.mark(same);
+    }
+
+    private static Map.Entry<String, FieldModel>[] sortedEntries(DataValueModel<?> dvmodel) {
+        Map<String, ? extends FieldModel> fieldMap = dvmodel.fieldMap();
+        Map.Entry<String, FieldModel>[] entries = fieldMap.entrySet().toArray(new Map.Entry[fieldMap.size()]);
+        Arrays.sort(entries, COMPARE_BY_HEAP_SIZE);
+        return entries;
+    }
+
+    private static MethodWriter constructor(ClassFileWriter cw) {
+        MethodWriter init = cw.method(ACC_PUBLIC, "<init>", "()V");
+        init.loadThis();
+        init.invoke(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        return init;
+    }
+
+    private static void copyFromBridge(ClassFileWriter cw, Class tClass) {
+        MethodWriter bridge = cw.method(ACC_PUBLIC | ACC_BRIDGE | ACC_SYNTHETIC, "copyFrom", "(Ljava/lang/Object;)V");
+        bridge.loadThis();
+        bridge.load(Object.class, 1);
+        bridge.convert(Object.class, tClass);
+        bridge.invoke(INVOKEVIRTUAL, cw.name(), "copyFrom", methodDescriptor(void.class, tClass));
+        bridge.returnValue(void.class);
+    }
+
+    private static void invokeThis(MethodWriter mw, String owner, Method method) {
+        mw.invoke(INVOKEVIRTUAL, owner, method.getName(), methodDescriptor(method));
+    }
+
+    private static Class lastParameter(Method method) {
+        Class[] parameterTypes = method.getParameterTypes();
+        return parameterTypes[parameterTypes.length - 1];
+    }
+
+    private static void popResult(MethodWriter mw, Class type) {
+        if (type != void.class)
+            mw.insn(slots(type) == 2 ? POP2 : POP);
+    }
+
+    private static void throwUnsupported(MethodWriter mw) {
+        mw.typeInsn(NEW, "java/lang/UnsupportedOperationException");
+        mw.insn(DUP);
+        mw.invoke(INVOKESPECIAL, "java/lang/UnsupportedOperationException", "<init>", "()V");
+        mw.insn(ATHROW);
+    }
+
+    private static void boundsCheck(MethodWriter mw, int check) {
+        Label notNegative = new Label(), lessThan = new Label();
+        mw.load(int.class, 1);
+        mw.jump(IFGE, notNegative);
+        throwOutOfBounds(mw, " must be greater than 0");
+        mw.mark(notNegative);
+        mw.load(int.class, 1);
+        mw.intConst(check);
+        mw.jump(IF_ICMPLT, lessThan);
+        throwOutOfBounds(mw, " must be less than " + check);
+        mw.mark(lessThan);
+    }
+
+    private static void throwOutOfBounds(MethodWriter mw, String message) {
+        String exception = "java/lang/ArrayIndexOutOfBoundsException";
+        mw.typeInsn(NEW, exception);
+        mw.insn(DUP);
+        mw.typeInsn(NEW, STRING_BUILDER);
+        mw.insn(DUP);
+        mw.invoke(INVOKESPECIAL, STRING_BUILDER, "<init>", "()V");
+        mw.load(int.class, 1);
+        mw.invoke(INVOKEVIRTUAL, STRING_BUILDER, "append", "(I)Ljava/lang/StringBuilder;");
+        mw.ldc(message);
+        mw.invoke(INVOKEVIRTUAL, STRING_BUILDER, "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+        mw.invoke(INVOKEVIRTUAL, STRING_BUILDER, "toString", "()Ljava/lang/String;");
+        mw.invoke(INVOKESPECIAL, exception, "<init>", "(Ljava/lang/String;)V");
+        mw.insn(ATHROW);
+    }
+
+    private static void sizeOf(ClassFileWriter cw, Method sizeOf, FieldModel model) {
+        MethodWriter mw = cw.method(sizeOf);
+        mw.intConst(model.indexSize().value());
+        mw.returnValue(int.class);
+    }
+
+    private static void methodCopy(MethodWriter copy, String owner, Class tClass, Method getter, Method setter, FieldModel model) {
+        if (!model.isArray()) {
+            if (model.setter() != null && getter != null) {
+                copy.loadThis();
+                copy.load(tClass, 1);
+                copy.invoke(tClass, getter);
+                copy.convert(getter.getReturnType(), lastParameter(setter));
+                invokeThis(copy, owner, setter);
+            }
+        } else {
+            Loop loop = copy.beginLoop(model.indexSize().value());
+            copy.loadThis();
+            copy.load(int.class, loop.index);
+            copy.load(tClass, 1);
+            copy.load(int.class, loop.index);
+            copy.invoke(tClass, getter);
+            copy.convert(getter.getReturnType(), lastParameter(setter));
+            invokeThis(copy, owner, setter);
+            copy.endLoop(loop);
+        }
+    }
+
+    private static void methodWriteMarshall(MethodWriter write, String owner, Method getter, Method setter, Class type, FieldModel model) {
+        if (!model.isArray()) {
+            if (getter != null && setter != null) {
+                write.load(Bytes.class, 1);
+                write.loadThis();
+                invokeThis(write, owner, getter);
+                writeValue(write, type, getter.getReturnType());
+            }
+            // otherwise skip.
+        } else {
+            Loop loop = write.beginLoop(model.indexSize().value());
+            write.load(Bytes.class, 1);
+            write.loadThis();
+            write.load(int.class, loop.index);
+            invokeThis(write, owner, getter);
+            writeValue(write, type, getter.getReturnType());
+            write.endLoop(loop);
+        }
+    }
+
+    private static void writeValue(MethodWriter mw, Class type, Class valueType) {
+        Method method = resolve(Bytes.class, "write" + bytesType(type), valueType);
+        mw.convert(valueType, method.getParameterTypes()[0]);
+        mw.invoke(Bytes.class, method);
+        popResult(mw, method.getReturnType());
+    }
+
+    private static Class readValue(MethodWriter mw, Class type, boolean withClass) {
+        mw.load(Bytes.class, 1);
+        Method method;
+        if (withClass && "Object".equals(bytesType(type))) {
+            mw.ldc(type);
+            method = resolve(Bytes.class, "readObject", Class.class);
+        } else {
+            method = resolve(Bytes.class, "read" + bytesType(type));
+        }
+        mw.invoke(Bytes.class, method);
+        return method.getReturnType();
+    }
+
+    // heap
+
+    private static void heapArrayInit(MethodWriter init, String owner, String field, String fieldDesc, Class type, int length) {
+        init.loadThis();
+        init.intConst(length);
+        init.newArray(type);
+        init.field(PUTFIELD, owner, field, fieldDesc);
+        if (!type.isPrimitive()) {
+            String elementClass = internalName(type) + (type.isInterface() ? "$$Heap" : "");
+            Loop loop = init.beginLoop(length);
+            init.loadThis();
+            init.field(GETFIELD, owner, field, fieldDesc);
+            init.load(int.class, loop.index);
+            init.typeInsn(NEW, elementClass);
+            init.insn(DUP);
+            init.invoke(INVOKESPECIAL, elementClass, "<init>", "()V");
+            init.arrayStore(type);
+            init.endLoop(loop);
+        }
+    }
+
+    private static void heapSet(ClassFileWriter cw, Method setter, String field, String fieldDesc, Class type, FieldModel model, DirtyBit dirty) {
+        Class<?> setterType = lastParameter(setter);
+        MethodWriter mw = cw.method(setter);
+        markDirty(mw, cw.name(), dirty);
+        if (model.isArray()) {
+            boundsCheck(mw, model.indexSize().value());
+            mw.loadThis();
+            mw.field(GETFIELD, cw.name(), field, fieldDesc);
+            mw.load(int.class, 1);
+            mw.load(setterType, 2);
+        } else {
+            mw.loadThis();
+            mw.load(setterType, 1);
+        }
+        if (type == String.class && setterType != String.class)
+            mw.invoke(INVOKEVIRTUAL, "java/lang/Object", "toString", "()Ljava/lang/String;");
+        else
+            mw.convert(setterType, type);
+        if (model.isArray())
+            mw.arrayStore(type);
+        else
+            mw.field(PUTFIELD, cw.name(), field, fieldDesc);
+        mw.returnValue(void.class);
+    }
+
+    private static void heapGet(ClassFileWriter cw, Method getter, String field, String fieldDesc, Class type, FieldModel model) {
+        MethodWriter mw = cw.method(getter);
+        if (model.isArray())
+            boundsCheck(mw, model.indexSize().value());
+        mw.loadThis();
+        mw.field(GETFIELD, cw.name(), field, fieldDesc);
+        if (model.isArray()) {
+            mw.load(int.class, 1);
+            mw.arrayLoad(type);
+        }
+        mw.convert(type, getter.getReturnType());
+        mw.returnValue(getter.getReturnType());
+    }
+
+    private static void heapGet(ClassFileWriter cw, String getterName, String field, Class type) {
+        MethodWriter mw = cw.method(ACC_PUBLIC, getterName, methodDescriptor(type));
+        mw.loadThis();
+        mw.field(GETFIELD, cw.name(), field, descriptor(type));
+        mw.returnValue(type);
+    }
+
+    private static void heapGetUsing(ClassFileWriter cw, Method method, String field, Class type) {
+        if (!type.equals(String.class) || method.getParameterTypes().length != 1)
+            return;
+        if (!StringBuilder.class.equals(method.getParameterTypes()[0]))
+            return;
+
+        MethodWriter mw = cw.method(method);
+        mw.load(StringBuilder.class, 1);
+        mw.loadThis();
+        mw.field(GETFIELD, cw.name(), field, descriptor(type));
+        Method append = resolve(StringBuilder.class, "append", type);
+        mw.invoke(StringBuilder.class, append);
+        popResult(mw, append.getReturnType());
+        returnBuilder(mw, method);
+    }
+
+    private static void returnBuilder(MethodWriter mw, Method method) {
+        Class returnType = method.getReturnType();
+        if (returnType != void.class) {
+            mw.load(StringBuilder.class, 1);
+            mw.convert(StringBuilder.class, returnType);
+        }
+        mw.returnValue(returnType);
+    }
+
+    private static void heapAdder(ClassFileWriter cw, Method adder, int access, String field, Class type, DirtyBit dirty) {
+        Class parameterType = adder.getParameterTypes()[0];
+        Class promoted = promote(type, parameterType);
+        String fieldDesc = descriptor(type);
+        MethodWriter mw = cw.method(ACC_PUBLIC | access, adder.getName(), methodDescriptor(adder));
+        markDirty(mw, cw.name(), dirty);
+        // return _field += $;
+        mw.loadThis();
+        mw.insn(DUP);
+        mw.field(GETFIELD, cw.name(), field, fieldDesc);
+        mw.convert(type, promoted);
+        mw.load(parameterType, 1);
+        mw.convert(parameterType, promoted);
+        char kind = kind(promoted);
+        mw.insn(kind == 'J' ? LADD : kind == 'F' ? FADD : kind == 'D' ? DADD : IADD);
+        mw.convert(promoted, type);
+        mw.insn(slots(type) == 2 ? DUP2_X1 : DUP_X1);
+        mw.field(PUTFIELD, cw.name(), field, fieldDesc);
+        mw.convert(type, adder.getReturnType());
+        mw.returnValue(adder.getReturnType());
+    }
+
+    private static void heapFieldOffset(ClassFileWriter cw, MethodWriter clinit, String offsetField, String field) {
+        // OFFSET = HeapAtomics.fieldOffset(X$$Heap.class, "_field");
+        cw.field(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, offsetField, "J");
+        clinit.ldcClass(cw.name());
+        clinit.ldc(field);
+        clinit.invoke(INVOKESTATIC, internalName(HeapAtomics.class), "fieldOffset",
+                methodDescriptor(long.class, Class.class, String.class));
+        clinit.field(PUTSTATIC, cw.name(), offsetField, "J");
+    }
+
+    private static void heapAtomicAdder(ClassFileWriter cw, Method adder, String offsetField, Class type, DirtyBit dirty) {
+        Class parameterType = adder.getParameterTypes()[0];
+        MethodWriter mw = cw.method(adder);
+        markDirty(mw, cw.name(), dirty);
+        // return HeapAtomics.addAtomicX(this, OFFSET, $);
+        mw.loadThis();
+        mw.field(GETSTATIC, cw.name(), offsetField, "J");
+        mw.load(parameterType, 1);
+        mw.convert(parameterType, type);
+        mw.invoke(INVOKESTATIC, internalName(HeapAtomics.class), "addAtomic" + bytesType(type),
+                methodDescriptor(type, Object.class, long.class, type));
+        mw.convert(type, adder.getReturnType());
+        mw.returnValue(adder.getReturnType());
+    }
+
+    private static void heapAtomicCas(ClassFileWriter cw, Method cas, String offsetField, Class type, DirtyBit dirty) {
+        MethodWriter mw = cw.method(cas);
+        markDirty(mw, cw.name(), dirty);
+        // return HeapAtomics.compareAndSwapX(this, OFFSET, _1, _2);
+        mw.loadThis();
+        mw.field(GETSTATIC, cw.name(), offsetField, "J");
+        mw.load(type, 1);
+        mw.load(type, 1 + slots(type));
+        mw.invoke(INVOKESTATIC, internalName(HeapAtomics.class), "compareAndSwap" + bytesType(type),
+                methodDescriptor(boolean.class, Object.class, long.class, type, type));
+        mw.returnValue(boolean.class);
+    }
+
+    private static Class promote(Class a, Class b) {
+        if (a == double.class || b == double.class) return double.class;
+        if (a == float.class || b == float.class) return float.class;
+        if (a == long.class || b == long.class) return long.class;
+        return int.class;
+    }
+
+    private static void heapCas(ClassFileWriter cw, Method cas, String field, Class type, DirtyBit dirty) {
+        String fieldDesc = descriptor(type);
+        MethodWriter mw = cw.method(ACC_PUBLIC | ACC_SYNCHRONIZED, cas.getName(), methodDescriptor(cas));
+        markDirty(mw, cw.name(), dirty);
+        Label notEqual = new Label();
+        // if (_field == _1) { _field = _2; return true; } return false;
+        mw.loadThis();
+        mw.field(GETFIELD, cw.name(), field, fieldDesc);
+        mw.load(type, 1);
+        jumpIfNotEqual(mw, type, notEqual);
+        mw.loadThis();
+        mw.load(type, 1 + slots(type));
+        mw.field(PUTFIELD, cw.name(), field, fieldDesc);
+        mw.intConst(1);
+        mw.returnValue(boolean.class);
+        mw.mark(notEqual);
+        mw.intConst(0);
+        mw.returnValue(boolean.class);
+    }
+
+    private static void jumpIfNotEqual(MethodWriter mw, Class type, Label label) {
+        if (!type.isPrimitive()) {
+            mw.jump(IF_ACMPNE, label);
+            return;
+        }
+        switch (kind(type)) {
+            case 'J':
+                mw.insn(LCMP);
+                mw.jump(IFNE, label);
+                break;
+            case 'F':
+                mw.insn(FCMPL);
+                mw.jump(IFNE, label);
+                break;
+            case 'D':
+                mw.insn(DCMPL);
+                mw.jump(IFNE, label);
+                break;
+            default:
+                mw.jump(IF_ICMPNE, label);
+                break;
+        }
+    }
+
+    private static void heapReadMarshall(MethodWriter read, String owner, String field, String fieldDesc, Class type, FieldModel model) {
+        if (!model.isArray()) {
+            read.loadThis();
+            read.convert(readValue(read, type, true), type);
+            read.field(PUTFIELD, owner, field, fieldDesc);
+        } else {
+            Loop loop = read.beginLoop(model.indexSize().value());
+            read.loadThis();
+            read.field(GETFIELD, owner, field, fieldDesc);
+            read.load(int.class, loop.index);
+            read.convert(readValue(read, type, true), type);
+            read.arrayStore(type);
+            read.endLoop(loop);
+        }
+    }
+
+    // delta
+
+    /**
+     * The bit of a field in the dirty mask of a DeltaMarshallable, which is the $dirty field of a $$Heap class or the
+     * long at offset in a $$Native record.
+     */
+    private static final class DirtyBit {
+        final int offset;
+        final long bit;
+
+        DirtyBit(int offset, int index) {
+            this.offset = offset;
+            this.bit = 1L << index;
+        }
+    }
+
+    private static void markDirty(MethodWriter mw, String owner, DirtyBit dirty) {
+        if (dirty == null)
+            return;
+        // mask |= bit
+        beginStoreMask(mw, owner, dirty.offset);
+        loadMask(mw, owner, dirty.offset);
+        mw.longConst(dirty.bit);
+        mw.insn(LOR);
+        endStoreMask(mw, owner, dirty.offset);
+    }
+
+    private static void loadMask(MethodWriter mw, String owner, int dirtyOffset) {
+        if (dirtyOffset < 0) {
+            mw.loadThis();
+            mw.field(GETFIELD, owner, "$dirty", "J");
+        } else {
+            loadBytes(mw, owner);
+            offset(mw, owner, dirtyOffset);
+            mw.invoke(Bytes.class, resolve(Bytes.class, "readLong", long.class));
+        }
+    }
+
+    private static void beginStoreMask(MethodWriter mw, String owner, int dirtyOffset) {
+        if (dirtyOffset < 0) {
+            mw.loadThis();
+        } else {
+            loadBytes(mw, owner);
+            offset(mw, owner, dirtyOffset);
+        }
+    }
+
+    private static void endStoreMask(MethodWriter mw, String owner, int dirtyOffset) {
+        if (dirtyOffset < 0)
+            mw.field(PUTFIELD, owner, "$dirty", "J");
+        else
+            mw.invoke(Bytes.class, resolve(Bytes.class, "writeLong", long.class, long.class));
+    }
+
+    private static int beginWriteDelta(MethodWriter mw, String owner, int dirtyOffset) {
+        // long $mask = mask; out.writeStopBit($mask);
+        int mask = mw.newLocal(long.class);
+        loadMask(mw, owner, dirtyOffset);
+        mw.store(long.class, mask);
+        mw.load(Bytes.class, 1);
+        mw.load(long.class, mask);
+        mw.invoke(Bytes.class, resolve(Bytes.class, "writeStopBit", long.class));
+        return mask;
+    }
+
+    private static int beginReadDelta(MethodWriter mw) {
+        // long $mask = in.readStopBit();
+        int mask = mw.newLocal(long.class);
+        mw.load(Bytes.class, 1);
+        mw.invoke(Bytes.class, resolve(Bytes.class, "readStopBit"));
+        mw.store(long.class, mask);
+        return mask;
+    }
+
+    private static Label ifDirty(MethodWriter mw, int mask, int index) {
+        // if (($mask & bit) != 0) {
+        Label unchanged = new Label();
+        mw.load(long.class, mask);
+        mw.longConst(1L << index);
+        mw.insn(LAND);
+        mw.longConst(0);
+        mw.insn(LCMP);
+        mw.jump(IFEQ, unchanged);
+        return unchanged;
+    }
+
+    private static void endDelta(ClassFileWriter cw, MethodWriter readDelta, MethodWriter writeDelta, int readMask, int dirtyOffset) {
+        String owner = cw.name();
+        writeDelta.returnValue(void.class);
+        // mask |= $mask;
+        beginStoreMask(readDelta, owner, dirtyOffset);
+        loadMask(readDelta, owner, dirtyOffset);
+        readDelta.load(long.class, readMask);
+        readDelta.insn(LOR);
+        endStoreMask(readDelta, owner, dirtyOffset);
+        readDelta.returnValue(void.class);
+
+        MethodWriter isDirty = cw.method(ACC_PUBLIC, "isDirty", "()Z");
+        Label clean = new Label();
+        loadMask(isDirty, owner, dirtyOffset);
+        isDirty.longConst(0);
+        isDirty.insn(LCMP);
+        isDirty.jump(IFEQ, clean);
+        isDirty.intConst(1);
+        isDirty.returnValue(boolean.class);
+        isDirty.mark(clean);
+        isDirty.intConst(0);
+        isDirty.returnValue(boolean.class);
+
+        MethodWriter clearDirty = cw.method(ACC_PUBLIC, "clearDirty", "()V");
+        beginStoreMask(clearDirty, owner, dirtyOffset);
+        clearDirty.longConst(0);
+        endStoreMask(clearDirty, owner, dirtyOffset);
+        clearDirty.returnValue(void.class);
+    }
+
+    // seqlock
+
+    private static void seqLockMethods(ClassFileWriter cw, int versionOffset) {
+        for (String name : new String[]{"writeBegin", "writeEnd"}) {
+            // SeqLocks.writeXxx(_bytes, _offset + VERSION) or SeqLocks.writeXxx(this, VERSION)
+            MethodWriter mw = cw.method(ACC_PUBLIC, name, "()V");
+            String descriptor = loadVersion(mw, cw.name(), versionOffset);
+            mw.invoke(INVOKESTATIC, internalName(SeqLocks.class), name, "(" + descriptor + ")V");
+            mw.returnValue(void.class);
+        }
+        // SeqLocks.readConsistent(version, this, (Copyable) copy)
+        MethodWriter mw = cw.method(ACC_PUBLIC, "readConsistent", methodDescriptor(void.class, Object.class));
+        String descriptor = loadVersion(mw, cw.name(), versionOffset);
+        mw.loadThis();
+        mw.load(Object.class, 1);
+        mw.typeInsn(CHECKCAST, internalName(Copyable.class));
+        mw.invoke(INVOKESTATIC, internalName(SeqLocks.class), "readConsistent",
+                "(" + descriptor + "Ljava/lang/Object;" + descriptor(Copyable.class) + ")V");
+        mw.returnValue(void.class);
+    }
+
+    private static String loadVersion(MethodWriter mw, String owner, int versionOffset) {
+        if (versionOffset < 0) {
+            mw.loadThis();
+            mw.field(GETSTATIC, owner, "$VERSION", "J");
+            return "Ljava/lang/Object;J";
+        }
+        loadBytes(mw, owner);
+        offset(mw, owner, versionOffset);
+        return BYTES_DESC + "J";
+    }
+
+    // native
+
+    private static void offset(MethodWriter mw, String owner, int offset) {
+        // _offset + OFFSET
+        mw.loadThis();
+        mw.field(GETFIELD, owner, "_offset", "J");
+        if (offset != 0) {
+            mw.longConst(offset);
+            mw.insn(LADD);
+        }
+    }
+
+    private static void indexOffset(MethodWriter mw, int size) {
+        // + i * size
+        mw.load(int.class, 1);
+        mw.intConst(size);
+        mw.insn(IMUL);
+        mw.insn(I2L);
+        mw.insn(LADD);
+    }
+
+    /**
+     * Where a scalar field is, _offset + offset in a $$Native class or _column + _index * size in a $$Columnar class.
+     */
+    private static final class Address {
+        final int offset;
+        final String column;
+        final int size;
+
+        private Address(int offset, String column, int size) {
+            this.offset = offset;
+            this.column = column;
+            this.size = size;
+        }
+
+        static Address at(int offset) {
+            return new Address(offset, null, 0);
+        }
+
+        static Address column(String column, int size) {
+            return new Address(0, column, size);
+        }
+
+        void load(MethodWriter mw, String owner) {
+            if (column == null) {
+                offset(mw, owner, offset);
+                return;
+            }
+            mw.loadThis();
+            mw.field(GETFIELD, owner, column, "J");
+            mw.loadThis();
+            mw.field(GETFIELD, owner, "_index", "J");
+            mw.longConst(size);
+            mw.insn(LMUL);
+            mw.insn(LADD);
+        }
+    }
+
+    private static void loadBytes(MethodWriter mw, String owner) {
+        mw.loadThis();
+        mw.field(GETFIELD, owner, "_bytes", BYTES_DESC);
+    }
+
+    private static void byteOrder(MethodWriter mw) {
+        mw.invoke(Bytes.class, resolve(Bytes.class, "byteOrder"));
+    }
+
+    private static void bulkCopy(MethodWriter copy, String owner, int size) {
+        // if (from instanceof X$$Native && $from._bytes.byteOrder() == _bytes.byteOrder()) copy it all at once
+        Label fieldByField = new Label();
+        copy.load(Object.class, 1);
+        copy.typeInsn(INSTANCEOF, owner);
+        copy.jump(IFEQ, fieldByField);
+        int from = copy.newLocal(Object.class);
+        copy.load(Object.class, 1);
+        copy.typeInsn(CHECKCAST, owner);
+        copy.store(Object.class, from);
+        copy.load(Object.class, from);
+        copy.field(GETFIELD, owner, "_bytes", BYTES_DESC);
+        byteOrder(copy);
+        loadBytes(copy, owner);
+        byteOrder(copy);
+        copy.jump(IF_ACMPNE, fieldByField);
+        loadBytes(copy, owner);
+        offset(copy, owner, 0);
+        copy.load(Object.class, from);
+        copy.field(GETFIELD, owner, "_bytes", BYTES_DESC);
+        copy.load(Object.class, from);
+        copy.field(GETFIELD, owner, "_offset", "J");
+        copy.longConst(size);
+        copy.invoke(Bytes.class, resolve(Bytes.class, "write", long.class, RandomDataInput.class, long.class, long.class));
+        copy.returnValue(void.class);
+        copy.mark(fieldByField);
+    }
+
+    private static void sameOrderAndRemaining(MethodWriter mw, String owner, int size, Label otherwise) {
+        // if (bytes.byteOrder() == _bytes.byteOrder() && bytes.remaining() >= size)
+        mw.load(Bytes.class, 1);
+        byteOrder(mw);
+        loadBytes(mw, owner);
+        byteOrder(mw);
+        mw.jump(IF_ACMPNE, otherwise);
+        mw.load(Bytes.class, 1);
+        mw.invoke(Bytes.class, resolve(Bytes.class, "remaining"));
+        mw.longConst(size);
+        mw.insn(LCMP);
+        mw.jump(IFLT, otherwise);
+    }
+
+    private static void bulkWriteMarshall(MethodWriter write, String owner, int size) {
+        Label fieldByField = new Label();
+        sameOrderAndRemaining(write, owner, size, fieldByField);
+        // out.write(_bytes, _offset, size)
+        write.load(Bytes.class, 1);
+        loadBytes(write, owner);
+        offset(write, owner, 0);
+        write.longConst(size);
+        write.invoke(Bytes.class, resolve(Bytes.class, "write", RandomDataInput.class, long.class, long.class));
+        write.returnValue(void.class);
+        write.mark(fieldByField);
+    }
+
+    private static void bulkReadMarshall(MethodWriter read, String owner, int size) {
+        Label fieldByField = new Label();
+        sameOrderAndRemaining(read, owner, size, fieldByField);
+        int position = read.newLocal(long.class);
+        read.load(Bytes.class, 1);
+        read.invoke(Bytes.class, resolve(Bytes.class, "position"));
+        read.store(long.class, position);
+        // _bytes.write(_offset, in, position, size)
+        loadBytes(read, owner);
+        offset(read, owner, 0);
+        read.load(Bytes.class, 1);
+        read.load(long.class, position);
+        read.longConst(size);
+        read.invoke(Bytes.class, resolve(Bytes.class, "write", long.class, RandomDataInput.class, long.class, long.class));
+        // in.position(position + size)
+        read.load(Bytes.class, 1);
+        read.load(long.class, position);
+        read.longConst(size);
+        read.insn(LADD);
+        Method setPosition = resolve(Bytes.class, "position", long.class);
+        read.invoke(Bytes.class, setPosition);
+        popResult(read, setPosition.getReturnType());
+        read.returnValue(void.class);
+        read.mark(fieldByField);
+    }
+
+    private static void packedGet(ClassFileWriter cw, Method getter, PackedField field) {
+        // (type) ((((long) _bytes.readXxx(_offset + OFFSET) >>> shift) & mask) + min) or as a double / factor
+        Class returnType = getter.getReturnType();
+        Method read = resolve(Bytes.class, "read" + bytesType(field.wordType()), long.class);
+        MethodWriter mw = cw.method(getter);
+        loadBytes(mw, cw.name());
+        offset(mw, cw.name(), field.offset);
+        mw.invoke(Bytes.class, read);
+        mw.convert(read.getReturnType(), long.class);
+        if (field.shift != 0) {
+            mw.intConst(field.shift);
+            mw.insn(LUSHR);
+        }
+        mw.longConst(field.mask());
+        mw.insn(LAND);
+        if (field.min != 0) {
+            mw.longConst(field.min);
+            mw.insn(LADD);
+        }
+        if (field.factor == 0) {
+            mw.convert(long.class, returnType);
+        } else {
+            mw.insn(L2D);
+            mw.longConst(field.factor);
+            mw.insn(L2D);
+            mw.insn(DDIV);
+            mw.convert(double.class, returnType);
+        }
+        mw.returnValue(returnType);
+    }
+
+    private static void packedSet(ClassFileWriter cw, Method setter, PackedField field, FieldModel model, DirtyBit dirty) {
+        Class setterType = lastParameter(setter);
+        Method read = resolve(Bytes.class, "read" + bytesType(field.wordType()), long.class);
+        Method write = resolve(Bytes.class, "write" + bytesType(field.wordType()), long.class, field.wordType());
+        MethodWriter mw = cw.method(setter);
+        markDirty(mw, cw.name(), dirty);
+        int value = mw.newLocal(long.class);
+        mw.load(setterType, 1);
+        if (field.factor == 0) {
+            mw.convert(setterType, long.class);
+        } else {
+            // Math.round((double) $ * factor)
+            mw.convert(setterType, double.class);
+            mw.longConst(field.factor);
+            mw.insn(L2D);
+            mw.insn(DMUL);
+            mw.invoke(INVOKESTATIC, "java/lang/Math", "round", "(D)J");
+        }
+        mw.store(long.class, value);
+
+        Label outOfRange = new Label(), inRange = new Label();
+        mw.load(long.class, value);
+        mw.longConst(field.min);
+        mw.insn(LCMP);
+        mw.jump(IFLT, outOfRange);
+        mw.longConst(field.max);
+        mw.load(long.class, value);
+        mw.insn(LCMP);
+        mw.jump(IFGE, inRange);
+        mw.mark(outOfRange);
+        String exception = "java/lang/IllegalArgumentException";
+        mw.typeInsn(NEW, exception);
+        mw.insn(DUP);
+        mw.typeInsn(NEW, STRING_BUILDER);
+        mw.insn(DUP);
+        mw.invoke(INVOKESPECIAL, STRING_BUILDER, "<init>", "()V");
+        mw.load(setterType, 1);
+        Method append = resolve(StringBuilder.class, "append", setterType);
+        mw.invoke(StringBuilder.class, append);
+        mw.convert(append.getReturnType(), StringBuilder.class);
+        mw.ldc(field.factor == 0
+                ? " is not in the range [" + field.min + ", " + field.max + "]"
+                : " has more than " + model.digits().integer() + " integer digits");
+        mw.invoke(INVOKEVIRTUAL, STRING_BUILDER, "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+        mw.invoke(INVOKEVIRTUAL, STRING_BUILDER, "toString", "()Ljava/lang/String;");
+        mw.invoke(INVOKESPECIAL, exception, "<init>", "(Ljava/lang/String;)V");
+        mw.insn(ATHROW);
+        mw.mark(inRange);
+
+        // _bytes.writeXxx(_offset + OFFSET, word & ~(mask << shift) | ((value - min) & mask) << shift)
+        loadBytes(mw, cw.name());
+        offset(mw, cw.name(), field.offset);
+        loadBytes(mw, cw.name());
+        offset(mw, cw.name(), field.offset);
+        mw.invoke(Bytes.class, read);
+        mw.convert(read.getReturnType(), long.class);
+        mw.longConst(~(field.mask() << field.shift));
+        mw.insn(LAND);
+        mw.load(long.class, value);
+        if (field.min != 0) {
+            mw.longConst(field.min);
+            mw.insn(LSUB);
+        }
+        mw.longConst(field.mask());
+        mw.insn(LAND);
+        if (field.shift != 0) {
+            mw.intConst(field.shift);
+            mw.insn(LSHL);
+        }
+        mw.insn(LOR);
+        mw.convert(long.class, lastParameter(write));
+        mw.invoke(Bytes.class, write);
+        popResult(mw, write.getReturnType());
+        mw.returnValue(void.class);
+    }
+
+    private static void nativeSet(ClassFileWriter cw, Method setter, Class type, Address address, FieldModel model, boolean isVolatile, DirtyBit dirty) {
+        Class<?> setterType = lastParameter(setter);
+        boolean isString = CharSequence.class.isAssignableFrom(type);
+        Method write = isString
+                ? resolve(Bytes.class, (isVolatile ? "writeOrdered" : "write") + bytesType(type), long.class, int.class, setterType)
+                : resolve(Bytes.class, (isVolatile ? "writeOrdered" : "write") + bytesType(type), long.class, setterType);
+
+        MethodWriter mw = cw.method(setter);
+        markDirty(mw, cw.name(), dirty);
+        if (model.isArray())
+            boundsCheck(mw, model.indexSize().value());
+        loadBytes(mw, cw.name());
+        address.load(mw, cw.name());
+        if (model.isArray())
+            indexOffset(mw, (model.nativeSize() + 7) >> 3);
+        if (isString)
+            mw.intConst(model.size().value());
+        mw.load(setterType, model.isArray() ? 2 : 1);
+        mw.convert(setterType, lastParameter(write));
+        mw.invoke(Bytes.class, write);
+        popResult(mw, write.getReturnType());
+        mw.returnValue(void.class);
+    }
+
+    /**
+     * @param model null if this is not an indexed getter.
+     */
+    private static void nativeGet(ClassFileWriter cw, String name, Class returnType, Class type, Address address, FieldModel model, boolean isVolatile) {
+        boolean indexed = model != null && model.isArray();
+        Method read = resolve(Bytes.class, (isVolatile ? "readVolatile" : "read") + bytesType(type), long.class);
+
+        MethodWriter mw = indexed
+                ? cw.method(ACC_PUBLIC, name, methodDescriptor(returnType, int.class))
+                : cw.method(ACC_PUBLIC, name, methodDescriptor(returnType));
+        if (indexed)
+            boundsCheck(mw, model.indexSize().value());
+        loadBytes(mw, cw.name());
+        address.load(mw, cw.name());
+        if (indexed)
+            indexOffset(mw, (model.nativeSize() + 7) >> 3);
+        mw.invoke(Bytes.class, read);
+        mw.convert(read.getReturnType(), returnType);
+        mw.returnValue(returnType);
+    }
+
+    private static void nativeGetUsing(ClassFileWriter cw, Method method, Class type, int offset) {
+        if (method.getParameterTypes().length != 1)
+            return;
+        if (!StringBuilder.class.equals(method.getParameterTypes()[0]))
+            return;
+        if (type != String.class)
+            return;
+
+        MethodWriter mw = cw.method(method);
+        Method position = resolve(Bytes.class, "position", long.class);
+        loadBytes(mw, cw.name());
+        offset(mw, cw.name(), offset);
+        mw.invoke(Bytes.class, position);
+        popResult(mw, position.getReturnType());
+
+        Method read = resolve(Bytes.class, "read" + bytesType(type), StringBuilder.class);
+        loadBytes(mw, cw.name());
+        mw.load(StringBuilder.class, 1);
+        mw.invoke(Bytes.class, read);
+        popResult(mw, read.getReturnType());
+        returnBuilder(mw, method);
+    }
+
+    /**
+     * return _bytes.{bytesMethod}(address, args...);
+     */
+    private static void nativeDelegate(ClassFileWriter cw, Method method, String bytesMethod, Address address, DirtyBit dirty) {
+        Class[] parameterTypes = method.getParameterTypes();
+        Class[] argTypes = new Class[parameterTypes.length + 1];
+        argTypes[0] = long.class;
+        System.arraycopy(parameterTypes, 0, argTypes, 1, parameterTypes.length);
+        Method delegate = resolve(Bytes.class, bytesMethod, argTypes);
+
+        MethodWriter mw = cw.method(method);
+        markDirty(mw, cw.name(), dirty);
+        loadBytes(mw, cw.name());
+        address.load(mw, cw.name());
+        for (int i = 0, slot = 1; i < parameterTypes.length; i++) {
+            mw.load(parameterTypes[i], slot);
+            mw.convert(parameterTypes[i], delegate.getParameterTypes()[i + 1]);
+            slot += slots(parameterTypes[i]);
+        }
+        mw.invoke(Bytes.class, delegate);
+        if (method.getReturnType() == void.class)
+            popResult(mw, delegate.getReturnType());
+        else
+            mw.convert(delegate.getReturnType(), method.getReturnType());
+        mw.returnValue(method.getReturnType());
+    }
+
+    private static void nativeReadMarshall(MethodWriter read, String owner, Method getter, Method setter, Class type, FieldModel model) {
+        if (!model.isArray()) {
+            if (getter != null && setter != null) {
+                read.loadThis();
+                read.convert(readValue(read, type, false), lastParameter(setter));
+                invokeThis(read, owner, setter);
+            }
+        } else {
+            Loop loop = read.beginLoop(model.indexSize().value());
+            read.loadThis();
+            read.load(int.class, loop.index);
+            read.convert(readValue(read, type, false), lastParameter(setter));
+            invokeThis(read, owner, setter);
+            read.endLoop(loop);
+        }
+    }
+
+    private static void nonScalarInit(MethodWriter init, String owner, String field, String fieldDesc, String nestedClass, FieldModel model) {
+        if (!model.isArray()) {
+            init.loadThis();
+            newInstance(init, nestedClass);
+            init.field(PUTFIELD, owner, field, fieldDesc);
+        } else {
+            int length = model.indexSize().value();
+            init.loadThis();
+            init.intConst(length);
+            init.typeInsn(ANEWARRAY, nestedClass);
+            init.field(PUTFIELD, owner, field, fieldDesc);
+            Loop loop = init.beginLoop(length);
+            init.loadThis();
+            init.field(GETFIELD, owner, field, fieldDesc);
+            init.load(int.class, loop.index);
+            newInstance(init, nestedClass);
+            init.arrayStore(Object.class);
+            init.endLoop(loop);
+        }
+    }
+
+    private static void newInstance(MethodWriter mw, String className) {
+        mw.typeInsn(NEW, className);
+        mw.insn(DUP);
+        mw.invoke(INVOKESPECIAL, className, "<init>", "()V");
+    }
+
+    private static void nonScalarElement(MethodWriter mw, String owner, String field, String fieldDesc, int index) {
+        mw.loadThis();
+        mw.field(GETFIELD, owner, field, fieldDesc);
+        if (index >= 0) {
+            mw.load(int.class, index);
+            mw.arrayLoad(Object.class);
+        }
+    }
+
+    private static void nonScalarSet(ClassFileWriter cw, Method setter, String field, String fieldDesc, String nestedClass, Class type, FieldModel model, DirtyBit dirty) {
+        Class<?> setterType = lastParameter(setter);
+        MethodWriter mw = cw.method(setter);
+        markDirty(mw, cw.name(), dirty);
+        nonScalarElement(mw, cw.name(), field, fieldDesc, model.isArray() ? 1 : -1);
+        mw.load(setterType, model.isArray() ? 2 : 1);
+        mw.convert(setterType, type);
+        mw.invoke(INVOKEVIRTUAL, nestedClass, "copyFrom", methodDescriptor(void.class, type));
+        mw.returnValue(void.class);
+    }
+
+    private static void nonScalarGet(ClassFileWriter cw, Method getter, String field, String fieldDesc, FieldModel model) {
+        MethodWriter mw = cw.method(getter);
+        nonScalarElement(mw, cw.name(), field, fieldDesc, model.isArray() ? 1 : -1);
+        mw.returnValue(getter.getReturnType());
+    }
+
+    private static void nonScalarMarshall(MethodWriter mw, String owner, String field, String fieldDesc, String nestedClass, String method, FieldModel model) {
+        Loop loop = model.isArray() ? mw.beginLoop(model.indexSize().value()) : null;
+        nonScalarElement(mw, owner, field, fieldDesc, loop == null ? -1 : loop.index);
+        mw.load(Bytes.class, 1);
+        mw.invoke(INVOKEVIRTUAL, nestedClass, method, methodDescriptor(void.class, Bytes.class));
+        if (loop != null)
+            mw.endLoop(loop);
+    }
+
+    private static void nonScalarBytes(MethodWriter bytes, String owner, String field, String fieldDesc, String nestedClass, int offset, int size, FieldModel model) {
+        Loop loop = model.isArray() ? bytes.beginLoop(model.indexSize().value()) : null;
+        nonScalarElement(bytes, owner, field, fieldDesc, loop == null ? -1 : loop.index);
+        bytes.load(Bytes.class, 1);
+        offset(bytes, owner, offset);
+        if (loop != null) {
+            // + (i * size)
+            bytes.load(int.class, loop.index);
+            bytes.intConst(size);
+            bytes.insn(IMUL);
+            bytes.insn(I2L);
+            bytes.insn(LADD);
+        }
+        bytes.invoke(INVOKEVIRTUAL, nestedClass, "bytes", methodDescriptor(void.class, Bytes.class, long.class));
+        if (loop != null)
+            bytes.endLoop(loop);
+    }
+
+    // hashCode, equals and toString
+
+    private static void generateObjectMethods(ClassFileWriter cw, DataValueModel<?> dvmodel, Map.Entry<String, FieldModel>[] entries, boolean offHeap) {
+        Class<?> tClass = dvmodel.type();
+        String owner = cw.name();
+        MethodWriter longHashCode = cw.method(ACC_PUBLIC, "longHashCode", "()J");
+        MethodWriter equals = cw.method(ACC_PUBLIC, "equals", "(Ljava/lang/Object;)Z");
+        // if (this == o) return true;
+        Label notSame = new Label(), isInstance = new Label();
+        equals.loadThis();
+        equals.load(Object.class, 1);
+        equals.jump(IF_ACMPNE, notSame);
+        equals.intConst(1);
+        equals.returnValue(boolean.class);
+        equals.mark(notSame);
+        // if (!(o instanceof Type)) return false;
+        equals.load(Object.class, 1);
+        equals.typeInsn(INSTANCEOF, internalName(tClass));
+        equals.jump(IFNE, isInstance);
+        equals.intConst(0);
+        equals.returnValue(boolean.class);
+        equals.mark(isInstance);
+        // Type that = (Type) o;
+        int that = equals.newLocal(tClass);
+        equals.load(Object.class, 1);
+        equals.convert(Object.class, tClass);
+        equals.store(tClass, that);
+
+        List<Map.Entry<String, FieldModel>> toStringGetUsing = new ArrayList<Map.Entry<String, FieldModel>>();
+        int count = 0;
+        for (Map.Entry<String, FieldModel> entry : entries) {
+            String name = entry.getKey();
+            FieldModel model = entry.getValue();
+            Method getter = getGetter(model);
+            Method getUsing = getUsing(model);
+
+            if (getter == null) getter = getVolatileGetter(model);
+
+            if (getter != null || getUsing != null) {
+                // (...) * 10191 + calcLongHashCode(field())
+                if (count > 0) {
+                    longHashCode.longConst(10191);
+                    longHashCode.insn(LMUL);
+                }
+                longHashCode.loadThis();
+                if (!model.isArray()) {
+                    String getterName = getter == null ? getterName(getUsing) : getter.getName();
+                    Class returnType = getter == null ? model.type() : getter.getReturnType();
+                    longHashCode.invoke(INVOKEVIRTUAL, owner, getterName, methodDescriptor(returnType));
+                    calcLongHashCode(longHashCode, returnType);
+                } else {
+                    longHashCode.invoke(INVOKEVIRTUAL, owner, "longHashCode_" + model.name(), "()J");
+                }
+                if (count > 0)
+                    longHashCode.insn(LADD);
+
+                if (getter != null)
+                    equalsField(equals, owner, tClass, that, getter, model);
+                else
+                    toStringGetUsing.add(entry);
+                count++;
+            }
+
+            if (model.isArray())
+                arrayLongHashCode(cw, tClass, name, model);
+        }
+        if (count == 0)
+            longHashCode.longConst(0);
+        longHashCode.returnValue(long.class);
+        equals.intConst(1);
+        equals.returnValue(boolean.class);
+
+        MethodWriter hashCode = cw.method(ACC_PUBLIC, "hashCode", "()I");
+        // long lhc = longHashCode(); return (int) ((lhc >>> 32) ^ lhc);
+        int lhc = hashCode.newLocal(long.class);
+        hashCode.loadThis();
+        hashCode.invoke(INVOKEVIRTUAL, owner, "longHashCode", "()J");
+        hashCode.store(long.class, lhc);
+        hashCode.load(long.class, lhc);
+        hashCode.intConst(32);
+        hashCode.insn(LUSHR);
+        hashCode.load(long.class, lhc);
+        hashCode.insn(LXOR);
+        hashCode.insn(L2I);
+        hashCode.returnValue(int.class);
+
+        MethodWriter toString = cw.method(ACC_PUBLIC, "toString", "()Ljava/lang/String;");
+        if (offHeap) {
+            Label hasBytes = new Label();
+            loadBytes(toString, owner);
+            toString.jump(IFNONNULL, hasBytes);
+            toString.ldc("bytes is null");
+            toString.returnValue(String.class);
+            toString.mark(hasBytes);
+        }
+        int sb = toString.newLocal(StringBuilder.class);
+        newInstance(toString, STRING_BUILDER);
+        toString.store(StringBuilder.class, sb);
+        append(toString, sb, simpleName(tClass).replace('$', '.') + "{ ");
+        for (Map.Entry<String, FieldModel> entry : toStringGetUsing) {
+            Method getUsing = getUsing(entry.getValue());
+            append(toString, sb, entry.getKey() + "= ");
+            toString.load(StringBuilder.class, sb);
+            toString.loadThis();
+            newInstance(toString, STRING_BUILDER);
+            invokeThis(toString, owner, getUsing);
+            Method append = resolve(StringBuilder.class, "append", getUsing.getReturnType());
+            toString.convert(getUsing.getReturnType(), append.getParameterTypes()[0]);
+            toString.invoke(StringBuilder.class, append);
+            popResult(toString, append.getReturnType());
+        }
+        append(toString, sb, " }");
+        toString.load(StringBuilder.class, sb);
+        toString.invoke(INVOKEVIRTUAL, STRING_BUILDER, "toString", "()Ljava/lang/String;");
+        toString.returnValue(String.class);
+    }
+
+    private static void append(MethodWriter mw, int sb, String text) {
+        mw.load(StringBuilder.class, sb);
+        mw.ldc(text);
+        mw.invoke(INVOKEVIRTUAL, STRING_BUILDER, "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+        mw.insn(POP);
+    }
+
+    private static void calcLongHashCode(MethodWriter mw, Class type) {
+        Method calcLongHashCode = resolve(Compare.class, "calcLongHashCode", type);
+        mw.convert(type, calcLongHashCode.getParameterTypes()[0]);
+        mw.invoke(Compare.class, calcLongHashCode);
+    }
+
+    private static void equalsField(MethodWriter equals, String owner, Class tClass, int that, Method getter, FieldModel model) {
+        Class type = getter.getReturnType();
+        Method isEqual = resolve(Compare.class, "isEqual", type, type);
+        Label next = new Label();
+        Loop loop = model.isArray() ? equals.beginLoop(model.indexSize().value()) : null;
+        // if (!isEqual(field(), that.field())) return false;
+        equals.loadThis();
+        if (loop != null)
+            equals.load(int.class, loop.index);
+        invokeThis(equals, owner, getter);
+        equals.convert(type, isEqual.getParameterTypes()[0]);
+        equals.load(tClass, that);
+        if (loop != null)
+            equals.load(int.class, loop.index);
+        equals.invoke(tClass, getter);
+        equals.convert(type, isEqual.getParameterTypes()[1]);
+        equals.invoke(Compare.class, isEqual);
+        equals.jump(IFNE, next);
+        equals.intConst(0);
+        equals.returnValue(boolean.class);
+        equals.mark(next);
+        if (loop != null)
+            equals.endLoop(loop);
+    }
+
+    private static void arrayLongHashCode(ClassFileWriter cw, Class tClass, String name, FieldModel model) {
+        String nameWithUpper = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        if (model.isVolatile()) nameWithUpper = "Volatile" + nameWithUpper;
+        Method getter;
+        try {
+            getter = tClass.getMethod("get" + nameWithUpper + "At", int.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Expected a get" + nameWithUpper + "At(int) method for " + tClass.getName());
+        }
+        MethodWriter mw = cw.method(ACC_PUBLIC, "longHashCode_" + name, "()J");
+        // long hc = 0; for (...) hc += calcLongHashCode(getXxxAt(i)); return hc;
+        int hc = mw.newLocal(long.class);
+        mw.longConst(0);
+        mw.store(long.class, hc);
+        Loop loop = mw.beginLoop(model.indexSize().value());
+        mw.load(long.class, hc);
+        mw.loadThis();
+        mw.load(int.class, loop.index);
+        invokeThis(mw, cw.name(), getter);
+        calcLongHashCode(mw, getter.getReturnType());
+        mw.insn(LADD);
+        mw.store(long.class, hc);
+        mw.endLoop(loop);
+        mw.load(long.class, hc);
+        mw.returnValue(long.class);
+    }
+
+    // resolves overloaded methods the way javac does, without varargs.
+
+    static Method resolve(Class owner, String name, Class... argTypes) {
+        for (int phase = 0; phase < 2; phase++) {
+            Method best = null;
+            for (Method method : owner.getMethods()) {
+                if (!method.getName().equals(name) || method.getParameterTypes().length != argTypes.length)
+                    continue;
+                if (!isApplicable(method.getParameterTypes(), argTypes, phase > 0))
+                    continue;
+                if (best == null || isApplicable(best.getParameterTypes(), method.getParameterTypes(), false)
+                        && !Arrays.equals(best.getParameterTypes(), method.getParameterTypes()))
+                    best = method;
+            }
+            if (best != null)
+                return best;
+        }
+        throw new IllegalArgumentException("No method " + owner.getName() + "." + name + Arrays.asList(argTypes));
+    }
+
+    private static boolean isApplicable(Class[] parameterTypes, Class[] argTypes, boolean boxing) {
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class p = parameterTypes[i], a = argTypes[i];
+            if (p == a)
+                continue;
+            if (a.isPrimitive()) {
+                if (p.isPrimitive() ? isWidening(a, p) : boxing && p.isAssignableFrom(wrapper(a)))
+                    continue;
+                return false;
+            }
+            if (p.isPrimitive() || !p.isAssignableFrom(a))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isWidening(Class from, Class to) {
+        if (from == boolean.class || to == boolean.class || to == byte.class || to == char.class)
+            return false;
+        if (to == short.class)
+            return from == byte.class;
+        if (from == char.class)
+            return to != short.class;
+        int fromRank = rank(from), toRank = rank(to);
+        return fromRank < toRank;
+    }
+
+    private static int rank(Class type) {
+        return type == byte.class ? 0 : type == short.class ? 1 : type == int.class ? 2 : type == long.class ? 3
+                : type == float.class ? 4 : 5;
+    }
+}
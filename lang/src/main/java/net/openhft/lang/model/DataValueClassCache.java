@@ -16,28 +16,33 @@
 
 package net.openhft.lang.model;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * This is cache for the generated classes for a ClassLoader.
  */
 class DataValueClassCache {
     private final DataValueGenerator dvg = new DataValueGenerator();
+    private final ConcurrentMap<Class, DataValueClassFactory> factoryMap = new ConcurrentHashMap<Class, DataValueClassFactory>();
 
-    public <T> T newInstance(Class<T> interfaceClass) {
-        try {
-            //noinspection ClassNewInstance
-            return heapClassFor(interfaceClass).newInstance();
-        } catch (Exception e) {
-            throw new AssertionError(e);
+    public <T> DataValueFactory<T> factoryFor(Class<T> interfaceClass) {
+        DataValueClassFactory factory = factoryMap.get(interfaceClass);
+        if (factory == null) {
+            factory = new DataValueClassFactory<T>(this, interfaceClass);
+            DataValueClassFactory prev = factoryMap.putIfAbsent(interfaceClass, factory);
+            if (prev != null)
+                factory = prev;
         }
+        return factory;
+    }
+
+    public <T> T newInstance(Class<T> interfaceClass) {
+        return factoryFor(interfaceClass).newInstance();
     }
 
     public <T> T newDirectReference(Class<T> interfaceClass) {
-        try {
-            //noinspection ClassNewInstance
-            return directClassFor(interfaceClass).newInstance();
-        } catch (Exception e) {
-            throw new AssertionError(e);
-        }
+        return factoryFor(interfaceClass).newDirectReference();
     }
 
     public synchronized <T> Class<T> heapClassFor(Class<T> interfaceClass) {
@@ -47,4 +52,8 @@ class DataValueClassCache {
     public synchronized <T> Class<T> directClassFor(Class<T> interfaceClass) {
         return dvg.acquireNativeClass(interfaceClass);
     }
+
+    public synchronized <T> Class<T> columnarClassFor(Class<T> interfaceClass) {
+        return dvg.acquireColumnarClass(interfaceClass);
+    }
 }
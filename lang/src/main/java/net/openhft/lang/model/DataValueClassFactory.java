@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Caches the constructors of the generated classes for one interface.  The classes are only acquired on first use as
+ * not every interface supports both.
+ */
+class DataValueClassFactory<T> implements DataValueFactory<T> {
+    private final DataValueClassCache cache;
+    private final Class<T> interfaceClass;
+    private volatile Constructor<T> heapConstructor;
+    private volatile Constructor<T> directConstructor;
+
+    DataValueClassFactory(DataValueClassCache cache, Class<T> interfaceClass) {
+        this.cache = cache;
+        this.interfaceClass = interfaceClass;
+    }
+
+    @Override
+    public T newInstance() {
+        Constructor<T> constructor = heapConstructor;
+        if (constructor == null)
+            heapConstructor = constructor = constructorFor(heapClass());
+        return create(constructor);
+    }
+
+    @Override
+    public T newDirectReference() {
+        Constructor<T> constructor = directConstructor;
+        if (constructor == null)
+            directConstructor = constructor = constructorFor(directClass());
+        return create(constructor);
+    }
+
+    @Override
+    public Class<T> heapClass() {
+        return cache.heapClassFor(interfaceClass);
+    }
+
+    @Override
+    public Class<T> directClass() {
+        return cache.directClassFor(interfaceClass);
+    }
+
+    private static <T> Constructor<T> constructorFor(Class<T> tClass) {
+        try {
+            Constructor<T> constructor = tClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static <T> T create(Constructor<T> constructor) {
+        try {
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DataValueClassFactory{" + interfaceClass.getName() + '}';
+    }
+}
@@ -16,24 +16,31 @@
 
 package net.openhft.lang.model;
 
-import java.util.WeakHashMap;
+import java.lang.ref.WeakReference;
 
 /**
  * This class is a central access point for loading generated on-heap and off heap collections.
  */
 public enum DataValueClasses {
     ;
-    // the weak hash map is required as the class loader could go away without notice e.g. in OSGi
-    private static final WeakHashMap<ClassLoader, DataValueClassCache> cacheMap = new WeakHashMap<ClassLoader, DataValueClassCache>();
+    // the class loaders are weakly referenced as they could go away without notice e.g. in OSGi
+    // lookups scan this copy-on-write table without a lock, only adding a class loader is synchronized.
+    private static volatile CacheEntry[] caches = {};
+    private static final DataValueClassCache BOOTSTRAP_CACHE = new DataValueClassCache();
+
+    /**
+     * @return a factory for this interface which can be retained to create instances without any lookup.
+     */
+    public static <T> DataValueFactory<T> factoryFor(Class<T> interfaceClass) {
+        return acquireCache(interfaceClass).factoryFor(interfaceClass);
+    }
 
     public static <T> T newInstance(Class<T> interfaceClass) {
-        DataValueClassCache dataValueClassCache = acquireCache(interfaceClass);
-        return dataValueClassCache.newInstance(interfaceClass);
+        return factoryFor(interfaceClass).newInstance();
     }
 
     public static <T> T newDirectReference(Class<T> interfaceClass) {
-        DataValueClassCache dataValueClassCache = acquireCache(interfaceClass);
-        return dataValueClassCache.newDirectReference(interfaceClass);
+        return factoryFor(interfaceClass).newDirectReference();
     }
 
     public static <T> Class<T> heapClassFor(Class<T> interfaceClass) {
@@ -46,14 +53,57 @@ public enum DataValueClasses {
         return dataValueClassCache.directClassFor(interfaceClass);
     }
 
+    /**
+     * @return a class which implements the interface and Columnar, for interfaces of primitive fields only.
+     */
+    public static <T> Class<T> columnarClassFor(Class<T> interfaceClass) {
+        DataValueClassCache dataValueClassCache = acquireCache(interfaceClass);
+        return dataValueClassCache.columnarClassFor(interfaceClass);
+    }
+
     private static <T> DataValueClassCache acquireCache(Class<T> interfaceClass) {
         ClassLoader classLoader = interfaceClass.getClassLoader();
-        DataValueClassCache dataValueClassCache;
-        synchronized (cacheMap) {
-            dataValueClassCache = cacheMap.get(classLoader);
-            if (dataValueClassCache == null)
-                cacheMap.put(classLoader, dataValueClassCache = new DataValueClassCache());
+        if (classLoader == null)
+            return BOOTSTRAP_CACHE;
+        DataValueClassCache dataValueClassCache = findCache(caches, classLoader);
+        return dataValueClassCache == null ? addCache(classLoader) : dataValueClassCache;
+    }
+
+    private static DataValueClassCache findCache(CacheEntry[] entries, ClassLoader classLoader) {
+        for (CacheEntry entry : entries)
+            if (entry.get() == classLoader)
+                return entry.cache;
+        return null;
+    }
+
+    private static synchronized DataValueClassCache addCache(ClassLoader classLoader) {
+        CacheEntry[] entries = caches;
+        DataValueClassCache dataValueClassCache = findCache(entries, classLoader);
+        if (dataValueClassCache != null)
+            return dataValueClassCache;
+        // copy the live entries, dropping those for class loaders which have been collected.
+        CacheEntry[] entries2 = new CacheEntry[entries.length + 1];
+        int count = 0;
+        for (CacheEntry entry : entries)
+            if (entry.get() != null)
+                entries2[count++] = entry;
+        dataValueClassCache = new DataValueClassCache();
+        entries2[count++] = new CacheEntry(classLoader, dataValueClassCache);
+        if (count < entries2.length) {
+            CacheEntry[] entries3 = new CacheEntry[count];
+            System.arraycopy(entries2, 0, entries3, 0, count);
+            entries2 = entries3;
         }
+        caches = entries2;
         return dataValueClassCache;
     }
+
+    static final class CacheEntry extends WeakReference<ClassLoader> {
+        final DataValueClassCache cache;
+
+        CacheEntry(ClassLoader classLoader, DataValueClassCache cache) {
+            super(classLoader);
+            this.cache = cache;
+        }
+    }
 }
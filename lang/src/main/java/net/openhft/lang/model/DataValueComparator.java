@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.io.Bytes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compares $$Native records by one or more fields, reading them from their offsets in the records' Bytes so no objects
+ * are created.  The offsets are those of the generated classes.  Fields packed by @Range or @Digits are compared by
+ * their packed bits, which are in the same order as their values.  It also compares the elements of $$Columnar arrays,
+ * reading each field from its column, where it is not packed.
+ * <p></p>
+ * A subclass is generated for each interface and list of fields, with the offsets and reads of the fields in its code.
+ */
+public abstract class DataValueComparator<T> implements Comparator<T> {
+    private static final ConcurrentMap<List<Object>, DataValueComparator> COMPARATORS =
+            new ConcurrentHashMap<List<Object>, DataValueComparator>();
+
+    private String[] fieldNames;
+
+    protected DataValueComparator() {
+    }
+
+    /**
+     * @param tClass     the interface of the records.
+     * @param fieldNames the primitive fields to compare by, the first which differs decides the order.
+     * @throws IllegalArgumentException if a field doesn't exist or isn't a primitive.
+     */
+    public static <T> DataValueComparator<T> comparing(Class<T> tClass, String... fieldNames) {
+        if (fieldNames.length == 0)
+            throw new IllegalArgumentException("No fields to compare by");
+        List<Object> key = new ArrayList<Object>(fieldNames.length + 1);
+        key.add(tClass);
+        key.addAll(Arrays.asList(fieldNames));
+        DataValueComparator<T> comparator = COMPARATORS.get(key);
+        if (comparator == null)
+            comparator = acquireComparator(key, tClass, fieldNames.clone());
+        return comparator;
+    }
+
+    private static synchronized <T> DataValueComparator<T> acquireComparator(List<Object> key, Class<T> tClass,
+                                                                            String[] fieldNames) {
+        DataValueComparator<T> comparator = COMPARATORS.get(key);
+        if (comparator != null)
+            return comparator;
+        DataValueModel<T> dvmodel = DataValueModels.acquireModel(tClass);
+        for (String name : fieldNames) {
+            FieldModel model = dvmodel.fieldMap().get(name);
+            if (model == null)
+                throw new IllegalArgumentException(tClass.getName() + " has no field " + name
+                        + ", it has " + dvmodel.fieldMap().keySet());
+            if (!model.type().isPrimitive() || model.isArray())
+                throw new IllegalArgumentException(name + " is not a primitive field");
+        }
+        // the field names aren't always valid in a class name, so each comparator is numbered.
+        String className = tClass.getName() + "$$Comparator" + COMPARATORS.size();
+        Class comparatorClass = DataValueBytecode.defineClass(tClass.getClassLoader(), className,
+                DataValueBytecode.generateComparatorClass(className, dvmodel, fieldNames));
+        try {
+            comparator = (DataValueComparator<T>) comparatorClass.newInstance();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        comparator.fieldNames = fieldNames;
+        COMPARATORS.put(key, comparator);
+        return comparator;
+    }
+
+    /**
+     * Compare two records in place.
+     */
+    public abstract int compare(Bytes bytes1, long offset1, Bytes bytes2, long offset2);
+
+    /**
+     * Compare two elements of $$Columnar arrays in place.
+     *
+     * @param columnOffsets1 the offset of each column, as passed to Columnar.columns(Bytes, long[]).
+     */
+    public abstract int compare(Bytes bytes1, long[] columnOffsets1, long index1,
+                                Bytes bytes2, long[] columnOffsets2, long index2);
+
+    /**
+     * Compare two $$Native references which are bound to their records.
+     */
+    @Override
+    public int compare(T o1, T o2) {
+        Byteable b1 = (Byteable) o1, b2 = (Byteable) o2;
+        return compare(b1.bytes(), b1.offset(), b2.bytes(), b2.offset());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("DataValueComparator");
+        for (int i = 0; i < fieldNames.length; i++)
+            sb.append(i == 0 ? "(" : ", ").append(fieldNames[i]);
+        return sb.append(')').toString();
+    }
+}
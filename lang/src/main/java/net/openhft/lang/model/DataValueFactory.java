@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+/**
+ * Creates instances of one data value interface.  Obtain one with DataValueClasses.factoryFor(Class) and keep it, as
+ * creating instances this way needs no lookup or lock.
+ *
+ * @param <T> the data value interface
+ */
+public interface DataValueFactory<T> {
+    /**
+     * @return a new on heap instance
+     */
+    T newInstance();
+
+    /**
+     * @return a new off heap reference which must be given Bytes with Byteable.bytes(Bytes, long) before use.
+     */
+    T newDirectReference();
+
+    Class<T> heapClass();
+
+    Class<T> directClass();
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.io.Bytes;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads one integer field of $$Native records from its offset in the records' Bytes, so no objects are created.
+ * Fields packed by @Range are read as their values.  It also reads the field of the elements of a $$Columnar array
+ * from the field's column, where it is not packed.
+ */
+public final class DataValueField<T> {
+    private final String name;
+    private final int offset;
+    private final int size;
+    private final boolean isChar;
+    private final boolean isBoolean;
+    // for a packed field, the offset and size are those of its word.
+    private final PackedField packed;
+    // in the $$Columnar classes.
+    private final int column;
+    private final int columnSize;
+
+    private DataValueField(String name, int offset, int size, boolean isChar, boolean isBoolean, PackedField packed,
+                           int column, int columnSize) {
+        this.name = name;
+        this.offset = offset;
+        this.size = size;
+        this.isChar = isChar;
+        this.isBoolean = isBoolean;
+        this.packed = packed;
+        this.column = column;
+        this.columnSize = columnSize;
+    }
+
+    /**
+     * @param tClass the interface of the records.
+     * @param name   of a boolean, byte, short, char, int or long field, or one packed by @Range.
+     * @throws IllegalArgumentException if the field doesn't exist or isn't one of these.
+     */
+    public static <T> DataValueField<T> of(Class<T> tClass, String name) {
+        DataValueModel<T> dvmodel = DataValueModels.acquireModel(tClass);
+        FieldModel model = dvmodel.fieldMap().get(name);
+        if (model == null)
+            throw new IllegalArgumentException(tClass.getName() + " has no field " + name
+                    + ", it has " + dvmodel.fieldMap().keySet());
+        Class type = model.type();
+        if (!type.isPrimitive() || model.isArray() || type == float.class || type == double.class)
+            throw new IllegalArgumentException(name + " is not an integer field");
+        Map<String, Integer> unpacked = new HashMap<String, Integer>();
+        Map<String, PackedField> packed = PackedField.layout(dvmodel, DataValueGenerator.layoutUnpacked(dvmodel, unpacked));
+        int column = DataValueGenerator.columnOf(dvmodel, name);
+        int columnSize = DataValueGenerator.columnSize(type);
+        PackedField field = packed.get(name);
+        if (field != null) {
+            if (field.factor != 0)
+                throw new IllegalArgumentException(name + " is packed by @Digits so it is not an integer field");
+            return new DataValueField<T>(name, field.offset, field.wordSize, type == char.class, type == boolean.class,
+                    field, column, columnSize);
+        }
+        return new DataValueField<T>(name, unpacked.get(name), columnSize, type == char.class, type == boolean.class,
+                null, column, columnSize);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the value of the field of the record at this offset.
+     */
+    public long readLong(Bytes bytes, long recordOffset) {
+        long o = recordOffset + offset;
+        if (packed == null)
+            return read(bytes, o, size, isChar, isBoolean);
+        long word = read(bytes, o, size, false, false);
+        return ((word >>> packed.shift) & packed.mask()) + packed.min;
+    }
+
+    /**
+     * @param columnOffsets the offset of each column, as passed to Columnar.columns(Bytes, long[]).
+     * @return the value of the field of the element at this index of a $$Columnar array.
+     */
+    public long readLong(Bytes bytes, long[] columnOffsets, long index) {
+        return read(bytes, columnOffsets[column] + index * columnSize, columnSize, isChar, isBoolean);
+    }
+
+    private static long read(Bytes bytes, long offset, int size, boolean isChar, boolean isBoolean) {
+        switch (size) {
+            case 1:
+                if (isBoolean)
+                    return bytes.readBoolean(offset) ? 1 : 0;
+                return bytes.readByte(offset);
+            case 2:
+                return isChar ? bytes.readChar(offset) : bytes.readShort(offset);
+            case 4:
+                return bytes.readInt(offset);
+            default:
+                return bytes.readLong(offset);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DataValueField(" + name + ")";
+    }
+}
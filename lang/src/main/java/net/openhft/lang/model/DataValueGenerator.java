@@ -21,6 +21,8 @@ import net.openhft.lang.Compare;
 import net.openhft.lang.Maths;
 import net.openhft.lang.io.Bytes;
 import net.openhft.lang.io.serialization.BytesMarshallable;
+import net.openhft.lang.model.constraints.Align;
+import net.openhft.lang.model.constraints.Padded;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,20 +40,27 @@ public class DataValueGenerator {
             return o1.getName().compareTo(o2.getName());
         }
     };
-    private static final Comparator<Map.Entry<String, FieldModel>> COMPARE_BY_HEAP_SIZE = new Comparator<Map.Entry<String, FieldModel>>() {
+    static final Comparator<Map.Entry<String, FieldModel>> COMPARE_BY_HEAP_SIZE = new Comparator<Map.Entry<String, FieldModel>>() {
         @Override
         public int compare(Map.Entry<String, FieldModel> o1, Map.Entry<String, FieldModel> o2) {
-            // descending
-            int cmp = -Maths.compare(o1.getValue().heapSize(), o2.getValue().heapSize());
+            // descending, the aligned fields first as they leave gaps.
+            int cmp = -Maths.compare(alignment(o1.getValue()), alignment(o2.getValue()));
+            if (cmp == 0)
+                cmp = -Maths.compare(o1.getValue().heapSize(), o2.getValue().heapSize());
             return cmp == 0 ? o1.getKey().compareTo(o2.getKey()) : cmp;
         }
     };
+    static final int DIRTY_MASK_SIZE = 8;
+    static final int VERSION_SIZE = 8;
     private static final Logger LOGGER = LoggerFactory.getLogger(DataValueGenerator.class);
     private final Map<Class, Class> heapClassMap = new ConcurrentHashMap<Class, Class>();
     private final Map<Class, Class> nativeClassMap = new ConcurrentHashMap<Class, Class>();
+    private final Map<Class, Class> columnarClassMap = new ConcurrentHashMap<Class, Class>();
     private boolean dumpCode = Boolean.getBoolean("dvg.dumpCode");
+    // generate byte code directly rather than compiling the generated source.
+    private boolean bytecode = Boolean.getBoolean("dvg.bytecode");
 
-    private static String bytesType(Class type) {
+    static String bytesType(Class type) {
         if (type.isPrimitive())
             return Character.toUpperCase(type.getName().charAt(0)) + type.getName().substring(1);
         if (CharSequence.class.isAssignableFrom(type))
@@ -75,13 +84,18 @@ public class DataValueGenerator {
         Map<String, ? extends FieldModel> fieldMap = dvmodel.fieldMap();
         Map.Entry<String, FieldModel>[] entries = fieldMap.entrySet().toArray(new Map.Entry[fieldMap.size()]);
         Arrays.sort(entries, COMPARE_BY_HEAP_SIZE);
-        for (Map.Entry<String, ? extends FieldModel> entry : entries) {
+        boolean delta = isDeltaMarshallable(dvmodel);
+        StringBuilder writeDelta = new StringBuilder();
+        StringBuilder readDelta = new StringBuilder();
+        for (int index = 0; index < entries.length; index++) {
+            Map.Entry<String, ? extends FieldModel> entry = entries[index];
             String name = entry.getKey();
             FieldModel model = entry.getValue();
             Class type = model.type();
             if (!type.isPrimitive() && !type.getPackage().getName().equals("java.lang"))
                 imported.add(type);
             heapFieldDeclarations(fieldDeclarations, type, name, model);
+            String dirty = delta ? markDirty(false, index) : "";
 
             Method setter = getSetter(model);
             Method getter = getGetter(model);
@@ -108,7 +122,7 @@ public class DataValueGenerator {
                     copy.append("        ((Copyable) ").append(getter.getName()).append("()).copyFrom(from.").append(getter.getName()).append("());\n");
             } else {
                 methodCopy(copy, getter, setter, model);
-                methodHeapSet(getterSetters, setter, name, type, model);
+                methodHeapSet(getterSetters, setter, name, type, model, dirty);
             }
             if (getter != null)
                 methodHeapGet(getterSetters, getter, name, type, model);
@@ -127,7 +141,7 @@ public class DataValueGenerator {
             //If there is just a volatile get and set it would have been written above.
             if (bothVolatileAndPlain) {
                 methodHeapGet(getterSetters, volatileGetter, name, type, model);
-                methodHeapSet(getterSetters, orderedSetter, name, type, model);
+                methodHeapSet(getterSetters, orderedSetter, name, type, model, dirty);
             }
 
 
@@ -135,6 +149,7 @@ public class DataValueGenerator {
             if (adder != null) {
                 getterSetters.append("    public ").append(normalize(type)).append(' ').append(adder.getName())
                         .append("(").append(adder.getParameterTypes()[0].getName()).append(" $) {\n")
+                        .append(dirty)
                         .append("        return _").append(name).append(" += $;\n")
                         .append("    }");
             }
@@ -146,23 +161,39 @@ public class DataValueGenerator {
                         .append("    }\n\n");
             }
             Method atomicAdder = model.atomicAdder();
+            Method cas = model.cas();
+            boolean lockFree = HeapAtomics.isLockFree(type) && !model.isArray();
+            String OFFSET = name.toUpperCase() + "_OFFSET";
+            if (lockFree && (atomicAdder != null || cas != null)) {
+                imported.add(HeapAtomics.class);
+                fieldDeclarations.append("    private static final long ").append(OFFSET)
+                        .append(" = HeapAtomics.fieldOffset(").append(simpleName(dvmodel.type())).append("$$Heap.class, \"_")
+                        .append(name).append("\");\n");
+            }
             if (atomicAdder != null) {
-                getterSetters.append("    public synchronized ").append(normalize(type)).append(' ').append(atomicAdder.getName())
+                getterSetters.append("    public ").append(lockFree ? "" : "synchronized ").append(normalize(type)).append(' ').append(atomicAdder.getName())
                         .append("(").append(atomicAdder.getParameterTypes()[0].getName()).append(" $) {\n")
-                        .append("        return _").append(name).append(" += $;\n")
-                        .append("    }\n\n");
+                        .append(dirty);
+                if (lockFree)
+                    getterSetters.append("        return HeapAtomics.addAtomic").append(bytesType(type)).append("(this, ").append(OFFSET).append(", $);\n");
+                else
+                    getterSetters.append("        return _").append(name).append(" += $;\n");
+                getterSetters.append("    }\n\n");
             }
-            Method cas = model.cas();
             if (cas != null) {
-                getterSetters.append("    public synchronized boolean ").append(cas.getName()).append("(")
+                getterSetters.append("    public ").append(lockFree ? "" : "synchronized ").append("boolean ").append(cas.getName()).append("(")
                         .append(normalize(type)).append(" _1, ")
                         .append(normalize(type)).append(" _2) {\n")
-                        .append("        if (_").append(name).append(" == _1) {\n")
-                        .append("            _").append(name).append(" = _2;\n")
-                        .append("            return true;\n")
-                        .append("        }\n")
-                        .append("        return false;\n")
-                        .append("    }\n");
+                        .append(dirty);
+                if (lockFree)
+                    getterSetters.append("        return HeapAtomics.compareAndSwap").append(bytesType(type)).append("(this, ").append(OFFSET).append(", _1, _2);\n");
+                else
+                    getterSetters.append("        if (_").append(name).append(" == _1) {\n")
+                            .append("            _").append(name).append(" = _2;\n")
+                            .append("            return true;\n")
+                            .append("        }\n")
+                            .append("        return false;\n");
+                getterSetters.append("    }\n");
             }
             Method tryLockNanos = model.tryLockNanos();
             if (tryLockNanos != null) {
@@ -188,8 +219,23 @@ public class DataValueGenerator {
                         .append("        throw new UnsupportedOperationException();\n")
                         .append("    }");
             }
+            int writeStart = writeMarshal.length(), readStart = readMarshal.length();
             methodWriteMarshall(writeMarshal, getter, setter, type, model);
             methodHeapReadMarshall(readMarshal, name, type, model);
+            if (delta) {
+                deltaField(writeDelta, index, writeMarshal.substring(writeStart));
+                deltaField(readDelta, index, readMarshal.substring(readStart));
+            }
+        }
+        if (delta)
+            fieldDeclarations.append("    private long $dirty;\n");
+        boolean seqLocked = isSeqLocked(dvmodel);
+        if (seqLocked) {
+            imported.add(HeapAtomics.class);
+            imported.add(SeqLocks.class);
+            fieldDeclarations.append("    private volatile long $version;\n")
+                    .append("    private static final long $VERSION = HeapAtomics.fieldOffset(")
+                    .append(simpleName(dvmodel.type())).append("$$Heap.class, \"$version\");\n");
         }
         StringBuilder sb = new StringBuilder();
         sb.append("package ").append(dvmodel.type().getPackage().getName()).append(";\n\n");
@@ -213,6 +259,10 @@ public class DataValueGenerator {
         sb.append("    public void readMarshallable(Bytes in) {\n");
         sb.append(readMarshal);
         sb.append("    }\n");
+        if (delta)
+            deltaMethods(sb, "$dirty", "$dirty = %s;", writeDelta, readDelta);
+        if (seqLocked)
+            seqLockMethods(sb, dvmodel, "this, $VERSION");
         if (Byteable.class.isAssignableFrom(dvmodel.type())) {
             sb.append("    public void bytes(Bytes bytes, long l) {\n");
             sb.append("       throw new UnsupportedOperationException();\n");
@@ -233,7 +283,7 @@ public class DataValueGenerator {
         return sb.toString();
     }
 
-    private static String simpleName(Class<?> type) {
+    static String simpleName(Class<?> type) {
         String name = type.getName();
         return name.substring(name.lastIndexOf('.') + 1);
     }
@@ -325,31 +375,31 @@ public class DataValueGenerator {
     }
 
 
-    private static Method getUsing(FieldModel model) {
+    static Method getUsing(FieldModel model) {
         Method getUsing = model.getUsing();
         return getUsing;
     }
 
-    private static Method getGetter(FieldModel model) {
+    static Method getGetter(FieldModel model) {
         Method getter = model.getter();
         if (getter == null) getter = model.indexedGetter();
         return getter;
     }
 
-    private static Method getVolatileGetter(FieldModel model) {
+    static Method getVolatileGetter(FieldModel model) {
         Method getter = model.volatileGetter();
         if (getter == null) getter = model.volatileIndexedGetter();
         return getter;
     }
 
-    private static Method getSetter(FieldModel model) {
+    static Method getSetter(FieldModel model) {
         Method setter = model.setter();
         if (setter == null) setter = model.indexedSetter();
 
         return setter;
     }
 
-    private static Method getOrderedSetter(FieldModel model) {
+    static Method getOrderedSetter(FieldModel model) {
         Method setter = model.orderedSetter();
         if (setter == null) setter = model.orderedIndexedSetter();
 
@@ -450,7 +500,7 @@ public class DataValueGenerator {
         }
     }
 
-    private static void methodHeapSet(StringBuilder getterSetters, Method setter, String name, Class type, FieldModel model) {
+    private static void methodHeapSet(StringBuilder getterSetters, Method setter, String name, Class type, FieldModel model, String dirty) {
         Class<?> setterType = setter.getParameterTypes()[setter.getParameterTypes().length - 1];
         if (!model.isArray()) {
             getterSetters.append("    public void ").append(setter.getName()).append('(').append(normalize(setterType)).append(" $) {\n");
@@ -467,6 +517,7 @@ public class DataValueGenerator {
                 getterSetters.append("        _").append(name).append("[i] = $;\n");
 
         }
+        getterSetters.append(dirty);
         getterSetters.append("    }\n\n");
     }
 
@@ -559,22 +610,39 @@ public class DataValueGenerator {
             return heapClass;
         ClassLoader classLoader = tClass.getClassLoader();
         String className = tClass.getName() + "$$Heap";
-        try {
-            heapClass = classLoader.loadClass(className);
-        } catch (ClassNotFoundException ignored) {
-            try {
-                String actual = generateHeapObject(tClass);
-                if (dumpCode)
-                    LOGGER.info(actual);
-                heapClass = CompilerUtils.CACHED_COMPILER.loadFromJava(classLoader, className, actual);
-            } catch (ClassNotFoundException e) {
-                throw new AssertionError(e);
+        heapClass = loadGeneratedClass(classLoader, className, tClass);
+        if (heapClass == null) {
+            if (bytecode) {
+                DataValueModel<T> dvmodel = acquireNestedHeapClasses(tClass);
+                heapClass = DataValueBytecode.defineClass(classLoader, className, DataValueBytecode.generateHeapClass(dvmodel));
+            } else {
+                try {
+                    String actual = generateHeapObject(tClass);
+                    if (dumpCode)
+                        LOGGER.info(actual);
+                    heapClass = CompilerUtils.CACHED_COMPILER.loadFromJava(classLoader, className, actual);
+                } catch (ClassNotFoundException e) {
+                    throw new AssertionError(e);
+                }
             }
         }
         heapClassMap.put(tClass, heapClass);
         return heapClass;
     }
 
+    /**
+     * @return the class generated at build time, see DataValueSources, or null if there isn't one for this interface.
+     */
+    private static Class loadGeneratedClass(ClassLoader classLoader, String className, Class tClass) {
+        try {
+            Class aClass = classLoader.loadClass(className);
+            // a parent class loader could have one for another copy of the interface.
+            return tClass.isAssignableFrom(aClass) ? aClass : null;
+        } catch (ClassNotFoundException ignored) {
+            return null;
+        }
+    }
+
     String generateHeapObject(Class<?> tClass) {
         DataValueModel<?> dvmodel = DataValueModels.acquireModel(tClass);
         for (FieldModel fieldModel : dvmodel.fieldMap().values()) {
@@ -584,6 +652,15 @@ public class DataValueGenerator {
         return generateHeapObject(dvmodel);
     }
 
+    private <T> DataValueModel<T> acquireNestedHeapClasses(Class<T> tClass) {
+        DataValueModel<T> dvmodel = DataValueModels.acquireModel(tClass);
+        for (FieldModel fieldModel : dvmodel.fieldMap().values()) {
+            if (fieldModel.isArray() && fieldModel.type().isInterface())
+                acquireHeapClass(fieldModel.type());
+        }
+        return dvmodel;
+    }
+
     public <T> T nativeInstance(Class<T> tClass) {
         try {
             //noinspection ClassNewInstance
@@ -597,23 +674,26 @@ public class DataValueGenerator {
         Class nativeClass = nativeClassMap.get(tClass);
         if (nativeClass != null)
             return nativeClass;
-        DataValueModel<T> dvmodel = DataValueModels.acquireModel(tClass);
-        for (Class clazz : dvmodel.nestedModels()) {
-            // touch them to make sure they are loaded.
-            Class clazz2 = acquireNativeClass(clazz);
-        }
-        String actual = new DataValueGenerator().generateNativeObject(dvmodel);
-        if (dumpCode)
-            LOGGER.info(actual);
         ClassLoader classLoader = tClass.getClassLoader();
         String className = tClass.getName() + "$$Native";
-        try {
-            nativeClass = classLoader.loadClass(className);
-        } catch (ClassNotFoundException ignored) {
-            try {
-                nativeClass = CompilerUtils.CACHED_COMPILER.loadFromJava(classLoader, className, actual);
-            } catch (ClassNotFoundException e) {
-                throw new AssertionError(e);
+        nativeClass = loadGeneratedClass(classLoader, className, tClass);
+        if (nativeClass == null) {
+            DataValueModel<T> dvmodel = DataValueModels.acquireModel(tClass);
+            for (Class clazz : dvmodel.nestedModels()) {
+                // touch them to make sure they are loaded.
+                Class clazz2 = acquireNativeClass(clazz);
+            }
+            if (bytecode) {
+                nativeClass = DataValueBytecode.defineClass(classLoader, className, DataValueBytecode.generateNativeClass(dvmodel));
+            } else {
+                String actual = new DataValueGenerator().generateNativeObject(dvmodel);
+                if (dumpCode)
+                    LOGGER.info(actual);
+                try {
+                    nativeClass = CompilerUtils.CACHED_COMPILER.loadFromJava(classLoader, className, actual);
+                } catch (ClassNotFoundException e) {
+                    throw new AssertionError(e);
+                }
             }
         }
         nativeClassMap.put(tClass, nativeClass);
@@ -645,14 +725,21 @@ public class DataValueGenerator {
         Map<String, ? extends FieldModel> fieldMap = dvmodel.fieldMap();
         Map.Entry<String, FieldModel>[] entries = fieldMap.entrySet().toArray(new Map.Entry[fieldMap.size()]);
         Arrays.sort(entries, COMPARE_BY_HEAP_SIZE);
-        int offset = 0;
-        for (Map.Entry<String, ? extends FieldModel> entry : entries) {
+        Map<String, Integer> offsets = new HashMap<String, Integer>();
+        Map<String, PackedField> packedFields = PackedField.layout(dvmodel, layoutUnpacked(dvmodel, offsets));
+        boolean delta = isDeltaMarshallable(dvmodel);
+        StringBuilder writeDelta = new StringBuilder();
+        StringBuilder readDelta = new StringBuilder();
+        for (int index = 0; index < entries.length; index++) {
+            Map.Entry<String, ? extends FieldModel> entry = entries[index];
             String name = entry.getKey();
             FieldModel model = entry.getValue();
             Class type = model.type();
             if (!type.isPrimitive() && !type.getPackage().getName().equals("java.lang"))
                 imported.add(type);
             String NAME = "_offset + " + name.toUpperCase();
+            String dirty = delta ? markDirty(true, index) : "";
+            int writeStart = writeMarshal.length(), readStart = readMarshal.length();
             final Method setter = getSetter(model);
             final Method getter = getGetter(model);
             final Method getUsing = getUsing(model);
@@ -663,11 +750,23 @@ public class DataValueGenerator {
             final Method defaultSetter = setter != null ? setter : orderedSetter;
             final Method defaultGetter = getter != null ? getter : volatileGetter;
 
-            if (dvmodel.isScalar(type)) {
-                staticFieldDeclarations.append("    private static final int ").append(name.toUpperCase()).append(" = ").append(offset).append(";\n");
+            PackedField packedField = packedFields.get(name);
+            if (packedField != null) {
+                // stored in the words after the other fields.
+                staticFieldDeclarations.append("    private static final int ").append(name.toUpperCase()).append(" = ").append(packedField.offset).append(";\n");
+                methodCopy(copy, defaultGetter, defaultSetter, model);
+                if (setter != null)
+                    methodPackedSet(getterSetters, setter, NAME, packedField, model, dirty);
+                if (getter != null)
+                    methodPackedGet(getterSetters, getter, type, NAME, packedField);
+                methodWriteMarshall(writeMarshal, defaultGetter, defaultSetter, type, model);
+                methodReadMarshall(readMarshal, defaultGetter, defaultSetter, type, model);
+
+            } else if (dvmodel.isScalar(type)) {
+                staticFieldDeclarations.append("    private static final int ").append(name.toUpperCase()).append(" = ").append(offsets.get(name)).append(";\n");
                 methodCopy(copy, defaultGetter, defaultSetter, model);
                 if (setter != null)
-                    methodSet(getterSetters, setter, type, NAME, model, false);
+                    methodSet(getterSetters, setter, type, NAME, model, false, dirty);
                 if (getter != null)
                     methodGet(getterSetters, getter, type, NAME, model, false);
                 if (getUsing != null) {
@@ -681,74 +780,27 @@ public class DataValueGenerator {
                 }
 
                 if (orderedSetter != null)
-                    methodSet(getterSetters, orderedSetter, type, NAME, model, true);
+                    methodSet(getterSetters, orderedSetter, type, NAME, model, true, dirty);
                 if (volatileGetter != null)
                     methodGet(getterSetters, volatileGetter, type, NAME, model, true);
 
-                Method adder = model.adder();
-                if (adder != null) {
-                    getterSetters.append("    public ").append(normalize(type)).append(' ').append(adder.getName())
-                            .append("(").append(adder.getParameterTypes()[0].getName()).append(" $) {\n")
-                            .append("        return _bytes.add").append(bytesType(type)).append("(").append(NAME).append(", $);\n")
-                            .append("    }");
-                }
-                Method atomicAdder = model.atomicAdder();
-                if (atomicAdder != null) {
-                    getterSetters.append("    public ").append(normalize(type)).append(' ').append(atomicAdder.getName())
-                            .append("(").append(atomicAdder.getParameterTypes()[0].getName()).append(" $) {\n")
-                            .append("        return _bytes.addAtomic").append(bytesType(type)).append("(").append(NAME).append(", $);\n")
-                            .append("    }");
-                }
                 Method sizeOf = model.sizeOf();
                 if (sizeOf != null) {
                     getterSetters.append("    public int ").append(sizeOf.getName())
                             .append("() {\n").append("        return ").append(model.indexSize().value()).append(";\n")
                             .append("    }\n\n");
                 }
-                Method cas = model.cas();
-                if (cas != null) {
-                    getterSetters.append("    public boolean ").append(cas.getName()).append("(")
-                            .append(normalize(type)).append(" _1, ")
-                            .append(normalize(type)).append(" _2) {\n")
-                            .append("        return _bytes.compareAndSwap").append(bytesType(type)).append('(').append(NAME).append(", _1, _2);\n")
-                            .append("    }");
-                }
-                Method tryLockNanos = model.tryLockNanos();
-                if (tryLockNanos != null) {
-                    getterSetters.append("    public boolean ").append(tryLockNanos.getName()).append("(long nanos) {\n")
-                            .append("        return _bytes.tryLockNanos").append(bytesType(type)).append('(').append(NAME).append(", nanos);\n")
-                            .append("    }");
-                }
-                Method tryLock = model.tryLock();
-                if (tryLock != null) {
-                    getterSetters.append("    public boolean ").append(tryLock.getName()).append("() {\n")
-                            .append("        return _bytes.tryLock").append(bytesType(type)).append('(').append(NAME).append(");\n")
-                            .append("    }");
-                }
-                Method unlock = model.unlock();
-                if (unlock != null) {
-                    getterSetters.append("    public void ").append(unlock.getName()).append("() {\n")
-                            .append("         _bytes.unlock").append(bytesType(type)).append('(').append(NAME).append(");\n")
-                            .append("    }");
-                }
-                Method busyLock = model.busyLock();
-                if (busyLock != null) {
-                    getterSetters.append("    public void ").append(busyLock.getName()).append("() throws InterruptedException {\n")
-                            .append("         _bytes.busyLock").append(bytesType(type)).append('(').append(NAME).append(");\n")
-                            .append("    }");
-                }
+                methodScalarOps(getterSetters, model, type, NAME, dirty);
                 methodWriteMarshall(writeMarshal, defaultGetter, defaultSetter, type, model);
                 methodReadMarshall(readMarshal, defaultGetter, defaultSetter, type, model);
-
-                offset += computeOffset((model.nativeSize() + 7) >> 3, model);
             } else {
-                staticFieldDeclarations.append("    private static final int ").append(name.toUpperCase()).append(" = ").append(offset).append(";\n");
+                staticFieldDeclarations.append("    private static final int ").append(name.toUpperCase()).append(" = ").append(offsets.get(name)).append(";\n");
                 nonScalarFieldDeclaration(staticFieldDeclarations, type, name, model);
                 if (defaultSetter == null) {
                     copy.append("        _").append(name).append(".copyFrom(from.").append(getter.getName()).append("());\n");
                 } else {
                     methodCopy(copy, defaultGetter, defaultSetter, model);
-                    methodNonScalarSet(getterSetters, defaultSetter, name, type, model);
+                    methodNonScalarSet(getterSetters, defaultSetter, name, type, model, dirty);
                 }
 
                 int size = computeNonScalarOffset(dvmodel, type);
@@ -756,10 +808,20 @@ public class DataValueGenerator {
                 methodNonScalarWriteMarshall(writeMarshal, name, model);
                 methodNonScalarReadMarshall(readMarshal, name, model);
                 methodNonScalarBytes(nestedBytes, name, NAME, size, model);
-
-                offset += computeOffset(size, model);
+            }
+            if (delta) {
+                deltaField(writeDelta, index, writeMarshal.substring(writeStart));
+                deltaField(readDelta, index, readMarshal.substring(readStart));
             }
         }
+        if (delta)
+            staticFieldDeclarations.append("    private static final int $DIRTY = ").append(dirtyOffset(dvmodel)).append(";\n");
+        boolean seqLocked = isSeqLocked(dvmodel);
+        if (seqLocked) {
+            imported.add(SeqLocks.class);
+            staticFieldDeclarations.append("    private static final int $VERSION = ").append(versionOffset(dvmodel)).append(";\n");
+        }
+        int recordSize = computeNativeSize(dvmodel);
         fieldDeclarations.append("\n")
                 .append("    private Bytes _bytes;\n")
                 .append("    private long _offset;\n");
@@ -775,18 +837,48 @@ public class DataValueGenerator {
         sb.append(staticFieldDeclarations).append('\n');
         sb.append(fieldDeclarations).append('\n');
         sb.append(getterSetters);
+        String nativeName = simpleName(dvmodel.type()) + "$$Native";
         sb.append("    @Override\n")
-                .append("    public void copyFrom(").append(normalize(dvmodel.type())).append(" from) {\n")
-                .append(copy)
+                .append("    public void copyFrom(").append(normalize(dvmodel.type())).append(" from) {\n");
+        if (isBulkCopyable(dvmodel)) {
+            // the same layout so copy all the fields at once.
+            sb.append("        if (from instanceof ").append(nativeName).append(") {\n")
+                    .append("            ").append(nativeName).append(" $from = (").append(nativeName).append(") from;\n")
+                    .append("            if ($from._bytes.byteOrder() == _bytes.byteOrder()) {\n")
+                    .append("                _bytes.write(_offset, $from._bytes, $from._offset, ").append(recordSize).append(");\n")
+                    .append("                return;\n")
+                    .append("            }\n")
+                    .append("        }\n");
+        }
+        sb.append(copy)
                 .append("    }\n\n");
+        boolean bulkMarshallable = isBulkMarshallable(dvmodel);
         sb.append("    @Override\n")
-                .append("    public void writeMarshallable(Bytes out) {\n")
-                .append(writeMarshal)
+                .append("    public void writeMarshallable(Bytes out) {\n");
+        if (bulkMarshallable) {
+            sb.append("        if (out.byteOrder() == _bytes.byteOrder() && out.remaining() >= ").append(recordSize).append(") {\n")
+                    .append("            out.write(_bytes, _offset, ").append(recordSize).append(");\n")
+                    .append("            return;\n")
+                    .append("        }\n");
+        }
+        sb.append(writeMarshal)
                 .append("    }\n");
         sb.append("    @Override\n")
-                .append("    public void readMarshallable(Bytes in) {\n")
-                .append(readMarshal)
+                .append("    public void readMarshallable(Bytes in) {\n");
+        if (bulkMarshallable) {
+            sb.append("        if (in.byteOrder() == _bytes.byteOrder() && in.remaining() >= ").append(recordSize).append(") {\n")
+                    .append("            long $position = in.position();\n")
+                    .append("            _bytes.write(_offset, in, $position, ").append(recordSize).append(");\n")
+                    .append("            in.position($position + ").append(recordSize).append(");\n")
+                    .append("            return;\n")
+                    .append("        }\n");
+        }
+        sb.append(readMarshal)
                 .append("    }\n");
+        if (delta)
+            deltaMethods(sb, "_bytes.readLong(_offset + $DIRTY)", "_bytes.writeLong(_offset + $DIRTY, %s);", writeDelta, readDelta);
+        if (seqLocked)
+            seqLockMethods(sb, dvmodel, "_bytes, _offset + $VERSION");
         sb.append("    @Override\n")
                 .append("    public void bytes(Bytes bytes, long offset) {\n")
                 .append("       this._bytes = bytes;\n")
@@ -803,7 +895,7 @@ public class DataValueGenerator {
                 .append("    }\n");
         sb.append("    @Override\n")
                 .append("    public int maxSize() {\n")
-                .append("       return ").append(offset).append(";\n")
+                .append("       return ").append(recordSize).append(";\n")
                 .append("    }\n");
 
         generateObjectMethods(sb, dvmodel, entries, true);
@@ -812,10 +904,239 @@ public class DataValueGenerator {
         return sb.toString();
     }
 
+    public <T> Class acquireColumnarClass(Class<T> tClass) {
+        Class columnarClass = columnarClassMap.get(tClass);
+        if (columnarClass != null)
+            return columnarClass;
+        ClassLoader classLoader = tClass.getClassLoader();
+        String className = tClass.getName() + "$$Columnar";
+        columnarClass = loadGeneratedClass(classLoader, className, tClass);
+        if (columnarClass == null) {
+            DataValueModel<T> dvmodel = DataValueModels.acquireModel(tClass);
+            if (bytecode) {
+                columnarClass = DataValueBytecode.defineClass(classLoader, className, DataValueBytecode.generateColumnarClass(dvmodel));
+            } else {
+                String actual = generateColumnarObject(dvmodel);
+                if (dumpCode)
+                    LOGGER.info(actual);
+                try {
+                    columnarClass = CompilerUtils.CACHED_COMPILER.loadFromJava(classLoader, className, actual);
+                } catch (ClassNotFoundException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+        columnarClassMap.put(tClass, columnarClass);
+        return columnarClass;
+    }
+
+    /**
+     * Generates a flyweight which stores each field in a column of its own at column + index * size, for the fields in
+     * name order.  The records marshal the same as the $$Native ones.
+     *
+     * @throws IllegalArgumentException if the interface has a field which is not a primitive.
+     */
+    public String generateColumnarObject(DataValueModel<?> dvmodel) {
+        checkColumnar(dvmodel);
+        SortedSet<Class> imported = new TreeSet<Class>(COMPARATOR);
+        imported.add(BytesMarshallable.class);
+        imported.add(Copyable.class);
+        imported.add(Columnar.class);
+        imported.add(Bytes.class);
+
+        StringBuilder fieldDeclarations = new StringBuilder();
+        StringBuilder getterSetters = new StringBuilder();
+        StringBuilder writeMarshal = new StringBuilder();
+        StringBuilder readMarshal = new StringBuilder();
+        StringBuilder copy = new StringBuilder();
+        StringBuilder columnSizes = new StringBuilder();
+        StringBuilder columns = new StringBuilder();
+
+        int column = 0;
+        for (Map.Entry<String, ? extends FieldModel> entry : dvmodel.fieldMap().entrySet()) {
+            String name = entry.getKey();
+            fieldDeclarations.append("    private long _").append(name).append("Column;\n");
+            columnSizes.append(column == 0 ? "" : ", ").append(columnSize(entry.getValue().type()));
+            columns.append("        _").append(name).append("Column = columnOffsets[").append(column++).append("];\n");
+        }
+        // in the same order as the $$Native class so they marshal the same.
+        Map<String, ? extends FieldModel> fieldMap = dvmodel.fieldMap();
+        Map.Entry<String, FieldModel>[] entries = fieldMap.entrySet().toArray(new Map.Entry[fieldMap.size()]);
+        Arrays.sort(entries, COMPARE_BY_HEAP_SIZE);
+        for (Map.Entry<String, FieldModel> entry : entries) {
+            String name = entry.getKey();
+            FieldModel model = entry.getValue();
+            Class type = model.type();
+            String NAME = "_" + name + "Column + _index * " + columnSize(type);
+            final Method setter = getSetter(model);
+            final Method getter = getGetter(model);
+            final Method orderedSetter = getOrderedSetter(model);
+            final Method volatileGetter = getVolatileGetter(model);
+
+            final Method defaultSetter = setter != null ? setter : orderedSetter;
+            final Method defaultGetter = getter != null ? getter : volatileGetter;
+
+            methodCopy(copy, defaultGetter, defaultSetter, model);
+            if (setter != null)
+                methodSet(getterSetters, setter, type, NAME, model, false, "");
+            if (getter != null)
+                methodGet(getterSetters, getter, type, NAME, model, false);
+            if (orderedSetter != null)
+                methodSet(getterSetters, orderedSetter, type, NAME, model, true, "");
+            if (volatileGetter != null)
+                methodGet(getterSetters, volatileGetter, type, NAME, model, true);
+            methodScalarOps(getterSetters, model, type, NAME, "");
+            methodWriteMarshall(writeMarshal, defaultGetter, defaultSetter, type, model);
+            methodReadMarshall(readMarshal, defaultGetter, defaultSetter, type, model);
+        }
+        fieldDeclarations.append("\n")
+                .append("    private Bytes _bytes;\n")
+                .append("    private long _index;\n");
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(dvmodel.type().getPackage().getName()).append(";\n\n");
+        sb.append("import static ").append(Compare.class.getName()).append(".*;\n");
+        for (Class aClass : imported) {
+            sb.append("import ").append(aClass.getName().replace('$', '.')).append(";\n");
+        }
+        sb.append("\npublic class ").append(simpleName(dvmodel.type()))
+                .append("$$Columnar implements ").append(simpleName(dvmodel.type()).replace('$', '.'))
+                .append(", BytesMarshallable, Columnar, Copyable<").append(normalize(dvmodel.type())).append("> {\n");
+        sb.append(fieldDeclarations).append('\n');
+        sb.append(getterSetters);
+        sb.append("    @Override\n")
+                .append("    public void copyFrom(").append(normalize(dvmodel.type())).append(" from) {\n")
+                .append(copy)
+                .append("    }\n\n");
+        sb.append("    @Override\n")
+                .append("    public void writeMarshallable(Bytes out) {\n")
+                .append(writeMarshal)
+                .append("    }\n");
+        sb.append("    @Override\n")
+                .append("    public void readMarshallable(Bytes in) {\n")
+                .append(readMarshal)
+                .append("    }\n");
+        sb.append("    @Override\n")
+                .append("    public int[] columnSizes() {\n")
+                .append("        return new int[]{").append(columnSizes).append("};\n")
+                .append("    }\n");
+        sb.append("    @Override\n")
+                .append("    public void columns(Bytes bytes, long[] columnOffsets) {\n")
+                .append("        _bytes = bytes;\n")
+                .append(columns)
+                .append("    }\n");
+        sb.append("    @Override\n")
+                .append("    public void index(long index) {\n")
+                .append("        _index = index;\n")
+                .append("    }\n");
+        sb.append("    @Override\n")
+                .append("    public long index() {\n")
+                .append("        return _index;\n")
+                .append("    }\n");
+
+        generateObjectMethods(sb, dvmodel, entries, true);
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException unless every field is a primitive, and so can have a column of its own.
+     */
+    static void checkColumnar(DataValueModel<?> dvmodel) {
+        Class<?> tClass = dvmodel.type();
+        if (Byteable.class.isAssignableFrom(tClass) || DeltaMarshallable.class.isAssignableFrom(tClass) || isSeqLocked(dvmodel))
+            throw new IllegalArgumentException(tClass.getName() + " cannot be stored in columns as it is Byteable, DeltaMarshallable or SeqLocked");
+        for (Map.Entry<String, ? extends FieldModel> entry : dvmodel.fieldMap().entrySet()) {
+            FieldModel model = entry.getValue();
+            if (!model.type().isPrimitive() || model.isArray())
+                throw new IllegalArgumentException(tClass.getName() + "." + entry.getKey() + " is not a primitive so it cannot be stored in a column");
+        }
+    }
+
+    /**
+     * @return the column of a field in the $$Columnar class, the columns are in name order.
+     */
+    static int columnOf(DataValueModel<?> dvmodel, String name) {
+        int column = 0;
+        for (String name2 : dvmodel.fieldMap().keySet()) {
+            if (name2.equals(name))
+                return column;
+            column++;
+        }
+        throw new IllegalArgumentException(dvmodel.type().getName() + " has no field " + name);
+    }
+
+    /**
+     * @return the size of a primitive in a column, which are not packed.
+     */
+    static int columnSize(Class type) {
+        if (type == boolean.class || type == byte.class)
+            return 1;
+        if (type == short.class || type == char.class)
+            return 2;
+        if (type == int.class || type == float.class)
+            return 4;
+        return 8;
+    }
+
+    /**
+     * The adders, compare-and-swap and locks of a scalar field which is read and written at NAME in _bytes.
+     */
+    private static void methodScalarOps(StringBuilder getterSetters, FieldModel model, Class type, String NAME, String dirty) {
+        Method adder = model.adder();
+        if (adder != null) {
+            getterSetters.append("    public ").append(normalize(type)).append(' ').append(adder.getName())
+                    .append("(").append(adder.getParameterTypes()[0].getName()).append(" $) {\n")
+                    .append(dirty)
+                    .append("        return _bytes.add").append(bytesType(type)).append("(").append(NAME).append(", $);\n")
+                    .append("    }");
+        }
+        Method atomicAdder = model.atomicAdder();
+        if (atomicAdder != null) {
+            getterSetters.append("    public ").append(normalize(type)).append(' ').append(atomicAdder.getName())
+                    .append("(").append(atomicAdder.getParameterTypes()[0].getName()).append(" $) {\n")
+                    .append(dirty)
+                    .append("        return _bytes.addAtomic").append(bytesType(type)).append("(").append(NAME).append(", $);\n")
+                    .append("    }");
+        }
+        Method cas = model.cas();
+        if (cas != null) {
+            getterSetters.append("    public boolean ").append(cas.getName()).append("(")
+                    .append(normalize(type)).append(" _1, ")
+                    .append(normalize(type)).append(" _2) {\n")
+                    .append(dirty)
+                    .append("        return _bytes.compareAndSwap").append(bytesType(type)).append('(').append(NAME).append(", _1, _2);\n")
+                    .append("    }");
+        }
+        Method tryLockNanos = model.tryLockNanos();
+        if (tryLockNanos != null) {
+            getterSetters.append("    public boolean ").append(tryLockNanos.getName()).append("(long nanos) {\n")
+                    .append("        return _bytes.tryLockNanos").append(bytesType(type)).append('(').append(NAME).append(", nanos);\n")
+                    .append("    }");
+        }
+        Method tryLock = model.tryLock();
+        if (tryLock != null) {
+            getterSetters.append("    public boolean ").append(tryLock.getName()).append("() {\n")
+                    .append("        return _bytes.tryLock").append(bytesType(type)).append('(').append(NAME).append(");\n")
+                    .append("    }");
+        }
+        Method unlock = model.unlock();
+        if (unlock != null) {
+            getterSetters.append("    public void ").append(unlock.getName()).append("() {\n")
+                    .append("         _bytes.unlock").append(bytesType(type)).append('(').append(NAME).append(");\n")
+                    .append("    }");
+        }
+        Method busyLock = model.busyLock();
+        if (busyLock != null) {
+            getterSetters.append("    public void ").append(busyLock.getName()).append("() throws InterruptedException {\n")
+                    .append("         _bytes.busyLock").append(bytesType(type)).append('(').append(NAME).append(");\n")
+                    .append("    }");
+        }
+    }
+
     /**
      * gets the getter name based on the getUsing
      */
-    private static String getterName(Method getUsingMethod) {
+    static String getterName(Method getUsingMethod) {
         String name = getUsingMethod.getName();
         if (!name.startsWith("getUsing"))
             throw new IllegalArgumentException("expected the getUsingXX method to start with the text 'getUsing'.");
@@ -830,7 +1151,15 @@ public class DataValueGenerator {
         this.dumpCode = dumpCode;
     }
 
-    private void methodSet(StringBuilder getterSetters, Method setter, Class type, String NAME, FieldModel model, boolean isVolatile) {
+    public boolean isBytecode() {
+        return bytecode;
+    }
+
+    public void setBytecode(boolean bytecode) {
+        this.bytecode = bytecode;
+    }
+
+    private void methodSet(StringBuilder getterSetters, Method setter, Class type, String NAME, FieldModel model, boolean isVolatile, String dirty) {
         Class<?> setterType = setter.getParameterTypes()[setter.getParameterTypes().length - 1];
         String write = "write";
         if (isVolatile) write = "writeOrdered";
@@ -849,9 +1178,48 @@ public class DataValueGenerator {
         if (CharSequence.class.isAssignableFrom(type))
             getterSetters.append(model.size().value()).append(", ");
         getterSetters.append("$);\n");
+        getterSetters.append(dirty);
+        getterSetters.append("    }\n\n");
+    }
+
+
+    private static void methodPackedSet(StringBuilder getterSetters, Method setter, String NAME, PackedField field, FieldModel model, String dirty) {
+        Class<?> setterType = setter.getParameterTypes()[0];
+        String wordType = bytesType(field.wordType());
+        getterSetters.append("\n\n    public void ").append(setter.getName()).append('(').append(normalize(setterType)).append(" $) {\n");
+        if (field.factor == 0) {
+            getterSetters.append("        long $value = $;\n");
+            getterSetters.append("        if ($value < ").append(field.min).append("L || $value > ").append(field.max)
+                    .append("L) throw new IllegalArgumentException($ + \" is not in the range [")
+                    .append(field.min).append(", ").append(field.max).append("]\");\n");
+        } else {
+            getterSetters.append("        long $value = Math.round((double) $ * ").append(field.factor).append(");\n");
+            getterSetters.append("        if ($value < ").append(field.min).append("L || $value > ").append(field.max)
+                    .append("L) throw new IllegalArgumentException($ + \" has more than ").append(model.digits().integer())
+                    .append(" integer digits\");\n");
+        }
+        getterSetters.append("        long $word = _bytes.read").append(wordType).append('(').append(NAME).append(");\n");
+        getterSetters.append("        $word = $word & 0x").append(Long.toHexString(~(field.mask() << field.shift)))
+                .append("L | (($value - ").append(field.min).append("L) & 0x").append(Long.toHexString(field.mask()))
+                .append("L) << ").append(field.shift).append(";\n");
+        getterSetters.append("        _bytes.write").append(wordType).append('(').append(NAME).append(", ")
+                .append(field.wordSize == 8 ? "" : "(int) ").append("$word);\n");
+        getterSetters.append(dirty);
         getterSetters.append("    }\n\n");
     }
 
+    private static void methodPackedGet(StringBuilder getterSetters, Method getter, Class type, String NAME, PackedField field) {
+        String value = "((((long) _bytes.read" + bytesType(field.wordType()) + "(" + NAME + ") >>> " + field.shift
+                + ") & 0x" + Long.toHexString(field.mask()) + "L) + " + field.min + "L)";
+        getterSetters.append("    public ").append(normalize(type)).append(' ').append(getter.getName()).append("() {\n");
+        getterSetters.append("        return (").append(normalize(type)).append(") ");
+        if (field.factor == 0)
+            getterSetters.append(value);
+        else
+            getterSetters.append("((double) ").append(value).append(" / ").append(field.factor).append(")");
+        getterSetters.append(";\n");
+        getterSetters.append("    }\n\n");
+    }
 
     private void methodGet(StringBuilder getterSetters, Class type, String NAME, boolean isVolatile, String name) {
         String read = "read";
@@ -946,7 +1314,7 @@ public class DataValueGenerator {
         }
     }
 
-    private int computeOffset(int offset, FieldModel model) {
+    static int computeOffset(int offset, FieldModel model) {
         if (model.indexSize() == null) {
             return offset;
         } else {
@@ -967,7 +1335,7 @@ public class DataValueGenerator {
         }
     }
 
-    private void methodNonScalarSet(StringBuilder getterSetters, Method setter, String name, Class type, FieldModel model) {
+    private void methodNonScalarSet(StringBuilder getterSetters, Method setter, String name, Class type, FieldModel model, String dirty) {
         Class<?> setterType = setter.getParameterTypes()[setter.getParameterTypes().length - 1];
 
         if (!model.isArray()) {
@@ -984,6 +1352,7 @@ public class DataValueGenerator {
                 getterSetters.append("        _").append(name).append("[i].copyFrom($);\n");
 
         }
+        getterSetters.append(dirty);
         getterSetters.append("    }\n\n");
     }
 
@@ -1009,16 +1378,218 @@ public class DataValueGenerator {
         }
     }
 
-    private int computeNonScalarOffset(DataValueModel dvmodel, Class type) {
-        int offset = 0;
-        DataValueModel dvmodel2 = dvmodel.nestedModel(type);
-        Map<String, ? extends FieldModel> fieldMap2 = dvmodel2.fieldMap();
-        Map.Entry<String, FieldModel>[] entries2 = fieldMap2.entrySet().toArray(new Map.Entry[fieldMap2.size()]);
-        Arrays.sort(entries2, COMPARE_BY_HEAP_SIZE);
-        for (Map.Entry<String, ? extends FieldModel> entry2 : entries2) {
-            FieldModel model2 = entry2.getValue();
-            offset += computeOffset((model2.nativeSize() + 7) >> 3, model2);
+    /**
+     * @return whether copyFrom copies every field so another $$Native instance can be copied as a block of memory.
+     */
+    static boolean isBulkCopyable(DataValueModel<?> dvmodel) {
+        // the setters have to mark the fields as dirty, and the version is not copied.
+        if (DeltaMarshallable.class.isAssignableFrom(dvmodel.type()) || isSeqLocked(dvmodel))
+            return false;
+        for (FieldModel model : dvmodel.fieldMap().values()) {
+            Method setter = getSetter(model);
+            Method getter = getGetter(model);
+            Method defaultSetter = setter != null ? setter : getOrderedSetter(model);
+            Method defaultGetter = getter != null ? getter : getVolatileGetter(model);
+            Class type = model.type();
+            if (dvmodel.isScalar(type)) {
+                if (!model.isArray() && (model.setter() == null || defaultGetter == null))
+                    return false;
+            } else {
+                if (defaultSetter != null && !model.isArray() && (model.setter() == null || defaultGetter == null))
+                    return false;
+                if (!isBulkCopyable(dvmodel.nestedModel(type)))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the marshalled form of every field is the same as its native form, so the whole record can be
+     * written or read as a block of memory.
+     */
+    static boolean isBulkMarshallable(DataValueModel<?> dvmodel) {
+        // the gaps left for alignment are not marshalled.
+        if (recordAlignment(dvmodel) > 1)
+            return false;
+        // nor is the dirty mask or the version.
+        if (DeltaMarshallable.class.isAssignableFrom(dvmodel.type()) || isSeqLocked(dvmodel))
+            return false;
+        for (Map.Entry<String, ? extends FieldModel> entry : dvmodel.fieldMap().entrySet()) {
+            FieldModel model = entry.getValue();
+            Class type = model.type();
+            if (dvmodel.isScalar(type)) {
+                if (!type.isPrimitive() || model.nativeSize() != model.heapSize()
+                        || PackedField.packedField(entry.getKey(), model) != null)
+                    return false;
+                if (!model.isArray() && (getGetter(model) == null && getVolatileGetter(model) == null
+                        || getSetter(model) == null && getOrderedSetter(model) == null))
+                    return false;
+            } else if (!isBulkMarshallable(dvmodel.nestedModel(type))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int alignment(FieldModel model) {
+        Align align = model.align();
+        return align == null ? 1 : align.value();
+    }
+
+    /**
+     * @return the alignment of a field including the alignment of a nested data value.
+     */
+    static int alignmentOf(DataValueModel<?> dvmodel, FieldModel model) {
+        int alignment = alignment(model);
+        if (!dvmodel.isScalar(model.type()))
+            alignment = Math.max(alignment, recordAlignment(dvmodel.nestedModel(model.type())));
+        return alignment;
+    }
+
+    /**
+     * @return the alignment of the record, its size is padded to a multiple of this.
+     */
+    static int recordAlignment(DataValueModel<?> dvmodel) {
+        Padded padded = dvmodel.type().getAnnotation(Padded.class);
+        int alignment = padded == null ? 1 : padded.value();
+        for (FieldModel model : dvmodel.fieldMap().values())
+            alignment = Math.max(alignment, alignmentOf(dvmodel, model));
+        return alignment;
+    }
+
+    static int alignOffset(int offset, int alignment) {
+        if (alignment <= 0)
+            throw new IllegalArgumentException("alignment must be positive, was " + alignment);
+        return (offset + alignment - 1) / alignment * alignment;
+    }
+
+    static int computeNonScalarOffset(DataValueModel dvmodel, Class type) {
+        return computeNativeSize(dvmodel.nestedModel(type));
+    }
+
+    /**
+     * @return the maxSize() of the $$Native class.
+     */
+    static int computeNativeSize(DataValueModel<?> dvmodel) {
+        int size = isSeqLocked(dvmodel) ? versionOffset(dvmodel) + VERSION_SIZE : endOfDirtyMask(dvmodel);
+        return alignOffset(size, recordAlignment(dvmodel));
+    }
+
+    /**
+     * @return the offset of the $DIRTY mask, i.e. the end of the unpacked fields and packed words.
+     */
+    static int dirtyOffset(DataValueModel<?> dvmodel) {
+        int size = computeUnpackedSize(dvmodel);
+        return size + PackedField.size(PackedField.layout(dvmodel, size));
+    }
+
+    private static int endOfDirtyMask(DataValueModel<?> dvmodel) {
+        return dirtyOffset(dvmodel) + (isDeltaMarshallable(dvmodel) ? DIRTY_MASK_SIZE : 0);
+    }
+
+    /**
+     * @return the offset of the $VERSION word of a SeqLocked record.
+     */
+    static int versionOffset(DataValueModel<?> dvmodel) {
+        return alignOffset(endOfDirtyMask(dvmodel), VERSION_SIZE);
+    }
+
+    static boolean isSeqLocked(DataValueModel<?> dvmodel) {
+        return SeqLocked.class.isAssignableFrom(dvmodel.type());
+    }
+
+    private static void seqLockMethods(StringBuilder sb, DataValueModel<?> dvmodel, String version) {
+        sb.append("    public void writeBegin() {\n")
+                .append("        SeqLocks.writeBegin(").append(version).append(");\n")
+                .append("    }\n");
+        sb.append("    public void writeEnd() {\n")
+                .append("        SeqLocks.writeEnd(").append(version).append(");\n")
+                .append("    }\n");
+        sb.append("    @SuppressWarnings(\"unchecked\")\n")
+                .append("    public void readConsistent(").append(normalize(dvmodel.type())).append(" copy) {\n")
+                .append("        SeqLocks.readConsistent(").append(version).append(", this, (Copyable) copy);\n")
+                .append("    }\n");
+    }
+
+    static boolean isDeltaMarshallable(DataValueModel<?> dvmodel) {
+        if (!DeltaMarshallable.class.isAssignableFrom(dvmodel.type()))
+            return false;
+        if (dvmodel.fieldMap().size() > 64)
+            throw new IllegalArgumentException(dvmodel.type().getName() + " has more than 64 fields to mark as dirty");
+        return true;
+    }
+
+    private static String markDirty(boolean offHeap, int index) {
+        String bit = "0x" + Long.toHexString(1L << index) + "L";
+        return offHeap
+                ? "        _bytes.writeLong(_offset + $DIRTY, _bytes.readLong(_offset + $DIRTY) | " + bit + ");\n"
+                : "        $dirty |= " + bit + ";\n";
+    }
+
+    private static void deltaField(StringBuilder delta, int index, String marshal) {
+        if (marshal.isEmpty())
+            return;
+        delta.append("        if (($mask & 0x").append(Long.toHexString(1L << index)).append("L) != 0) {\n")
+                .append(marshal)
+                .append("        }\n");
+    }
+
+    private static void deltaMethods(StringBuilder sb, String mask, String setMask, StringBuilder writeDelta, StringBuilder readDelta) {
+        sb.append("    public boolean isDirty() {\n")
+                .append("        return ").append(mask).append(" != 0L;\n")
+                .append("    }\n");
+        sb.append("    public void clearDirty() {\n")
+                .append("        ").append(String.format(setMask, "0L")).append('\n')
+                .append("    }\n");
+        sb.append("    public void writeDelta(Bytes out) {\n")
+                .append("        long $mask = ").append(mask).append(";\n")
+                .append("        out.writeStopBit($mask);\n")
+                .append(writeDelta)
+                .append("    }\n");
+        sb.append("    public void readDelta(Bytes in) {\n")
+                .append("        long $mask = in.readStopBit();\n")
+                .append(readDelta)
+                .append("        ").append(String.format(setMask, mask + " | $mask")).append('\n')
+                .append("    }\n");
+    }
+
+    /**
+     * @return the size of the fields which are not packed, and so the offset of the packed words.
+     */
+    static int computeUnpackedSize(DataValueModel<?> dvmodel) {
+        return layoutUnpacked(dvmodel, null);
+    }
+
+    /**
+     * Lays out the fields which are not packed as the $$Native classes do.
+     *
+     * @param offsets to put the offset of each field in, or null.
+     * @return the size of these fields.
+     */
+    static int layoutUnpacked(DataValueModel<?> dvmodel, Map<String, Integer> offsets) {
+        Map<String, ? extends FieldModel> fieldMap = dvmodel.fieldMap();
+        Map.Entry<String, FieldModel>[] entries = fieldMap.entrySet().toArray(new Map.Entry[fieldMap.size()]);
+        Arrays.sort(entries, COMPARE_BY_HEAP_SIZE);
+        int size = 0;
+        for (Map.Entry<String, FieldModel> entry : entries) {
+            FieldModel model = entry.getValue();
+            if (PackedField.packedField(entry.getKey(), model) != null)
+                continue;
+            size = alignOffset(size, alignmentOf(dvmodel, model));
+            if (offsets != null)
+                offsets.put(entry.getKey(), size);
+            size += unpackedFieldSize(dvmodel, model);
         }
-        return offset;
+        return size;
+    }
+
+    /**
+     * @return the bytes a field which is not packed takes, including all the elements of an array.
+     */
+    static int unpackedFieldSize(DataValueModel<?> dvmodel, FieldModel model) {
+        if (dvmodel.isScalar(model.type()))
+            return computeOffset((model.nativeSize() + 7) >> 3, model);
+        return computeOffset(computeNonScalarOffset(dvmodel, model.type()), model);
     }
 }
@@ -17,6 +17,7 @@
 package net.openhft.lang.model;
 
 import net.openhft.lang.io.serialization.BytesMarshallable;
+import net.openhft.lang.model.constraints.Align;
 import net.openhft.lang.model.constraints.Digits;
 import net.openhft.lang.model.constraints.MaxSize;
 import net.openhft.lang.model.constraints.Range;
@@ -65,7 +66,9 @@ public class DataValueModelImpl<T> implements DataValueModel<T> {
                     || declaringClass == Externalizable.class
                     || declaringClass == BytesMarshallable.class
                     || declaringClass == Copyable.class
-                    || declaringClass == Byteable.class)
+                    || declaringClass == Byteable.class
+                    || declaringClass == DeltaMarshallable.class
+                    || declaringClass == SeqLocked.class)
                 continue;
             String name = method.getName();
             Class<?>[] parameterTypes = method.getParameterTypes();
@@ -517,6 +520,25 @@ public class DataValueModelImpl<T> implements DataValueModel<T> {
             return range;
         }
 
+        @Override
+        public Align align() {
+            // can be on any of the methods or their parameters.
+            for (Method method : new Method[]{setter, orderedSetter, setterAt, orderedSetterAt, getter, volatileGetter,
+                    getterAt, volatileGetterAt, getUsing, adder, atomicAdder, cas, tryLockNanos, tryLock, busyLock,
+                    unlock, sizeOf}) {
+                if (method == null)
+                    continue;
+                Align align = method.getAnnotation(Align.class);
+                if (align != null)
+                    return align;
+                for (Annotation[] annotations : method.getParameterAnnotations())
+                    for (Annotation a : annotations)
+                        if (a instanceof Align)
+                            return (Align) a;
+            }
+            return null;
+        }
+
         @Override
         public MaxSize size() {
             return maxSize;
@@ -531,6 +553,7 @@ public class DataValueModelImpl<T> implements DataValueModel<T> {
                     (unlock == null ? "" : ", busyLock=" + busyLock + ", tryLock=" + tryLock + ", unlock=" + unlock) +
                     (digits == null ? "" : ", digits= " + digits) +
                     (range == null ? "" : ", range= " + range) +
+                    (align() == null ? "" : ", align= " + align()) +
                     (maxSize == null ? "" : ", size= " + maxSize) +
                     ((getterAt == null && setterAt == null) ? "" : ", indexSize= " + indexSize.toString().replace("@net.openhft.lang.model.constraints.", "")) +
                     '}';
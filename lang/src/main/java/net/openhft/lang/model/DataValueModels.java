@@ -16,6 +16,7 @@
 
 package net.openhft.lang.model;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -44,4 +45,42 @@ public enum DataValueModels {
         }
         return model;
     }
+
+    /**
+     * A hash of the native layout of a data value as the $$Native classes compute it, i.e. the offset, size and type of
+     * each field, how each packed field sits in its word, the alignment and the record size.  Records written with one
+     * fingerprint can be read by a class with the same one.
+     */
+    public static long layoutFingerprint(Class<?> tClass) {
+        DataValueModel<?> dvmodel = acquireModel(tClass);
+        Map<String, Integer> offsets = new HashMap<String, Integer>();
+        Map<String, PackedField> packedFields = PackedField.layout(dvmodel,
+                DataValueGenerator.layoutUnpacked(dvmodel, offsets));
+        long h = mix(DataValueGenerator.isDeltaMarshallable(dvmodel) ? 1 : 0,
+                DataValueGenerator.isSeqLocked(dvmodel) ? 1 : 0);
+        h = mix(h, DataValueGenerator.recordAlignment(dvmodel));
+        h = mix(h, DataValueGenerator.computeNativeSize(dvmodel));
+        // the field map is sorted by name.
+        for (FieldModel model : dvmodel.fieldMap().values()) {
+            String name = model.name();
+            h = mix(h, name.hashCode());
+            Class type = model.type();
+            h = mix(h, dvmodel.isScalar(type) ? type.getName().hashCode() : layoutFingerprint(type));
+            PackedField packed = packedFields.get(name);
+            if (packed == null) {
+                h = mix(h, offsets.get(name));
+                h = mix(h, DataValueGenerator.unpackedFieldSize(dvmodel, model));
+            } else {
+                h = mix(mix(h, packed.offset), packed.wordSize);
+                h = mix(mix(h, packed.shift), packed.bits);
+                h = mix(mix(h, packed.min), packed.factor);
+            }
+        }
+        return h;
+    }
+
+    private static long mix(long h, long value) {
+        h = (h ^ value) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
 }
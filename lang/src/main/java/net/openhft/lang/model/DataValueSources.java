@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Writes the $$Native and $$Heap sources for data value interfaces so they can be compiled with the rest of the
+ * build.  When the classes are on the class path, DataValueGenerator loads them instead of compiling at runtime.
+ * <p/>
+ * Usage: <code>java net.openhft.lang.model.DataValueSources {output-dir} {interface} ...</code>
+ */
+public enum DataValueSources {
+    ;
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataValueSources.class);
+
+    public static void main(String... args) throws ClassNotFoundException, IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java " + DataValueSources.class.getName() + " {output-dir} {interface} ...");
+            System.exit(-1);
+        }
+        File outputDir = new File(args[0]);
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        Class[] interfaces = new Class[args.length - 1];
+        for (int i = 1; i < args.length; i++)
+            interfaces[i - 1] = Class.forName(args[i], false, classLoader);
+        Set<File> files = writeSources(outputDir, interfaces);
+        LOGGER.info("Wrote " + files.size() + " data value sources to " + outputDir);
+    }
+
+    /**
+     * Write the sources for each interface and any nested data value interfaces.
+     *
+     * @param outputDir  the root of the source tree to write to.
+     * @param interfaces the data value interfaces
+     * @return the files written.
+     */
+    public static Set<File> writeSources(File outputDir, Class... interfaces) throws IOException {
+        Set<Class> visited = new LinkedHashSet<Class>();
+        for (Class anInterface : interfaces)
+            collect(anInterface, visited);
+
+        DataValueGenerator dvg = new DataValueGenerator();
+        Set<File> files = new LinkedHashSet<File>();
+        for (Class tClass : visited) {
+            DataValueModel<?> dvmodel = DataValueModels.acquireModel(tClass);
+            files.add(write(outputDir, tClass, "$$Native", dvg.generateNativeObject(dvmodel)));
+            files.add(write(outputDir, tClass, "$$Heap", DataValueGenerator.generateHeapObject(dvmodel)));
+        }
+        return files;
+    }
+
+    private static void collect(Class tClass, Set<Class> visited) {
+        if (!visited.add(tClass))
+            return;
+        DataValueModel<?> dvmodel = DataValueModels.acquireModel(tClass);
+        for (Class nested : dvmodel.nestedModels())
+            collect(nested, visited);
+    }
+
+    private static File write(File outputDir, Class tClass, String suffix, String source) throws IOException {
+        File dir = new File(outputDir, tClass.getPackage().getName().replace('.', File.separatorChar));
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create " + dir);
+        File file = new File(dir, DataValueGenerator.simpleName(tClass) + suffix + ".java");
+        // the sources contain non-ASCII method names e.g. readUTFΔ
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
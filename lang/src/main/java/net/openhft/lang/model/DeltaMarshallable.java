@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.io.Bytes;
+
+/**
+ * A data value interface which extends DeltaMarshallable has the fields changed by its setters, adders and
+ * compare-and-swap methods recorded in a dirty mask, so only those fields need to be sent.  The mask is held in the
+ * record for $$Native classes and supports up to 64 fields.  Changes made through a nested value returned by a
+ * getter are not recorded, and updating the mask is not thread safe, i.e. it is for records with a single writer.
+ */
+public interface DeltaMarshallable {
+    /**
+     * @return whether any field has changed since the last clearDirty()
+     */
+    boolean isDirty();
+
+    /**
+     * Mark all the fields as unchanged.
+     */
+    void clearDirty();
+
+    /**
+     * Write the dirty mask as a stop bit encoded long, followed by the fields which have changed in the same format
+     * as writeMarshallable.
+     *
+     * @param out to write to
+     */
+    void writeDelta(Bytes out);
+
+    /**
+     * Read the fields written by writeDelta and mark them as changed.
+     *
+     * @param in to read from
+     */
+    void readDelta(Bytes in);
+}
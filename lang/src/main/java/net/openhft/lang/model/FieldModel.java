@@ -16,6 +16,7 @@
 
 package net.openhft.lang.model;
 
+import net.openhft.lang.model.constraints.Align;
 import net.openhft.lang.model.constraints.Digits;
 import net.openhft.lang.model.constraints.MaxSize;
 import net.openhft.lang.model.constraints.Range;
@@ -74,6 +75,8 @@ public interface FieldModel<T> {
 
     Range range();
 
+    Align align();
+
     MaxSize size();
 
     MaxSize indexSize();
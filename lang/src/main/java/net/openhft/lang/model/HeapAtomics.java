@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.io.NativeBytes;
+import sun.misc.Unsafe;
+
+/**
+ * Lock free atomic add and compare and swap on the fields of generated $$Heap classes.  Each $$Heap class looks up
+ * the offsets of its atomic fields once, with fieldOffset, and float and double fields are swapped on their raw bits
+ * as the native implementations are.
+ */
+public enum HeapAtomics {
+    ;
+    private static final Unsafe UNSAFE = NativeBytes.UNSAFE;
+
+    public static long fieldOffset(Class<?> type, String name) {
+        try {
+            return UNSAFE.objectFieldOffset(type.getDeclaredField(name));
+        } catch (NoSuchFieldException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static boolean isLockFree(Class type) {
+        return type == int.class || type == long.class || type == float.class || type == double.class;
+    }
+
+    public static int addAtomicInt(Object object, long offset, int delta) {
+        for (; ; ) {
+            int current = UNSAFE.getIntVolatile(object, offset);
+            int next = current + delta;
+            if (UNSAFE.compareAndSwapInt(object, offset, current, next))
+                return next;
+        }
+    }
+
+    public static long addAtomicLong(Object object, long offset, long delta) {
+        for (; ; ) {
+            long current = UNSAFE.getLongVolatile(object, offset);
+            long next = current + delta;
+            if (UNSAFE.compareAndSwapLong(object, offset, current, next))
+                return next;
+        }
+    }
+
+    public static float addAtomicFloat(Object object, long offset, float delta) {
+        for (; ; ) {
+            int current = UNSAFE.getIntVolatile(object, offset);
+            float next = Float.intBitsToFloat(current) + delta;
+            if (UNSAFE.compareAndSwapInt(object, offset, current, Float.floatToRawIntBits(next)))
+                return next;
+        }
+    }
+
+    public static double addAtomicDouble(Object object, long offset, double delta) {
+        for (; ; ) {
+            long current = UNSAFE.getLongVolatile(object, offset);
+            double next = Double.longBitsToDouble(current) + delta;
+            if (UNSAFE.compareAndSwapLong(object, offset, current, Double.doubleToRawLongBits(next)))
+                return next;
+        }
+    }
+
+    public static boolean compareAndSwapInt(Object object, long offset, int expected, int x) {
+        return UNSAFE.compareAndSwapInt(object, offset, expected, x);
+    }
+
+    public static boolean compareAndSwapLong(Object object, long offset, long expected, long x) {
+        return UNSAFE.compareAndSwapLong(object, offset, expected, x);
+    }
+
+    public static boolean compareAndSwapFloat(Object object, long offset, float expected, float x) {
+        return UNSAFE.compareAndSwapInt(object, offset, Float.floatToRawIntBits(expected), Float.floatToRawIntBits(x));
+    }
+
+    public static boolean compareAndSwapDouble(Object object, long offset, double expected, double x) {
+        return UNSAFE.compareAndSwapLong(object, offset, Double.doubleToRawLongBits(expected),
+                Double.doubleToRawLongBits(x));
+    }
+}
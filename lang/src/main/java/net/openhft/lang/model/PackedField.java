@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.model.constraints.Digits;
+import net.openhft.lang.model.constraints.Range;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where a field constrained by @Range or @Digits is stored off heap.  Such fields are packed into the bits of byte,
+ * short, int or long words placed after the other fields, so the word is always read and written as a whole and the
+ * layout doesn't depend on the byte order.
+ * <p></p>
+ * A @Range field stores value - min, a @Digits field stores Math.round(value * 10^decimal) - min.  As setting a packed
+ * field reads and writes the whole word, fields sharing a word must not be set concurrently without a lock.
+ */
+final class PackedField {
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    final String name;
+    final int bits;
+    final long min;
+    final long max;
+    // 10^decimal for a @Digits field, or 0 for a @Range field.
+    final long factor;
+    int offset;
+    int wordSize;
+    int shift;
+
+    private PackedField(String name, int bits, long min, long max, long factor) {
+        this.name = name;
+        this.bits = bits;
+        this.min = min;
+        this.max = max;
+        this.factor = factor;
+    }
+
+    /**
+     * @return the packed field or null if this field is stored as its type.
+     */
+    static PackedField packedField(String name, FieldModel model) {
+        Class type = model.type();
+        if (model.isArray() || model.orderedSetter() != null || model.volatileGetter() != null
+                || model.adder() != null || model.atomicAdder() != null || model.cas() != null
+                || model.tryLockNanos() != null || model.tryLock() != null || model.busyLock() != null
+                || model.unlock() != null || model.align() != null)
+            return null;
+        long min, max, factor = 0;
+        Range range = model.range();
+        Digits digits = model.digits();
+        if (range != null && (type == byte.class || type == short.class || type == char.class
+                || type == int.class || type == long.class)) {
+            min = range.min();
+            max = range.max();
+            if (min > max)
+                throw new IllegalArgumentException(model.name() + " has a min of " + min + " greater than its max of " + max);
+        } else if (digits != null && (type == float.class || type == double.class)) {
+            int places = digits.integer() + digits.decimal();
+            if (digits.integer() < 0 || digits.decimal() < 0 || places >= POWERS_OF_TEN.length)
+                return null;
+            factor = POWERS_OF_TEN[digits.decimal()];
+            max = POWERS_OF_TEN[places] - 1;
+            min = -max;
+        } else {
+            return null;
+        }
+        int bits = 64 - Long.numberOfLeadingZeros(max - min);
+        if (bits >= model.heapSize())
+            return null;
+        return new PackedField(name, Math.max(1, bits), min, max, factor);
+    }
+
+    /**
+     * Packs the fields constrained by @Range or @Digits into words starting at the offset given.
+     *
+     * @return the packed fields by name.
+     */
+    static Map<String, PackedField> layout(DataValueModel<?> dvmodel, int start) {
+        List<PackedField> fields = new ArrayList<PackedField>();
+        for (Map.Entry<String, ? extends FieldModel> entry : dvmodel.fieldMap().entrySet()) {
+            PackedField field = packedField(entry.getKey(), entry.getValue());
+            if (field != null)
+                fields.add(field);
+        }
+        // first fit decreasing, the widest fields first.
+        Collections.sort(fields, new Comparator<PackedField>() {
+            @Override
+            public int compare(PackedField o1, PackedField o2) {
+                return o2.bits - o1.bits;
+            }
+        });
+        List<List<PackedField>> words = new ArrayList<List<PackedField>>();
+        List<Integer> used = new ArrayList<Integer>();
+        OUTER:
+        for (PackedField field : fields) {
+            for (int i = 0; i < words.size(); i++) {
+                if (used.get(i) + field.bits <= 64) {
+                    field.shift = used.get(i);
+                    words.get(i).add(field);
+                    used.set(i, field.shift + field.bits);
+                    continue OUTER;
+                }
+            }
+            List<PackedField> word = new ArrayList<PackedField>();
+            word.add(field);
+            words.add(word);
+            used.add(field.bits);
+        }
+        // the largest words first so they stay aligned.
+        for (int i = 0; i < words.size(); i++) {
+            int wordSize = wordSize(used.get(i));
+            for (PackedField field : words.get(i))
+                field.wordSize = wordSize;
+        }
+        Collections.sort(words, new Comparator<List<PackedField>>() {
+            @Override
+            public int compare(List<PackedField> o1, List<PackedField> o2) {
+                return o2.get(0).wordSize - o1.get(0).wordSize;
+            }
+        });
+        Map<String, PackedField> layout = new LinkedHashMap<String, PackedField>();
+        int offset = start;
+        for (List<PackedField> word : words) {
+            for (PackedField field : word) {
+                field.offset = offset;
+                layout.put(field.name, field);
+            }
+            offset += word.get(0).wordSize;
+        }
+        return layout;
+    }
+
+    /**
+     * @return the size in bytes of the words the fields are packed into.
+     */
+    static int size(Map<String, PackedField> layout) {
+        int size = 0, lastOffset = -1;
+        for (PackedField field : layout.values()) {
+            if (field.offset != lastOffset)
+                size += field.wordSize;
+            lastOffset = field.offset;
+        }
+        return size;
+    }
+
+    private static int wordSize(int bits) {
+        return bits <= 8 ? 1 : bits <= 16 ? 2 : bits <= 32 ? 4 : 8;
+    }
+
+    long mask() {
+        return bits == 64 ? -1L : (1L << bits) - 1;
+    }
+
+    Class wordType() {
+        return wordSize == 1 ? byte.class : wordSize == 2 ? short.class : wordSize == 4 ? int.class : long.class;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.model;
+
+/**
+ * A data value interface which extends SeqLocked gets a version word, so readers can take a consistent copy of
+ * all its fields while another thread or process writes them, without locking or writing to the record.
+ * <pre>
+ * quote.writeBegin();
+ * try {
+ *     quote.setBid(bid);
+ *     quote.setAsk(ask);
+ * } finally {
+ *     quote.writeEnd();
+ * }
+ * </pre>
+ * and a reader calls quote.readConsistent(heapCopy) which retries the copy until no write overlapped it.
+ *
+ * @param <T> the data value interface
+ */
+public interface SeqLocked<T> {
+    /**
+     * Wait for any other writer to finish and make the version odd.
+     */
+    void writeBegin();
+
+    /**
+     * Make the version even again, publishing the writes since writeBegin().
+     */
+    void writeEnd();
+
+    /**
+     * Copy all the fields to copy, retrying if they were written at the same time.
+     *
+     * @param copy a heap (or other) instance to copy to which must be Copyable
+     */
+    void readConsistent(T copy);
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.NativeBytes;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Method;
+
+/**
+ * The seqlock used by the generated classes of a SeqLocked data value.  The version is even when no write is in
+ * progress, writers make it odd with a compare and swap, and readers only read it, so they never write to the record.
+ * The $$Native classes keep the version in the record and the $$Heap classes in a field.
+ */
+public enum SeqLocks {
+    ;
+    private static final Unsafe UNSAFE = NativeBytes.UNSAFE;
+    // how many times a reader spins on an odd version before it yields.
+    private static final int SPINS = 100;
+    // Unsafe.loadFence() from Java 8, found by reflection as this builds for Java 6.
+    private static final Method LOAD_FENCE = findLoadFence();
+
+    private static Method findLoadFence() {
+        try {
+            return Unsafe.class.getMethod("loadFence");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stops the reads before this from moving after the reads which follow it.  Before Java 8 there is no load fence,
+     * and the volatile read of the version which follows it is relied on instead.
+     */
+    static void loadFence() {
+        if (LOAD_FENCE == null)
+            return;
+        try {
+            LOAD_FENCE.invoke(UNSAFE);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    public static void writeBegin(Bytes bytes, long offset) {
+        for (; ; ) {
+            long version = bytes.readVolatileLong(offset);
+            if ((version & 1) == 0 && bytes.compareAndSwapLong(offset, version, version + 1))
+                return;
+        }
+    }
+
+    public static void writeEnd(Bytes bytes, long offset) {
+        long version = bytes.readLong(offset);
+        if ((version & 1) == 0)
+            throw new IllegalStateException("writeEnd() without writeBegin()");
+        bytes.writeOrderedLong(offset, version + 1);
+    }
+
+    /**
+     * Copies a record until the copy is of one version.  The version is read again after a load fence, so the reads of
+     * the copy can't move after it, and the reader never writes to the record.  A copy of a record being written may be
+     * inconsistent enough to throw, which is retried if the version has moved.
+     */
+    public static <T> void readConsistent(Bytes bytes, long offset, T from, Copyable<T> to) {
+        for (int spins = 0; ; spins++) {
+            long version = bytes.readVolatileLong(offset);
+            if ((version & 1) != 0) {
+                pause(spins);
+                continue;
+            }
+            try {
+                to.copyFrom(from);
+            } catch (RuntimeException e) {
+                if (unchanged(bytes, offset, version))
+                    throw e;
+                continue;
+            }
+            if (unchanged(bytes, offset, version))
+                return;
+        }
+    }
+
+    public static void writeBegin(Object holder, long fieldOffset) {
+        for (; ; ) {
+            long version = UNSAFE.getLongVolatile(holder, fieldOffset);
+            if ((version & 1) == 0 && UNSAFE.compareAndSwapLong(holder, fieldOffset, version, version + 1))
+                return;
+        }
+    }
+
+    public static void writeEnd(Object holder, long fieldOffset) {
+        long version = UNSAFE.getLong(holder, fieldOffset);
+        if ((version & 1) == 0)
+            throw new IllegalStateException("writeEnd() without writeBegin()");
+        UNSAFE.putOrderedLong(holder, fieldOffset, version + 1);
+    }
+
+    public static <T> void readConsistent(Object holder, long fieldOffset, T from, Copyable<T> to) {
+        for (int spins = 0; ; spins++) {
+            long version = UNSAFE.getLongVolatile(holder, fieldOffset);
+            if ((version & 1) != 0) {
+                pause(spins);
+                continue;
+            }
+            try {
+                to.copyFrom(from);
+            } catch (RuntimeException e) {
+                if (unchanged(holder, fieldOffset, version))
+                    throw e;
+                continue;
+            }
+            if (unchanged(holder, fieldOffset, version))
+                return;
+        }
+    }
+
+    private static boolean unchanged(Bytes bytes, long offset, long version) {
+        loadFence();
+        return bytes.readVolatileLong(offset) == version;
+    }
+
+    private static boolean unchanged(Object holder, long fieldOffset, long version) {
+        loadFence();
+        return UNSAFE.getLongVolatile(holder, fieldOffset) == version;
+    }
+
+    // a writer holds the lock, so spin for a while, then give it a chance to run.
+    private static void pause(int spins) {
+        if (spins >= SPINS)
+            Thread.yield();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.model.JavaBeanInterface;
+import net.openhft.lang.model.PaddedInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the throughput of each thread incrementing its own record in a HugeArray when the records share cache
+ * lines (JavaBeanInterface) and when they are @Padded to a cache line each (PaddedInterface).
+ */
+public class ContendedCountersMain {
+    static final int RUNS = 10 * 1000 * 1000;
+
+    public static void main(String... ignored) throws Exception {
+        int processors = Runtime.getRuntime().availableProcessors();
+        ExecutorService es = Executors.newFixedThreadPool(processors);
+        final HugeArray<JavaBeanInterface> shared = HugeCollections.newArray(JavaBeanInterface.class, processors);
+        final HugeArray<PaddedInterface> padded = HugeCollections.newArray(PaddedInterface.class, processors);
+        for (int t = 0; t < 3; t++) {
+            if (t == 0)
+                System.out.println("Warming up");
+            for (int threads = 1; threads <= processors; threads *= 2) {
+                long sharedTime = time(es, threads, new Task() {
+                    @Override
+                    public void run(int id) {
+                        JavaBeanInterface counter = shared.get(id);
+                        for (int i = 0; i < RUNS; i++)
+                            counter.addAtomicLong(1);
+                        shared.recycle(counter);
+                    }
+                });
+                long paddedTime = time(es, threads, new Task() {
+                    @Override
+                    public void run(int id) {
+                        PaddedInterface counter = padded.get(id);
+                        for (int i = 0; i < RUNS; i++)
+                            counter.addAtomicCounter(1);
+                        padded.recycle(counter);
+                    }
+                });
+                if (t > 0)
+                    System.out.printf("threads: %d, shared lines %.1f M/s, @Padded %.1f M/s%n",
+                            threads, threads * RUNS * 1e3 / sharedTime, threads * RUNS * 1e3 / paddedTime);
+            }
+        }
+        es.shutdown();
+    }
+
+    interface Task {
+        void run(int id);
+    }
+
+    static long time(ExecutorService es, int threads, final Task task) throws Exception {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            futures.add(es.submit(new Runnable() {
+                @Override
+                public void run() {
+                    task.run(id);
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        return System.nanoTime() - start;
+    }
+}
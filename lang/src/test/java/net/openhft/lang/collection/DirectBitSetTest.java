@@ -23,7 +23,9 @@ import org.junit.runners.Parameterized;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Random;
 
 import static net.openhft.lang.collection.DirectBitSet.Bits;
 import static org.junit.Assert.assertEquals;
@@ -1058,4 +1060,88 @@ public class DirectBitSetTest {
     public void testIaeSetPreviousNContinuousClearBits() {
         bs.setPreviousNContinuousClearBits(bs.size(), 0);
     }
+
+    private DirectBitSet newBitSet(boolean singleThreaded, int longs) {
+        ByteBufferBytes bytes = new ByteBufferBytes(ByteBuffer.allocate(longs * 8));
+        return singleThreaded ? new SingleThreadedDirectBitSet(bytes) : new ATSDirectBitSet(bytes);
+    }
+
+    private static BitSet fill(DirectBitSet bitSet, Random rand) {
+        BitSet copy = new BitSet();
+        for (long i = 0; i < bitSet.size(); i++) {
+            if (rand.nextInt(3) == 0) {
+                bitSet.set(i);
+                copy.set((int) i);
+            }
+        }
+        return copy;
+    }
+
+    private static void assertSame(BitSet expected, DirectBitSet actual) {
+        for (long i = 0; i < actual.size(); i++)
+            assertEquals("bit: " + i, expected.get((int) i), actual.get(i));
+    }
+
+    @Test
+    public void testBulkOperations() {
+        Random rand = new Random(1);
+        // longer and shorter than this, and long enough for the unrolled loops and the longs after them.
+        for (int otherLongs : new int[]{7, 19, 25}) {
+            for (boolean otherSingleThreaded : new boolean[]{false, true}) {
+                for (int op = 0; op < 4; op++) {
+                    DirectBitSet bitSet = newBitSet(singleThreaded, 19);
+                    BitSet expected = fill(bitSet, rand);
+                    DirectBitSet other = newBitSet(otherSingleThreaded, otherLongs);
+                    BitSet otherCopy = fill(other, rand);
+                    // the bits of the other beyond this bit set are ignored.
+                    if (otherLongs > 19)
+                        otherCopy.clear(19 * 64, otherLongs * 64);
+
+                    BitSet and = (BitSet) expected.clone();
+                    and.and(otherCopy);
+                    assertEquals(and.cardinality(), bitSet.cardinalityOfAnd(other));
+                    assertEquals(and.cardinality(), other.cardinalityOfAnd(bitSet));
+                    assertEquals(!and.isEmpty(), bitSet.intersects(other));
+
+                    switch (op) {
+                        case 0:
+                            assertTrue(bitSet == bitSet.and(other));
+                            expected.and(otherCopy);
+                            break;
+                        case 1:
+                            assertTrue(bitSet == bitSet.or(other));
+                            expected.or(otherCopy);
+                            break;
+                        case 2:
+                            assertTrue(bitSet == bitSet.xor(other));
+                            expected.xor(otherCopy);
+                            break;
+                        case 3:
+                            assertTrue(bitSet == bitSet.andNot(other));
+                            expected.andNot(otherCopy);
+                            break;
+                    }
+                    assertSame(expected, bitSet);
+                    assertEquals(expected.cardinality(), bitSet.cardinality());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBulkOperationsWithItself() {
+        setIndices();
+        assertTrue(bs.intersects(bs));
+        assertEquals(INDICES.length, bs.cardinalityOfAnd(bs));
+        bs.and(bs);
+        assertEquals(INDICES.length, bs.cardinality());
+        bs.or(bs);
+        assertEquals(INDICES.length, bs.cardinality());
+        bs.xor(bs);
+        assertEquals(0, bs.cardinality());
+        assertFalse(bs.intersects(bs));
+        setIndices();
+        bs.andNot(bs);
+        assertEquals(0, bs.cardinality());
+    }
 }
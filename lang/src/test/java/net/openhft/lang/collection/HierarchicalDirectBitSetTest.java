@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.io.DirectStore;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class HierarchicalDirectBitSetTest {
+    // three levels of summary.
+    private static final long SIZE = 64L * 64 * 64 * 64;
+
+    private static void assertSameSearches(DirectBitSet expected, DirectBitSet actual, Random rand) {
+        for (int j = 0; j < 2000; j++) {
+            long i = (rand.nextLong() >>> 1) % expected.size();
+            String message = "from: " + i;
+            assertEquals(message, expected.nextSetBit(i), actual.nextSetBit(i));
+            assertEquals(message, expected.nextClearBit(i), actual.nextClearBit(i));
+            assertEquals(message, expected.nextSetLong(i >> 6), actual.nextSetLong(i >> 6));
+            assertEquals(message, expected.nextClearLong(i >> 6), actual.nextClearLong(i >> 6));
+        }
+        assertEquals(expected.nextSetBit(0), actual.nextSetBit(0));
+        assertEquals(expected.nextClearBit(0), actual.nextClearBit(0));
+        assertEquals(DirectBitSet.NOT_FOUND, actual.nextSetBit(expected.size()));
+    }
+
+    @Test
+    public void testSearches() {
+        Random rand = new Random(1);
+        DirectBitSet expected = new ATSDirectBitSet(DirectStore.allocate(SIZE / 8).bytes());
+        DirectBitSet actual = new DirectBitSetBuilder().hierarchical(true).create(SIZE);
+        assertTrue(actual instanceof HierarchicalDirectBitSet);
+        assertSameSearches(expected, actual, rand);
+
+        // sparse.
+        for (int i = 0; i < 100; i++) {
+            long index = (rand.nextLong() >>> 1) % SIZE;
+            expected.set(index);
+            actual.set(index);
+        }
+        assertSameSearches(expected, actual, rand);
+
+        // mostly full.
+        expected.setAll();
+        actual.setAll();
+        for (int i = 0; i < 100; i++) {
+            long index = (rand.nextLong() >>> 1) % SIZE;
+            expected.clear(index);
+            actual.clear(index);
+        }
+        assertSameSearches(expected, actual, rand);
+
+        // ranges and single longs.
+        expected.clear(1000, 200000);
+        actual.clear(1000, 200000);
+        expected.flip(SIZE - 100000, SIZE - 10);
+        actual.flip(SIZE - 100000, SIZE - 10);
+        expected.and(12345, 0L);
+        actual.and(12345, 0L);
+        expected.or(23456, 1L);
+        actual.or(23456, 1L);
+        assertEquals(expected.setNextNContinuousClearBits(5000, 50), actual.setNextNContinuousClearBits(5000, 50));
+        assertSameSearches(expected, actual, rand);
+
+        expected.clear();
+        actual.clear();
+        assertSameSearches(expected, actual, rand);
+    }
+
+    @Test
+    public void testAllocateSlots() {
+        DirectBitSet slots = new DirectBitSetBuilder().hierarchical(true).create(SIZE);
+        DirectBitSet expected = new ATSDirectBitSet(DirectStore.allocate(SIZE / 8).bytes());
+        slots.setAll();
+        expected.setAll();
+        long[] free = {7, 64 * 64 * 5 + 3, SIZE / 2, SIZE - 1};
+        for (long index : free) {
+            assertTrue(slots.clearIfSet(index));
+            expected.clear(index);
+        }
+        for (long index : free)
+            assertEquals(index, slots.setNextClearBit(0));
+        assertEquals(DirectBitSet.NOT_FOUND, slots.setNextClearBit(0));
+        assertEquals(DirectBitSet.NOT_FOUND, slots.nextClearBit(0));
+
+        // free and allocate one slot at a time, as a slot allocator.
+        Random rand = new Random(2);
+        int runs = 200000;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            long index = (rand.nextLong() >>> 1) % SIZE;
+            slots.clear(index);
+            assertEquals(index, slots.setNextClearBit(0));
+        }
+        long time = System.nanoTime() - start;
+        System.out.printf("Free and allocate in a set of %,d bits took an average of %,d ns%n", SIZE, time / runs);
+        assertEquals(DirectBitSet.NOT_FOUND, slots.nextClearBit(0));
+    }
+
+    @Test
+    public void testConcurrentAllocate() throws InterruptedException {
+        final HierarchicalDirectBitSet slots =
+                (HierarchicalDirectBitSet) new DirectBitSetBuilder().hierarchical(true).create(64 * 64 * 64);
+        final AtomicLong allocated = new AtomicLong();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final Random rand = new Random(t);
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        long index = slots.setNextClearBit(rand.nextInt(64 * 64 * 64));
+                        if (index >= 0)
+                            allocated.incrementAndGet();
+                        if (index >= 0 && rand.nextBoolean() && slots.clearIfSet(index))
+                            allocated.decrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(allocated.get(), slots.cardinality());
+        // once the changes have finished, the summaries agree with the bits.
+        assertSameSearches(slots.bitSet(), slots, new Random(3));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.values.IntValue;
+
+/**
+ * Many threads incrementing random elements of one HugeArray, by default of a billion ints, 4 GB off heap.
+ * <pre>
+ * java -Dlength=1000000000 -Dthreads=4 net.openhft.lang.collection.HugeArrayRandomAccessMain
+ * </pre>
+ */
+public class HugeArrayRandomAccessMain {
+    static long LENGTH = Long.getLong("length", 1000 * 1000 * 1000L);
+    static int THREADS = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+    static int RUNS = Integer.getInteger("runs", 20 * 1000 * 1000);
+
+    public static void main(String... args) throws InterruptedException {
+        final HugeArray<IntValue> array = HugeCollections.newArray(IntValue.class, LENGTH);
+        final ElementConsumer<IntValue> increment = new ElementConsumer<IntValue>() {
+            @Override
+            public void accept(IntValue element, long index) {
+                element.addAtomicValue(1);
+            }
+        };
+        for (int run = 0; run < 3; run++) {
+            Thread[] threads = new Thread[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                final long seed = t * 0x9E3779B97F4A7C15L + run + 1;
+                threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        long x = seed;
+                        for (int i = 0; i < RUNS; i++) {
+                            // xorshift random numbers.
+                            x ^= x << 13;
+                            x ^= x >>> 7;
+                            x ^= x << 17;
+                            long index = (x >>> 1) % LENGTH;
+                            if ((i & 1) == 0) {
+                                array.withElement(index, increment);
+                            } else {
+                                IntValue value = array.get(index);
+                                value.addAtomicValue(1);
+                                array.recycle(value);
+                            }
+                        }
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            for (Thread t : threads)
+                t.start();
+            for (Thread t : threads)
+                t.join();
+            long time = System.nanoTime() - start;
+            System.out.printf("%d threads, %,d random increments, throughput %.1f M/s%n",
+                    THREADS, (long) THREADS * RUNS, (double) THREADS * RUNS * 1e3 / time);
+        }
+        long total = 0;
+        for (long i = 0; i < LENGTH; i++) {
+            IntValue value = array.get(i);
+            total += value.getValue();
+            array.recycle(value);
+        }
+        if (total != 3L * THREADS * RUNS)
+            throw new AssertionError("Expected " + 3L * THREADS * RUNS + " but total was " + total);
+    }
+}
@@ -16,10 +16,23 @@
 
 package net.openhft.lang.collection;
 
+import net.openhft.lang.io.DirectBytes;
+import net.openhft.lang.model.Byteable;
+import net.openhft.lang.model.DataValueClasses;
+import net.openhft.lang.model.DataValueComparator;
 import net.openhft.lang.model.JavaBeanInterface;
+import net.openhft.lang.model.PackedInterface;
+import net.openhft.lang.model.PaddedInterface;
+import net.openhft.lang.values.IntValue;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * User: peter.lawrey
@@ -44,14 +57,25 @@ public class HugeArrayTest {
                 HugeCollections.newArray(JavaBeanInterface.class, 2);
         JavaBeanInterface obj1 = array.get(0);
         JavaBeanInterface obj2 = array.get(1);
-/*
-Can't call recycle due to recycle using .equals checks on your model.
-Two unmodified objects are .equals().
-Recycle should use identity to know if it's putting the same object back in the list.
-
+        // two unmodified objects are equals(), but recycle checks for the same object.
         array.recycle(obj1);
         array.recycle(obj2);
-*/
+    }
+
+    @Test
+    public void testPaddedRecordsAreAligned() {
+        HugeArray<PaddedInterface> array = HugeCollections.newArray(PaddedInterface.class, 10);
+        for (int i = 0; i < 10; i++) {
+            PaddedInterface pi = array.get(i);
+            assertEquals(0, ((DirectBytes) ((Byteable) pi).bytes()).address() % 64);
+            pi.setCounter(i);
+            array.recycle(pi);
+        }
+        for (int i = 0; i < 10; i++) {
+            PaddedInterface pi = array.get(i);
+            assertEquals(i, pi.getCounter());
+            array.recycle(pi);
+        }
     }
 
     /*
@@ -112,4 +136,290 @@ Recycle should use identity to know if it's putting the same object back in the
             System.out.printf("With lock: %s, average time to access a JavaBeanInterface was %.1f ns%n", withLock, avg);
         }
     }
+
+    @Test
+    public void testManyThreads() throws InterruptedException {
+        final int length = 1000, threads = 4, runs = 100 * 1000;
+        final HugeArray<IntValue> array = HugeCollections.newArray(IntValue.class, length);
+        final ElementConsumer<IntValue> increment = new ElementConsumer<IntValue>() {
+            @Override
+            public void accept(IntValue element, long index) {
+                element.addAtomicValue(1);
+            }
+        };
+        Thread[] ts = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            ts[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < runs; i++) {
+                        long index = (i * 31L + seed) % length;
+                        if ((i & 1) == 0) {
+                            array.withElement(index, increment);
+                        } else {
+                            // hold a few references at a time.
+                            IntValue a = array.get(index);
+                            IntValue b = array.get((index + 1) % length);
+                            a.addAtomicValue(1);
+                            array.recycle(b);
+                            array.recycle(a);
+                        }
+                    }
+                }
+            });
+            ts[t].start();
+        }
+        for (Thread t : ts)
+            t.join();
+        long total = 0;
+        for (int i = 0; i < length; i++) {
+            IntValue value = array.get(i);
+            total += value.getValue();
+            array.recycle(value);
+        }
+        assertEquals((long) threads * runs, total);
+    }
+
+    @Test
+    public void testParallel() {
+        int length = 3 * 1000 * 1000 + 7;
+        HugeArray<IntValue> array = HugeCollections.newArray(IntValue.class, length);
+        IntValue one = DataValueClasses.newInstance(IntValue.class);
+        one.setValue(1);
+        array.fill(0, length, one);
+        assertEquals(length, sum(array, 0, length));
+
+        array.parallelForEach(0, length, new ElementConsumer<IntValue>() {
+            @Override
+            public void accept(IntValue element, long index) {
+                element.setValue((int) (index % 1000));
+            }
+        });
+        long start = System.nanoTime();
+        long expected = 0;
+        for (int i = 100; i < length - 100; i++)
+            expected += i % 1000;
+        assertEquals(expected, sum(array, 100, length - 100));
+        System.out.printf("Parallel sum of %,d ints took %.1f ms%n", length, (System.nanoTime() - start) / 1e6);
+        assertEquals(0, sum(array, 10, 10));
+
+        // a failure is thrown by the caller.
+        try {
+            array.parallelForEach(0, length, new ElementConsumer<IntValue>() {
+                @Override
+                public void accept(IntValue element, long index) {
+                    if (index == 2000000)
+                        throw new IllegalArgumentException("index " + index);
+                }
+            });
+            fail();
+        } catch (IllegalArgumentException expected2) {
+            assertEquals("index 2000000", expected2.getMessage());
+        }
+    }
+
+    @Test
+    public void testColumnarArray() {
+        int length = 1000 * 1000 + 7;
+        HugeArray<IntValue> array = HugeCollections.newColumnarArray(IntValue.class, length);
+        array.parallelForEach(0, length, new ElementConsumer<IntValue>() {
+            @Override
+            public void accept(IntValue element, long index) {
+                element.setValue((int) (index % 1000));
+            }
+        });
+        long expected = 0;
+        for (int i = 0; i < length; i++)
+            expected += i % 1000;
+        long start = System.nanoTime();
+        assertEquals(expected, sum(array, 0, length));
+        System.out.printf("Columnar sum of %,d ints took %.1f ms%n", length, (System.nanoTime() - start) / 1e6);
+
+        IntValue value = array.get(123456);
+        assertEquals(456, value.getValue());
+        assertEquals(457, value.addAtomicValue(1));
+        IntValue value2 = array.get(123457);
+        assertEquals(457, value2.getValue());
+        array.recycle(value2);
+        array.recycle(value);
+
+        IntValue copy = DataValueClasses.newInstance(IntValue.class);
+        array.copyTo(123456, copy);
+        assertEquals(457, copy.getValue());
+        copy.setValue(-1);
+        array.set(length - 1, copy);
+        IntValue last = DataValueClasses.newInstance(IntValue.class);
+        array.get(length - 1, last);
+        assertEquals(-1, last.getValue());
+
+        try {
+            HugeCollections.newColumnarArray(JavaBeanInterface.class, 10);
+            fail();
+        } catch (IllegalArgumentException expected2) {
+        }
+    }
+
+    @Test
+    public void testColumnarSortSearchAndIndex() {
+        int length = 100 * 1000;
+        HugeArray<PackedInterface> array = HugeCollections.newColumnarArray(PackedInterface.class, length);
+        Random random = new Random(1);
+        PackedInterface value = DataValueClasses.newInstance(PackedInterface.class);
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            value.setLetter((char) ('A' + random.nextInt(26)));
+            value.setSmall(random.nextInt(1000));
+            value.setId(i);
+            sum += i;
+            array.set(i, value);
+        }
+        HugeIndex index = array.createIndex("small");
+        DataValueComparator<PackedInterface> comparator =
+                DataValueComparator.comparing(PackedInterface.class, "letter", "small");
+        array.sort(comparator);
+
+        PackedInterface prev = DataValueClasses.newInstance(PackedInterface.class);
+        PackedInterface next = DataValueClasses.newInstance(PackedInterface.class);
+        array.get(0, prev);
+        long sum2 = prev.getId();
+        for (int i = 1; i < length; i++) {
+            array.get(i, next);
+            assertTrue(prev.getLetter() < next.getLetter()
+                    || prev.getLetter() == next.getLetter() && prev.getSmall() <= next.getSmall());
+            sum2 += next.getId();
+            array.get(i, prev);
+        }
+        // the same elements, each with all its columns.
+        assertEquals(sum, sum2);
+
+        for (int i = 0; i < length; i += 997) {
+            array.copyTo(i, value);
+            long found = array.binarySearch(value, comparator);
+            array.get(found, next);
+            assertEquals(value.getLetter(), next.getLetter());
+            assertEquals(value.getSmall(), next.getSmall());
+        }
+        value.setLetter('0');
+        assertEquals(-1, array.binarySearch(value, comparator));
+
+        // the index was rebuilt by the sort, and is kept up to date by set().
+        value.setSmall(1000);
+        array.set(length / 2, value);
+        assertEquals(length / 2, index.indexOf(1000));
+        long count = 0;
+        for (int i = 0; i < length; i++) {
+            array.get(i, next);
+            if (next.getSmall() >= 100 && next.getSmall() < 200)
+                count++;
+        }
+        assertEquals(count, index.count(100, 200));
+        for (long p = 0; p < length; p += 101) {
+            array.get(index.arrayIndex(p), next);
+            assertEquals(next.getSmall(), index.value(p));
+        }
+    }
+
+    static long sum(HugeArray<IntValue> array, long from, long to) {
+        return array.parallelReduce(from, to, new ElementReducer<IntValue, long[]>() {
+            @Override
+            public long[] identity() {
+                return new long[1];
+            }
+
+            @Override
+            public long[] reduce(long[] result, IntValue element, long index) {
+                result[0] += element.getValue();
+                return result;
+            }
+
+            @Override
+            public long[] combine(long[] result1, long[] result2) {
+                result1[0] += result2[0];
+                return result1;
+            }
+        })[0];
+    }
+
+    @Test
+    public void testSortAndSearch() {
+        int length = 1000 * 1000;
+        HugeArray<JavaBeanInterface> array = HugeCollections.newArray(JavaBeanInterface.class, length);
+        Random random = new Random(1);
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            JavaBeanInterface jbi = array.get(i);
+            // many duplicates of the first field.
+            jbi.setInt(random.nextInt(1000));
+            jbi.setLong(random.nextLong());
+            sum += jbi.getLong();
+            array.recycle(jbi);
+        }
+        DataValueComparator<JavaBeanInterface> comparator =
+                DataValueComparator.comparing(JavaBeanInterface.class, "int", "long");
+        long start = System.nanoTime();
+        array.sort(comparator);
+        System.out.printf("Sorted %,d records in %.1f ms%n", length, (System.nanoTime() - start) / 1e6);
+
+        JavaBeanInterface prev = array.get(0);
+        JavaBeanInterface next = array.get(0);
+        long sum2 = prev.getLong();
+        for (int i = 1; i < length; i++) {
+            array.get(i, next);
+            assertTrue(comparator.compare(prev, next) <= 0);
+            sum2 += next.getLong();
+            array.get(i, prev);
+        }
+        // the same records.
+        assertEquals(sum, sum2);
+
+        JavaBeanInterface key = DataValueClasses.newInstance(JavaBeanInterface.class);
+        for (int i = 0; i < length; i += 997) {
+            array.copyTo(i, key);
+            assertEquals(i, array.binarySearch(key, comparator));
+        }
+        key.setInt(-1);
+        assertEquals(-1, array.binarySearch(key, comparator));
+        key.setInt(1000);
+        assertEquals(-length - 1, array.binarySearch(key, comparator));
+    }
+
+    @Test
+    public void testMappedArray() throws IOException {
+        File file = new File(System.getProperty("java.io.tmpdir"), "huge-array-" + System.nanoTime());
+        file.deleteOnExit();
+        int length = 1000;
+        HugeArray<JavaBeanInterface> array = HugeCollections.newArray(JavaBeanInterface.class, length, file);
+        for (int i = 0; i < length; i++) {
+            JavaBeanInterface jbi = array.get(i);
+            jbi.setInt(i);
+            jbi.setLong(i * 10L);
+            array.recycle(jbi);
+        }
+
+        // as if after a restart, the records are there without reloading them.
+        HugeArray<JavaBeanInterface> array2 = HugeCollections.newArray(JavaBeanInterface.class, length, file);
+        for (int i = 0; i < length; i++) {
+            JavaBeanInterface jbi = array2.get(i);
+            assertEquals(i, jbi.getInt());
+            assertEquals(i * 10L, jbi.getLong());
+            array2.recycle(jbi);
+        }
+
+        long fileLength = file.length();
+        try {
+            HugeCollections.newArray(PaddedInterface.class, length, file);
+            fail();
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        try {
+            HugeCollections.newArray(JavaBeanInterface.class, length * 2, file);
+            fail();
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        // the file is left as it was.
+        assertEquals(fileLength, file.length());
+    }
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.model.DataValueClasses;
+import net.openhft.lang.model.JavaBeanInterface;
+import net.openhft.lang.model.PackedInterface;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class HugeIndexTest {
+    @Test
+    public void testLookups() {
+        int length = 10 * 1000;
+        HugeArray<JavaBeanInterface> array = HugeCollections.newArray(JavaBeanInterface.class, length);
+        Random rand = new Random(1);
+        for (int i = 0; i < length; i++) {
+            JavaBeanInterface jbi = array.get(i);
+            jbi.setInt(rand.nextInt(1000) - 500);
+            jbi.setLong(i);
+            array.recycle(jbi);
+        }
+        HugeIndex index = array.createIndex("int");
+        assertEquals("int", index.fieldName());
+        assertEquals(length, index.size());
+        assertIndexed(array, index);
+
+        for (int from = -510; from <= 510; from += 17)
+            for (int to = from; to <= from + 100; to += 23)
+                assertEquals(count(array, from, to), index.count(from, to));
+        assertEquals(-1, index.indexOf(-501));
+        assertEquals(-1, index.indexOf(500));
+        assertEquals(length, index.lowerBound(500));
+
+        // the elements of a range are in order of index.
+        JavaBeanInterface jbi = array.get(0);
+        long last = -1;
+        for (long p = index.lowerBound(7), end = index.lowerBound(8); p < end; p++) {
+            array.get(index.arrayIndex(p), jbi);
+            assertEquals(7, jbi.getInt());
+            assertTrue(jbi.getLong() > last);
+            last = jbi.getLong();
+        }
+        array.recycle(jbi);
+    }
+
+    @Test
+    public void testSetAndRebuild() {
+        int length = 2000;
+        HugeArray<JavaBeanInterface> array = HugeCollections.newArray(JavaBeanInterface.class, length);
+        HugeIndex byInt = array.createIndex("int");
+        HugeIndex byShort = array.createIndex("short");
+        assertEquals(0, byInt.lowerBound(0));
+        assertEquals(length, byInt.count(0, 1));
+
+        // set() keeps both indexes up to date.
+        JavaBeanInterface value = DataValueClasses.newInstance(JavaBeanInterface.class);
+        Random rand = new Random(2);
+        for (int i = 0; i < 20 * length; i++) {
+            value.setInt(rand.nextInt(100) - 50);
+            value.setShort((short) rand.nextInt(20));
+            array.set(rand.nextInt(length), value);
+        }
+        assertIndexed(array, byInt);
+        assertEquals(count(array, -10, 10), byInt.count(-10, 10));
+        assertEquals(length, byShort.count(0, 20));
+        JavaBeanInterface jbi = array.get(0);
+        for (long p = 0; p < length; p++) {
+            array.get(byShort.arrayIndex(p), jbi);
+            assertEquals(jbi.getShort(), byShort.value(p));
+        }
+
+        // changes through a reference need a rebuild.
+        array.get(3, jbi);
+        jbi.setInt(1000);
+        array.recycle(jbi);
+        assertEquals(-1, byInt.indexOf(1000));
+        byInt.rebuild();
+        assertEquals(3, byInt.indexOf(1000));
+        assertIndexed(array, byInt);
+
+        // fill rebuilds them.
+        value.setInt(42);
+        array.fill(0, length / 2, value);
+        assertEquals(0, byInt.indexOf(42));
+        assertIndexed(array, byInt);
+    }
+
+    @Test
+    public void testPackedField() {
+        HugeArray<PackedInterface> array = HugeCollections.newArray(PackedInterface.class, 100);
+        for (int i = 0; i < 100; i++) {
+            PackedInterface pi = array.get(i);
+            pi.setSigned((byte) (i * 7 % 201 - 100));
+            array.recycle(pi);
+        }
+        HugeIndex index = array.createIndex("signed");
+        assertEquals(-100, index.value(0));
+        assertEquals(0, index.arrayIndex(0));
+        for (long p = 1; p < index.size(); p++)
+            assertTrue(index.value(p - 1) < index.value(p));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotAnIntegerField() {
+        HugeCollections.newArray(JavaBeanInterface.class, 10).createIndex("string");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoSuchField() {
+        HugeCollections.newArray(JavaBeanInterface.class, 10).createIndex("unknown");
+    }
+
+    @Test
+    public void testListIndex() {
+        HugeList<JavaBeanInterface> list = HugeCollections.newList(JavaBeanInterface.class, 64);
+        JavaBeanInterface value = DataValueClasses.newInstance(JavaBeanInterface.class);
+        for (int i = 0; i < 1000; i++) {
+            value.setInt(1000 - i);
+            list.add(value);
+        }
+        HugeIndex index = list.createIndex("int");
+        assertEquals(999, index.arrayIndex(0));
+        assertIndexed(list, index);
+
+        value.setInt(-1);
+        list.add(value);
+        assertEquals(1000, index.size());
+        index.rebuild();
+        assertEquals(1000, index.indexOf(-1));
+    }
+
+    @Test
+    public void testSetWhileCreatingIndexes() throws InterruptedException {
+        final int length = 20 * 1000;
+        final HugeArray<JavaBeanInterface> array = HugeCollections.newArray(JavaBeanInterface.class, length);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread setter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                JavaBeanInterface value = DataValueClasses.newInstance(JavaBeanInterface.class);
+                Random rand = new Random(3);
+                while (running.get()) {
+                    value.setInt(rand.nextInt(1000));
+                    array.set(rand.nextInt(length), value);
+                }
+            }
+        });
+        setter.start();
+        HugeIndex[] indexes = new HugeIndex[5];
+        try {
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = array.createIndex("int");
+                indexes[i].rebuild();
+            }
+        } finally {
+            running.set(false);
+            setter.join();
+        }
+        // no set() was missed by an index built while it ran.
+        for (HugeIndex index : indexes)
+            assertIndexed(array, index);
+    }
+
+    // every element is at the position of its value.
+    private static void assertIndexed(HugeArray<JavaBeanInterface> array, HugeIndex index) {
+        JavaBeanInterface jbi = array.get(0);
+        for (long p = 0; p < index.size(); p++) {
+            if (p > 0)
+                assertTrue(index.value(p - 1) < index.value(p)
+                        || index.value(p - 1) == index.value(p) && index.arrayIndex(p - 1) < index.arrayIndex(p));
+            array.get(index.arrayIndex(p), jbi);
+            assertEquals(jbi.getInt(), index.value(p));
+        }
+        array.recycle(jbi);
+    }
+
+    private static long count(HugeArray<JavaBeanInterface> array, int from, int to) {
+        long count = 0;
+        JavaBeanInterface jbi = array.get(0);
+        for (long i = 0; i < array.length(); i++) {
+            array.get(i, jbi);
+            if (jbi.getInt() >= from && jbi.getInt() < to)
+                count++;
+        }
+        array.recycle(jbi);
+        return count;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.model.DataValueClasses;
+import net.openhft.lang.model.DataValueComparator;
+import net.openhft.lang.model.MinimalInterface;
+import net.openhft.lang.values.IntValue;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HugeListTest {
+    @Test
+    public void testAppendAndGrow() {
+        // small segments so the list grows many times.
+        HugeList<MinimalInterface> list = HugeCollections.newList(MinimalInterface.class, 1000);
+        assertEquals(0, list.length());
+        assertEquals(0, list.capacity());
+
+        MinimalInterface first = list.append();
+        first.int$(-1);
+        // a power of two elements in a segment.
+        assertEquals(1024, list.capacity());
+
+        MinimalInterface value = DataValueClasses.newInstance(MinimalInterface.class);
+        int count = 100 * 1000;
+        for (int i = 1; i < count; i++) {
+            value.int$(i);
+            value.long$(i * 10L);
+            assertEquals(i, list.add(value));
+        }
+        assertEquals(count, list.length());
+        assertEquals(98 * 1024, list.capacity());
+
+        // growing doesn't move the elements, so the first reference is still valid.
+        assertEquals(-1, first.int$());
+        list.recycle(first);
+
+        for (int i = 1; i < count; i++) {
+            MinimalInterface mi = list.get(i);
+            assertEquals(i, mi.int$());
+            assertEquals(i * 10L, mi.long$());
+            list.recycle(mi);
+        }
+        MinimalInterface copy = DataValueClasses.newInstance(MinimalInterface.class);
+        list.get(count - 1, copy);
+        assertEquals(count - 1, copy.int$());
+
+        try {
+            list.get(count);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+
+        // the elements are aligned in every segment.
+        MinimalInterface mi = list.get(5000);
+        assertEquals(0, (((net.openhft.lang.io.DirectBytes) mi.bytes()).address() + mi.offset()) % 8);
+        list.recycle(mi);
+    }
+
+    @Test
+    public void testEnsureCapacity() {
+        HugeList<IntValue> list = HugeCollections.newList(IntValue.class);
+        // the default segments are about 1 MB.
+        list.ensureCapacity(1);
+        assertEquals(256 * 1024, list.capacity());
+        list.ensureCapacity(1000 * 1000);
+        assertEquals(4 * 256 * 1024, list.capacity());
+        assertEquals(0, list.length());
+
+        int count = 1000 * 1000;
+        for (int i = 0; i < count; i++) {
+            IntValue value = list.append();
+            value.setValue(i);
+            list.recycle(value);
+        }
+        assertEquals(4 * 256 * 1024, list.capacity());
+        long expected = (long) count * (count - 1) / 2;
+        assertEquals(expected, HugeArrayTest.sum(list, 0, count));
+
+        IntValue key = DataValueClasses.newInstance(IntValue.class);
+        DataValueComparator<IntValue> comparator = DataValueComparator.comparing(IntValue.class, "value");
+        key.setValue(123456);
+        assertEquals(123456, list.binarySearch(key, comparator));
+        key.setValue(-5);
+        assertEquals(-1, list.binarySearch(key, comparator));
+        key.setValue(count);
+        assertEquals(-count - 1, list.binarySearch(key, comparator));
+    }
+
+    @Test
+    public void testSortAcrossSegments() {
+        // small segments so most ranges span several.
+        HugeList<MinimalInterface> list = HugeCollections.newList(MinimalInterface.class, 1000);
+        MinimalInterface value = DataValueClasses.newInstance(MinimalInterface.class);
+        Random random = new Random(1);
+        int count = 200 * 1000;
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            value.int$(random.nextInt(1000));
+            value.long$(random.nextLong());
+            sum += value.long$();
+            list.add(value);
+        }
+        DataValueComparator<MinimalInterface> comparator =
+                DataValueComparator.comparing(MinimalInterface.class, "int$", "long$");
+        list.sort(comparator);
+
+        MinimalInterface prev = list.get(0);
+        MinimalInterface next = list.get(0);
+        long sum2 = prev.long$();
+        for (int i = 1; i < count; i++) {
+            list.get(i, next);
+            assertTrue(comparator.compare(prev, next) <= 0);
+            sum2 += next.long$();
+            list.get(i, prev);
+        }
+        // the same records.
+        assertEquals(sum, sum2);
+        list.recycle(prev);
+        list.recycle(next);
+
+        MinimalInterface key = DataValueClasses.newInstance(MinimalInterface.class);
+        for (int i = 0; i < count; i += 997) {
+            list.copyTo(i, key);
+            assertEquals(i, list.binarySearch(key, comparator));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.io.DirectStore;
+import net.openhft.lang.model.Byteable;
+import net.openhft.lang.model.DataValueClasses;
+import net.openhft.lang.model.DeltaInterface;
+import net.openhft.lang.model.MinimalInterface;
+import net.openhft.lang.model.SeqLockedInterface;
+import net.openhft.lang.model.StringInterface;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HugeMapTest {
+    @Test
+    public void testPutGetRemove() {
+        int entries = 10000;
+        HugeMap<StringInterface, MinimalInterface> map =
+                HugeCollections.newMap(StringInterface.class, MinimalInterface.class, entries);
+        StringInterface key = DataValueClasses.newInstance(StringInterface.class);
+        MinimalInterface value = DataValueClasses.newInstance(MinimalInterface.class);
+        for (int i = 0; i < entries; i++) {
+            setKey(key, i);
+            value.int$(i);
+            value.long$(i * 10L);
+            assertTrue(map.put(key, value));
+        }
+        assertEquals(entries, map.size());
+
+        // replacing doesn't add an entry.
+        setKey(key, 5);
+        value.int$(-5);
+        value.long$(50);
+        assertFalse(map.put(key, value));
+        assertEquals(entries, map.size());
+
+        // a different text is a different key.
+        key.setText("other");
+        assertFalse(map.containsKey(key));
+
+        MinimalInterface using = DataValueClasses.newInstance(MinimalInterface.class);
+        for (int i = 0; i < entries; i++) {
+            setKey(key, i);
+            assertTrue(map.get(key, using));
+            assertEquals(i == 5 ? -5 : i, using.int$());
+            assertEquals(i * 10L, using.long$());
+        }
+
+        // remove the even keys, the odd ones must all still be found.
+        for (int i = 0; i < entries; i += 2) {
+            setKey(key, i);
+            assertTrue(map.remove(key));
+            assertFalse(map.remove(key));
+        }
+        assertEquals(entries / 2, map.size());
+        for (int i = 0; i < entries; i++) {
+            setKey(key, i);
+            assertEquals(i % 2 != 0, map.get(key, using));
+            if (i % 2 != 0)
+                assertEquals(i == 5 ? -5 : i, using.int$());
+        }
+
+        map.clear();
+        assertEquals(0, map.size());
+        setKey(key, 1);
+        assertFalse(map.containsKey(key));
+    }
+
+    @Test
+    public void testNativeKey() {
+        HugeMap<StringInterface, MinimalInterface> map =
+                HugeCollections.newMap(StringInterface.class, MinimalInterface.class, 16);
+        StringInterface heapKey = DataValueClasses.newInstance(StringInterface.class);
+        StringInterface nativeKey = DataValueClasses.newDirectReference(StringInterface.class);
+        ((Byteable) nativeKey).bytes(new DirectStore(((Byteable) nativeKey).maxSize()).bytes(), 0L);
+        MinimalInterface value = DataValueClasses.newInstance(MinimalInterface.class);
+
+        // a longer String first, so the shorter one must not leave its tail behind.
+        nativeKey.setString("a much longer key");
+        nativeKey.setString("key");
+        nativeKey.setText("text");
+        heapKey.setString("key");
+        heapKey.setText("text");
+        value.int$(1);
+        assertTrue(map.put(heapKey, value));
+        assertTrue(map.containsKey(nativeKey));
+        value.int$(2);
+        assertFalse(map.put(nativeKey, value));
+
+        MinimalInterface using = DataValueClasses.newInstance(MinimalInterface.class);
+        assertTrue(map.get(heapKey, using));
+        assertEquals(2, using.int$());
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testFull() {
+        int capacity = 100;
+        HugeMap<StringInterface, MinimalInterface> map =
+                HugeCollections.newMap(StringInterface.class, MinimalInterface.class, capacity);
+        StringInterface key = DataValueClasses.newInstance(StringInterface.class);
+        MinimalInterface value = DataValueClasses.newInstance(MinimalInterface.class);
+        for (int i = 0; i < capacity; i++) {
+            setKey(key, i);
+            map.put(key, value);
+        }
+        setKey(key, capacity);
+        try {
+            map.put(key, value);
+            fail();
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        setKey(key, 0);
+        assertTrue(map.remove(key));
+        setKey(key, capacity);
+        assertTrue(map.put(key, value));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSeqLockedKey() {
+        HugeCollections.newMap(SeqLockedInterface.class, MinimalInterface.class, 16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDeltaKey() {
+        HugeCollections.newMap(DeltaInterface.class, MinimalInterface.class, 16);
+    }
+
+    @Test
+    public void testDoubleKeyBits() {
+        HugeMap<MinimalInterface, MinimalInterface> map =
+                HugeCollections.newMap(MinimalInterface.class, MinimalInterface.class, 16);
+        MinimalInterface key = DataValueClasses.newInstance(MinimalInterface.class);
+        MinimalInterface value = DataValueClasses.newInstance(MinimalInterface.class);
+        key.double$(0.0);
+        map.put(key, value);
+        key.double$(-0.0);
+        assertFalse(map.containsKey(key));
+        key.double$(Double.NaN);
+        map.put(key, value);
+        assertTrue(map.containsKey(key));
+        assertEquals(2, map.size());
+        map.free();
+    }
+
+    static void setKey(StringInterface key, int i) {
+        key.setString("key-" + i);
+        key.setText(i % 3 == 0 ? null : "text");
+    }
+}
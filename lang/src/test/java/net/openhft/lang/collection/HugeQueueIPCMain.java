@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.model.JavaBeanInterface;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Passes messages between two processes over a queue mapped to a file and reports the latency.  Start the consumer
+ * first as it creates the queue, then the producer in another process e.g.
+ * <pre>
+ * java net.openhft.lang.collection.HugeQueueIPCMain consumer
+ * java net.openhft.lang.collection.HugeQueueIPCMain producer
+ * </pre>
+ * System.nanoTime() is the same clock for all the processes on a host, so the latency is measured one way.
+ */
+public class HugeQueueIPCMain {
+    static int WARMUP = Integer.getInteger("warmup", 100 * 1000);
+    static int RUNS = Integer.getInteger("runs", 1000 * 1000);
+    // the time between messages, so they measure the latency rather than the throughput.
+    static int INTERVAL_NS = Integer.getInteger("interval", 1000);
+
+    public static void main(String... args) throws IOException {
+        boolean producer = args[0].equals("producer");
+        File file = new File(System.getProperty("java.io.tmpdir"), "huge-queue-ipc.dat");
+        if (!producer)
+            file.delete();
+        HugeQueue<JavaBeanInterface> queue = HugeCollections.newSPSCQueue(JavaBeanInterface.class, 64 * 1024, file);
+        if (producer)
+            produce(queue);
+        else
+            consume(queue);
+    }
+
+    static void produce(HugeQueue<JavaBeanInterface> queue) {
+        long next = System.nanoTime();
+        for (int i = -WARMUP; i < RUNS; i++) {
+            while (System.nanoTime() < next) ;
+            next += INTERVAL_NS;
+            JavaBeanInterface jbi;
+            while ((jbi = queue.offer()) == null) ;
+            jbi.setInt(i);
+            jbi.setLong(System.nanoTime());
+            queue.recycle(jbi);
+        }
+        System.out.println("Sent " + (WARMUP + RUNS) + " messages");
+    }
+
+    static void consume(HugeQueue<JavaBeanInterface> queue) {
+        System.out.println("Waiting for the producer");
+        long[] latencies = new long[RUNS];
+        for (int i = -WARMUP; i < RUNS; i++) {
+            JavaBeanInterface jbi;
+            while ((jbi = queue.take()) == null) ;
+            long latency = System.nanoTime() - jbi.getLong();
+            if (jbi.getInt() != i)
+                throw new AssertionError("Expected " + i + " but got " + jbi.getInt());
+            queue.recycle(jbi);
+            if (i >= 0)
+                latencies[i] = latency;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("Passed %,d messages, latency 50%%: %,d ns, 99%%: %,d ns, 99.9%%: %,d ns%n",
+                RUNS, latencies[RUNS / 2], latencies[RUNS * 99 / 100], latencies[RUNS * 999 / 1000]);
+    }
+}
@@ -16,11 +16,16 @@
 
 package net.openhft.lang.collection;
 
+import net.openhft.lang.io.DirectBytes;
+import net.openhft.lang.model.Byteable;
 import net.openhft.lang.model.JavaBeanInterface;
+import net.openhft.lang.model.PaddedInterface;
 import org.junit.Test;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
 
 /**
  * User: peter.lawrey
@@ -68,4 +73,230 @@ public class HugeQueueTest {
         System.out.printf("Average time to access a JavaBeanInterface was %.1f ns%n", avg);
 
     }
+
+    @Test
+    public void testSPSCQueue() throws InterruptedException {
+        long time = passMessages(HugeCollections.newSPSCQueue(JavaBeanInterface.class, 1024), 1, 2 * 1000 * 1000);
+        System.out.printf("SPSC, average time per message was %.1f ns%n", time / 2e6);
+    }
+
+    @Test
+    public void testMPSCQueue() throws InterruptedException {
+        long time = passMessages(HugeCollections.newMPSCQueue(JavaBeanInterface.class, 1024), 3, 500 * 1000);
+        System.out.printf("MPSC, average time per message was %.1f ns%n", time / 1.5e6);
+    }
+
+    @Test
+    public void testTwoPhaseOffer() {
+        HugeQueue<JavaBeanInterface> queue = HugeCollections.newSPSCQueue(JavaBeanInterface.class, 2);
+        JavaBeanInterface jbi = queue.offer();
+        jbi.setInt(1);
+        // not visible until it is published.
+        assertNull(queue.take());
+        queue.recycle(jbi);
+        JavaBeanInterface jbi2 = queue.take();
+        assertEquals(1, jbi2.getInt());
+        queue.recycle(jbi2);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testPaddedRecordsAreAligned() {
+        checkAligned(HugeCollections.newSPSCQueue(PaddedInterface.class, 4));
+        checkAligned(HugeCollections.newMPSCQueue(PaddedInterface.class, 4));
+    }
+
+    static void checkAligned(HugeQueue<PaddedInterface> queue) {
+        for (int i = 0; i < 10; i++) {
+            PaddedInterface pi = queue.offer();
+            Byteable byteable = (Byteable) pi;
+            assertEquals(0, (((DirectBytes) byteable.bytes()).address() + byteable.offset()) % 64);
+            pi.setCounter(i);
+            queue.recycle(pi);
+            PaddedInterface pi2 = queue.take();
+            assertEquals(i, pi2.getCounter());
+            queue.recycle(pi2);
+        }
+    }
+
+    @Test
+    public void testBatches() {
+        checkBatches(HugeCollections.newQueue(JavaBeanInterface.class, 256));
+        checkBatches(HugeCollections.newSPSCQueue(JavaBeanInterface.class, 256));
+        checkBatches(HugeCollections.newMPSCQueue(JavaBeanInterface.class, 256));
+    }
+
+    @Test
+    public void testMPSCBatchWriterThrows() {
+        HugeQueue<JavaBeanInterface> queue = HugeCollections.newMPSCQueue(JavaBeanInterface.class, 16);
+        try {
+            queue.offer(5, new BatchWriter<JavaBeanInterface>() {
+                @Override
+                public void write(JavaBeanInterface element, int index) {
+                    if (index == 2)
+                        throw new IllegalStateException("failed");
+                    element.setLong(index + 1);
+                }
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        // the whole run was claimed, so it is all published rather than blocking the consumer.
+        final long[] read = new long[5];
+        assertEquals(5, queue.drainTo(new BatchReader<JavaBeanInterface>() {
+            @Override
+            public void read(JavaBeanInterface element, int index) {
+                read[index] = element.getLong();
+            }
+        }, 10));
+        assertArrayEquals(new long[]{1, 2, 0, 0, 0}, read);
+        JavaBeanInterface jbi = queue.offer();
+        jbi.setLong(6);
+        queue.recycle(jbi);
+        JavaBeanInterface jbi2 = queue.take();
+        assertEquals(6, jbi2.getLong());
+        queue.recycle(jbi2);
+        assertTrue(queue.isEmpty());
+    }
+
+    static void checkBatches(HugeQueue<JavaBeanInterface> queue) {
+        final long[] next = {0, 0};
+        BatchWriter<JavaBeanInterface> writer = new BatchWriter<JavaBeanInterface>() {
+            @Override
+            public void write(JavaBeanInterface element, int index) {
+                element.setLong(next[0]++);
+            }
+        };
+        BatchReader<JavaBeanInterface> reader = new BatchReader<JavaBeanInterface>() {
+            @Override
+            public void read(JavaBeanInterface element, int index) {
+                assertEquals(next[1]++, element.getLong());
+            }
+        };
+        for (int i = 0; i < 100; i++) {
+            assertEquals(100, queue.offer(100, writer));
+            assertEquals(70, queue.drainTo(reader, 70));
+            assertEquals(30, queue.drainTo(reader, 70));
+            assertEquals(0, queue.drainTo(reader, 70));
+        }
+        // a batch which doesn't fit is cut short.
+        int offered = queue.offer(1000, writer);
+        assertTrue(offered >= 255 && offered <= 256);
+        assertTrue(queue.isFull());
+        assertEquals(0, queue.offer(1, writer));
+        assertEquals(offered, queue.drainTo(reader, 1000));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testSPSCBatches() throws InterruptedException {
+        final HugeQueue<JavaBeanInterface> queue = HugeCollections.newSPSCQueue(JavaBeanInterface.class, 1024);
+        final int messages = 5 * 1000 * 1000;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final int[] next = {0};
+                BatchWriter<JavaBeanInterface> writer = new BatchWriter<JavaBeanInterface>() {
+                    @Override
+                    public void write(JavaBeanInterface element, int index) {
+                        element.setInt(next[0]++);
+                    }
+                };
+                while (next[0] < messages)
+                    if (queue.offer(Math.min(256, messages - next[0]), writer) == 0)
+                        Thread.yield();
+            }
+        });
+        final int[] next = {0};
+        BatchReader<JavaBeanInterface> reader = new BatchReader<JavaBeanInterface>() {
+            @Override
+            public void read(JavaBeanInterface element, int index) {
+                assertEquals(next[0]++, element.getInt());
+            }
+        };
+        long start = System.nanoTime();
+        producer.start();
+        while (next[0] < messages)
+            if (queue.drainTo(reader, 256) == 0)
+                Thread.yield();
+        long time = System.nanoTime() - start;
+        producer.join();
+        System.out.printf("SPSC in batches, average time per message was %.1f ns%n", (double) time / messages);
+    }
+
+    @Test
+    public void testMappedQueueRestart() throws IOException {
+        File file = new File(System.getProperty("java.io.tmpdir"), "huge-queue-" + System.nanoTime());
+        file.deleteOnExit();
+        HugeQueue<JavaBeanInterface> producer = HugeCollections.newSPSCQueue(JavaBeanInterface.class, 16, file);
+        for (int i = 0; i < 10; i++) {
+            JavaBeanInterface jbi = producer.offer();
+            jbi.setLong(i);
+            producer.recycle(jbi);
+        }
+        HugeQueue<JavaBeanInterface> consumer = HugeCollections.newSPSCQueue(JavaBeanInterface.class, 16, file);
+        for (int i = 0; i < 4; i++) {
+            JavaBeanInterface jbi = consumer.take();
+            assertEquals(i, jbi.getLong());
+            consumer.recycle(jbi);
+        }
+
+        // a restarted consumer carries on from where the last one stopped.
+        HugeQueue<JavaBeanInterface> consumer2 = HugeCollections.newSPSCQueue(JavaBeanInterface.class, 16, file);
+        for (int i = 4; i < 10; i++) {
+            JavaBeanInterface jbi = consumer2.take();
+            assertEquals(i, jbi.getLong());
+            consumer2.recycle(jbi);
+        }
+        assertNull(consumer2.take());
+
+        try {
+            HugeCollections.newMPSCQueue(JavaBeanInterface.class, 16, file);
+            fail();
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    /**
+     * @return the time in nano-seconds for the producers to pass their messages to one consumer.
+     */
+    static long passMessages(final HugeQueue<JavaBeanInterface> queue, int producers, final int messages)
+            throws InterruptedException {
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < messages; i++) {
+                        JavaBeanInterface jbi;
+                        while ((jbi = queue.offer()) == null)
+                            Thread.yield();
+                        jbi.setInt(id);
+                        jbi.setLong(i);
+                        queue.recycle(jbi);
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread t : threads)
+            t.start();
+        // the messages from each producer arrive in order.
+        long[] next = new long[producers];
+        for (long n = (long) producers * messages; n > 0; n--) {
+            JavaBeanInterface jbi;
+            while ((jbi = queue.take()) == null)
+                Thread.yield();
+            int id = jbi.getInt();
+            assertEquals(next[id]++, jbi.getLong());
+            queue.recycle(jbi);
+        }
+        long time = System.nanoTime() - start;
+        for (Thread t : threads)
+            t.join();
+        assertTrue(queue.isEmpty());
+        return time;
+    }
 }
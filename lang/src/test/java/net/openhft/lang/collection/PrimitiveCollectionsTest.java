@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PrimitiveCollectionsTest {
+    @Test
+    public void testLongLongMap() {
+        int entries = 100 * 1000;
+        HugeLongLongMap map = new HugeLongLongMap(entries);
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        Random random = new Random(1);
+        // a small range of keys, including 0 and negatives, so keys are replaced and removed.
+        for (int i = 0; i < 1000 * 1000; i++) {
+            long key = random.nextInt(entries) - entries / 2;
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(expected.remove(key) != null, map.remove(key));
+                    break;
+                case 1:
+                    Long old = expected.get(key);
+                    expected.put(key, (old == null ? 0 : old) + 3);
+                    assertEquals(expected.get(key).longValue(), map.addValue(key, 3));
+                    break;
+                default:
+                    assertEquals(!expected.containsKey(key), map.put(key, i));
+                    expected.put(key, (long) i);
+                    break;
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = -entries / 2; key < entries / 2; key++) {
+            Long value = expected.get(key);
+            assertEquals(value != null, map.containsKey(key));
+            assertEquals(value == null ? -1 : value, map.get(key, -1));
+        }
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(0));
+        for (int i = 0; i < entries; i++)
+            assertTrue(map.put(i * 31L, i));
+        try {
+            map.put(-1, 1);
+            fail();
+        } catch (IllegalStateException expected2) {
+        }
+        assertFalse(map.put(0, 5));
+    }
+
+    @Test
+    public void testLongIntMap() {
+        HugeLongIntMap map = new HugeLongIntMap(1000);
+        for (long i = 0; i < 1000; i++)
+            assertEquals(i * 2, map.addValue(i << 40, (int) i) + map.addValue(i << 40, (int) i) - i);
+        for (long i = 0; i < 1000; i++)
+            assertEquals(i * 2, map.get(i << 40, -1));
+        assertEquals(-1, map.get(-1, -1));
+        assertTrue(map.remove(0));
+        assertEquals(-1, map.get(0, -1));
+        assertEquals(999, map.size());
+    }
+
+    @Test
+    public void testSets() {
+        HugeIntSet ints = new HugeIntSet(10000);
+        HugeLongSet longs = new HugeLongSet(10000);
+        Set<Integer> expected = new HashSet<Integer>();
+        Random random = new Random(2);
+        for (int i = 0; i < 100 * 1000; i++) {
+            int value = random.nextInt(20000) - 10000;
+            if (random.nextBoolean() || expected.size() >= 10000) {
+                boolean removed = expected.remove(value);
+                assertEquals(removed, ints.remove(value));
+                assertEquals(removed, longs.remove(value * 0x100000001L));
+            } else {
+                boolean added = expected.add(value);
+                assertEquals(added, ints.add(value));
+                assertEquals(added, longs.add(value * 0x100000001L));
+            }
+        }
+        assertEquals(expected.size(), ints.size());
+        assertEquals(expected.size(), longs.size());
+        for (int value = -10000; value < 10000; value++) {
+            assertEquals(expected.contains(value), ints.contains(value));
+            assertEquals(expected.contains(value), longs.contains(value * 0x100000001L));
+        }
+    }
+
+    @Test
+    public void testArrays() {
+        HugeLongArray longs = new HugeLongArray(1000);
+        HugeIntArray ints = new HugeIntArray(1000);
+        assertEquals(1000, longs.length());
+        longs.fill(0, 1000, -1);
+        ints.fill(10, 20, 7);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(-1, longs.get(i));
+            assertEquals(i >= 10 && i < 20 ? 7 : 0, ints.get(i));
+        }
+        longs.set(999, Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, longs.getVolatile(999));
+        assertEquals(0, longs.addValue(5, 1));
+        assertEquals(2, longs.addAtomicValue(5, 2));
+        assertTrue(ints.compareAndSwap(15, 7, 8));
+        assertFalse(ints.compareAndSwap(15, 7, 9));
+        ints.setOrdered(16, 3);
+        assertEquals(8, ints.get(15));
+        assertEquals(3, ints.getVolatile(16));
+        ints.fill(0, 1000, 0);
+        assertEquals(0, ints.get(15));
+        try {
+            longs.get(1000);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    @Test
+    public void testLongLongMapPerf() {
+        int entries = 1000 * 1000;
+        for (int run = 0; run < 3; run++) {
+            HugeLongLongMap map = new HugeLongLongMap(entries);
+            long start = System.nanoTime();
+            for (long i = 0; i < entries; i++)
+                map.addValue(i * 7919, 1);
+            long sum = 0;
+            for (long i = 0; i < entries; i++)
+                sum += map.get(i * 7919, 0);
+            long mid = System.nanoTime();
+            Map<Long, Long> hashMap = new HashMap<Long, Long>();
+            for (long i = 0; i < entries; i++) {
+                Long old = hashMap.get(i * 7919);
+                hashMap.put(i * 7919, old == null ? 1 : old + 1);
+            }
+            long sum2 = 0;
+            for (long i = 0; i < entries; i++)
+                sum2 += hashMap.get(i * 7919);
+            long end = System.nanoTime();
+            assertEquals(entries, sum);
+            assertEquals(entries, sum2);
+            System.out.printf("HugeLongLongMap took %.1f ns and HashMap<Long, Long> %.1f ns per update and get%n",
+                    (mid - start) / 2.0 / entries, (end - mid) / 2.0 / entries);
+        }
+    }
+}
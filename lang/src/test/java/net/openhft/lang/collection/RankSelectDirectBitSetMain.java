@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.lang.collection;
+
+/**
+ * Random ranks and selects of a RankSelectDirectBitSet which isn't changing, by default of a billion bits, 128 MB off
+ * heap, with about half of them set.
+ * <pre>
+ * java -Dsize=1000000000 -Druns=20000000 net.openhft.lang.collection.RankSelectDirectBitSetMain
+ * </pre>
+ */
+public class RankSelectDirectBitSetMain {
+    static long SIZE = Long.getLong("size", 1000 * 1000 * 1000L);
+    static int RUNS = Integer.getInteger("runs", 20 * 1000 * 1000);
+
+    public static void main(String... args) {
+        RankSelectDirectBitSet bitSet = (RankSelectDirectBitSet) new DirectBitSetBuilder().rankSelect(true).create(SIZE);
+        long x = 1;
+        for (long i = 0; i < SIZE >> 6; i++) {
+            // xorshift random numbers.
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            bitSet.or(i, x);
+        }
+        long cardinality = bitSet.cardinality();
+        for (int run = 0; run < 5; run++) {
+            long total = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < RUNS; i++) {
+                x ^= x << 13;
+                x ^= x >>> 7;
+                x ^= x << 17;
+                total += bitSet.rank((x >>> 1) % (SIZE + 1));
+            }
+            long mid = System.nanoTime();
+            for (int i = 0; i < RUNS; i++) {
+                x ^= x << 13;
+                x ^= x >>> 7;
+                x ^= x << 17;
+                total += bitSet.select((x >>> 1) % cardinality);
+            }
+            long end = System.nanoTime();
+            System.out.printf("%,d bits, average rank %.1f ns, select %.1f ns (%d)%n",
+                    bitSet.size(), (double) (mid - start) / RUNS, (double) (end - mid) / RUNS, total & 1);
+        }
+    }
+}
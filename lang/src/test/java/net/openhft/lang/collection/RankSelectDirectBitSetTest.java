@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RankSelectDirectBitSetTest {
+    private static RankSelectDirectBitSet create(long size) {
+        return (RankSelectDirectBitSet) new DirectBitSetBuilder().rankSelect(true).create(size);
+    }
+
+    // compares rank and select with counting every bit.
+    private static void assertRankSelect(DirectBitSet bitSet) {
+        RankSelectDirectBitSet rs = (RankSelectDirectBitSet) bitSet;
+        long rank = 0;
+        for (long i = 0; i < rs.size(); i++) {
+            assertEquals("bit: " + i, rank, rs.rank(i));
+            if (rs.get(i)) {
+                assertEquals("rank: " + rank, i, rs.select(rank));
+                rank++;
+            }
+        }
+        assertEquals(rank, rs.rank(rs.size()));
+        assertEquals(rank, rs.cardinality());
+        assertEquals(DirectBitSet.NOT_FOUND, rs.select(rank));
+        assertEquals(DirectBitSet.NOT_FOUND, rs.select(-1));
+    }
+
+    @Test
+    public void testEmptyAndFull() {
+        // not a whole number of blocks.
+        RankSelectDirectBitSet rs = create(64 * 13);
+        assertEquals(0, rs.cardinality());
+        assertEquals(0, rs.rank(100));
+        assertEquals(DirectBitSet.NOT_FOUND, rs.select(0));
+        rs.setAll();
+        assertEquals(64 * 13, rs.cardinality());
+        assertEquals(100, rs.rank(100));
+        assertEquals(777, rs.select(777));
+        assertRankSelect(rs);
+        rs.clear();
+        assertEquals(0, rs.cardinality());
+    }
+
+    @Test
+    public void testRandomChanges() {
+        Random rand = new Random(1);
+        RankSelectDirectBitSet rs = create(64 * 1000);
+        for (int i = 0; i < 20000; i++)
+            rs.set(rand.nextInt(64 * 1000));
+        assertRankSelect(rs);
+
+        // changes in one place, and in many.
+        rs.clear(64 * 500 + 3);
+        rs.flip(64 * 900, 64 * 901 + 7);
+        assertRankSelect(rs);
+        for (int i = 0; i < 1000; i++) {
+            long index = rs.setNextClearBit(rand.nextInt(64 * 1000));
+            if (index >= 0)
+                rs.clearNextSetBit(rand.nextInt(64 * 1000));
+        }
+        assertRankSelect(rs);
+
+        DirectBitSet other = new DirectBitSetBuilder().create(64 * 1000);
+        for (int i = 0; i < 20000; i++)
+            other.set(rand.nextInt(64 * 1000));
+        long expected = rs.cardinalityOfAnd(other);
+        rs.and(other);
+        assertEquals(expected, rs.cardinality());
+        assertRankSelect(rs);
+    }
+
+    @Test
+    public void testSparse() {
+        // many blocks, with few bits set in each.
+        RankSelectDirectBitSet rs = create(1 << 24);
+        for (long i = 0; i < 1 << 24; i += 997)
+            rs.set(i);
+        assertEquals(((1 << 24) + 996) / 997, rs.cardinality());
+        for (long k = 0; k < rs.cardinality(); k += 101) {
+            assertEquals(k * 997, rs.select(k));
+            assertEquals(k, rs.rank(k * 997));
+            assertEquals(k + 1, rs.rank(k * 997 + 1));
+        }
+        rs.clear(997);
+        assertEquals(2 * 997, rs.select(1));
+        assertEquals(2, rs.rank(3 * 997));
+    }
+
+    @Test
+    public void testMixedWorkload() {
+        // changes and lookups interleaved, each lookup counting only the blocks changed since the last one.
+        int size = 64 * 4096;
+        Random rand = new Random(2);
+        RankSelectDirectBitSet rs = create(size);
+        BitSet expected = new BitSet(size);
+        for (int i = 0; i < 20000; i++) {
+            int index = rand.nextInt(size);
+            switch (rand.nextInt(4)) {
+                case 0:
+                    rs.set(index);
+                    expected.set(index);
+                    break;
+                case 1:
+                    rs.clear(index);
+                    expected.clear(index);
+                    break;
+                case 2:
+                    int to = Math.min(size, index + rand.nextInt(2000));
+                    rs.flip(index, to);
+                    expected.flip(index, to);
+                    break;
+                default:
+                    long found = rs.setNextNContinuousClearBits(index, 40);
+                    if (found >= 0)
+                        expected.set((int) found, (int) found + 40);
+                    break;
+            }
+            int bitIndex = rand.nextInt(size + 1);
+            long rank = expected.get(0, bitIndex).cardinality();
+            assertEquals(rank, rs.rank(bitIndex));
+            int next = expected.nextSetBit(bitIndex);
+            assertEquals(next < 0 ? DirectBitSet.NOT_FOUND : next, rs.select(rank));
+            assertEquals(expected.cardinality(), rs.cardinality());
+        }
+        assertRankSelect(rs);
+    }
+}
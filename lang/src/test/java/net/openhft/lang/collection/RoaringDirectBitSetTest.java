@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.collection;
+
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectStore;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RoaringDirectBitSetTest {
+    private static final int CHUNK = 1 << 16;
+
+    // a chunk of each kind of container, an empty chunk, and a partial chunk at the end.
+    private static DirectBitSet mixed(Random rand) {
+        DirectBitSet bitSet = new SingleThreadedDirectBitSet(DirectStore.allocate((5 * CHUNK + 640) / 8).bytes());
+        // sparse, an array.
+        for (int i = 0; i < 300; i++)
+            bitSet.set(rand.nextInt(CHUNK));
+        // dense, a bitmap.
+        for (int i = 0; i < 30000; i++)
+            bitSet.set(CHUNK + rand.nextInt(CHUNK));
+        // runs, including the ends of the chunk.
+        bitSet.set(2 * CHUNK, 2 * CHUNK + 1000);
+        bitSet.set(2 * CHUNK + 5000, 2 * CHUNK + 20000);
+        bitSet.set(3 * CHUNK - 100, 3 * CHUNK + 50);
+        // the fourth chunk is empty, bar the end of the run before.
+        bitSet.set(4 * CHUNK, 5 * CHUNK);
+        for (int i = 0; i < 100; i++)
+            bitSet.set(5 * CHUNK + rand.nextInt(640));
+        return bitSet;
+    }
+
+    private static void assertSameBits(DirectBitSet expected, DirectBitSet actual, Random rand) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.cardinality(), actual.cardinality());
+        long size = expected.size();
+        for (long i = 0; i < size; i++)
+            assertEquals("bit: " + i, expected.get(i), actual.get(i));
+        for (long i = 0; i < size >> 6; i++)
+            assertEquals("long: " + i, expected.getLong(i), actual.getLong(i));
+
+        DirectBitSet.Bits bits = actual.setBits();
+        for (long i = expected.nextSetBit(0); i >= 0; i = expected.nextSetBit(i + 1))
+            assertEquals(i, bits.next());
+        assertEquals(DirectBitSet.NOT_FOUND, bits.next());
+        assertEquals(DirectBitSet.NOT_FOUND, bits.next());
+
+        for (int j = 0; j < 20000; j++) {
+            long i = j < 100 ? j * (size / 100) + j % 3 - 1 : rand.nextInt((int) size);
+            if (i < 0)
+                continue;
+            String message = "from: " + i;
+            assertEquals(message, expected.nextSetBit(i), actual.nextSetBit(i));
+            assertEquals(message, expected.nextClearBit(i), actual.nextClearBit(i));
+            assertEquals(message, expected.previousSetBit(i), actual.previousSetBit(i));
+            assertEquals(message, expected.previousClearBit(i), actual.previousClearBit(i));
+            assertEquals(message, expected.nextSetLong(i >> 6), actual.nextSetLong(i >> 6));
+            assertEquals(message, expected.nextClearLong(i >> 6), actual.nextClearLong(i >> 6));
+            assertEquals(message, expected.previousSetLong(i >> 6), actual.previousSetLong(i >> 6));
+            assertEquals(message, expected.previousClearLong(i >> 6), actual.previousClearLong(i >> 6));
+        }
+        assertEquals(expected.previousSetBit(size + 10), actual.previousSetBit(size + 10));
+        assertEquals(DirectBitSet.NOT_FOUND, actual.nextSetBit(size));
+        assertEquals(DirectBitSet.NOT_FOUND, actual.previousSetBit(-1));
+    }
+
+    @Test
+    public void testCopyOf() {
+        Random rand = new Random(1);
+        DirectBitSet bitSet = mixed(rand);
+        RoaringDirectBitSet roaring = RoaringDirectBitSet.copyOf(bitSet);
+        assertSameBits(bitSet, roaring, rand);
+        // a bitmap of 8 KB, two runs, an array and the rest.
+        assertTrue(roaring.sizeInBytes() < 8192 + 1000);
+    }
+
+    @Test
+    public void testBuilder() {
+        Random rand = new Random(2);
+        DirectBitSet bitSet = mixed(rand);
+        RoaringDirectBitSet.Builder builder = new RoaringDirectBitSet.Builder(bitSet.size());
+        for (long i = bitSet.nextSetBit(0); i >= 0; i = bitSet.nextSetBit(i + 1))
+            builder.add(i);
+        assertSameBits(bitSet, builder.build(), rand);
+
+        try {
+            builder.add(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testAndOr() {
+        Random rand = new Random(3);
+        DirectBitSet bitSet1 = mixed(rand);
+        DirectBitSet bitSet2 = mixed(rand);
+        RoaringDirectBitSet roaring1 = RoaringDirectBitSet.copyOf(bitSet1);
+        RoaringDirectBitSet roaring2 = RoaringDirectBitSet.copyOf(bitSet2);
+
+        long both = bitSet1.cardinalityOfAnd(bitSet2);
+        assertEquals(both, roaring1.cardinalityOfAnd(roaring2));
+        assertEquals(both, roaring1.cardinalityOfAnd(bitSet2));
+        assertEquals(both, bitSet2.cardinalityOfAnd(roaring1));
+        assertTrue(roaring1.intersects(roaring2));
+        assertTrue(roaring1.intersects(bitSet2));
+
+        RoaringDirectBitSet and = RoaringDirectBitSet.and(roaring1, roaring2);
+        RoaringDirectBitSet or = RoaringDirectBitSet.or(roaring1, roaring2);
+        // the same bits as bitSet1.
+        DirectBitSet expectedOr = mixed(new Random(3)).or(bitSet2);
+        bitSet1.and(bitSet2);
+        assertSameBits(bitSet1, and, rand);
+        assertSameBits(expectedOr, or, rand);
+
+        RoaringDirectBitSet empty = new RoaringDirectBitSet.Builder(bitSet1.size()).build();
+        assertFalse(roaring1.intersects(empty));
+        assertEquals(0, RoaringDirectBitSet.and(roaring1, empty).cardinality());
+        assertEquals(roaring1.sizeInBytes(), RoaringDirectBitSet.or(roaring1, empty).sizeInBytes());
+    }
+
+    @Test
+    public void testWriteAndRead() {
+        Random rand = new Random(4);
+        DirectBitSet bitSet = mixed(rand);
+        RoaringDirectBitSet roaring = RoaringDirectBitSet.copyOf(bitSet);
+        Bytes bytes = DirectStore.allocate(roaring.sizeInBytes() + 100).bytes();
+        bytes.writeLong(12345);
+        roaring.writeTo(bytes);
+        bytes.writeLong(67890);
+
+        bytes.flip();
+        assertEquals(12345, bytes.readLong());
+        RoaringDirectBitSet copy = RoaringDirectBitSet.readFrom(bytes);
+        assertEquals(67890, bytes.readLong());
+        assertSameBits(bitSet, copy, rand);
+    }
+
+    @Test
+    public void testSparseMemory() {
+        // a trillion bits with a thousand set use a few KB.
+        long size = 1L << 40;
+        RoaringDirectBitSet.Builder builder = new RoaringDirectBitSet.Builder(size);
+        for (long i = 0; i < 1000; i++)
+            builder.add(i * (size / 1000));
+        RoaringDirectBitSet roaring = builder.build();
+        assertEquals(1000, roaring.cardinality());
+        assertTrue(roaring.sizeInBytes() < 32 * 1000);
+        assertEquals(size / 1000, roaring.nextSetBit(1));
+        assertEquals(999 * (size / 1000), roaring.previousSetBit(size));
+        assertTrue(roaring.get(500 * (size / 1000)));
+        assertFalse(roaring.get(500 * (size / 1000) + 1));
+        assertEquals(1, roaring.nextClearBit(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() {
+        new RoaringDirectBitSet.Builder(64).build().set(1);
+    }
+}
@@ -746,6 +746,33 @@ public class NativeBytesTest {
         assertEquals("Hell0 worl bye", bytes.parseUTF(CONTROL_STOP));
     }
 
+    @Test
+    public void testWriteRandomDataInput() {
+        DirectStore store = new DirectStore(SIZE);
+        DirectBytes from = store.bytes();
+        for (int i = 0; i < SIZE; i++)
+            from.writeByte(i, i);
+        bytes.write(10, from, 20, 30);
+        assertEquals(0, bytes.position());
+        for (int i = 0; i < SIZE; i++)
+            assertEquals(i >= 10 && i < 40 ? i + 10 : 0, bytes.readByte(i));
+
+        ByteBufferBytes from2 = new ByteBufferBytes(ByteBuffer.allocate(SIZE).order(ByteOrder.nativeOrder()));
+        from2.writeLong(0, 0x0102030405060708L);
+        from2.writeByte(8, 9);
+        bytes.write(from2, 0, 9);
+        assertEquals(9, bytes.position());
+        assertEquals(0x0102030405060708L, bytes.readLong(0));
+        assertEquals(9, bytes.readByte(8));
+
+        try {
+            bytes.write(SIZE - 4, from, 0, 8);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        store.free();
+    }
+
     @Test
     public void testAppendIterable() {
         bytes.append(Arrays.asList(1, 2, 3, 4, 5), ";").append(' ');
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.io.ByteBufferBytes;
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.model.constraints.MaxSize;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class DataValueBytecodeTest {
+    private ClassLoader classLoader;
+
+    @Before
+    public void setUp() {
+        // a fresh class loader so these classes are not the ones compiled from source by other tests.
+        classLoader = new ClassLoader(getClass().getClassLoader()) {
+        };
+    }
+
+    private <T> T heapInstance(Class<T> tClass) throws Exception {
+        byte[] bytes = DataValueBytecode.generateHeapClass(DataValueModels.acquireModel(tClass));
+        Class aClass = DataValueBytecode.defineClass(classLoader, tClass.getName() + "$$Heap", bytes);
+        assertSame(classLoader, aClass.getClassLoader());
+        return tClass.cast(aClass.newInstance());
+    }
+
+    private <T> T nativeInstance(Class<T> tClass, Bytes bytes) throws Exception {
+        DataValueModel<T> dvmodel = DataValueModels.acquireModel(tClass);
+        for (Class nested : dvmodel.nestedModels())
+            DataValueBytecode.defineClass(classLoader, nested.getName() + "$$Native",
+                    DataValueBytecode.generateNativeClass(dvmodel.nestedModel(nested)));
+        byte[] code = DataValueBytecode.generateNativeClass(dvmodel);
+        Class aClass = DataValueBytecode.defineClass(classLoader, tClass.getName() + "$$Native", code);
+        T t = tClass.cast(aClass.newInstance());
+        ((Byteable) t).bytes(bytes, 0L);
+        return t;
+    }
+
+    @Test
+    public void testJavaBean() throws Exception {
+        JavaBeanInterface jbi = heapInstance(JavaBeanInterface.class);
+        Bytes bytes = new ByteBufferBytes(ByteBuffer.allocate(64));
+        JavaBeanInterface jbi2 = nativeInstance(JavaBeanInterface.class, bytes);
+        assertEquals(((Byteable) new DataValueGenerator().nativeInstance(JavaBeanInterface.class)).maxSize(),
+                ((Byteable) jbi2).maxSize());
+
+        jbi.setByte((byte) 1);
+        jbi.setChar('2');
+        jbi.setShort((short) 3);
+        jbi.setInt(4);
+        jbi.setFloat(5);
+        jbi.setLong(6);
+        jbi.setDouble(7);
+        jbi.setFlag(true);
+        jbi.setString("G'day");
+        assertEquals(1, jbi.getByte());
+        assertEquals('2', jbi.getChar());
+        assertEquals(3, jbi.getShort());
+        assertEquals(4, jbi.getInt());
+        assertEquals(5.0, jbi.getFloat(), 0);
+        assertEquals(6, jbi.getLong());
+        assertEquals(7.0, jbi.getDouble(), 0.0);
+        assertTrue(jbi.getFlag());
+        assertEquals("G'day", jbi.getString());
+        assertEquals("G'day", jbi.getUsingString(new StringBuilder()).toString());
+        assertEquals(16, jbi.addAtomicLong(10));
+        assertEquals(9.5, jbi.addAtomicDouble(2.5), 0.0);
+
+        ((Copyable<JavaBeanInterface>) jbi2).copyFrom(jbi);
+        assertEquals(1, jbi2.getByte());
+        assertEquals('2', jbi2.getChar());
+        assertEquals(3, jbi2.getShort());
+        assertEquals(4, jbi2.getVolatileInt());
+        assertEquals(5.0, jbi2.getFloat(), 0);
+        assertEquals(16, jbi2.getLong());
+        assertEquals(9.5, jbi2.getDouble(), 0.0);
+        assertTrue(jbi2.getFlag());
+        assertEquals("G'day", jbi2.getUsingString(new StringBuilder()).toString());
+        assertEquals(jbi, jbi2);
+        assertEquals(jbi.hashCode(), jbi2.hashCode());
+
+        jbi2.setOrderedInt(44);
+        assertEquals(44, jbi2.getInt());
+        assertFalse(jbi.equals(jbi2));
+        assertTrue(jbi2.tryLockRecord());
+        jbi2.unlockRecord();
+
+    }
+
+    @Test
+    public void testMinimal() throws Exception {
+        MinimalInterface mi = heapInstance(MinimalInterface.class);
+        mi.byte$((byte) 1);
+        mi.char$('2');
+        mi.short$((short) 3);
+        mi.int$(4);
+        mi.float$(5);
+        mi.long$(6);
+        mi.double$(7);
+        mi.flag(true);
+
+        MinimalInterface mi2 = nativeInstance(MinimalInterface.class, new ByteBufferBytes(ByteBuffer.allocate(64)));
+        mi2.copyFrom(mi);
+        assertEquals(1, mi2.byte$());
+        assertEquals('2', mi2.char$());
+        assertEquals(3, mi2.short$());
+        assertEquals(4, mi2.int$());
+        assertEquals(5.0, mi2.float$(), 0);
+        assertEquals(6, mi2.long$());
+        assertEquals(7.0, mi2.double$(), 0.0);
+        assertTrue(mi2.flag());
+        assertEquals(mi, mi2);
+        assertEquals(mi.toString(), mi2.toString());
+        assertEquals("MinimalInterface{  }", mi2.toString());
+        assertNull(mi.bytes());
+
+        MinimalInterface mi3 = nativeInstance(MinimalInterface.class, new ByteBufferBytes(ByteBuffer.allocate(64)));
+        mi3.copyFrom(mi2);
+        assertEquals(mi2, mi3);
+
+        mi2.long$(66);
+        Bytes out = new ByteBufferBytes(ByteBuffer.allocate(64));
+        mi2.writeMarshallable(out);
+        out.position(0);
+        mi.readMarshallable(out);
+        assertEquals(66, mi.long$());
+        assertEquals(mi2, mi);
+        out.position(0);
+        mi3.readMarshallable(out);
+        assertEquals(mi2, mi3);
+        assertEquals(mi2.maxSize(), out.position());
+    }
+
+    @Test
+    public void testArrays() throws Exception {
+        HasArraysInterface hai = heapInstance(HasArraysInterface.class);
+        HasArraysInterface hai2 = (HasArraysInterface) hai.getClass().newInstance();
+        for (int i = 0; i < 4; i++) {
+            hai.setFlagAt(i, i % 2 == 0);
+            hai.setByteAt(i, (byte) i);
+            hai.setShortAt(i, (short) (i + 10));
+            hai.setCharAt(i, (char) ('a' + i));
+            hai.setIntAt(i, i * 1000);
+            hai.setFloatAt(i, i / 2.0f);
+            hai.setLongAt(i, i * 1000000000L);
+            hai.setDoubleAt(i, i / 4.0);
+            hai.setStringAt(i, "s" + i);
+        }
+        ((Copyable<HasArraysInterface>) hai2).copyFrom(hai);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i % 2 == 0, hai2.getFlagAt(i));
+            assertEquals(i, hai2.getByteAt(i));
+            assertEquals(i + 10, hai2.getShortAt(i));
+            assertEquals('a' + i, hai2.getCharAt(i));
+            assertEquals(i * 1000, hai2.getIntAt(i));
+            assertEquals(i / 2.0f, hai2.getFloatAt(i), 0.0f);
+            assertEquals(i * 1000000000L, hai2.getLongAt(i));
+            assertEquals(i / 4.0, hai2.getDoubleAt(i), 0.0);
+            assertEquals("s" + i, hai2.getStringAt(i));
+        }
+        assertEquals(hai, hai2);
+        assertEquals(hai.hashCode(), hai2.hashCode());
+
+        try {
+            hai.setIntAt(-1, 0);
+            fail();
+        } catch (ArrayIndexOutOfBoundsException expected) {
+            assertEquals("-1 must be greater than 0", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testNestedArrays() throws Exception {
+        Quotes quotes = nativeInstance(Quotes.class, new ByteBufferBytes(ByteBuffer.allocate(1024)));
+        MinimalInterface mi = heapInstance(MinimalInterface.class);
+        for (int i = 0; i < 4; i++) {
+            mi.int$(i);
+            mi.double$(i / 2.0);
+            quotes.setQuoteAt(i, mi);
+            quotes.setPriceAt(i, i * 1.5);
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, quotes.getQuoteAt(i).int$());
+            assertEquals(i / 2.0, quotes.getQuoteAt(i).double$(), 0.0);
+            assertEquals(i * 1.5, quotes.getPriceAt(i), 0.0);
+        }
+        try {
+            quotes.getPriceAt(4);
+            fail();
+        } catch (ArrayIndexOutOfBoundsException expected) {
+            assertEquals("4 must be less than 4", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testNested() throws Exception {
+        NestedB nestedB1 = heapInstance(NestedB.class);
+        nestedB1.ask(100);
+        nestedB1.bid(100);
+        NestedB nestedB2 = (NestedB) nestedB1.getClass().newInstance();
+        nestedB2.ask(91);
+        nestedB2.bid(92);
+
+        NestedA nestedA = nativeInstance(NestedA.class, new ByteBufferBytes(ByteBuffer.allocate(192)));
+        nestedA.key("key");
+        nestedA.one(nestedB1);
+        nestedA.two(nestedB2);
+        assertEquals("key", nestedA.key());
+        assertEquals(nestedB1.ask(), nestedA.one().ask(), 0.0);
+        assertEquals(nestedB2.bid(), nestedA.two().bid(), 0.0);
+        assertEquals(nestedB1, nestedA.one());
+        assertEquals(nestedB2, nestedA.two());
+        assertEquals(nestedB1.hashCode(), nestedA.one().hashCode());
+        assertEquals(nestedB2.hashCode(), nestedA.two().hashCode());
+    }
+
+    @Test
+    public void testPackedFields() throws Exception {
+        PackedInterface pi = nativeInstance(PackedInterface.class, new ByteBufferBytes(ByteBuffer.allocate(64)));
+        assertEquals(((Byteable) new DataValueGenerator().nativeInstance(PackedInterface.class)).maxSize(),
+                ((Byteable) pi).maxSize());
+        pi.setSmall(1000);
+        pi.setSigned((byte) -100);
+        pi.setCount((1L << 40) - 1);
+        pi.setLetter('Q');
+        pi.setPrice(-999999.99);
+        pi.setId(Long.MIN_VALUE);
+        pi.setFlag(true);
+        pi.setSmall(999);
+        pi.setPrice(12.345678);
+        assertEquals(999, pi.getSmall());
+        assertEquals(-100, pi.getSigned());
+        assertEquals((1L << 40) - 1, pi.getCount());
+        assertEquals('Q', pi.getLetter());
+        assertEquals(12.35, pi.getPrice(), 0.0);
+        assertEquals(Long.MIN_VALUE, pi.getId());
+        assertTrue(pi.getFlag());
+        try {
+            pi.setLetter('a');
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertEquals("a is not in the range [65, 90]", expected.getMessage());
+        }
+        try {
+            pi.setPrice(-1e6);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertEquals("-1000000.0 has more than 6 integer digits", expected.getMessage());
+        }
+
+        PackedInterface pi2 = heapInstance(PackedInterface.class);
+        ((Copyable<PackedInterface>) pi2).copyFrom(pi);
+        assertEquals(pi2, pi);
+        assertEquals(pi2.hashCode(), pi.hashCode());
+    }
+
+    @Test
+    public void testAlignedFields() throws Exception {
+        Bytes bytes = new ByteBufferBytes(ByteBuffer.allocate(128));
+        PaddedInterface pi = nativeInstance(PaddedInterface.class, bytes);
+        assertEquals(128, ((Byteable) pi).maxSize());
+        pi.setCounter(5);
+        assertEquals(8, pi.addAtomicCounter(3));
+        assertEquals(8, bytes.readLong(0));
+        assertTrue(pi.tryLockRecord());
+        assertFalse(bytes.readInt(64) == 0);
+        pi.unlockRecord();
+        pi.setFlag(true);
+        assertTrue(pi.getFlag());
+        assertEquals(8, pi.getCounter());
+    }
+
+    @Test
+    public void testDeltaMarshalling() throws Exception {
+        DeltaInterface di = nativeInstance(DeltaInterface.class, new ByteBufferBytes(ByteBuffer.allocate(64)));
+        assertEquals(4 + 8 + 8 + 8 + 8, ((Byteable) di).maxSize());
+        DeltaInterface di2 = new DataValueGenerator().nativeInstance(DeltaInterface.class);
+        ((Byteable) di2).bytes(new ByteBufferBytes(ByteBuffer.allocate(64)), 0L);
+        DeltaInterface hi = heapInstance(DeltaInterface.class);
+        DataValueGeneratorTest.checkDelta(di, di2, hi);
+        DataValueGeneratorTest.checkDelta(hi, di, di2);
+    }
+
+    @Test
+    public void testSeqLocked() throws Exception {
+        SeqLockedInterface sli = nativeInstance(SeqLockedInterface.class, new ByteBufferBytes(ByteBuffer.allocateDirect(64)));
+        assertEquals(32, ((Byteable) sli).maxSize());
+        DataValueGeneratorTest.checkSeqLocked(sli, heapInstance(SeqLockedInterface.class));
+        DataValueGeneratorTest.checkSeqLocked(heapInstance(SeqLockedInterface.class), heapInstance(SeqLockedInterface.class));
+    }
+
+    @Test
+    public void testColumnar() throws Exception {
+        byte[] code = DataValueBytecode.generateColumnarClass(DataValueModels.acquireModel(AtomicInterface.class));
+        Class aClass = DataValueBytecode.defineClass(classLoader, AtomicInterface.class.getName() + "$$Columnar", code);
+        AtomicInterface ai = (AtomicInterface) aClass.newInstance();
+        AtomicInterface nai = nativeInstance(AtomicInterface.class, new ByteBufferBytes(ByteBuffer.allocate(64)));
+        DataValueGeneratorTest.checkColumnar(ai, nai);
+        assertEquals(nai.toString(), ai.toString());
+    }
+
+    @Test
+    public void testLockFreeHeapAtomics() throws Exception {
+        final AtomicInterface ai = heapInstance(AtomicInterface.class);
+        for (String name : new String[]{"addAtomicCount", "addAtomicTotal", "addAtomicRatio", "addAtomicSum", "compareAndSwapTotal"})
+            for (java.lang.reflect.Method method : ai.getClass().getMethods())
+                if (method.getName().equals(name))
+                    assertFalse(method + " is synchronized", java.lang.reflect.Modifier.isSynchronized(method.getModifiers()));
+
+        assertEquals(2.5f, ai.addAtomicRatio(2.5f), 0.0f);
+        assertEquals(2.5, ai.addAtomicSum(2.5), 0.0);
+        assertTrue(ai.compareAndSwapSum(2.5, 1.0));
+        assertFalse(ai.compareAndSwapSum(2.5, 3.0));
+        assertTrue(ai.compareAndSwapCount(0, 1));
+        assertTrue(ai.compareAndSwapTotal(0, 1));
+        assertFalse(ai.compareAndSwapTotal(0, 2));
+
+        final int threads = 4, runs = 100000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < runs; i++) {
+                        ai.addAtomicCount(1);
+                        ai.addAtomicTotal(2);
+                        ai.addAtomicRatio(1);
+                        ai.addAtomicSum(0.5);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        assertEquals(1 + threads * runs, ai.getCount());
+        assertEquals(1 + 2L * threads * runs, ai.getTotal());
+        assertEquals(2.5f + threads * runs, ai.getRatio(), 0.0f);
+        assertEquals(1.0 + 0.5 * threads * runs, ai.getSum(), 0.0);
+    }
+
+    @Test
+    public void testGetUsing() throws Exception {
+        GetUsingStringInterface si = heapInstance(GetUsingStringInterface.class);
+        si.setSomeStringField("Hello world");
+        si.setAnotherStringField("Hello world 2");
+        assertEquals("Hello world", si.getSomeStringField());
+        StringBuilder builder = new StringBuilder();
+        si.getUsingSomeStringField(builder);
+        assertEquals("Hello world", builder.toString());
+        assertEquals("Hello world 2", si.getUsingAnotherStringField(new StringBuilder()).toString());
+        assertEquals("GetUsingStringInterface{ anotherStringField= Hello world 2 }", si.toString());
+    }
+
+    public interface Quotes {
+        void setPriceAt(@MaxSize(4) int i, double price);
+
+        double getPriceAt(int i);
+
+        void setQuoteAt(@MaxSize(4) int i, MinimalInterface quote);
+
+        MinimalInterface getQuoteAt(int i);
+    }
+}
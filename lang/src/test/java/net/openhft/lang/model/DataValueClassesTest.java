@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.io.ByteBufferBytes;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class DataValueClassesTest {
+    @Test
+    public void testFactoryFor() {
+        DataValueFactory<MinimalInterface> factory = DataValueClasses.factoryFor(MinimalInterface.class);
+        assertSame(factory, DataValueClasses.factoryFor(MinimalInterface.class));
+        assertSame(DataValueClasses.heapClassFor(MinimalInterface.class), factory.heapClass());
+        assertSame(DataValueClasses.directClassFor(MinimalInterface.class), factory.directClass());
+
+        MinimalInterface mi = factory.newInstance();
+        assertSame(factory.heapClass(), mi.getClass());
+        mi.int$(123);
+        mi.double$(1.5);
+
+        MinimalInterface mi2 = factory.newDirectReference();
+        assertSame(factory.directClass(), mi2.getClass());
+        ((Byteable) mi2).bytes(new ByteBufferBytes(ByteBuffer.allocate(64)), 0L);
+        mi2.copyFrom(mi);
+        assertEquals(123, mi2.int$());
+        assertEquals(1.5, mi2.double$(), 0.0);
+        assertEquals(mi, mi2);
+        assertNotSame(mi, factory.newInstance());
+    }
+
+    @Test
+    public void testClassLoaders() throws Exception {
+        // an interface loaded by another class loader gets its own generated classes.
+        ClassLoader parent = getClass().getClassLoader();
+        ClassLoader classLoader = new ClassLoader(parent) {
+            @Override
+            protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (!name.equals(StringInterface.class.getName()))
+                    return super.loadClass(name, resolve);
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    byte[] bytes = readClass(name);
+                    c = defineClass(name, bytes, 0, bytes.length);
+                }
+                return c;
+            }
+        };
+        Class<?> other = classLoader.loadClass(StringInterface.class.getName());
+        assertNotSame(StringInterface.class, other);
+        assertNotSame(DataValueClasses.factoryFor(StringInterface.class), DataValueClasses.factoryFor(other));
+        assertSame(classLoader, DataValueClasses.factoryFor(other).newInstance().getClass().getClassLoader());
+    }
+
+    static byte[] readClass(String name) throws ClassNotFoundException {
+        InputStream in = DataValueClassesTest.class.getClassLoader().getResourceAsStream(name.replace('.', '/') + ".class");
+        if (in == null)
+            throw new ClassNotFoundException(name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int len; (len = in.read(buffer)) > 0; )
+                out.write(buffer, 0, len);
+            in.close();
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.io.DirectStore;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DataValueComparatorTest {
+    @Test
+    public void testPackedAndUnpackedFields() {
+        Random random = new Random(1);
+        for (String field : new String[]{"small", "signed", "count", "letter", "price", "id", "flag"}) {
+            DataValueComparator<PackedInterface> comparator = DataValueComparator.comparing(PackedInterface.class, field);
+            for (int i = 0; i < 1000; i++) {
+                PackedInterface a = newRecord(random), b = newRecord(random);
+                int expected = compareByGetter(field, a, b);
+                assertEquals(comparator + " " + a + " " + b, expected, Integer.signum(comparator.compare(a, b)));
+            }
+        }
+    }
+
+    @Test
+    public void testManyFields() {
+        DataValueComparator<PackedInterface> comparator = DataValueComparator.comparing(PackedInterface.class, "letter", "id");
+        PackedInterface a = newRecord(new Random(2)), b = newRecord(new Random(3));
+        a.setLetter('C');
+        b.setLetter('C');
+        a.setId(5);
+        b.setId(-5);
+        assertTrue(comparator.compare(a, b) > 0);
+        b.setLetter('D');
+        assertTrue(comparator.compare(a, b) < 0);
+        b.setLetter('C');
+        b.setId(5);
+        assertEquals(0, comparator.compare(a, b));
+    }
+
+    @Test
+    public void testUnpackedTypes() {
+        Random random = new Random(4);
+        String[] fields = {"flag", "byte", "short", "char", "int", "float", "long", "double"};
+        for (String field : fields) {
+            DataValueComparator<JavaBeanInterface> comparator = DataValueComparator.comparing(JavaBeanInterface.class, field);
+            // one class is generated for each interface and list of fields.
+            assertSame(comparator, DataValueComparator.comparing(JavaBeanInterface.class, field));
+            for (int i = 0; i < 200; i++) {
+                JavaBeanInterface a = newBean(random), b = newBean(random);
+                int expected;
+                if (field.equals("flag"))
+                    expected = compareLongs(a.getFlag() ? 1 : 0, b.getFlag() ? 1 : 0);
+                else if (field.equals("byte"))
+                    expected = compareLongs(a.getByte(), b.getByte());
+                else if (field.equals("short"))
+                    expected = compareLongs(a.getShort(), b.getShort());
+                else if (field.equals("char"))
+                    expected = compareLongs(a.getChar(), b.getChar());
+                else if (field.equals("int"))
+                    expected = compareLongs(a.getInt(), b.getInt());
+                else if (field.equals("float"))
+                    expected = Integer.signum(Float.compare(a.getFloat(), b.getFloat()));
+                else if (field.equals("long"))
+                    expected = compareLongs(a.getLong(), b.getLong());
+                else
+                    expected = Integer.signum(Double.compare(a.getDouble(), b.getDouble()));
+                assertEquals(comparator + " " + a + " " + b, expected, Integer.signum(comparator.compare(a, b)));
+            }
+        }
+    }
+
+    static JavaBeanInterface newBean(Random random) {
+        JavaBeanInterface jbi = DataValueClasses.newDirectReference(JavaBeanInterface.class);
+        ((Byteable) jbi).bytes(new DirectStore(((Byteable) jbi).maxSize()).bytes(), 0L);
+        // a few distinct values so some are equal.
+        jbi.setFlag(random.nextBoolean());
+        jbi.setByte((byte) (random.nextInt(5) - 2));
+        jbi.setShort((short) (random.nextInt(5) - 2));
+        jbi.setChar((char) random.nextInt(5));
+        jbi.setInt(random.nextInt(5) - 2);
+        jbi.setFloat(random.nextInt(5) - 2.5f);
+        jbi.setLong(random.nextInt(5) - 2L << 40);
+        jbi.setDouble(random.nextInt(5) - 2.5);
+        return jbi;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotAField() {
+        DataValueComparator.comparing(PackedInterface.class, "price", "nonsense");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotPrimitive() {
+        DataValueComparator.comparing(StringInterface.class, "string");
+    }
+
+    static PackedInterface newRecord(Random random) {
+        PackedInterface pi = DataValueClasses.newDirectReference(PackedInterface.class);
+        ((Byteable) pi).bytes(new DirectStore(((Byteable) pi).maxSize()).bytes(), 0L);
+        pi.setSmall(random.nextInt(1001));
+        pi.setSigned((byte) (random.nextInt(201) - 100));
+        pi.setCount(random.nextLong() & ((1L << 40) - 1));
+        pi.setLetter((char) ('A' + random.nextInt(26)));
+        pi.setPrice((random.nextInt(200000000) - 100000000) / 100.0);
+        pi.setId(random.nextLong());
+        pi.setFlag(random.nextBoolean());
+        return pi;
+    }
+
+    static int compareByGetter(String field, PackedInterface a, PackedInterface b) {
+        if (field.equals("small"))
+            return Integer.signum(a.getSmall() - b.getSmall());
+        if (field.equals("signed"))
+            return Integer.signum(a.getSigned() - b.getSigned());
+        if (field.equals("count"))
+            return Long.signum(Long.valueOf(a.getCount()).compareTo(b.getCount()));
+        if (field.equals("letter"))
+            return Integer.signum(a.getLetter() - b.getLetter());
+        if (field.equals("price"))
+            return Integer.signum(Double.compare(a.getPrice(), b.getPrice()));
+        if (field.equals("id"))
+            return Integer.signum(Long.valueOf(a.getId()).compareTo(b.getId()));
+        return Integer.signum((a.getFlag() ? 1 : 0) - (b.getFlag() ? 1 : 0));
+    }
+
+    static int compareLongs(long a, long b) {
+        return a < b ? -1 : a > b ? 1 : 0;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the throughput of DataValueClasses.newInstance(Class) with a retained DataValueFactory as the number of
+ * threads increases.
+ */
+public class DataValueFactoryMain {
+    static final int RUNS = 2 * 1000 * 1000;
+    static volatile Object blackHole;
+
+    public static void main(String... ignored) throws Exception {
+        int processors = Runtime.getRuntime().availableProcessors();
+        ExecutorService es = Executors.newFixedThreadPool(processors);
+        final DataValueFactory<MinimalInterface> factory = DataValueClasses.factoryFor(MinimalInterface.class);
+        for (int t = 0; t < 3; t++) {
+            if (t == 0)
+                System.out.println("Warming up");
+            for (int threads = 1; threads <= processors; threads *= 2) {
+                long lookupTime = time(es, threads, new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < RUNS; i++)
+                            blackHole = DataValueClasses.newInstance(MinimalInterface.class);
+                    }
+                });
+                long factoryTime = time(es, threads, new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < RUNS; i++)
+                            blackHole = factory.newInstance();
+                    }
+                });
+                if (t > 0)
+                    System.out.printf("threads: %d, newInstance(Class) %.1f M/s, factory.newInstance() %.1f M/s%n",
+                            threads, threads * RUNS * 1e3 / lookupTime, threads * RUNS * 1e3 / factoryTime);
+            }
+        }
+        es.shutdown();
+    }
+
+    static long time(ExecutorService es, int threads, Runnable runnable) throws Exception {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++)
+            futures.add(es.submit(runnable));
+        for (Future<?> future : futures)
+            future.get();
+        return System.nanoTime() - start;
+    }
+}
@@ -19,12 +19,14 @@ package net.openhft.lang.model;
 import net.openhft.compiler.CachedCompiler;
 import net.openhft.lang.io.ByteBufferBytes;
 import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectStore;
+import net.openhft.lang.io.serialization.BytesMarshallable;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 /**
  * User: peter.lawrey Date: 06/10/13 Time: 20:13
@@ -96,6 +98,339 @@ public class DataValueGeneratorTest {
     }
 
 
+    @Test
+    public void testBulkCopy() {
+        assertTrue(DataValueGenerator.isBulkCopyable(DataValueModels.acquireModel(MinimalInterface.class)));
+        assertTrue(DataValueGenerator.isBulkMarshallable(DataValueModels.acquireModel(MinimalInterface.class)));
+        assertTrue(DataValueGenerator.isBulkCopyable(DataValueModels.acquireModel(StringInterface.class)));
+        assertFalse(DataValueGenerator.isBulkMarshallable(DataValueModels.acquireModel(StringInterface.class)));
+
+        DataValueGenerator dvg = new DataValueGenerator();
+        DirectStore store = new DirectStore(256);
+        MinimalInterface mi = dvg.nativeInstance(MinimalInterface.class);
+        mi.bytes(store.bytes(), 0L);
+        mi.flag(true);
+        mi.byte$((byte) 1);
+        mi.short$((short) 2);
+        mi.char$('3');
+        mi.int$(4);
+        mi.float$(5);
+        mi.long$(6);
+        mi.double$(7);
+
+        MinimalInterface mi2 = dvg.nativeInstance(MinimalInterface.class);
+        mi2.bytes(store.bytes(), mi.maxSize());
+        mi2.copyFrom(mi);
+        assertEquals(mi, mi2);
+        assertEquals(7.0, mi2.double$(), 0.0);
+
+        // a different byte order has to be copied field by field.
+        MinimalInterface mi3 = dvg.nativeInstance(MinimalInterface.class);
+        ByteOrder otherOrder = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        mi3.bytes(new ByteBufferBytes(ByteBuffer.allocate(64).order(otherOrder)), 0L);
+        mi3.copyFrom(mi2);
+        assertEquals(mi, mi3);
+
+        Bytes out = store.bytes(128, 128);
+        mi.writeMarshallable(out);
+        assertEquals(mi.maxSize(), out.position());
+        mi3.writeMarshallable(out);
+        out.position(0);
+        mi2.long$(0);
+        mi2.readMarshallable(out);
+        assertEquals(mi, mi2);
+        mi2.long$(0);
+        mi2.readMarshallable(out);
+        assertEquals(mi, mi2);
+        assertEquals(2 * mi.maxSize(), out.position());
+
+        StringInterface si = dvg.nativeInstance(StringInterface.class);
+        ((Byteable) si).bytes(store.bytes(), 0L);
+        si.setString("Hello");
+        si.setText("World");
+        StringInterface si2 = dvg.nativeInstance(StringInterface.class);
+        ((Byteable) si2).bytes(new ByteBufferBytes(ByteBuffer.allocate(192).order(ByteOrder.nativeOrder())), 0L);
+        ((Copyable<StringInterface>) si2).copyFrom(si);
+        assertEquals("Hello", si2.getString());
+        assertEquals("World", si2.getText());
+        store.free();
+    }
+
+    @Test
+    public void testPackedFields() {
+        DataValueGenerator dvg = new DataValueGenerator();
+        PackedInterface pi = dvg.nativeInstance(PackedInterface.class);
+        // id, flag and signed (which needs all 8 bits) take 10 bytes, the rest are packed into a long and an int.
+        assertEquals(10 + 8 + 4, ((Byteable) pi).maxSize());
+        ((Byteable) pi).bytes(new ByteBufferBytes(ByteBuffer.allocate(64)), 0L);
+        pi.setSmall(1000);
+        pi.setSigned((byte) -100);
+        pi.setCount((1L << 40) - 1);
+        pi.setLetter('Q');
+        pi.setPrice(-999999.99);
+        pi.setId(Long.MIN_VALUE);
+        pi.setFlag(true);
+        assertEquals(1000, pi.getSmall());
+        assertEquals(-100, pi.getSigned());
+        assertEquals((1L << 40) - 1, pi.getCount());
+        assertEquals('Q', pi.getLetter());
+        assertEquals(-999999.99, pi.getPrice(), 0.0);
+        assertEquals(Long.MIN_VALUE, pi.getId());
+        assertTrue(pi.getFlag());
+
+        pi.setSmall(0);
+        pi.setPrice(12.345678);
+        assertEquals(0, pi.getSmall());
+        assertEquals(12.35, pi.getPrice(), 0.0);
+        assertEquals((1L << 40) - 1, pi.getCount());
+        assertEquals(-100, pi.getSigned());
+
+        try {
+            pi.setSmall(1001);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertEquals("1001 is not in the range [0, 1000]", expected.getMessage());
+        }
+        try {
+            pi.setPrice(1e6);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertEquals("1000000.0 has more than 6 integer digits", expected.getMessage());
+        }
+        assertEquals(0, pi.getSmall());
+
+        PackedInterface pi2 = dvg.heapInstance(PackedInterface.class);
+        ((Copyable<PackedInterface>) pi2).copyFrom(pi);
+        assertEquals(pi2, pi);
+        assertEquals(pi2.hashCode(), pi.hashCode());
+    }
+
+    @Test
+    public void testAlignedFields() {
+        DataValueGenerator dvg = new DataValueGenerator();
+        PaddedInterface pi = dvg.nativeInstance(PaddedInterface.class);
+        // counter, then record on the next cache line followed by flag, padded to two cache lines.
+        assertEquals(128, ((Byteable) pi).maxSize());
+        Bytes bytes = new ByteBufferBytes(ByteBuffer.allocate(256));
+        ((Byteable) pi).bytes(bytes, 128L);
+        pi.setCounter(5);
+        assertEquals(8, pi.addAtomicCounter(3));
+        assertEquals(8, bytes.readLong(128));
+        assertTrue(pi.tryLockRecord());
+        assertFalse(bytes.readInt(128 + 64) == 0);
+        pi.unlockRecord();
+        pi.setFlag(true);
+        assertTrue(pi.getFlag());
+        assertEquals(8, pi.getCounter());
+        assertFalse(DataValueGenerator.isBulkMarshallable(DataValueModels.acquireModel(PaddedInterface.class)));
+    }
+
+    @Test
+    public void testDeltaMarshalling() {
+        DataValueGenerator dvg = new DataValueGenerator();
+        DeltaInterface di = dvg.nativeInstance(DeltaInterface.class);
+        // the fields plus the dirty mask.
+        assertEquals(4 + 8 + 8 + 8 + 8, ((Byteable) di).maxSize());
+        ((Byteable) di).bytes(new ByteBufferBytes(ByteBuffer.allocate(64)), 0L);
+        DeltaInterface di2 = dvg.nativeInstance(DeltaInterface.class);
+        ((Byteable) di2).bytes(new ByteBufferBytes(ByteBuffer.allocate(64)), 0L);
+        DeltaInterface hi = dvg.heapInstance(DeltaInterface.class);
+        checkDelta(di, di2, hi);
+        checkDelta(hi, di2, di);
+    }
+
+    static void checkDelta(DeltaInterface from, DeltaInterface to, DeltaInterface to2) {
+        from.setId(1);
+        from.setPrice(10.5);
+        from.setQuantity(100);
+        from.setSymbol("ABC");
+        assertTrue(from.isDirty());
+        Bytes bytes = new ByteBufferBytes(ByteBuffer.allocate(64));
+        from.writeDelta(bytes);
+        from.clearDirty();
+        assertFalse(from.isDirty());
+
+        from.setPrice(11.0);
+        from.addQuantity(5);
+        assertTrue(from.isDirty());
+        long start = bytes.position();
+        from.writeDelta(bytes);
+        // the mask and two longs.
+        assertEquals(1 + 8 + 8, bytes.position() - start);
+        from.clearDirty();
+        from.writeDelta(bytes);
+        assertEquals(1 + 8 + 8 + 1, bytes.position() - start);
+
+        bytes.flip();
+        for (DeltaInterface di : new DeltaInterface[]{to, to2}) {
+            di.clearDirty();
+            bytes.position(0);
+            di.readDelta(bytes);
+            assertEquals(from.getSymbol(), di.getSymbol());
+            di.setSymbol("XYZ");
+            di.readDelta(bytes);
+            di.readDelta(bytes);
+            assertEquals(bytes.limit(), bytes.position());
+            assertEquals(1, di.getId());
+            assertEquals(11.0, di.getPrice(), 0.0);
+            assertEquals(105, di.getQuantity());
+            assertEquals("XYZ", di.getSymbol());
+            assertTrue(di.isDirty());
+        }
+    }
+
+    @Test
+    public void testSeqLocked() throws Exception {
+        DataValueGenerator dvg = new DataValueGenerator();
+        SeqLockedInterface sli = dvg.nativeInstance(SeqLockedInterface.class);
+        // the fields then the version on an 8 byte boundary.
+        assertEquals(8 + 8 + 4 + 4 + 8, ((Byteable) sli).maxSize());
+        ((Byteable) sli).bytes(new ByteBufferBytes(ByteBuffer.allocateDirect(64)), 0L);
+        checkSeqLocked(sli, dvg.heapInstance(SeqLockedInterface.class));
+        checkSeqLocked(dvg.heapInstance(SeqLockedInterface.class), dvg.heapInstance(SeqLockedInterface.class));
+    }
+
+    static void checkSeqLocked(final SeqLockedInterface sli, SeqLockedInterface copy) throws InterruptedException {
+        try {
+            sli.writeEnd();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        final int runs = 200000;
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= runs; i++) {
+                    sli.writeBegin();
+                    sli.setBid(i);
+                    sli.setAsk(-i);
+                    sli.setCount(i);
+                    sli.writeEnd();
+                }
+            }
+        });
+        writer.start();
+        int last = 0;
+        while (last < runs) {
+            sli.readConsistent(copy);
+            int count = copy.getCount();
+            assertTrue(count >= last);
+            assertEquals(count, copy.getBid(), 0.0);
+            assertEquals(-count, copy.getAsk(), 0.0);
+            last = count;
+        }
+        writer.join();
+    }
+
+    @Test
+    public void testColumnar() throws Exception {
+        DataValueGenerator dvg = new DataValueGenerator();
+        AtomicInterface ai = (AtomicInterface) dvg.acquireColumnarClass(AtomicInterface.class).newInstance();
+        AtomicInterface nai = dvg.nativeInstance(AtomicInterface.class);
+        ((Byteable) nai).bytes(new ByteBufferBytes(ByteBuffer.allocate(64)), 0L);
+        checkColumnar(ai, nai);
+
+        try {
+            dvg.generateColumnarObject(DataValueModels.acquireModel(JavaBeanInterface.class));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    static void checkColumnar(AtomicInterface ai, AtomicInterface nai) {
+        Columnar columnar = (Columnar) ai;
+        // count, ratio, sum and total in name order.
+        assertArrayEquals(new int[]{4, 4, 8, 8}, columnar.columnSizes());
+        Bytes bytes = new ByteBufferBytes(ByteBuffer.allocate(256));
+        columnar.columns(bytes, new long[]{0, 32, 64, 128});
+        for (int i = 0; i < 8; i++) {
+            columnar.index(i);
+            ai.setCount(i);
+            ai.setRatio(i / 2.0f);
+            ai.setSum(i * 1.5);
+            ai.setTotal(i * 10L);
+        }
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, bytes.readInt(i * 4));
+            assertEquals(i / 2.0f, bytes.readFloat(32 + i * 4), 0.0f);
+            assertEquals(i * 1.5, bytes.readDouble(64 + i * 8), 0.0);
+            assertEquals(i * 10L, bytes.readLong(128 + i * 8));
+        }
+
+        columnar.index(5);
+        assertEquals(5, columnar.index());
+        assertEquals(6, ai.addAtomicCount(1));
+        assertTrue(ai.compareAndSwapTotal(50, 55));
+        assertFalse(ai.compareAndSwapSum(0.0, 1.0));
+        assertEquals(6, bytes.readInt(5 * 4));
+        assertEquals(4, bytes.readInt(4 * 4));
+
+        // the same as a $$Native record, field by field and marshalled.
+        ((Copyable<AtomicInterface>) nai).copyFrom(ai);
+        assertEquals(nai, ai);
+        assertEquals(ai, nai);
+        assertEquals(nai.hashCode(), ai.hashCode());
+        Bytes out1 = new ByteBufferBytes(ByteBuffer.allocate(64));
+        Bytes out2 = new ByteBufferBytes(ByteBuffer.allocate(64));
+        ((BytesMarshallable) ai).writeMarshallable(out1);
+        ((BytesMarshallable) nai).writeMarshallable(out2);
+        assertEquals(out2.position(), out1.position());
+        for (int i = 0; i < out1.position(); i++)
+            assertEquals(out2.readByte(i), out1.readByte(i));
+
+        columnar.index(2);
+        out1.position(0);
+        ((BytesMarshallable) ai).readMarshallable(out1);
+        assertEquals(nai, ai);
+        assertEquals(55L, bytes.readLong(128 + 2 * 8));
+    }
+
+    @Test
+    public void testLockFreeHeapAtomics() throws Exception {
+        AtomicInterface nai = new DataValueGenerator().nativeInstance(AtomicInterface.class);
+        ((Byteable) nai).bytes(new ByteBufferBytes(ByteBuffer.allocate(64)), 0L);
+        assertEquals(2.5f, nai.addAtomicRatio(2.5f), 0.0f);
+        assertEquals(2.5, nai.addAtomicSum(2.5), 0.0);
+        assertTrue(nai.compareAndSwapSum(2.5, 1.0));
+
+        final AtomicInterface ai = new DataValueGenerator().heapInstance(AtomicInterface.class);
+        for (String name : new String[]{"addAtomicCount", "addAtomicTotal", "addAtomicRatio", "addAtomicSum", "compareAndSwapTotal"})
+            for (java.lang.reflect.Method method : ai.getClass().getMethods())
+                if (method.getName().equals(name))
+                    assertFalse(method + " is synchronized", java.lang.reflect.Modifier.isSynchronized(method.getModifiers()));
+
+        assertEquals(2.5f, ai.addAtomicRatio(2.5f), 0.0f);
+        assertEquals(2.5, ai.addAtomicSum(2.5), 0.0);
+        assertTrue(ai.compareAndSwapSum(2.5, 1.0));
+        assertFalse(ai.compareAndSwapSum(2.5, 3.0));
+        assertTrue(ai.compareAndSwapCount(0, 1));
+        assertTrue(ai.compareAndSwapTotal(0, 1));
+        assertFalse(ai.compareAndSwapTotal(0, 2));
+
+        final int threads = 4, runs = 100000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < runs; i++) {
+                        ai.addAtomicCount(1);
+                        ai.addAtomicTotal(2);
+                        ai.addAtomicRatio(1);
+                        ai.addAtomicSum(0.5);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        assertEquals(1 + threads * runs, ai.getCount());
+        assertEquals(1 + 2L * threads * runs, ai.getTotal());
+        assertEquals(2.5f + threads * runs, ai.getRatio(), 0.0f);
+        assertEquals(1.0 + 0.5 * threads * runs, ai.getSum(), 0.0);
+    }
+
     @Test
     public void testGenerateNativeWithGetUsing() throws Exception {
         String actual = new DataValueGenerator().generateNativeObject(JavaBeanInterfaceGetUsing.class);
@@ -16,9 +16,11 @@
 
 package net.openhft.lang.model;
 
+import net.openhft.lang.model.constraints.Range;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 /**
  * User: peter.lawrey Date: 06/10/13 Time: 18:12
@@ -70,4 +72,45 @@ public class DataValueModelTest {
 
 
     }
+
+    public interface RangedSmall {
+        void setSmall(@Range(min = 0, max = 1000) int small);
+
+        int getSmall();
+
+        void setId(long id);
+
+        long getId();
+    }
+
+    public interface SameRangedSmall {
+        void setSmall(@Range(min = 0, max = 1000) int small);
+
+        int getSmall();
+
+        void setId(long id);
+
+        long getId();
+    }
+
+    public interface AddedSmall {
+        void setSmall(@Range(min = 0, max = 1000) int small);
+
+        int getSmall();
+
+        int addSmall(int delta);
+
+        void setId(long id);
+
+        long getId();
+    }
+
+    @Test
+    public void testLayoutFingerprint() {
+        assertEquals(DataValueModels.layoutFingerprint(RangedSmall.class),
+                DataValueModels.layoutFingerprint(SameRangedSmall.class));
+        // an adder means small can't be packed, so it moves to a field of its own.
+        assertFalse(DataValueModels.layoutFingerprint(RangedSmall.class)
+                == DataValueModels.layoutFingerprint(AddedSmall.class));
+    }
 }
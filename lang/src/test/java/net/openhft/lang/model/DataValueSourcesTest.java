@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataValueSourcesTest {
+    @Test
+    public void testWriteSources() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "dvg-" + System.nanoTime());
+        Set<File> files = DataValueSources.writeSources(dir, NestedA.class);
+        assertEquals(4, files.size());
+
+        File pkg = new File(dir, "net/openhft/lang/model");
+        File nativeA = new File(pkg, "NestedA$$Native.java");
+        File heapB = new File(pkg, "NestedB$$Heap.java");
+        assertTrue(files.contains(nativeA));
+        assertTrue(files.contains(heapB));
+        assertTrue(files.contains(new File(pkg, "NestedA$$Heap.java")));
+        assertTrue(files.contains(new File(pkg, "NestedB$$Native.java")));
+
+        DataValueGenerator dvg = new DataValueGenerator();
+        assertEquals(dvg.generateNativeObject(NestedA.class), read(nativeA));
+        assertEquals(DataValueGenerator.generateHeapObject(DataValueModels.acquireModel(NestedB.class)), read(heapB));
+
+        for (File file : files) {
+            assertTrue(file.delete());
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] chars = new char[1024];
+            for (int len; (len = reader.read(chars)) > 0; )
+                sb.append(chars, 0, len);
+            return sb.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
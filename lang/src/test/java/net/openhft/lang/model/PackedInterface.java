@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.model.constraints.Digits;
+import net.openhft.lang.model.constraints.Range;
+
+public interface PackedInterface {
+    void setSmall(@Range(min = 0, max = 1000) int small);
+
+    int getSmall();
+
+    void setSigned(@Range(min = -100, max = 100) byte signed);
+
+    byte getSigned();
+
+    void setCount(@Range(min = 0, max = (1L << 40) - 1) long count);
+
+    long getCount();
+
+    void setLetter(@Range(min = 'A', max = 'Z') char letter);
+
+    char getLetter();
+
+    void setPrice(@Digits(integer = 6, decimal = 2) double price);
+
+    double getPrice();
+
+    void setId(long id);
+
+    long getId();
+
+    void setFlag(boolean flag);
+
+    boolean getFlag();
+}
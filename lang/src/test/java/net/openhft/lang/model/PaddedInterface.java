@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.model.constraints.Align;
+import net.openhft.lang.model.constraints.Padded;
+
+@Padded
+public interface PaddedInterface {
+    void setFlag(boolean flag);
+
+    boolean getFlag();
+
+    void setCounter(@Align long counter);
+
+    long getCounter();
+
+    long addAtomicCounter(long delta);
+
+    void busyLockRecord() throws InterruptedException;
+
+    boolean tryLockRecord();
+
+    @Align
+    void unlockRecord();
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.lang.model;
+
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectStore;
+import net.openhft.lang.io.NativeBytes;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SeqLocksTest {
+    @Test
+    public void testRetryWhenCopyThrows() {
+        final Bytes bytes = DirectStore.allocate(8).bytes();
+        final int[] copies = {0};
+        SeqLocks.readConsistent(bytes, 0, null, new Copyable<Object>() {
+            @Override
+            public void copyFrom(Object from) {
+                // the first copy reads a record being written, and fails.
+                if (copies[0]++ == 0) {
+                    SeqLocks.writeBegin(bytes, 0);
+                    SeqLocks.writeEnd(bytes, 0);
+                    throw new IllegalStateException("torn");
+                }
+            }
+        });
+        assertEquals(2, copies[0]);
+        assertEquals(2, bytes.readLong(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testThrowsWhenNotWritten() {
+        Bytes bytes = DirectStore.allocate(8).bytes();
+        SeqLocks.readConsistent(bytes, 0, null, new Copyable<Object>() {
+            @Override
+            public void copyFrom(Object from) {
+                throw new IllegalStateException("not torn");
+            }
+        });
+    }
+
+    @Test
+    public void testWaitsForWriter() throws InterruptedException {
+        final Bytes bytes = DirectStore.allocate(16).bytes();
+        SeqLocks.writeBegin(bytes, 0);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                bytes.writeLong(8, 42);
+                SeqLocks.writeEnd(bytes, 0);
+            }
+        });
+        writer.start();
+        final long[] copy = {0};
+        SeqLocks.readConsistent(bytes, 0, null, new Copyable<Object>() {
+            @Override
+            public void copyFrom(Object from) {
+                copy[0] = bytes.readLong(8);
+            }
+        });
+        assertEquals(42, copy[0]);
+        writer.join();
+    }
+
+    @Test
+    public void testReaderDoesNotWriteVersion() {
+        Bytes bytes = DirectStore.allocate(16).bytes();
+        SeqLocks.writeBegin(bytes, 0);
+        bytes.writeLong(8, 42);
+        SeqLocks.writeEnd(bytes, 0);
+        // a view of the same record which fails on any write of the version.
+        final Bytes readOnly = new NativeBytes((NativeBytes) bytes) {
+            @Override
+            public boolean compareAndSwapLong(long offset, long expected, long x) {
+                throw new AssertionError("reader wrote the version");
+            }
+
+            @Override
+            public void writeLong(long offset, long v) {
+                throw new AssertionError("reader wrote the version");
+            }
+
+            @Override
+            public void writeOrderedLong(long offset, long v) {
+                throw new AssertionError("reader wrote the version");
+            }
+        };
+        final long[] copy = {0};
+        SeqLocks.readConsistent(readOnly, 0, null, new Copyable<Object>() {
+            @Override
+            public void copyFrom(Object from) {
+                copy[0] = readOnly.readLong(8);
+            }
+        });
+        assertEquals(42, copy[0]);
+        assertEquals(2, bytes.readLong(0));
+    }
+}